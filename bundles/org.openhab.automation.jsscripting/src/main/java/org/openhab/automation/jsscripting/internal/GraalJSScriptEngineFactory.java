@@ -19,8 +19,14 @@ import java.util.Map;
 
 import javax.script.ScriptEngine;
 
+import org.graalvm.polyglot.Engine;
 import org.openhab.core.automation.module.script.ScriptEngineFactory;
+import org.openhab.core.config.core.ConfigurableService;
+import org.osgi.framework.Constants;
+import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Modified;
 
 import com.oracle.truffle.js.scriptengine.GraalJSEngineFactory;
 
@@ -29,9 +35,36 @@ import com.oracle.truffle.js.scriptengine.GraalJSEngineFactory;
  *
  * @author Jonathan Gilbert - Initial contribution
  */
-@Component(service = ScriptEngineFactory.class)
+@Component(service = ScriptEngineFactory.class, configurationPid = "org.openhab.automation.jsscripting", property = {
+        Constants.SERVICE_PID + "=org.openhab.automation.jsscripting" })
+@ConfigurableService(category = "automation", label = "JS Scripting", description_uri = "automation:jsscripting")
 public final class GraalJSScriptEngineFactory implements ScriptEngineFactory {
 
+    private static final String CONFIG_CONTEXT_POOL_SIZE = "contextPoolSize";
+
+    /**
+     * The polyglot engine shared by all script engines. Code parsed and compiled for one script, e.g. a library module
+     * loaded with require, is cached by the engine and reused by all other scripts loading the same source.
+     */
+    private Engine polyglotEngine;
+
+    private volatile int contextPoolSize = 1;
+
+    @Activate
+    protected void activate(Map<String, Object> config) {
+        modified(config);
+    }
+
+    @Modified
+    protected void modified(Map<String, Object> config) {
+        Object poolSize = config.get(CONFIG_CONTEXT_POOL_SIZE);
+        try {
+            contextPoolSize = poolSize == null ? 1 : Math.max(1, Integer.parseInt(poolSize.toString()));
+        } catch (NumberFormatException e) {
+            contextPoolSize = 1;
+        }
+    }
+
     @Override
     public List<String> getScriptTypes() {
         List<String> scriptTypes = new ArrayList<>();
@@ -50,7 +83,23 @@ public final class GraalJSScriptEngineFactory implements ScriptEngineFactory {
 
     @Override
     public ScriptEngine createScriptEngine(String scriptType) {
-        OpenhabGraalJSScriptEngine engine = new OpenhabGraalJSScriptEngine();
+        OpenhabGraalJSScriptEngine engine = new OpenhabGraalJSScriptEngine(getPolyglotEngine(), contextPoolSize);
         return new DebuggingGraalScriptEngine<>(engine);
     }
+
+    private synchronized Engine getPolyglotEngine() {
+        if (polyglotEngine == null) {
+            polyglotEngine = Engine.newBuilder().allowExperimentalOptions(true).build();
+        }
+        return polyglotEngine;
+    }
+
+    @Deactivate
+    public synchronized void deactivate() {
+        if (polyglotEngine != null) {
+            // closes the contexts of all script engines still left, cancelling running scripts
+            polyglotEngine.close(true);
+            polyglotEngine = null;
+        }
+    }
 }
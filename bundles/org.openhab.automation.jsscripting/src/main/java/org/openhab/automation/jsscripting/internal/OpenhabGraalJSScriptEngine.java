@@ -17,22 +17,30 @@ import static org.openhab.core.automation.module.script.ScriptEngineFactory.*;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.file.FileSystems;
 import java.nio.file.OpenOption;
 import java.nio.file.Path;
 import java.nio.file.attribute.FileAttribute;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
 import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
 
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Engine;
 import org.openhab.automation.jsscripting.internal.fs.DelegatingFileSystem;
 import org.openhab.automation.jsscripting.internal.fs.PrefixedSeekableByteChannel;
 import org.openhab.automation.jsscripting.internal.scriptengine.InvocationInterceptingScriptEngineWithInvocable;
+import org.openhab.automation.jsscripting.internal.threading.ScriptContextPool;
 import org.openhab.core.OpenHAB;
 import org.openhab.core.automation.module.script.ScriptExtensionAccessor;
 import org.slf4j.Logger;
@@ -52,20 +60,40 @@ public class OpenhabGraalJSScriptEngine extends InvocationInterceptingScriptEngi
     private static final String REQUIRE_WRAPPER_NAME = "__wraprequire__";
     private static final String MODULE_DIR = String.join(File.separator, OpenHAB.getConfigFolder(), "automation", "lib",
             "javascript", "personal");
+    private static final byte[] REQUIRE_WRAPPER_PREFIX = ("require=" + REQUIRE_WRAPPER_NAME + "(require);")
+            .getBytes();
+    private static final String CONTEXT_KEY_DEPENDENCY_LISTENER = "oh.dependency-listener";
+
+    private final Engine polyglotEngine;
+    private final ScriptContextPool contextPool;
+    // the engines of the further contexts of the pool, the first context is the one of the delegate
+    private final List<GraalJSScriptEngine> poolEngines = new ArrayList<>();
 
     // these fields start as null because they are populated on first use
     private @NonNullByDefault({}) String engineIdentifier;
     private @NonNullByDefault({}) Consumer<String> scriptDependencyListener;
+    private @NonNullByDefault({}) ScriptExtensionModuleProvider scriptExtensionModuleProvider;
 
     private boolean initialized = false;
+    private boolean poolInitialized = false;
 
     /**
      * Creates an implementation of ScriptEngine (& Invocable), wrapping the contained engine, that tracks the script
      * lifecycle and provides hooks for scripts to do so too.
+     *
+     * @param polyglotEngine the polyglot engine shared with other script engines, caching parsed and compiled code
+     * @param contextPoolSize the number of contexts executing the rules of the script in parallel, 1 to execute them
+     *            one after the other
      */
-    public OpenhabGraalJSScriptEngine() {
+    public OpenhabGraalJSScriptEngine(Engine polyglotEngine, int contextPoolSize) {
         super(null); // delegate depends on fields not yet initialised, so we cannot set it immediately
-        delegate = GraalJSScriptEngine.create(null,
+        this.polyglotEngine = polyglotEngine;
+        this.contextPool = new ScriptContextPool(contextPoolSize);
+        delegate = createGraalJSScriptEngine();
+    }
+
+    private GraalJSScriptEngine createGraalJSScriptEngine() {
+        return GraalJSScriptEngine.create(polyglotEngine,
                 Context.newBuilder("js").allowExperimentalOptions(true).allowAllAccess(true)
                         .option("js.commonjs-require-cwd", MODULE_DIR).option("js.nashorn-compat", "true") // to ease
                                                                                                            // migration
@@ -79,8 +107,7 @@ public class OpenhabGraalJSScriptEngine extends InvocationInterceptingScriptEngi
                                 }
 
                                 if (path.toString().endsWith(".js")) {
-                                    return new PrefixedSeekableByteChannel(
-                                            ("require=" + REQUIRE_WRAPPER_NAME + "(require);").getBytes(),
+                                    return new PrefixedSeekableByteChannel(REQUIRE_WRAPPER_PREFIX,
                                             super.newByteChannel(path, options, attrs));
                                 } else {
                                     return super.newByteChannel(path, options, attrs);
@@ -109,23 +136,112 @@ public class OpenhabGraalJSScriptEngine extends InvocationInterceptingScriptEngi
             throw new IllegalStateException("Failed to retrieve script extension accessor from engine bindings");
         }
 
-        scriptDependencyListener = (Consumer<String>) ctx
-                .getAttribute("oh.dependency-listener"/* CONTEXT_KEY_DEPENDENCY_LISTENER */);
+        scriptDependencyListener = (Consumer<String>) ctx.getAttribute(CONTEXT_KEY_DEPENDENCY_LISTENER);
         if (scriptDependencyListener == null) {
             LOGGER.warn(
                     "Failed to retrieve script script dependency listener from engine bindings. Script dependency tracking will be disabled.");
         }
 
-        ScriptExtensionModuleProvider scriptExtensionModuleProvider = new ScriptExtensionModuleProvider(
-                scriptExtensionAccessor);
+        scriptExtensionModuleProvider = new ScriptExtensionModuleProvider(scriptExtensionAccessor, contextPool);
+        contextPool.setScriptIdentifier(engineIdentifier);
+
+        wrapRequire(delegate, 0);
+
+        initialized = true;
+    }
 
+    private void wrapRequire(GraalJSScriptEngine engine, int contextIndex) {
         Function<Function<Object[], Object>, Function<String, Object>> wrapRequireFn = originalRequireFn -> moduleName -> scriptExtensionModuleProvider
-                .locatorFor(delegate.getPolyglotContext(), engineIdentifier).locateModule(moduleName)
+                .locatorFor(engine.getPolyglotContext(), engineIdentifier, contextIndex).locateModule(moduleName)
                 .map(m -> (Object) m).orElseGet(() -> originalRequireFn.apply(new Object[] { moduleName }));
 
-        delegate.getBindings(ScriptContext.ENGINE_SCOPE).put(REQUIRE_WRAPPER_NAME, wrapRequireFn);
-        delegate.put("require", wrapRequireFn.apply((Function<Object[], Object>) delegate.get("require")));
+        engine.getBindings(ScriptContext.ENGINE_SCOPE).put(REQUIRE_WRAPPER_NAME, wrapRequireFn);
+        engine.put("require", wrapRequireFn.apply((Function<Object[], Object>) engine.get("require")));
+    }
 
-        initialized = true;
+    @Override
+    public Object eval(Reader reader) throws ScriptException {
+        if (contextPool.size() == 1 || poolInitialized) {
+            return super.eval(reader);
+        }
+
+        // the script is evaluated again in the further contexts of the pool
+        StringWriter script = new StringWriter();
+        try {
+            reader.transferTo(script);
+        } catch (IOException e) {
+            throw new ScriptException(e);
+        }
+        return eval(script.toString());
+    }
+
+    @Override
+    public Object eval(String script) throws ScriptException {
+        Object result = super.eval(script);
+        if (contextPool.size() > 1 && !poolInitialized && contextPool.hasRules()) {
+            poolInitialized = true;
+            initializeContextPool(script);
+        }
+        return result;
+    }
+
+    /**
+     * Evaluates the script in the further contexts of the pool, which adds their instances of the rules of the script
+     * as executors to the rules registered by the first context. Scripts not registering rules, e.g. the script
+     * actions of UI rules, do not benefit from a pool, so it is only initialized once a script registers rules.
+     */
+    private void initializeContextPool(String script) {
+        ScriptContext ctx = delegate.getContext();
+        for (int contextIndex = 1; contextIndex < contextPool.size(); contextIndex++) {
+            GraalJSScriptEngine engine = createGraalJSScriptEngine();
+            for (String key : List.of(CONTEXT_KEY_ENGINE_IDENTIFIER, CONTEXT_KEY_EXTENSION_ACCESSOR,
+                    CONTEXT_KEY_DEPENDENCY_LISTENER, ScriptEngine.FILENAME)) {
+                Object value = ctx.getAttribute(key);
+                if (value != null) {
+                    engine.getContext().setAttribute(key, value, ScriptContext.ENGINE_SCOPE);
+                }
+            }
+            wrapRequire(engine, contextIndex);
+
+            // rules are added to the context while it is evaluated, so it must not execute them before it is done
+            final int index = contextIndex;
+            contextPool.acquire(i -> i == index);
+            try {
+                engine.eval(script);
+                contextPool.verifyContext(contextIndex);
+                poolEngines.add(engine);
+            } catch (ScriptException | RuntimeException e) {
+                contextPool.removeContext(contextIndex);
+                engine.close();
+                if (contextPool.hasMismatch()) {
+                    // the contexts of the script differ, none of the further ones is used. Their engines may still
+                    // finish a rule, they are closed with this engine.
+                    for (int i = 1; i < contextIndex; i++) {
+                        contextPool.removeContext(i);
+                    }
+                    LOGGER.warn("Rules of script '{}' cannot be matched between the contexts of the pool ({}), its"
+                            + " rules are executed one after the other. Give every rule a unique name, or a UID which"
+                            + " is the same on every evaluation, to execute them in parallel.", engineIdentifier,
+                            e.getMessage());
+                    break;
+                }
+                LOGGER.error("Failed to evaluate script '{}' in context {} of the pool, the context is not used: {}",
+                        engineIdentifier, contextIndex, e.getMessage());
+            } finally {
+                contextPool.release(contextIndex);
+            }
+        }
+        LOGGER.debug("Script '{}' is executed by {} contexts", engineIdentifier,
+                contextPool.hasMismatch() ? 1 : poolEngines.size() + 1);
+    }
+
+    @Override
+    public void close() throws Exception {
+        contextPool.close();
+        for (GraalJSScriptEngine engine : poolEngines) {
+            engine.close();
+        }
+        poolEngines.clear();
+        super.close();
     }
 }
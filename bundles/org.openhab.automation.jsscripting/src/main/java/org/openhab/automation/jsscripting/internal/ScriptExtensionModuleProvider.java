@@ -21,6 +21,7 @@ import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.graalvm.polyglot.Context;
 import org.graalvm.polyglot.Source;
 import org.graalvm.polyglot.Value;
+import org.openhab.automation.jsscripting.internal.threading.ScriptContextPool;
 import org.openhab.automation.jsscripting.internal.threading.ThreadsafeWrappingScriptedAutomationManagerDelegate;
 import org.openhab.core.automation.module.script.ScriptExtensionAccessor;
 import org.openhab.core.automation.module.script.rulesupport.shared.ScriptedAutomationManager;
@@ -38,19 +39,22 @@ public class ScriptExtensionModuleProvider {
     private static final String DEFAULT_MODULE_NAME = "Defaults";
 
     private final ScriptExtensionAccessor scriptExtensionAccessor;
+    private final ScriptContextPool contextPool;
 
-    public ScriptExtensionModuleProvider(ScriptExtensionAccessor scriptExtensionAccessor) {
+    public ScriptExtensionModuleProvider(ScriptExtensionAccessor scriptExtensionAccessor,
+            ScriptContextPool contextPool) {
         this.scriptExtensionAccessor = scriptExtensionAccessor;
+        this.contextPool = contextPool;
     }
 
-    public ModuleLocator locatorFor(Context ctx, String engineIdentifier) {
+    public ModuleLocator locatorFor(Context ctx, String engineIdentifier, int contextIndex) {
         return name -> {
             String[] segments = name.split("/");
             if (segments[0].equals(RUNTIME_MODULE_PREFIX)) {
                 if (segments.length == 1) {
-                    return runtimeModule(DEFAULT_MODULE_NAME, engineIdentifier, ctx);
+                    return runtimeModule(DEFAULT_MODULE_NAME, engineIdentifier, ctx, contextIndex);
                 } else {
-                    return runtimeModule(segments[1], engineIdentifier, ctx);
+                    return runtimeModule(segments[1], engineIdentifier, ctx, contextIndex);
                 }
             }
 
@@ -58,7 +62,7 @@ public class ScriptExtensionModuleProvider {
         };
     }
 
-    private Optional<Value> runtimeModule(String name, String scriptIdentifier, Context ctx) {
+    private Optional<Value> runtimeModule(String name, String scriptIdentifier, Context ctx, int contextIndex) {
         Map<String, Object> symbols;
 
         if (DEFAULT_MODULE_NAME.equals(name)) {
@@ -67,7 +71,7 @@ public class ScriptExtensionModuleProvider {
             symbols = scriptExtensionAccessor.findPreset(name, scriptIdentifier);
         }
 
-        return Optional.of(symbols).map(this::processValues).map(v -> toValue(ctx, v));
+        return Optional.of(symbols).map(s -> processValues(s, contextIndex)).map(v -> toValue(ctx, v));
     }
 
     private Value toValue(Context ctx, Map<String, Object> map) {
@@ -86,15 +90,16 @@ public class ScriptExtensionModuleProvider {
      * Some specific objects need wrapping when exposed to a GraalJS environment. This method does this.
      *
      * @param values the map of names to values of things to process
+     * @param contextIndex the index of the context of the script the values are exposed to
      * @return a map of the processed keys and values
      */
-    private Map<String, Object> processValues(Map<String, Object> values) {
+    private Map<String, Object> processValues(Map<String, Object> values, int contextIndex) {
         Map<String, Object> rv = new HashMap<>(values);
 
         for (Map.Entry<String, Object> entry : rv.entrySet()) {
             if (entry.getValue() instanceof ScriptedAutomationManager) {
                 entry.setValue(new ThreadsafeWrappingScriptedAutomationManagerDelegate(
-                        (ScriptedAutomationManager) entry.getValue()));
+                        (ScriptedAutomationManager) entry.getValue(), contextPool, contextIndex));
             }
         }
 
@@ -24,12 +24,12 @@ import javax.script.ScriptException;
 
 /**
  * {@link ScriptEngine} implementation that delegates to a supplied ScriptEngine instance. Allows overriding specific
- * methods.
+ * methods. Closing it closes the delegate, if that can be closed.
  *
  * @author Jonathan Gilbert - Initial contribution
  */
 public abstract class DelegatingScriptEngineWithInvocable<T extends ScriptEngine & Invocable>
-        implements ScriptEngine, Invocable {
+        implements ScriptEngine, Invocable, AutoCloseable {
     protected T delegate;
 
     public DelegatingScriptEngineWithInvocable(T delegate) {
@@ -125,4 +125,11 @@ public abstract class DelegatingScriptEngineWithInvocable<T extends ScriptEngine
     public <T> T getInterface(Object o, Class<T> aClass) {
         return delegate.getInterface(o, aClass);
     }
+
+    @Override
+    public void close() throws Exception {
+        if (delegate instanceof AutoCloseable) {
+            ((AutoCloseable) delegate).close();
+        }
+    }
 }
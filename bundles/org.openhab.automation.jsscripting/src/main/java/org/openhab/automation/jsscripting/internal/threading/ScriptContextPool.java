@@ -0,0 +1,338 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.automation.jsscripting.internal.threading;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
+import java.util.function.Supplier;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.automation.Rule;
+import org.openhab.core.automation.module.script.rulesupport.shared.simple.SimpleRule;
+import org.openhab.io.metrics.AddonMeters;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The contexts a script is evaluated in. A GraalJS Context is single threaded, so a rule of the script is executed in
+ * a context no other thread is executing in, waiting for one to become free. With a single context, all rules of the
+ * script are executed one after the other. With more contexts, each evaluating the same script and registering the
+ * same rules, as many rules as there are contexts are executed in parallel.
+ *
+ * The first context registers the rules and handlers of the script. The rules registered by the other contexts are
+ * matched with the rules of the first context by their UID, or by their name if the UIDs differ, e.g. because the
+ * script generates random UIDs, and only add an executor to them. Private handlers have neither, they are matched by
+ * their order. A context registering a rule or handler that cannot be matched fails with an
+ * {@link IllegalStateException} and {@link #hasMismatch()} returns true, so that the script is executed by the first
+ * context only.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class ScriptContextPool {
+
+    private final Logger logger = LoggerFactory.getLogger(ScriptContextPool.class);
+
+    private final int size;
+
+    // guarded by this
+    private final @Nullable Thread[] owners;
+    private final int[] holdCounts;
+    private final int[] privateHandlerCounts;
+    private int queueDepth;
+    // UIDs and names of rules of the first context which are not unique, so that they cannot be matched
+    private final Set<String> ambiguousUIDs = new HashSet<>();
+    private final Set<String> ambiguousNames = new HashSet<>();
+    private final Map<String, ThreadsafeSimpleRuleDelegate> rulesByUID = new HashMap<>();
+    private final Map<String, ThreadsafeSimpleRuleDelegate> rulesByName = new HashMap<>();
+
+    private final List<ThreadsafeSimpleRuleDelegate> rules = new CopyOnWriteArrayList<>();
+    private final List<String> privateHandlerUIDs = new CopyOnWriteArrayList<>();
+    private volatile boolean mismatch;
+
+    private @Nullable String scriptIdentifier;
+    private @Nullable AddonMeters meters;
+
+    /**
+     * @param size the number of contexts of the script, at least 1
+     */
+    public ScriptContextPool(int size) {
+        this.size = Math.max(1, size);
+        owners = new @Nullable Thread[this.size];
+        holdCounts = new int[this.size];
+        privateHandlerCounts = new int[this.size];
+    }
+
+    /**
+     * @return the number of contexts
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Sets the identifier of the script, used to tag its meters.
+     *
+     * @param scriptIdentifier the identifier of the script engine
+     */
+    public void setScriptIdentifier(String scriptIdentifier) {
+        this.scriptIdentifier = scriptIdentifier;
+    }
+
+    /**
+     * @return true if the first context registered rules, so that the script benefits from further contexts
+     */
+    public boolean hasRules() {
+        return !rules.isEmpty();
+    }
+
+    /**
+     * @return true if another context added a rule or handler which could not be matched with those of the first
+     *         context, so that the contexts of the script can't be told apart
+     */
+    public boolean hasMismatch() {
+        return mismatch;
+    }
+
+    /**
+     * @return the number of rule executions waiting for a context
+     */
+    public synchronized int getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * Waits for a usable context no other thread is executing in and reserves it for the current thread. A thread
+     * already holding a usable context gets that one again, e.g. for a rule running another rule of the script.
+     *
+     * @param usable tests whether a context can be used by its index
+     * @return the index of the reserved context, to be released with {@link #release(int)}
+     */
+    public synchronized int acquire(IntPredicate usable) {
+        Thread current = Thread.currentThread();
+        for (int i = 0; i < size; i++) {
+            if (owners[i] == current && usable.test(i)) {
+                holdCounts[i]++;
+                return i;
+            }
+        }
+
+        boolean interrupted = false;
+        queueDepth++;
+        try {
+            while (true) {
+                for (int i = 0; i < size; i++) {
+                    if (owners[i] == null && usable.test(i)) {
+                        owners[i] = current;
+                        holdCounts[i] = 1;
+                        return i;
+                    }
+                }
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    // like a synchronized block, waiting for the context is not interruptible
+                    interrupted = true;
+                }
+            }
+        } finally {
+            queueDepth--;
+            if (interrupted) {
+                current.interrupt();
+            }
+        }
+    }
+
+    /**
+     * Releases a context reserved by {@link #acquire(IntPredicate)}.
+     *
+     * @param index the index of the context
+     */
+    public synchronized void release(int index) {
+        if (owners[index] == Thread.currentThread() && --holdCounts[index] == 0) {
+            owners[index] = null;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Records the execution time of a rule of the script.
+     *
+     * @param startNanos the value of {@link System#nanoTime()} when the execution started
+     */
+    void recordExecution(long startNanos) {
+        AddonMeters currentMeters = meters;
+        if (currentMeters != null) {
+            currentMeters.record("execution", startNanos);
+        }
+    }
+
+    /**
+     * Registers a rule added by a context. The rule of the first context is wrapped in a
+     * {@link ThreadsafeSimpleRuleDelegate} and registered, the rules of the other contexts become executors of the
+     * rule of the first context with the same UID, or else with the same name.
+     *
+     * @param contextIndex the index of the context adding the rule
+     * @param rule the rule
+     * @param register registers a rule with the automation manager
+     * @return the registered rule
+     * @throws IllegalStateException if the rule of another context does not match exactly one rule of the first
+     */
+    Rule addRule(int contextIndex, SimpleRule rule, Function<Rule, Rule> register) {
+        @Nullable String uid = emptyToNull(rule.getUID());
+        @Nullable String name = emptyToNull(rule.getName());
+        if (contextIndex == 0) {
+            ThreadsafeSimpleRuleDelegate threadsafeRule = new ThreadsafeSimpleRuleDelegate(this, rule);
+            rules.add(threadsafeRule);
+            synchronized (this) {
+                index(rulesByUID, ambiguousUIDs, uid, threadsafeRule);
+                index(rulesByName, ambiguousNames, name, threadsafeRule);
+            }
+            registerMeters();
+            return register.apply(threadsafeRule);
+        }
+
+        ThreadsafeSimpleRuleDelegate threadsafeRule;
+        synchronized (this) {
+            threadsafeRule = uid != null ? rulesByUID.get(uid) : null;
+            if (threadsafeRule == null && name != null) {
+                threadsafeRule = rulesByName.get(name);
+            }
+        }
+        if (threadsafeRule == null) {
+            throw mismatch("Rule '" + (name != null ? name : uid) + "' in context " + contextIndex
+                    + " does not match a rule of the first context by UID or unique name");
+        }
+        if (!threadsafeRule.addExecutor(contextIndex, rule)) {
+            throw mismatch("Rule '" + ruleKey(threadsafeRule) + "' is added twice in context " + contextIndex);
+        }
+        return threadsafeRule;
+    }
+
+    private static void index(Map<String, ThreadsafeSimpleRuleDelegate> rulesByKey, Set<String> ambiguousKeys,
+            @Nullable String key, ThreadsafeSimpleRuleDelegate rule) {
+        if (key != null && (ambiguousKeys.contains(key) || rulesByKey.putIfAbsent(key, rule) != null)) {
+            ambiguousKeys.add(key);
+            rulesByKey.remove(key);
+        }
+    }
+
+    private IllegalStateException mismatch(String message) {
+        mismatch = true;
+        return new IllegalStateException(message);
+    }
+
+    /**
+     * Registers a private handler added by a context. Only the handlers of the first context are registered, the other
+     * contexts get the UIDs of the handlers of the first context in the same order.
+     *
+     * @param contextIndex the index of the context adding the handler
+     * @param register registers the handler with the automation manager
+     * @return the UID of the registered handler
+     * @throws IllegalStateException if another context adds more handlers than the first one
+     */
+    String addPrivateHandler(int contextIndex, Supplier<String> register) {
+        if (contextIndex == 0) {
+            String uid = register.get();
+            privateHandlerUIDs.add(uid);
+            return uid;
+        }
+
+        int position;
+        synchronized (this) {
+            position = privateHandlerCounts[contextIndex]++;
+        }
+        if (position >= privateHandlerUIDs.size()) {
+            throw mismatch("Context " + contextIndex + " adds more private handlers ("
+                    + (position + 1) + ") than the first context (" + privateHandlerUIDs.size() + ")");
+        }
+        return privateHandlerUIDs.get(position);
+    }
+
+    /**
+     * Checks that a context has added an instance of every rule and handler of the first context, after the script has
+     * been evaluated in it.
+     *
+     * @param contextIndex the index of the context
+     * @throws IllegalStateException if a rule or handler of the first context is missing
+     */
+    public void verifyContext(int contextIndex) {
+        for (ThreadsafeSimpleRuleDelegate rule : rules) {
+            if (!rule.hasExecutor(contextIndex)) {
+                throw mismatch(
+                        "Rule '" + ruleKey(rule) + "' of the first context was not added by context " + contextIndex);
+            }
+        }
+        int handlerCount;
+        synchronized (this) {
+            handlerCount = privateHandlerCounts[contextIndex];
+        }
+        if (handlerCount != privateHandlerUIDs.size()) {
+            throw mismatch("Context " + contextIndex + " adds " + handlerCount
+                    + " private handlers instead of " + privateHandlerUIDs.size());
+        }
+    }
+
+    /**
+     * @return the name of the rule, or its UID if it has no name, for messages
+     */
+    private static @Nullable String ruleKey(Rule rule) {
+        String name = emptyToNull(rule.getName());
+        return name != null ? name : emptyToNull(rule.getUID());
+    }
+
+    private static @Nullable String emptyToNull(@Nullable String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+
+    /**
+     * Removes the executors of a context from all rules, e.g. if the script failed in that context.
+     *
+     * @param contextIndex the index of the context
+     */
+    public void removeContext(int contextIndex) {
+        rules.forEach(rule -> rule.removeExecutor(contextIndex));
+    }
+
+    private synchronized void registerMeters() {
+        String identifier = scriptIdentifier;
+        if (meters != null || identifier == null) {
+            return;
+        }
+        try {
+            AddonMeters addonMeters = AddonMeters.forScript(identifier);
+            addonMeters.gauge("queue.depth", this::getQueueDepth);
+            meters = addonMeters;
+        } catch (NoClassDefFoundError e) {
+            logger.debug("Metrics service not installed, no meters registered");
+        }
+    }
+
+    /**
+     * Removes the meters of the script.
+     */
+    public synchronized void close() {
+        AddonMeters currentMeters = meters;
+        if (currentMeters != null) {
+            meters = null;
+            currentMeters.close();
+        }
+    }
+}
@@ -15,6 +15,7 @@ package org.openhab.automation.jsscripting.internal.threading;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
@@ -31,32 +32,61 @@ import org.openhab.core.config.core.Configuration;
 
 /**
  * An version of {@link SimpleRule} which controls multithreaded execution access to this specific rule. This is useful
- * for rules which wrap GraalJS Contexts, which are not multithreaded.
+ * for rules which wrap GraalJS Contexts, which are not multithreaded. The rule is executed by the instance of the rule
+ * in the context of the {@link ScriptContextPool} that is reserved for the execution.
  *
  * @author Jonathan Gilbert - Initial contribution
  */
 @NonNullByDefault
 class ThreadsafeSimpleRuleDelegate implements Rule, SimpleRuleActionHandler {
 
-    private final Object lock;
+    private final ScriptContextPool contextPool;
     private final SimpleRule delegate;
+    private final AtomicReferenceArray<@Nullable SimpleRule> executors;
 
     /**
-     * Constructor requires a lock object and delegate to forward invocations to.
+     * Constructor requires the contexts of the script and delegate to forward invocations to.
      *
-     * @param lock rule executions will synchronize on this object
-     * @param delegate the delegate to forward invocations to
+     * @param contextPool rule executions will reserve a context of the script
+     * @param delegate the delegate to forward invocations to, the rule of the first context
      */
-    ThreadsafeSimpleRuleDelegate(Object lock, SimpleRule delegate) {
-        this.lock = lock;
+    ThreadsafeSimpleRuleDelegate(ScriptContextPool contextPool, SimpleRule delegate) {
+        this.contextPool = contextPool;
         this.delegate = delegate;
+        this.executors = new AtomicReferenceArray<>(contextPool.size());
+        this.executors.set(0, delegate);
+    }
+
+    /**
+     * Adds the instance of this rule created by another context of the script.
+     *
+     * @param contextIndex the index of the context
+     * @param rule the rule created by the context
+     * @return false if the context already added an instance of this rule
+     */
+    boolean addExecutor(int contextIndex, SimpleRule rule) {
+        return executors.compareAndSet(contextIndex, null, rule);
+    }
+
+    boolean hasExecutor(int contextIndex) {
+        return executors.get(contextIndex) != null;
+    }
+
+    void removeExecutor(int contextIndex) {
+        executors.set(contextIndex, null);
     }
 
     @Override
     @NonNullByDefault({})
     public Object execute(Action module, Map<String, ?> inputs) {
-        synchronized (lock) {
-            return delegate.execute(module, inputs);
+        int contextIndex = contextPool.acquire(i -> executors.get(i) != null);
+        long startNanos = System.nanoTime();
+        try {
+            SimpleRule executor = executors.get(contextIndex);
+            return (executor != null ? executor : delegate).execute(module, inputs);
+        } finally {
+            contextPool.recordExecution(startNanos);
+            contextPool.release(contextIndex);
         }
     }
 
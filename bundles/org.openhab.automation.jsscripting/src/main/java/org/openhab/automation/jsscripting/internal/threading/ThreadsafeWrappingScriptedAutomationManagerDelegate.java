@@ -27,8 +27,11 @@ import org.openhab.core.automation.type.TriggerType;
 
 /**
  * A replacement for {@link ScriptedAutomationManager} which wraps all rule registrations in a
- * {@link ThreadsafeSimpleRuleDelegate}. This means that all rules registered via this class with be run in serial per
- * instance of this class that they are registered with.
+ * {@link ThreadsafeSimpleRuleDelegate}. This means that all rules registered via this class will be run in serial per
+ * context of the {@link ScriptContextPool} of the script.
+ *
+ * Only the first context of the script registers with the automation manager. The rules of the other contexts are
+ * added to the rules of the first context, their other registrations are skipped.
  *
  * @author Jonathan Gilbert - Initial contribution
  */
@@ -36,70 +39,104 @@ import org.openhab.core.automation.type.TriggerType;
 public class ThreadsafeWrappingScriptedAutomationManagerDelegate {
 
     private ScriptedAutomationManager delegate;
-    private Object lock = new Object();
-
-    public ThreadsafeWrappingScriptedAutomationManagerDelegate(ScriptedAutomationManager delegate) {
+    private ScriptContextPool contextPool;
+    private int contextIndex;
+
+    /**
+     * @param delegate the automation manager of the script
+     * @param contextPool the contexts of the script
+     * @param contextIndex the index of the context using this instance
+     */
+    public ThreadsafeWrappingScriptedAutomationManagerDelegate(ScriptedAutomationManager delegate,
+            ScriptContextPool contextPool, int contextIndex) {
         this.delegate = delegate;
+        this.contextPool = contextPool;
+        this.contextIndex = contextIndex;
+    }
+
+    private boolean isFirstContext() {
+        return contextIndex == 0;
     }
 
     public void removeModuleType(String UID) {
-        delegate.removeModuleType(UID);
+        if (isFirstContext()) {
+            delegate.removeModuleType(UID);
+        }
     }
 
     public void removeHandler(String typeUID) {
-        delegate.removeHandler(typeUID);
+        if (isFirstContext()) {
+            delegate.removeHandler(typeUID);
+        }
     }
 
     public void removePrivateHandler(String privId) {
-        delegate.removePrivateHandler(privId);
+        if (isFirstContext()) {
+            delegate.removePrivateHandler(privId);
+        }
     }
 
     public void removeAll() {
-        delegate.removeAll();
+        if (isFirstContext()) {
+            delegate.removeAll();
+        }
     }
 
     public Rule addRule(Rule element) {
         // wrap in a threadsafe version, safe per context
         if (element instanceof SimpleRule) {
-            element = new ThreadsafeSimpleRuleDelegate(lock, (SimpleRule) element);
+            return contextPool.addRule(contextIndex, (SimpleRule) element, delegate::addRule);
         }
 
-        return delegate.addRule(element);
+        return isFirstContext() ? delegate.addRule(element) : element;
     }
 
     public void addConditionType(ConditionType condititonType) {
-        delegate.addConditionType(condititonType);
+        if (isFirstContext()) {
+            delegate.addConditionType(condititonType);
+        }
     }
 
     public void addConditionHandler(String uid, ScriptedHandler conditionHandler) {
-        delegate.addConditionHandler(uid, conditionHandler);
+        if (isFirstContext()) {
+            delegate.addConditionHandler(uid, conditionHandler);
+        }
     }
 
     public String addPrivateConditionHandler(SimpleConditionHandler conditionHandler) {
-        return delegate.addPrivateConditionHandler(conditionHandler);
+        return contextPool.addPrivateHandler(contextIndex,
+                () -> delegate.addPrivateConditionHandler(conditionHandler));
     }
 
     public void addActionType(ActionType actionType) {
-        delegate.addActionType(actionType);
+        if (isFirstContext()) {
+            delegate.addActionType(actionType);
+        }
     }
 
     public void addActionHandler(String uid, ScriptedHandler actionHandler) {
-        delegate.addActionHandler(uid, actionHandler);
+        if (isFirstContext()) {
+            delegate.addActionHandler(uid, actionHandler);
+        }
     }
 
     public String addPrivateActionHandler(SimpleActionHandler actionHandler) {
-        return delegate.addPrivateActionHandler(actionHandler);
+        return contextPool.addPrivateHandler(contextIndex, () -> delegate.addPrivateActionHandler(actionHandler));
     }
 
     public void addTriggerType(TriggerType triggerType) {
-        delegate.addTriggerType(triggerType);
+        if (isFirstContext()) {
+            delegate.addTriggerType(triggerType);
+        }
     }
 
     public void addTriggerHandler(String uid, ScriptedHandler triggerHandler) {
-        delegate.addTriggerHandler(uid, triggerHandler);
+        if (isFirstContext()) {
+            delegate.addTriggerHandler(uid, triggerHandler);
+        }
     }
 
     public String addPrivateTriggerHandler(SimpleTriggerHandler triggerHandler) {
-        return delegate.addPrivateTriggerHandler(triggerHandler);
+        return contextPool.addPrivateHandler(contextIndex, () -> delegate.addPrivateTriggerHandler(triggerHandler));
     }
 }
@@ -0,0 +1,225 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.automation.jsscripting.internal.threading;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.junit.jupiter.api.Test;
+import org.openhab.core.automation.Action;
+import org.openhab.core.automation.Rule;
+import org.openhab.core.automation.module.script.rulesupport.shared.simple.SimpleRule;
+
+/**
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class ScriptContextPoolTest {
+
+    private final List<Rule> registered = new ArrayList<>();
+
+    private Rule register(Rule rule) {
+        registered.add(rule);
+        return rule;
+    }
+
+    private static SimpleRule rule(@Nullable String name) {
+        return rule(name, null);
+    }
+
+    private static SimpleRule rule(@Nullable String name, @Nullable String ruleUID) {
+        SimpleRule rule = new SimpleRule() {
+            {
+                uid = ruleUID;
+            }
+
+            @Override
+            @NonNullByDefault({})
+            public Object execute(Action module, Map<String, ?> inputs) {
+                return "";
+            }
+        };
+        rule.setName(name);
+        return rule;
+    }
+
+    private static CompletableFuture<Integer> acquireAsync(ScriptContextPool pool, boolean release) {
+        return CompletableFuture.supplyAsync(() -> {
+            int index = pool.acquire(i -> true);
+            if (release) {
+                pool.release(index);
+            }
+            return index;
+        });
+    }
+
+    private static void waitForQueueDepth(ScriptContextPool pool, int depth) throws InterruptedException {
+        for (int i = 0; i < 200 && pool.getQueueDepth() != depth; i++) {
+            Thread.sleep(10);
+        }
+        assertThat(pool.getQueueDepth(), is(depth));
+    }
+
+    @Test
+    public void freeContextsAreReservedByDifferentThreads() throws Exception {
+        ScriptContextPool pool = new ScriptContextPool(2);
+
+        assertThat(pool.acquire(i -> true), is(0));
+        assertThat(acquireAsync(pool, false).get(2, TimeUnit.SECONDS), is(1));
+    }
+
+    @Test
+    public void releasedContextIsReservedAgain() throws Exception {
+        ScriptContextPool pool = new ScriptContextPool(1);
+
+        pool.release(pool.acquire(i -> true));
+
+        assertThat(acquireAsync(pool, true).get(2, TimeUnit.SECONDS), is(0));
+    }
+
+    @Test
+    public void onlyUsableContextsAreReserved() {
+        ScriptContextPool pool = new ScriptContextPool(3);
+
+        assertThat(pool.acquire(i -> i == 2), is(2));
+    }
+
+    @Test
+    public void reservationIsReentrant() throws Exception {
+        ScriptContextPool pool = new ScriptContextPool(1);
+        int outer = pool.acquire(i -> true);
+        int inner = pool.acquire(i -> true);
+        assertThat(inner, is(outer));
+
+        // the context stays reserved until the outer reservation is released
+        pool.release(inner);
+        CompletableFuture<Integer> other = acquireAsync(pool, true);
+        assertThrows(TimeoutException.class, () -> other.get(200, TimeUnit.MILLISECONDS));
+
+        pool.release(outer);
+        assertThat(other.get(2, TimeUnit.SECONDS), is(0));
+    }
+
+    @Test
+    public void exhaustedPoolQueuesExecutions() throws Exception {
+        ScriptContextPool pool = new ScriptContextPool(1);
+        int index = pool.acquire(i -> true);
+
+        CompletableFuture<Integer> waiting = acquireAsync(pool, true);
+        waitForQueueDepth(pool, 1);
+        assertThat(waiting.isDone(), is(false));
+
+        pool.release(index);
+        assertThat(waiting.get(2, TimeUnit.SECONDS), is(0));
+        assertThat(pool.getQueueDepth(), is(0));
+    }
+
+    @Test
+    public void rulesAreMatchedByName() {
+        ScriptContextPool pool = new ScriptContextPool(2);
+        pool.addRule(0, rule("a"), this::register);
+        pool.addRule(0, rule("b"), this::register);
+
+        // the order of the rules does not matter
+        assertThat(pool.addRule(1, rule("b"), this::register), sameInstance(registered.get(1)));
+        assertThat(pool.addRule(1, rule("a"), this::register), sameInstance(registered.get(0)));
+        assertThat(registered, hasSize(2));
+        pool.verifyContext(1);
+    }
+
+    @Test
+    public void rulesAreMatchedByUIDBeforeName() {
+        ScriptContextPool pool = new ScriptContextPool(2);
+        pool.addRule(0, rule("a", "uid-1"), this::register);
+        pool.addRule(0, rule("b", "uid-2"), this::register);
+
+        assertThat(pool.addRule(1, rule("b", "uid-1"), this::register), sameInstance(registered.get(0)));
+        assertThat(pool.addRule(1, rule("a", "uid-2"), this::register), sameInstance(registered.get(1)));
+        pool.verifyContext(1);
+        assertThat(pool.hasMismatch(), is(false));
+    }
+
+    @Test
+    public void rulesWithRandomUIDsAreMatchedByName() {
+        ScriptContextPool pool = new ScriptContextPool(2);
+        pool.addRule(0, rule("a", "random-1"), this::register);
+        pool.addRule(0, rule("b", "random-2"), this::register);
+
+        assertThat(pool.addRule(1, rule("b", "random-3"), this::register), sameInstance(registered.get(1)));
+        assertThat(pool.addRule(1, rule("a", "random-4"), this::register), sameInstance(registered.get(0)));
+        pool.verifyContext(1);
+        assertThat(pool.hasMismatch(), is(false));
+    }
+
+    @Test
+    public void unknownRuleFailsTheContext() {
+        ScriptContextPool pool = new ScriptContextPool(2);
+        pool.addRule(0, rule("a"), this::register);
+
+        assertThrows(IllegalStateException.class, () -> pool.addRule(1, rule("c"), this::register));
+        assertThat(pool.hasMismatch(), is(true));
+    }
+
+    @Test
+    public void randomUIDsWithoutUniqueNamesCannotBeMatched() {
+        ScriptContextPool pool = new ScriptContextPool(2);
+        pool.addRule(0, rule("a", "random-1"), this::register);
+        pool.addRule(0, rule("a", "random-2"), this::register);
+
+        assertThrows(IllegalStateException.class, () -> pool.addRule(1, rule("a", "random-3"), this::register));
+        assertThat(pool.hasMismatch(), is(true));
+    }
+
+    @Test
+    public void rulesWithoutUniqueNameCannotBeMatched() {
+        ScriptContextPool pool = new ScriptContextPool(2);
+        pool.addRule(0, rule("a"), this::register);
+        pool.addRule(0, rule("a"), this::register);
+        pool.addRule(0, rule(null), this::register);
+
+        // the rules of the first context are registered anyway
+        assertThat(registered, hasSize(3));
+        assertThrows(IllegalStateException.class, () -> pool.addRule(1, rule("a"), this::register));
+        assertThrows(IllegalStateException.class, () -> pool.addRule(1, rule(null), this::register));
+    }
+
+    @Test
+    public void missingRuleFailsTheContext() {
+        ScriptContextPool pool = new ScriptContextPool(2);
+        pool.addRule(0, rule("a"), this::register);
+        pool.addRule(0, rule("b"), this::register);
+        pool.addRule(1, rule("a"), this::register);
+
+        assertThrows(IllegalStateException.class, () -> pool.verifyContext(1));
+    }
+
+    @Test
+    public void privateHandlersAreMatchedByOrder() {
+        ScriptContextPool pool = new ScriptContextPool(2);
+        pool.addPrivateHandler(0, () -> "handler-1");
+
+        assertThat(pool.addPrivateHandler(1, () -> "unused"), is("handler-1"));
+        pool.verifyContext(1);
+        assertThrows(IllegalStateException.class, () -> pool.addPrivateHandler(1, () -> "unused"));
+    }
+}
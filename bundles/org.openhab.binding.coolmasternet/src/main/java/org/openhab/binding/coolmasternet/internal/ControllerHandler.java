@@ -42,6 +42,7 @@ import org.openhab.core.thing.ThingStatus;
 import org.openhab.core.thing.ThingStatusDetail;
 import org.openhab.core.thing.binding.BaseBridgeHandler;
 import org.openhab.core.types.Command;
+import org.openhab.io.metrics.AddonMeters;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -72,6 +73,7 @@ public final class ControllerHandler extends BaseBridgeHandler {
 
     private @Nullable ScheduledFuture<?> poller;
     private @Nullable Socket socket;
+    private @Nullable AddonMeters meters;
 
     public ControllerHandler(final Bridge thing) {
         super(thing);
@@ -81,6 +83,8 @@ public final class ControllerHandler extends BaseBridgeHandler {
     public void initialize() {
         cfg = getConfigAs(ControllerConfiguration.class);
         updateStatus(ThingStatus.UNKNOWN);
+        closeMeters();
+        meters = registerMeters();
         determineTemperatureUnits();
         stopPoller();
         startPoller();
@@ -91,6 +95,7 @@ public final class ControllerHandler extends BaseBridgeHandler {
         updateStatus(ThingStatus.OFFLINE);
         stopPoller();
         disconnect();
+        closeMeters();
     }
 
     /**
@@ -145,6 +150,7 @@ public final class ControllerHandler extends BaseBridgeHandler {
     }
 
     private void poll() {
+        final long startNanos = System.nanoTime();
         try {
             checkConnection();
         } catch (final IOException ioe) {
@@ -157,6 +163,7 @@ public final class ControllerHandler extends BaseBridgeHandler {
                 h.refresh();
             }
         }
+        recordMeter("poll", startNanos);
         if (isConnected()) {
             updateStatus(ThingStatus.ONLINE);
         } else {
@@ -164,6 +171,42 @@ public final class ControllerHandler extends BaseBridgeHandler {
         }
     }
 
+    /**
+     * Records the time taken by an HVAC unit to send a command to the controller.
+     *
+     * @param startNanos the value of {@link System#nanoTime()} when the command was received
+     */
+    public void recordCommand(final long startNanos) {
+        recordMeter("command", startNanos);
+    }
+
+    /**
+     * Registers the poll and command latency with the metrics service, if it is installed.
+     */
+    private @Nullable AddonMeters registerMeters() {
+        try {
+            return AddonMeters.forBridge(CoolMasterNetBindingConstants.BINDING_ID, getThing().getUID().toString());
+        } catch (NoClassDefFoundError e) {
+            logger.debug("Metrics service not installed, no meters registered");
+            return null;
+        }
+    }
+
+    private void recordMeter(final String operation, final long startNanos) {
+        final AddonMeters meters = this.meters;
+        if (meters != null) {
+            meters.record(operation, startNanos);
+        }
+    }
+
+    private void closeMeters() {
+        final AddonMeters meters = this.meters;
+        if (meters != null) {
+            this.meters = null;
+            meters.close();
+        }
+    }
+
     /**
      * Passively determine if the client socket appears to be connected, but do
      * modify the connection state.
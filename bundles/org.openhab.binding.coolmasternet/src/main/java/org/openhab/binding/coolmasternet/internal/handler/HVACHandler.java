@@ -129,6 +129,7 @@ public class HVACHandler extends BaseThingHandler {
 
         final String uid = cfg.uid;
         final String channel = channelUID.getId();
+        final long startNanos = System.nanoTime();
 
         try {
             switch (channel) {
@@ -204,6 +205,9 @@ public class HVACHandler extends BaseThingHandler {
                 default:
                     logger.warn("Unknown command '{}' on channel '{}' for unit '{}'", command, channel, uid);
             }
+            if (!(command instanceof RefreshType)) {
+                controller.recordCommand(startNanos);
+            }
             updateStatus(ThingStatus.ONLINE);
         } catch (final IOException ioe) {
             logger.warn("Failed to handle command '{}' on channel '{}' for unit '{}' due to '{}'", command, channel,
@@ -0,0 +1,149 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.io.metrics;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+
+/**
+ * The {@link AddonMeters} class is the shared helper for add-ons to register their own meters, e.g. the store and query
+ * latency of a persistence service, the poll and command latency of a binding bridge or the execution time of the
+ * rules of a script. All meters of an add-on carry the same tags, so the add-on causing a bottleneck can be identified.
+ *
+ * Meters are registered with a registry of this bundle, which forwards them to the openHAB core registry as soon as the
+ * metrics service is active. The API only uses JDK types, so add-ons can import this package optionally and run
+ * without the metrics service being installed.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class AddonMeters {
+    public static final String PERSISTENCE_PREFIX = "openhab.persistence";
+    public static final String BINDING_PREFIX = "openhab.binding";
+    public static final String SCRIPT_PREFIX = "openhab.script";
+
+    private static final CompositeMeterRegistry REGISTRY = new CompositeMeterRegistry();
+
+    private final String prefix;
+    private final Tags tags;
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    private final List<Meter> meters = new CopyOnWriteArrayList<>();
+
+    private AddonMeters(String prefix, Tags tags) {
+        this.prefix = prefix;
+        this.tags = tags;
+    }
+
+    /**
+     * Creates the meters of a persistence service, tagged with <code>service</code>.
+     *
+     * @param serviceId the id of the persistence service
+     * @return the meters of the service
+     */
+    public static AddonMeters forPersistenceService(String serviceId) {
+        return new AddonMeters(PERSISTENCE_PREFIX, Tags.of("service", serviceId));
+    }
+
+    /**
+     * Creates the meters of a binding bridge, tagged with <code>binding</code> and <code>bridge</code>.
+     *
+     * @param bindingId the id of the binding
+     * @param bridgeUID the UID of the bridge thing
+     * @return the meters of the bridge
+     */
+    public static AddonMeters forBridge(String bindingId, String bridgeUID) {
+        return new AddonMeters(BINDING_PREFIX, Tags.of("binding", bindingId, "bridge", bridgeUID));
+    }
+
+    /**
+     * Creates the meters of a script, tagged with <code>script</code>.
+     *
+     * @param scriptIdentifier the identifier of the script engine running the script
+     * @return the meters of the script
+     */
+    public static AddonMeters forScript(String scriptIdentifier) {
+        return new AddonMeters(SCRIPT_PREFIX, Tags.of("script", scriptIdentifier));
+    }
+
+    /**
+     * Records the latency of an operation, e.g. <code>store</code>, <code>query</code>, <code>poll</code> or
+     * <code>command</code>. The timer publishes a histogram, so percentiles can be aggregated by the monitoring system.
+     *
+     * @param operation the name of the operation
+     * @param startNanos the value of {@link System#nanoTime()} when the operation started
+     */
+    public void record(String operation, long startNanos) {
+        timer(operation).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Registers a gauge, e.g. <code>queue.depth</code>. The value is read whenever the meters are published.
+     *
+     * @param name the name of the gauge, without prefix
+     * @param value provides the current value
+     */
+    public void gauge(String name, Supplier<Number> value) {
+        meters.add(Gauge.builder(prefix + "." + name, value).tags(tags).strongReference(true).register(REGISTRY));
+    }
+
+    /**
+     * Removes all meters of the add-on, e.g. when it is deactivated.
+     */
+    public void close() {
+        meters.forEach(REGISTRY::remove);
+        meters.clear();
+        timers.clear();
+    }
+
+    private Timer timer(String operation) {
+        return timers.computeIfAbsent(operation, o -> {
+            Timer timer = Timer.builder(prefix + "." + o).tags(tags).publishPercentileHistogram()
+                    .minimumExpectedValue(Duration.ofMillis(1)).maximumExpectedValue(Duration.ofSeconds(30))
+                    .register(REGISTRY);
+            meters.add(timer);
+            return timer;
+        });
+    }
+
+    /**
+     * Forwards the add-on meters to a registry.
+     *
+     * @param registry the registry to forward to
+     */
+    static void bind(MeterRegistry registry) {
+        REGISTRY.add(registry);
+    }
+
+    /**
+     * Stops forwarding the add-on meters to a registry.
+     *
+     * @param registry the registry no longer to forward to
+     */
+    static void unbind(MeterRegistry registry) {
+        REGISTRY.remove(registry);
+    }
+}
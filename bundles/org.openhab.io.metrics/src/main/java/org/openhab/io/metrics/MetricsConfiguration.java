@@ -28,12 +28,22 @@ public class MetricsConfiguration {
     public @Nullable String influxPassword = null;
     public @Nullable String influxUsername = null;
     public Integer influxUpdateIntervalInSeconds = 300;
+    public Integer prometheusCacheTtlInSeconds = 0;
+    public boolean pushgatewayMetricsEnabled = false;
+    public String pushgatewayURL = "http://localhost:9091";
+    public String pushgatewayJob = "openhab";
+    public @Nullable String pushgatewayUsername = null;
+    public @Nullable String pushgatewayPassword = null;
+    public Integer pushgatewayUpdateIntervalInSeconds = 60;
 
     @Override
     public String toString() {
         return "MetricsConfiguration{" + "influxMetricsEnabled=" + influxMetricsEnabled + ", influxURL='" + influxURL
                 + '\'' + ", influxDB='" + influxDB + '\'' + ", influxPassword='" + influxPassword + '\''
                 + ", influxUsername='" + influxUsername + '\'' + ", influxUpdateIntervalInSeconds="
-                + influxUpdateIntervalInSeconds + '}';
+                + influxUpdateIntervalInSeconds + ", prometheusCacheTtlInSeconds=" + prometheusCacheTtlInSeconds
+                + ", pushgatewayMetricsEnabled=" + pushgatewayMetricsEnabled + ", pushgatewayURL='" + pushgatewayURL
+                + '\'' + ", pushgatewayJob='" + pushgatewayJob + '\'' + ", pushgatewayUsername='" + pushgatewayUsername
+                + '\'' + ", pushgatewayUpdateIntervalInSeconds=" + pushgatewayUpdateIntervalInSeconds + '}';
     }
 }
@@ -13,15 +13,19 @@
 package org.openhab.io.metrics;
 
 import java.util.HashSet;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 
 import javax.annotation.security.RolesAllowed;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
-import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
 
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
@@ -30,7 +34,9 @@ import org.openhab.core.config.core.ConfigurableService;
 import org.openhab.core.config.core.Configuration;
 import org.openhab.core.io.monitor.MeterRegistryProvider;
 import org.openhab.core.io.rest.RESTConstants;
+import org.openhab.io.metrics.PrometheusScrapeCache.Scrape;
 import org.openhab.io.metrics.exporters.InfluxMetricsExporter;
+import org.openhab.io.metrics.exporters.PushgatewayMetricsExporter;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Modified;
@@ -45,6 +51,7 @@ import org.slf4j.LoggerFactory;
 import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
 import io.micrometer.prometheus.PrometheusConfig;
 import io.micrometer.prometheus.PrometheusMeterRegistry;
+import io.prometheus.client.exporter.common.TextFormat;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
@@ -71,25 +78,34 @@ public class MetricsRestController {
     private @Nullable CompositeMeterRegistry meterRegistry = null;
     private final PrometheusMeterRegistry prometheusMeterRegistry = new PrometheusMeterRegistry(
             PrometheusConfig.DEFAULT);
+    private final PrometheusScrapeCache scrapeCache = new PrometheusScrapeCache(prometheusMeterRegistry, 0);
     private final Set<MetricsExporter> metricsExporters = new HashSet<>();
     private @Nullable MetricsConfiguration config;
 
     @GET
     @Path("/prometheus")
-    @Produces(MediaType.TEXT_PLAIN)
+    @Produces(TextFormat.CONTENT_TYPE_004)
     @Operation(operationId = "getPrometheusMetrics", summary = "Gets openHAB system and core metrics in a Prometheus compatible format.", responses = {
             @ApiResponse(responseCode = "200", description = "OK", content = @Content(schema = @Schema(implementation = String.class))) })
-    public String getPrometheusMetrics() {
-        return prometheusMeterRegistry.scrape();
+    public Response getPrometheusMetrics(@HeaderParam(HttpHeaders.ACCEPT_ENCODING) @Nullable String acceptEncoding) {
+        Scrape scrape = scrapeCache.get();
+        ResponseBuilder response = Response.ok().type(TextFormat.CONTENT_TYPE_004).header(HttpHeaders.VARY,
+                HttpHeaders.ACCEPT_ENCODING);
+        if (acceptEncoding != null && acceptEncoding.toLowerCase(Locale.ROOT).contains("gzip")) {
+            return response.header(HttpHeaders.CONTENT_ENCODING, "gzip").entity(scrape.getGzipped()).build();
+        }
+        return response.entity(scrape.getBody()).build();
     }
 
     @Reference
     public void setMeterRegistryProvider(MeterRegistryProvider meterRegistryProvider) {
         if (meterRegistry != null) {
             Objects.requireNonNull(meterRegistry).remove(prometheusMeterRegistry);
+            AddonMeters.unbind(Objects.requireNonNull(meterRegistry));
         }
         meterRegistry = meterRegistryProvider.getOHMeterRegistry();
         Objects.requireNonNull(meterRegistry).add(prometheusMeterRegistry);
+        AddonMeters.bind(Objects.requireNonNull(meterRegistry));
         logger.debug("Core metrics registry retrieved and Prometheus registry added successfully.");
         updateMeterRegistry();
     }
@@ -98,6 +114,7 @@ public class MetricsRestController {
     protected void activate(Map<@Nullable String, @Nullable Object> configuration) {
         logger.info("Metrics service activated, serving the following URL(s): /rest/metrics/prometheus");
         metricsExporters.add(new InfluxMetricsExporter());
+        metricsExporters.add(new PushgatewayMetricsExporter(prometheusMeterRegistry));
         updateConfig(configuration);
         updateMeterRegistry();
     }
@@ -108,8 +125,10 @@ public class MetricsRestController {
     }
 
     private void updateConfig(@Nullable Map<@Nullable String, @Nullable Object> configuration) {
-        this.config = new Configuration(configuration).as(MetricsConfiguration.class);
-        logger.debug("Configuration: {}", this.config);
+        MetricsConfiguration config = new Configuration(configuration).as(MetricsConfiguration.class);
+        this.config = config;
+        logger.debug("Configuration: {}", config);
+        scrapeCache.setTtl(config.prometheusCacheTtlInSeconds);
         this.metricsExporters.forEach(e -> e.updateExporterState(config));
     }
 
@@ -0,0 +1,133 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.io.metrics;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import io.prometheus.client.exporter.common.TextFormat;
+
+/**
+ * The {@link PrometheusScrapeCache} class renders the meters of a {@link PrometheusMeterRegistry} and keeps the result
+ * in the Prometheus text format for a configurable time, so that several scrapers within that time share a single
+ * rendering. The gzip compressed form of a scrape is created once on first request.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class PrometheusScrapeCache {
+
+    /**
+     * A rendered scrape
+     */
+    public static class Scrape {
+        private final byte[] body;
+        private final long createdNanos;
+        private byte @Nullable [] gzipped;
+
+        private Scrape(byte[] body, long createdNanos) {
+            this.body = body;
+            this.createdNanos = createdNanos;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+
+        /**
+         * @return the body compressed with gzip, compressed on first call
+         */
+        public synchronized byte[] getGzipped() {
+            byte[] gzipped = this.gzipped;
+            if (gzipped == null) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4);
+                try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+                    gzip.write(body);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                gzipped = out.toByteArray();
+                this.gzipped = gzipped;
+            }
+            return gzipped;
+        }
+    }
+
+    private final PrometheusMeterRegistry registry;
+    private volatile @Nullable Scrape scrape;
+    private volatile long ttlNanos;
+
+    /**
+     * @param registry the registry to scrape
+     * @param ttlSeconds the time in seconds a scrape is reused, 0 to render every scrape
+     */
+    public PrometheusScrapeCache(PrometheusMeterRegistry registry, int ttlSeconds) {
+        this.registry = registry;
+        setTtl(ttlSeconds);
+    }
+
+    /**
+     * Sets the time a scrape is reused. The cached scrape is discarded.
+     *
+     * @param ttlSeconds the time in seconds a scrape is reused, 0 to render every scrape
+     */
+    public void setTtl(int ttlSeconds) {
+        ttlNanos = TimeUnit.SECONDS.toNanos(Math.max(0, ttlSeconds));
+        scrape = null;
+    }
+
+    /**
+     * Returns the rendered meters, rendering them only if there is no current scrape.
+     *
+     * @return the scrape
+     */
+    public Scrape get() {
+        Scrape scrape = this.scrape;
+        if (scrape != null && System.nanoTime() - scrape.createdNanos < ttlNanos) {
+            return scrape;
+        }
+        synchronized (this) {
+            // another scraper may have rendered it in the meantime
+            scrape = this.scrape;
+            long now = System.nanoTime();
+            if (scrape != null && now - scrape.createdNanos < ttlNanos) {
+                return scrape;
+            }
+            scrape = new Scrape(render(), now);
+            if (ttlNanos > 0) {
+                this.scrape = scrape;
+            }
+            return scrape;
+        }
+    }
+
+    private byte[] render() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16 * 1024);
+        try (Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+            TextFormat.write004(writer, registry.getPrometheusRegistry().metricFamilySamples());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+}
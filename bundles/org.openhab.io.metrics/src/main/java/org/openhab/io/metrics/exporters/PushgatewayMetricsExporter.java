@@ -0,0 +1,102 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.io.metrics.exporters;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.common.NamedThreadFactory;
+import org.openhab.io.metrics.MetricsConfiguration;
+import org.openhab.io.metrics.MetricsExporter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import io.prometheus.client.exporter.BasicAuthHttpConnectionFactory;
+import io.prometheus.client.exporter.PushGateway;
+
+/**
+ * The {@link PushgatewayMetricsExporter} class implements a MetricsExporter pushing the metrics to a Prometheus
+ * Pushgateway, for setups where Prometheus cannot scrape openHAB. It pushes the registry serving the Prometheus
+ * endpoint, so the meters are not recorded twice.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class PushgatewayMetricsExporter extends MetricsExporter {
+
+    private final Logger logger = LoggerFactory.getLogger(PushgatewayMetricsExporter.class);
+
+    private final PrometheusMeterRegistry prometheusMeterRegistry;
+    private @Nullable ScheduledExecutorService scheduler = null;
+
+    /**
+     * @param prometheusMeterRegistry the registry to push, already added to the openHAB core registry
+     */
+    public PushgatewayMetricsExporter(PrometheusMeterRegistry prometheusMeterRegistry) {
+        this.prometheusMeterRegistry = prometheusMeterRegistry;
+    }
+
+    @Override
+    public void start(CompositeMeterRegistry meterRegistry, MetricsConfiguration metricsConfiguration) {
+        PushGateway pushGateway;
+        try {
+            pushGateway = new PushGateway(new URL(metricsConfiguration.pushgatewayURL));
+        } catch (MalformedURLException e) {
+            logger.warn("Invalid Pushgateway URL '{}': {}", metricsConfiguration.pushgatewayURL, e.getMessage());
+            return;
+        }
+        String username = metricsConfiguration.pushgatewayUsername;
+        String password = metricsConfiguration.pushgatewayPassword;
+        if (username != null && password != null) {
+            pushGateway.setConnectionFactory(new BasicAuthHttpConnectionFactory(username, password));
+        }
+
+        ScheduledExecutorService scheduler = Executors
+                .newSingleThreadScheduledExecutor(new NamedThreadFactory("metrics-pushgateway"));
+        String job = metricsConfiguration.pushgatewayJob;
+        long interval = Math.max(1, metricsConfiguration.pushgatewayUpdateIntervalInSeconds);
+        scheduler.scheduleWithFixedDelay(() -> push(pushGateway, job), interval, interval, TimeUnit.SECONDS);
+        this.scheduler = scheduler;
+    }
+
+    private void push(PushGateway pushGateway, String job) {
+        try {
+            // replaces all metrics of the job, so removed meters disappear from the Pushgateway as well
+            pushGateway.push(prometheusMeterRegistry.getPrometheusRegistry(), job);
+        } catch (IOException e) {
+            logger.warn("Failed to push metrics to Pushgateway: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        ScheduledExecutorService scheduler = this.scheduler;
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            this.scheduler = null;
+        }
+    }
+
+    @Override
+    protected boolean isEnabled(MetricsConfiguration config) {
+        return config.pushgatewayMetricsEnabled;
+    }
+}
@@ -0,0 +1,430 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.dynamodb.internal;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.openhab.core.common.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbAsyncTable;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedAsyncClient;
+import software.amazon.awssdk.enhanced.dynamodb.model.BatchWriteResult;
+import software.amazon.awssdk.enhanced.dynamodb.model.WriteBatch;
+import software.amazon.awssdk.services.dynamodb.model.ProvisionedThroughputExceededException;
+import software.amazon.awssdk.services.dynamodb.model.RequestLimitExceededException;
+import software.amazon.awssdk.services.dynamodb.model.ResourceNotFoundException;
+
+/**
+ * Bounded queue of DTOs which are written with BatchWriteItem requests of up to {@link #MAX_BATCH_SIZE} items per
+ * table, either when enough DTOs are pending or after <code>maxLatency</code> milliseconds at the latest.
+ *
+ * Items left unprocessed by DynamoDB are retried first, after an exponential backoff. When the requests are throttled,
+ * the batch size is halved and then grows again by one with every batch written completely. A missing table is
+ * created by writing a single item with {@link TableCreatingPutItem}.
+ *
+ * If the queue is full, DTOs are written one by one with {@link TableCreatingPutItem} instead, like without batching.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class DynamoDBBatchWriter {
+    public static final int MAX_BATCH_SIZE = 25;
+
+    private static final long MIN_BACKOFF_MILLIS = 50;
+    private static final long MAX_BACKOFF_MILLIS = 20000;
+    private static final long REQUEST_TIMEOUT_SECONDS = 60;
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 10000;
+
+    private final Logger logger = LoggerFactory.getLogger(DynamoDBBatchWriter.class);
+
+    private static class PendingItem {
+        private final DynamoDBItem<?> dto;
+        // System.nanoTime() when the item was stored
+        private final long storedAt;
+
+        private PendingItem(DynamoDBItem<?> dto, long storedAt) {
+            this.dto = dto;
+            this.storedAt = storedAt;
+        }
+    }
+
+    private final DynamoDBPersistenceService service;
+    private final int capacity;
+    private final BlockingQueue<PendingItem> queue;
+    // DTOs taken from the queue, by DTO class. Only accessed while holding the lock of this writer.
+    private final Map<Class<? extends DynamoDBItem<?>>, Deque<PendingItem>> pendingByClass = new LinkedHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors
+            .newSingleThreadScheduledExecutor(new NamedThreadFactory("dynamodb-batch-writer"));
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    private volatile int pendingCount;
+    private volatile int batchSize = MAX_BATCH_SIZE;
+    private long backoffMillis;
+    private long resumeAt;
+
+    private final AtomicLong queuedCount = new AtomicLong();
+    private final AtomicLong writtenCount = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong unprocessedCount = new AtomicLong();
+    private final AtomicLong throttledCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong overflowCount = new AtomicLong();
+    private final AtomicLong totalLatencyMillis = new AtomicLong();
+    private volatile long maxLatencyMillis;
+    private volatile int maxQueueDepth;
+
+    /**
+     * Creates and starts a batch writer.
+     *
+     * @param service the service providing the client and tables
+     * @param capacity the maximum number of pending DTOs
+     * @param maxLatency the maximum time in milliseconds a DTO stays in the queue, unless writes are throttled
+     */
+    public DynamoDBBatchWriter(DynamoDBPersistenceService service, int capacity, int maxLatency) {
+        this.service = service;
+        this.capacity = Math.max(1, capacity);
+        this.queue = new ArrayBlockingQueue<>(this.capacity);
+        long interval = Math.max(1, maxLatency);
+        scheduler.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Adds a DTO to the queue.
+     *
+     * @param dto the DTO to write
+     * @param storedAt the value of {@link System#nanoTime()} when the item was stored, to record the store latency
+     */
+    public void add(DynamoDBItem<?> dto, long storedAt) {
+        if (!queue.offer(new PendingItem(dto, storedAt))) {
+            overflowCount.incrementAndGet();
+            logger.debug("Batch write queue is full, writing {} with PutItem", dto);
+            service.putItemAsync(dto).thenRun(() -> service.recordMeter("store", storedAt));
+            return;
+        }
+        queuedCount.incrementAndGet();
+        int depth = getQueueDepth();
+        if (depth > maxQueueDepth) {
+            maxQueueDepth = depth;
+        }
+        if (depth >= batchSize && flushScheduled.compareAndSet(false, true)) {
+            try {
+                scheduler.execute(() -> {
+                    flushScheduled.set(false);
+                    flush();
+                });
+            } catch (RejectedExecutionException e) {
+                // shutting down, pending DTOs are written by shutdown()
+                flushScheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * Writes all pending DTOs, unless writes are currently backed off after throttling.
+     */
+    public synchronized void flush() {
+        try {
+            while (System.currentTimeMillis() >= resumeAt && writeNextBatch()) {
+                // continue with the next batch
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Unexpected error writing batch: {} {}", e.getClass().getSimpleName(), e.getMessage());
+        }
+    }
+
+    /**
+     * Stops the background writer and writes the pending DTOs, waiting at most {@value #SHUTDOWN_TIMEOUT_MILLIS}
+     * milliseconds for throttled writes.
+     */
+    public void shutdown() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        long deadline = System.currentTimeMillis() + SHUTDOWN_TIMEOUT_MILLIS;
+        synchronized (this) {
+            try {
+                while (System.currentTimeMillis() < deadline) {
+                    long wait = resumeAt - System.currentTimeMillis();
+                    if (wait > 0) {
+                        Thread.sleep(Math.max(1, Math.min(wait, deadline - System.currentTimeMillis())));
+                    } else if (!writeNextBatch()) {
+                        break;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (getQueueDepth() > 0) {
+                logger.warn("Dropping {} pending items at shutdown", getQueueDepth());
+                failedCount.addAndGet(getQueueDepth());
+                queue.clear();
+                pendingByClass.clear();
+                pendingCount = 0;
+            }
+        }
+    }
+
+    /**
+     * Writes the next batch
+     *
+     * @return false if nothing was pending
+     */
+    private boolean writeNextBatch() {
+        fillPending();
+        for (Map.Entry<Class<? extends DynamoDBItem<?>>, Deque<PendingItem>> entry : pendingByClass.entrySet()) {
+            Deque<PendingItem> pending = entry.getValue();
+            if (pending.isEmpty()) {
+                continue;
+            }
+            List<PendingItem> batch = new ArrayList<>(batchSize);
+            while (batch.size() < batchSize && !pending.isEmpty()) {
+                batch.add(pending.removeFirst());
+            }
+            pendingCount -= batch.size();
+            writeBatch(entry.getKey(), batch, pending);
+            return true;
+        }
+        return false;
+    }
+
+    private void fillPending() {
+        int space = capacity - pendingCount;
+        if (space <= 0) {
+            return;
+        }
+        List<PendingItem> items = new ArrayList<>();
+        queue.drainTo(items, space);
+        for (PendingItem item : items) {
+            pendingByClass.computeIfAbsent(dtoClass(item.dto), c -> new ArrayDeque<>()).addLast(item);
+        }
+        pendingCount += items.size();
+    }
+
+    private void writeBatch(Class<? extends DynamoDBItem<?>> dtoClass, List<PendingItem> batch,
+            Deque<PendingItem> pending) {
+        long start = System.nanoTime();
+        try {
+            List<? extends DynamoDBItem<?>> unprocessed = batchWriteItem(dtoClass, batch);
+            service.recordMeter("batch", start);
+            int written = batch.size() - unprocessed.size();
+            writtenCount.addAndGet(written);
+            batchCount.incrementAndGet();
+            recordLatency(batch.subList(0, written), start);
+            if (unprocessed.isEmpty()) {
+                batchSize = Math.min(MAX_BATCH_SIZE, batchSize + 1);
+                backoffMillis = 0;
+            } else {
+                unprocessedCount.addAndGet(unprocessed.size());
+                logger.debug("BatchWriteItem left {} of {} items unprocessed, retrying", unprocessed.size(),
+                        batch.size());
+                long storedAt = batch.get(0).storedAt;
+                for (int i = unprocessed.size() - 1; i >= 0; i--) {
+                    pending.addFirst(new PendingItem(unprocessed.get(i), storedAt));
+                }
+                pendingCount += unprocessed.size();
+                backOff();
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ProvisionedThroughputExceededException
+                    || cause instanceof RequestLimitExceededException) {
+                throttledCount.incrementAndGet();
+                batchSize = Math.max(1, batchSize / 2);
+                requeue(batch, pending);
+                backOff();
+                logger.debug("BatchWriteItem throttled, retrying in {} ms with batch size {}", backoffMillis,
+                        batchSize);
+            } else if (cause instanceof ResourceNotFoundException) {
+                // let the first item create the table, then write the rest in batches
+                PendingItem first = batch.remove(0);
+                requeue(batch, pending);
+                createTable(first);
+            } else {
+                dropBatch(batch, cause == null ? e : cause);
+            }
+        } catch (TimeoutException e) {
+            requeue(batch, pending);
+            backOff();
+            logger.debug("BatchWriteItem timed out, retrying in {} ms", backoffMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            requeue(batch, pending);
+        } catch (RuntimeException e) {
+            dropBatch(batch, e);
+        }
+    }
+
+    private <T extends DynamoDBItem<?>> List<T> batchWriteItem(Class<T> dtoClass, List<PendingItem> batch)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        DynamoDbEnhancedAsyncClient client = service.getClient();
+        if (client == null) {
+            throw new IllegalStateException("Client not ready");
+        }
+        DynamoDbAsyncTable<T> table = service.getTable(dtoClass);
+        WriteBatch.Builder<T> writeBatch = WriteBatch.builder(dtoClass).mappedTableResource(table);
+        for (PendingItem item : batch) {
+            writeBatch.addPutItem(dtoClass.cast(item.dto));
+        }
+        BatchWriteResult result = client.batchWriteItem(request -> request.writeBatches(writeBatch.build()))
+                .get(REQUEST_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        return result.unprocessedPutItemsForTable(table);
+    }
+
+    private void createTable(PendingItem item) {
+        long start = System.nanoTime();
+        try {
+            service.putItemAsync(item.dto).get(REQUEST_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            writtenCount.incrementAndGet();
+            recordLatency(List.of(item), start);
+        } catch (ExecutionException | TimeoutException e) {
+            // logged by TableCreatingPutItem
+            failedCount.incrementAndGet();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failedCount.incrementAndGet();
+        }
+    }
+
+    private void requeue(List<PendingItem> batch, Deque<PendingItem> pending) {
+        for (int i = batch.size() - 1; i >= 0; i--) {
+            pending.addFirst(batch.get(i));
+        }
+        pendingCount += batch.size();
+    }
+
+    private void dropBatch(List<PendingItem> batch, Throwable cause) {
+        failedCount.addAndGet(batch.size());
+        logger.warn("BatchWriteItem failed (final) with {} {}. Dropping {} items.", cause.getClass().getSimpleName(),
+                cause.getMessage(), batch.size());
+    }
+
+    private void backOff() {
+        backoffMillis = backoffMillis == 0 ? MIN_BACKOFF_MILLIS : Math.min(MAX_BACKOFF_MILLIS, backoffMillis * 2);
+        // jitter to avoid retrying in lock step with other clients of the table
+        long delay = backoffMillis / 2 + ThreadLocalRandom.current().nextLong(backoffMillis / 2 + 1);
+        resumeAt = System.currentTimeMillis() + delay;
+        try {
+            scheduler.schedule(this::flush, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // shutting down, pending DTOs are written by shutdown()
+        }
+    }
+
+    private void recordLatency(List<PendingItem> batch, long writeStart) {
+        long now = System.nanoTime();
+        for (PendingItem item : batch) {
+            long latency = TimeUnit.NANOSECONDS.toMillis(now - item.storedAt);
+            totalLatencyMillis.addAndGet(latency);
+            if (latency > maxLatencyMillis) {
+                maxLatencyMillis = latency;
+            }
+            service.recordMeter("store", item.storedAt);
+        }
+        logger.trace("Batch of {} items written in {} ms", batch.size(),
+                TimeUnit.NANOSECONDS.toMillis(now - writeStart));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Class<? extends DynamoDBItem<?>> dtoClass(DynamoDBItem<?> dto) {
+        return (Class<? extends DynamoDBItem<?>>) dto.getClass();
+    }
+
+    /**
+     * @return the number of DTOs waiting to be written, including DTOs to be retried
+     */
+    public int getQueueDepth() {
+        return queue.size() + pendingCount;
+    }
+
+    public int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    /**
+     * @return the current number of items per BatchWriteItem request
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public long getQueuedCount() {
+        return queuedCount.get();
+    }
+
+    public long getWrittenCount() {
+        return writtenCount.get();
+    }
+
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    public long getUnprocessedCount() {
+        return unprocessedCount.get();
+    }
+
+    public long getThrottledCount() {
+        return throttledCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    public long getOverflowCount() {
+        return overflowCount.get();
+    }
+
+    /**
+     * @return the average time in milliseconds between storing and writing a DTO
+     */
+    public long getAverageLatencyMillis() {
+        long written = writtenCount.get();
+        return written == 0 ? 0 : totalLatencyMillis.get() / written;
+    }
+
+    public long getMaxLatencyMillis() {
+        return maxLatencyMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "queueDepth=" + getQueueDepth() + ", maxQueueDepth=" + maxQueueDepth + ", queued=" + getQueuedCount()
+                + ", written=" + getWrittenCount() + ", batches=" + getBatchCount() + ", batchSize=" + batchSize
+                + ", unprocessed=" + getUnprocessedCount() + ", throttled=" + getThrottledCount() + ", failed="
+                + getFailedCount() + ", overflow=" + getOverflowCount() + ", averageLatency="
+                + getAverageLatencyMillis() + "ms, maxLatency=" + maxLatencyMillis + "ms";
+    }
+}
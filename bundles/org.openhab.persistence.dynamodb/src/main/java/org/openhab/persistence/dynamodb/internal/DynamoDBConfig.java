@@ -50,6 +50,8 @@ public class DynamoDBConfig {
     public static final long DEFAULT_READ_CAPACITY_UNITS = 1;
     public static final long DEFAULT_WRITE_CAPACITY_UNITS = 1;
     public static final RetryMode DEFAULT_RETRY_MODE = RetryMode.STANDARD;
+    public static final int DEFAULT_WRITE_QUEUE_SIZE = 0;
+    public static final int DEFAULT_WRITE_MAX_LATENCY = 1000;
     private static final Logger LOGGER = LoggerFactory.getLogger(DynamoDBConfig.class);
 
     private long readCapacityUnits;
@@ -61,6 +63,8 @@ public class DynamoDBConfig {
     private String table;
     private String tablePrefixLegacy;
     private @Nullable Integer expireDays;
+    private int writeQueueSize = DEFAULT_WRITE_QUEUE_SIZE;
+    private int writeMaxLatency = DEFAULT_WRITE_MAX_LATENCY;
 
     /**
      *
@@ -166,24 +170,52 @@ public class DynamoDBConfig {
                 }
             }
 
+            final int writeQueueSize;
+            String writeQueueSizeParam = (String) config.get("writeQueueSize");
+            if (writeQueueSizeParam == null || writeQueueSizeParam.isBlank()) {
+                writeQueueSize = DEFAULT_WRITE_QUEUE_SIZE;
+            } else {
+                writeQueueSize = Integer.parseInt(writeQueueSizeParam);
+            }
+
+            final int writeMaxLatency;
+            String writeMaxLatencyParam = (String) config.get("writeMaxLatency");
+            if (writeMaxLatencyParam == null || writeMaxLatencyParam.isBlank()) {
+                writeMaxLatency = DEFAULT_WRITE_MAX_LATENCY;
+            } else {
+                writeMaxLatency = Integer.parseInt(writeMaxLatencyParam);
+                if (writeMaxLatency <= 0) {
+                    LOGGER.error("writeMaxLatency should be positive integer");
+                    return null;
+                }
+            }
+
+            final DynamoDBConfig dbConfig;
             switch (tableRevision) {
                 case NEW:
                     LOGGER.debug("Using new DynamoDB table schema");
-                    return DynamoDBConfig.newSchema(region, credentials, AwsRetryPolicy.forRetryMode(retryMode), table,
-                            readCapacityUnits, writeCapacityUnits, expireDays);
+                    dbConfig = DynamoDBConfig.newSchema(region, credentials, AwsRetryPolicy.forRetryMode(retryMode),
+                            table, readCapacityUnits, writeCapacityUnits, expireDays);
+                    break;
                 case LEGACY:
                     LOGGER.warn(
                             "Using legacy DynamoDB table schema. It is recommended to transition to new schema by defining 'table' parameter and not configuring 'tablePrefix'");
-                    return DynamoDBConfig.legacySchema(region, credentials, AwsRetryPolicy.forRetryMode(retryMode),
+                    dbConfig = DynamoDBConfig.legacySchema(region, credentials, AwsRetryPolicy.forRetryMode(retryMode),
                             tablePrefixLegacy, readCapacityUnits, writeCapacityUnits);
+                    break;
                 case MAYBE_LEGACY:
                     LOGGER.debug(
                             "Unclear whether we should use new legacy DynamoDB table schema. It is recommended to explicitly define new 'table' parameter. The correct table schema will be detected at runtime.");
-                    return DynamoDBConfig.maybeLegacySchema(region, credentials, AwsRetryPolicy.forRetryMode(retryMode),
-                            table, tablePrefixLegacy, readCapacityUnits, writeCapacityUnits, expireDays);
+                    dbConfig = DynamoDBConfig.maybeLegacySchema(region, credentials,
+                            AwsRetryPolicy.forRetryMode(retryMode), table, tablePrefixLegacy, readCapacityUnits,
+                            writeCapacityUnits, expireDays);
+                    break;
                 default:
                     throw new IllegalStateException("Unhandled enum. Bug");
             }
+            dbConfig.writeQueueSize = writeQueueSize;
+            dbConfig.writeMaxLatency = writeMaxLatency;
+            return dbConfig;
         } catch (Exception e) {
             LOGGER.error("Error with configuration: {} {}", e.getClass().getSimpleName(), e.getMessage());
             return null;
@@ -258,4 +290,15 @@ public class DynamoDBConfig {
     public @Nullable Integer getExpireDays() {
         return expireDays;
     }
+
+    /**
+     * @return the maximum number of items waiting to be written with BatchWriteItem, 0 to write items one by one
+     */
+    public int getWriteQueueSize() {
+        return writeQueueSize;
+    }
+
+    public int getWriteMaxLatency() {
+        return writeMaxLatency;
+    }
 }
@@ -51,6 +51,7 @@ import org.openhab.core.persistence.QueryablePersistenceService;
 import org.openhab.core.persistence.strategy.PersistenceStrategy;
 import org.openhab.core.types.State;
 import org.openhab.core.types.UnDefType;
+import org.openhab.io.metrics.AddonMeters;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Constants;
 import org.osgi.service.component.annotations.Activate;
@@ -117,6 +118,9 @@ public class DynamoDBPersistenceService implements QueryablePersistenceService {
 
     private @Nullable URI endpointOverride;
 
+    private volatile @Nullable DynamoDBBatchWriter batchWriter;
+    private @Nullable AddonMeters meters;
+
     void overrideConfig(AwsRequestOverrideConfiguration.Builder config) {
         config.apiCallAttemptTimeout(TIMEOUT_API_CALL_ATTEMPT).apiCallTimeout(TIMEOUT_API_CALL);
     }
@@ -150,6 +154,11 @@ public class DynamoDBPersistenceService implements QueryablePersistenceService {
         return endpointOverride;
     }
 
+    @Nullable
+    DynamoDbEnhancedAsyncClient getClient() {
+        return client;
+    }
+
     @Nullable
     DynamoDbAsyncClient getLowLevelClient() {
         return lowLevelClient;
@@ -169,6 +178,13 @@ public class DynamoDBPersistenceService implements QueryablePersistenceService {
         return dbConfig;
     }
 
+    /**
+     * @return the batch writer, or null if items are written one by one
+     */
+    public @Nullable DynamoDBBatchWriter getBatchWriter() {
+        return batchWriter;
+    }
+
     @Activate
     public void activate(final @Nullable BundleContext bundleContext, final Map<String, Object> config) {
         disconnect();
@@ -190,6 +206,15 @@ public class DynamoDBPersistenceService implements QueryablePersistenceService {
             return;
         }
 
+        if (localDbConfig.getWriteQueueSize() > 0) {
+            batchWriter = new DynamoDBBatchWriter(this, localDbConfig.getWriteQueueSize(),
+                    localDbConfig.getWriteMaxLatency());
+            logger.debug("Using BatchWriteItem with a queue of size {}", localDbConfig.getWriteQueueSize());
+        }
+        if (meters == null) {
+            meters = registerMeters();
+        }
+
         isProperlyConfigured = true;
         logger.debug("dynamodb persistence service activated");
     }
@@ -199,6 +224,42 @@ public class DynamoDBPersistenceService implements QueryablePersistenceService {
         logger.debug("dynamodb persistence service deactivated");
         logIfManyQueuedTasks();
         disconnect();
+        AddonMeters localMeters = meters;
+        if (localMeters != null) {
+            meters = null;
+            localMeters.close();
+        }
+    }
+
+    /**
+     * Registers the store, batch and query latency and the batch write queue depth with the metrics service, if it is
+     * installed.
+     */
+    private @Nullable AddonMeters registerMeters() {
+        try {
+            AddonMeters localMeters = AddonMeters.forPersistenceService(getId());
+            localMeters.gauge("queue.depth", () -> {
+                DynamoDBBatchWriter localBatchWriter = batchWriter;
+                return localBatchWriter == null ? 0 : localBatchWriter.getQueueDepth();
+            });
+            return localMeters;
+        } catch (NoClassDefFoundError e) {
+            logger.debug("Metrics service not installed, no meters registered");
+            return null;
+        }
+    }
+
+    /**
+     * Records the latency of an operation with the metrics service, if it is installed.
+     *
+     * @param operation the name of the operation
+     * @param startNanos the value of {@link System#nanoTime()} when the operation started
+     */
+    void recordMeter(String operation, long startNanos) {
+        AddonMeters localMeters = meters;
+        if (localMeters != null) {
+            localMeters.record(operation, startNanos);
+        }
     }
 
     /**
@@ -269,7 +330,7 @@ public class DynamoDBPersistenceService implements QueryablePersistenceService {
         }
     }
 
-    private <T extends DynamoDBItem<?>> DynamoDbAsyncTable<T> getTable(Class<T> dtoClass) {
+    <T extends DynamoDBItem<?>> DynamoDbAsyncTable<T> getTable(Class<T> dtoClass) {
         DynamoDbEnhancedAsyncClient localClient = client;
         DynamoDBTableNameResolver localTableNameResolver = tableNameResolver;
         if (!ensureClient() || localClient == null || localTableNameResolver == null) {
@@ -309,6 +370,13 @@ public class DynamoDBPersistenceService implements QueryablePersistenceService {
     }
 
     private void disconnect() {
+        DynamoDBBatchWriter localBatchWriter = batchWriter;
+        if (localBatchWriter != null) {
+            batchWriter = null;
+            // write pending items while the client is still open
+            localBatchWriter.shutdown();
+            logger.debug("Batch writer stopped, {}", localBatchWriter);
+        }
         DynamoDbAsyncClient localLowLevelClient = lowLevelClient;
         if (client == null || localLowLevelClient == null) {
             return;
@@ -345,6 +413,7 @@ public class DynamoDBPersistenceService implements QueryablePersistenceService {
     public Iterable<HistoricItem> query(FilterCriteria filter) {
         logIfManyQueuedTasks();
         Instant start = Instant.now();
+        long meterStart = System.nanoTime();
         String filterDescription = filterToString(filter);
         logger.trace("Got a query with filter {}", filterDescription);
         DynamoDbEnhancedAsyncClient localClient = client;
@@ -357,6 +426,10 @@ public class DynamoDBPersistenceService implements QueryablePersistenceService {
             logger.warn("DynamoDB not connected. Returning empty query results.");
             return Collections.emptyList();
         }
+        DynamoDBBatchWriter localBatchWriter = batchWriter;
+        if (localBatchWriter != null) {
+            localBatchWriter.flush();
+        }
 
         //
         // Resolve unclear table schema if needed
@@ -433,6 +506,7 @@ public class DynamoDBPersistenceService implements QueryablePersistenceService {
                     logger.trace("Dynamo item {} converted to historic item: {}", localItem, historicItem);
                     return historicItem;
                 }).filter(value -> value != null).collect(Collectors.toList());
+                recordMeter("query", meterStart);
                 logger.debug("Query completed in {} ms. Filter was {}",
                         Duration.between(start, Instant.now()).toMillis(), filterDescription);
                 return results;
@@ -488,6 +562,7 @@ public class DynamoDBPersistenceService implements QueryablePersistenceService {
     public void store(Item item, @Nullable String alias) {
         // Timestamp and capture state immediately as rest of the store is asynchronous (state might change in between)
         ZonedDateTime time = ZonedDateTime.now();
+        long meterStart = System.nanoTime();
 
         logIfManyQueuedTasks();
         if (!(item instanceof GenericItem)) {
@@ -550,27 +625,41 @@ public class DynamoDBPersistenceService implements QueryablePersistenceService {
             }
             logger.trace("store() called with item {} {} '{}', which was converted to DTO {}",
                     copiedItem.getClass().getSimpleName(), effectiveName, copiedItem.getState(), dto);
-            dto.accept(new DynamoDBItemVisitor<TableCreatingPutItem<? extends DynamoDBItem<?>>>() {
-
-                @Override
-                public TableCreatingPutItem<? extends DynamoDBItem<?>> visit(
-                        DynamoDBBigDecimalItem dynamoBigDecimalItem) {
-                    return new TableCreatingPutItem<DynamoDBBigDecimalItem>(DynamoDBPersistenceService.this,
-                            dynamoBigDecimalItem, getTable(DynamoDBBigDecimalItem.class));
-                }
-
-                @Override
-                public TableCreatingPutItem<? extends DynamoDBItem<?>> visit(DynamoDBStringItem dynamoStringItem) {
-                    return new TableCreatingPutItem<DynamoDBStringItem>(DynamoDBPersistenceService.this,
-                            dynamoStringItem, getTable(DynamoDBStringItem.class));
-                }
-            }).putItemAsync();
+            DynamoDBBatchWriter localBatchWriter = batchWriter;
+            if (localBatchWriter != null) {
+                localBatchWriter.add(dto, meterStart);
+            } else {
+                putItemAsync(dto).thenRun(() -> recordMeter("store", meterStart));
+            }
         }, executor).exceptionally(e -> {
             logger.error("Unexcepted error", e);
             return null;
         });
     }
 
+    /**
+     * Writes a single DTO with PutItem, creating the table if needed
+     *
+     * @param dto the DTO
+     * @return future completed when the DTO has been written
+     */
+    CompletableFuture<Void> putItemAsync(DynamoDBItem<?> dto) {
+        return dto.accept(new DynamoDBItemVisitor<TableCreatingPutItem<? extends DynamoDBItem<?>>>() {
+
+            @Override
+            public TableCreatingPutItem<? extends DynamoDBItem<?>> visit(DynamoDBBigDecimalItem dynamoBigDecimalItem) {
+                return new TableCreatingPutItem<DynamoDBBigDecimalItem>(DynamoDBPersistenceService.this,
+                        dynamoBigDecimalItem, getTable(DynamoDBBigDecimalItem.class));
+            }
+
+            @Override
+            public TableCreatingPutItem<? extends DynamoDBItem<?>> visit(DynamoDBStringItem dynamoStringItem) {
+                return new TableCreatingPutItem<DynamoDBStringItem>(DynamoDBPersistenceService.this,
+                        dynamoStringItem, getTable(DynamoDBStringItem.class));
+            }
+        }).putItemAsync();
+    }
+
     private Item getEffectiveItem(Item item) {
         final Item effectiveItem;
         if (item instanceof GroupItem) {
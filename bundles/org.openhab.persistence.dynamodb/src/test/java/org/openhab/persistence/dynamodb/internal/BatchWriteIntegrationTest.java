@@ -0,0 +1,129 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.dynamodb.internal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.openhab.core.library.items.NumberItem;
+import org.openhab.core.library.items.StringItem;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.library.types.StringType;
+import org.openhab.core.persistence.FilterCriteria;
+import org.openhab.core.persistence.FilterCriteria.Ordering;
+import org.openhab.core.persistence.HistoricItem;
+import org.openhab.core.types.State;
+
+/**
+ * Stores items through the BatchWriteItem queue, starting without tables
+ *
+ * @author agent - Initial contribution
+ *
+ */
+@NonNullByDefault
+public class BatchWriteIntegrationTest extends BaseIntegrationTest {
+
+    public static final boolean LEGACY_MODE = false;
+    private static final String NUMBER_NAME = "number";
+    private static final String STRING_NAME = "string";
+    private static final int STATE_COUNT = 60;
+
+    private static @Nullable DynamoDBPersistenceService batchService;
+    private static @Nullable ZonedDateTime storeStart;
+
+    @SuppressWarnings("null")
+    @BeforeAll
+    public static void populateData() {
+        batchService = newService(LEGACY_MODE, false, null, null, null,
+                Map.of("writeQueueSize", "100", "writeMaxLatency", "100"));
+        storeStart = ZonedDateTime.now();
+
+        NumberItem numberItem = (NumberItem) ITEMS.get(NUMBER_NAME);
+        StringItem stringItem = (StringItem) ITEMS.get(STRING_NAME);
+        for (int i = 0; i < STATE_COUNT; i++) {
+            numberItem.setState(new DecimalType(i));
+            stringItem.setState(new StringType("s" + i));
+            try {
+                // Add some delay to enforce different timestamps in ms accuracy
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                fail("Interrupted");
+                return;
+            }
+            batchService.store(numberItem);
+            batchService.store(stringItem);
+        }
+    }
+
+    @SuppressWarnings("null")
+    @AfterAll
+    public static void deactivateBatchService() {
+        batchService.deactivate();
+    }
+
+    @SuppressWarnings("null")
+    @Test
+    public void testAllStatesWritten() {
+        waitForAssert(() -> {
+            assertEquals(expectedStates(i -> new DecimalType(i)), queryStates(NUMBER_NAME));
+            assertEquals(expectedStates(i -> new StringType("s" + i)), queryStates(STRING_NAME));
+        });
+    }
+
+    @SuppressWarnings("null")
+    @Test
+    public void testStatesWrittenInBatches() {
+        DynamoDBBatchWriter batchWriter = batchService.getBatchWriter();
+        assertNotNull(batchWriter);
+        waitForAssert(() -> {
+            assertEquals(0, batchWriter.getQueueDepth());
+            assertEquals(2 * STATE_COUNT, batchWriter.getWrittenCount());
+        });
+        assertEquals(0, batchWriter.getFailedCount());
+        assertTrue(batchWriter.getBatchCount() < STATE_COUNT, batchWriter.toString());
+    }
+
+    private interface StateFactory {
+        State create(int i);
+    }
+
+    private static List<State> expectedStates(StateFactory factory) {
+        List<State> states = new ArrayList<>();
+        for (int i = 0; i < STATE_COUNT; i++) {
+            states.add(factory.create(i));
+        }
+        return states;
+    }
+
+    @SuppressWarnings("null")
+    private static List<State> queryStates(String itemName) {
+        FilterCriteria criteria = new FilterCriteria();
+        criteria.setItemName(itemName);
+        criteria.setBeginDate(storeStart);
+        criteria.setOrdering(Ordering.ASCENDING);
+        List<State> states = new ArrayList<>();
+        for (HistoricItem historicItem : batchService.query(criteria)) {
+            states.add(historicItem.getState());
+        }
+        return states;
+    }
+}
@@ -244,4 +244,29 @@ public class DynamoDBConfigTest {
         assertEquals(RetryMode.STANDARD, fromConfig.getRetryPolicy().retryMode());
         assertEquals(ExpectedTableSchema.MAYBE_LEGACY, fromConfig.getTableRevision());
     }
+
+    @SuppressWarnings("null")
+    @Test
+    public void testWriteQueueDefaults() throws Exception {
+        DynamoDBConfig fromConfig = DynamoDBConfig
+                .fromConfig(mapFrom("region", "eu-west-1", "accessKey", "access1", "secretKey", "secret1"));
+        assertEquals(0, fromConfig.getWriteQueueSize());
+        assertEquals(1000, fromConfig.getWriteMaxLatency());
+    }
+
+    @SuppressWarnings("null")
+    @Test
+    public void testWriteQueue() throws Exception {
+        DynamoDBConfig fromConfig = DynamoDBConfig.fromConfig(mapFrom("region", "eu-west-1", "accessKey", "access1",
+                "secretKey", "secret1", "table", "mytable", "writeQueueSize", "500", "writeMaxLatency", "250"));
+        assertEquals(500, fromConfig.getWriteQueueSize());
+        assertEquals(250, fromConfig.getWriteMaxLatency());
+        assertEquals(ExpectedTableSchema.NEW, fromConfig.getTableRevision());
+    }
+
+    @Test
+    public void testInvalidWriteMaxLatency() throws Exception {
+        assertNull(DynamoDBConfig.fromConfig(mapFrom("region", "eu-west-1", "accessKey", "access1", "secretKey",
+                "secret1", "writeQueueSize", "500", "writeMaxLatency", "0")));
+    }
 }
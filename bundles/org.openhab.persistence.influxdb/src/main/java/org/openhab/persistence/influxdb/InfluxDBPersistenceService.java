@@ -12,9 +12,12 @@
  */
 package org.openhab.persistence.influxdb;
 
+import java.time.Duration;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -23,10 +26,14 @@ import java.util.stream.Collectors;
 
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.common.registry.RegistryChangeListener;
 import org.openhab.core.config.core.ConfigurableService;
+import org.openhab.core.items.GroupItem;
 import org.openhab.core.items.Item;
 import org.openhab.core.items.ItemRegistry;
+import org.openhab.core.items.Metadata;
 import org.openhab.core.items.MetadataRegistry;
+import org.openhab.core.library.items.NumberItem;
 import org.openhab.core.persistence.FilterCriteria;
 import org.openhab.core.persistence.HistoricItem;
 import org.openhab.core.persistence.PersistenceItemInfo;
@@ -34,6 +41,7 @@ import org.openhab.core.persistence.PersistenceService;
 import org.openhab.core.persistence.QueryablePersistenceService;
 import org.openhab.core.persistence.strategy.PersistenceStrategy;
 import org.openhab.core.types.State;
+import org.openhab.io.metrics.AddonMeters;
 import org.openhab.persistence.influxdb.internal.FilterCriteriaQueryCreator;
 import org.openhab.persistence.influxdb.internal.InfluxDBConfiguration;
 import org.openhab.persistence.influxdb.internal.InfluxDBHistoricItem;
@@ -94,6 +102,41 @@ public class InfluxDBPersistenceService implements QueryablePersistenceService {
     // Relax rules because can only be null if component is not active
     private @NonNullByDefault({}) ItemToStorePointCreator itemToStorePointCreator;
     private @NonNullByDefault({}) InfluxDBRepository influxDBRepository;
+    private @Nullable AddonMeters meters;
+
+    // Keep cached measurement names and tags of items up to date
+    private final RegistryChangeListener<Item> itemListener = new RegistryChangeListener<>() {
+        @Override
+        public void added(Item element) {
+            invalidate(element.getName());
+        }
+
+        @Override
+        public void removed(Item element) {
+            invalidate(element.getName());
+        }
+
+        @Override
+        public void updated(Item oldElement, Item element) {
+            invalidate(element.getName());
+        }
+    };
+    private final RegistryChangeListener<Metadata> metadataListener = new RegistryChangeListener<>() {
+        @Override
+        public void added(Metadata element) {
+            invalidate(element);
+        }
+
+        @Override
+        public void removed(Metadata element) {
+            invalidate(element);
+        }
+
+        @Override
+        public void updated(Metadata oldElement, Metadata element) {
+            invalidate(element);
+        }
+    };
 
     @Activate
     public InfluxDBPersistenceService(final @Reference ItemRegistry itemRegistry,
@@ -111,8 +154,11 @@ public class InfluxDBPersistenceService implements QueryablePersistenceService {
 
         if (loadConfiguration(config)) {
             itemToStorePointCreator = new ItemToStorePointCreator(configuration, metadataRegistry);
+            itemRegistry.addRegistryChangeListener(itemListener);
+            metadataRegistry.addRegistryChangeListener(metadataListener);
             influxDBRepository = createInfluxDBRepository();
             influxDBRepository.connect();
+            meters = registerMeters();
         } else {
             logger.error("Cannot load configuration, persistence service wont work");
         }
@@ -131,6 +177,8 @@ public class InfluxDBPersistenceService implements QueryablePersistenceService {
     @Deactivate
     public void deactivate() {
         logger.debug("InfluxDB persistence service deactivated");
+        itemRegistry.removeRegistryChangeListener(itemListener);
+        metadataRegistry.removeRegistryChangeListener(metadataListener);
         if (influxDBRepository != null) {
             influxDBRepository.disconnect();
             influxDBRepository = null;
@@ -138,6 +186,35 @@ public class InfluxDBPersistenceService implements QueryablePersistenceService {
         if (itemToStorePointCreator != null) {
             itemToStorePointCreator = null;
         }
+        final AddonMeters currentMeters = meters;
+        if (currentMeters != null) {
+            meters = null;
+            currentMeters.close();
+        }
+    }
+
+    /**
+     * Registers the store and query latency and the size of the spool with the metrics service, if it is installed
+     */
+    private @Nullable AddonMeters registerMeters() {
+        try {
+            AddonMeters addonMeters = AddonMeters.forPersistenceService(SERVICE_NAME);
+            addonMeters.gauge("queue.bytes", () -> {
+                final InfluxDBRepository currentRepository = influxDBRepository;
+                return currentRepository != null ? currentRepository.getPendingBytes() : 0;
+            });
+            return addonMeters;
+        } catch (NoClassDefFoundError e) {
+            logger.debug("Metrics service not installed, no meters registered");
+            return null;
+        }
+    }
+
+    private void recordMeter(String operation, long startNanos) {
+        final AddonMeters currentMeters = meters;
+        if (currentMeters != null) {
+            currentMeters.record(operation, startNanos);
+        }
     }
 
     /**
@@ -202,11 +279,25 @@ public class InfluxDBPersistenceService implements QueryablePersistenceService {
 
     @Override
     public void store(Item item, @Nullable String alias) {
-        if (influxDBRepository != null && influxDBRepository.isConnected()) {
+        // with the spool points are kept until the database is available
+        if (influxDBRepository != null && (influxDBRepository.isConnected() || configuration.isSpoolEnabled())) {
+            long startNanos = System.nanoTime();
+            if (influxDBRepository.isLineProtocolSupported()) {
+                String line = itemToStorePointCreator.convertToLineProtocol(item, alias);
+                if (line != null) {
+                    logger.trace("Storing item {} in InfluxDB line {}", item, line);
+                    influxDBRepository.writeLine(line);
+                    recordMeter("store", startNanos);
+                } else {
+                    logger.trace("Ignoring item {} as is cannot be converted to a InfluxDB point", item);
+                }
+                return;
+            }
             InfluxPoint point = itemToStorePointCreator.convert(item, alias);
             if (point != null) {
                 logger.trace("Storing item {} in InfluxDB point {}", item, point);
                 influxDBRepository.write(point);
+                recordMeter("store", startNanos);
             } else {
                 logger.trace("Ignoring item {} as is cannot be converted to a InfluxDB point", item);
             }
@@ -215,8 +306,22 @@ public class InfluxDBPersistenceService implements QueryablePersistenceService {
         }
     }
 
+    private void invalidate(String itemName) {
+        final ItemToStorePointCreator currentItemToStorePointCreator = itemToStorePointCreator;
+        if (currentItemToStorePointCreator != null) {
+            currentItemToStorePointCreator.invalidate(itemName);
+        }
+    }
+
+    private void invalidate(Metadata metadata) {
+        if (SERVICE_NAME.equals(metadata.getUID().getNamespace())) {
+            invalidate(metadata.getUID().getItemName());
+        }
+    }
+
     @Override
     public Iterable<HistoricItem> query(FilterCriteria filter) {
+
         logger.debug("Got a query for historic points!");
 
         if (influxDBRepository != null && influxDBRepository.isConnected()) {
@@ -225,23 +330,92 @@ public class InfluxDBPersistenceService implements QueryablePersistenceService {
                     filter.getItemName(), filter.getOrdering().toString(), filter.getState(), filter.getOperator(),
                     filter.getBeginDate(), filter.getEndDate(), filter.getPageSize(), filter.getPageNumber());
 
-            String query = RepositoryFactory.createQueryCreator(configuration, metadataRegistry).createQuery(filter,
-                    configuration.getRetentionPolicy());
+            FilterCriteriaQueryCreator queryCreator = RepositoryFactory.createQueryCreator(configuration,
+                    metadataRegistry);
+            int maxPoints = configuration.getQueryMaxPoints();
+            long windowSeconds = isNumberItem(filter.getItemName()) ? getWindowSeconds(filter, maxPoints) : 0;
+            String query = windowSeconds > 0
+                    ? queryCreator.createAggregationQuery(filter, configuration.getRetentionPolicy(),
+                            configuration.getQueryAggregation(), windowSeconds)
+                    : queryCreator.createQuery(filter, configuration.getRetentionPolicy());
             logger.trace("Query {}", query);
-            List<InfluxRow> results = influxDBRepository.query(query);
-            return results.stream().map(this::mapRow2HistoricItem).collect(Collectors.toList());
+            long startNanos = System.nanoTime();
+            // an aggregated query returns at most one row per window
+            Iterable<InfluxRow> results = influxDBRepository.query(query,
+                    windowSeconds > 0 ? maxPoints + 1 : filter.getPageSize());
+            recordMeter("query", startNanos);
+            if (results instanceof Collection) {
+                return ((Collection<InfluxRow>) results).stream().map(this::mapRow2HistoricItem)
+                        .collect(Collectors.toList());
+            }
+            // streamed while iterating
+            return () -> new HistoricItemIterator(results.iterator());
         } else {
             logger.debug("query ignored, InfluxDB is not yet connected");
             return Collections.emptyList();
         }
     }
 
+    private boolean isNumberItem(@Nullable String itemName) {
+        Item item = itemName != null ? itemRegistry.get(itemName) : null;
+        if (item instanceof GroupItem) {
+            item = ((GroupItem) item).getBaseItem();
+        }
+        return item instanceof NumberItem;
+    }
+
+    /**
+     * Splits the time range of an unpaged query with a begin date into at most <code>maxPoints</code> windows.
+     *
+     * @return the length of the windows in seconds, or 0 if the query is not aggregated
+     */
+    private long getWindowSeconds(FilterCriteria filter, int maxPoints) {
+        ZonedDateTime beginDate = filter.getBeginDate();
+        if (beginDate == null || maxPoints <= 0 || filter.getPageSize() != Integer.MAX_VALUE) {
+            return 0;
+        }
+        ZonedDateTime endDate = filter.getEndDate();
+        long range = Duration.between(beginDate, endDate == null ? ZonedDateTime.now() : endDate).getSeconds();
+        if (range <= 0) {
+            return 0;
+        }
+        return Math.max(1, (range + maxPoints - 1) / maxPoints);
+    }
+
     private HistoricItem mapRow2HistoricItem(InfluxRow row) {
         State state = InfluxDBStateConvertUtils.objectToState(row.getValue(), row.getItemName(), itemRegistry);
         return new InfluxDBHistoricItem(row.getItemName(), state,
                 ZonedDateTime.ofInstant(row.getTime(), ZoneId.systemDefault()));
     }
 
+    /**
+     * Converts streamed rows while iterating. Closing it cancels the query.
+     */
+    private class HistoricItemIterator implements Iterator<HistoricItem>, AutoCloseable {
+        private final Iterator<InfluxRow> rows;
+
+        private HistoricItemIterator(Iterator<InfluxRow> rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return rows.hasNext();
+        }
+
+        @Override
+        public HistoricItem next() {
+            return mapRow2HistoricItem(rows.next());
+        }
+
+        @Override
+        public void close() throws Exception {
+            if (rows instanceof AutoCloseable) {
+                ((AutoCloseable) rows).close();
+            }
+        }
+    }
+
     @Override
     public List<PersistenceStrategy> getDefaultStrategies() {
         return List.of(PersistenceStrategy.Globals.RESTORE, PersistenceStrategy.Globals.CHANGE);
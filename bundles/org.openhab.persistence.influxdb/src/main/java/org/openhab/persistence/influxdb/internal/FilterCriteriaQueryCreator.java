@@ -31,6 +31,19 @@ public interface FilterCriteriaQueryCreator {
      */
     String createQuery(FilterCriteria criteria, String retentionPolicy);
 
+    /**
+     * Create query from {@link FilterCriteria} returning one value per time window, combined by the database. Paging
+     * of the criteria is ignored.
+     *
+     * @param criteria Criteria to create query from
+     * @param retentionPolicy Name of the retentionPolicy/bucket to use in query
+     * @param aggregation Function combining the values of a window
+     * @param windowSeconds Length of the windows in seconds
+     * @return Created query as an String
+     */
+    String createAggregationQuery(FilterCriteria criteria, String retentionPolicy, Aggregation aggregation,
+            long windowSeconds);
+
     default String getOperationSymbol(FilterCriteria.Operator operator, InfluxDBVersion version) {
         switch (operator) {
             case EQ:
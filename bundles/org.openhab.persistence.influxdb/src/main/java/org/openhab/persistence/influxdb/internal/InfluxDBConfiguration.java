@@ -40,6 +40,13 @@ public class InfluxDBConfiguration {
     public static final String ADD_CATEGORY_TAG_PARAM = "addCategoryTag";
     public static final String ADD_LABEL_TAG_PARAM = "addLabelTag";
     public static final String ADD_TYPE_TAG_PARAM = "addTypeTag";
+    public static final String SPOOL_PARAM = "spool";
+    public static final String SPOOL_MAX_SIZE_PARAM = "spoolMaxSize";
+    public static final String SPOOL_FSYNC_PARAM = "spoolFsync";
+    public static final String SPOOL_BATCH_SIZE_PARAM = "spoolBatchSize";
+    public static final String QUERY_CHUNK_SIZE_PARAM = "queryChunkSize";
+    public static final String QUERY_MAX_POINTS_PARAM = "queryMaxPoints";
+    public static final String QUERY_AGGREGATION_PARAM = "queryAggregation";
     public static InfluxDBConfiguration NO_CONFIGURATION = new InfluxDBConfiguration(Collections.emptyMap());
     private final Logger logger = LoggerFactory.getLogger(InfluxDBConfiguration.class);
     private final String url;
@@ -55,6 +62,15 @@ public class InfluxDBConfiguration {
     private final boolean addTypeTag;
     private final boolean addLabelTag;
 
+    private final boolean spoolEnabled;
+    private final int spoolMaxSize;
+    private final InfluxDBSpool.FsyncPolicy spoolFsyncPolicy;
+    private final int spoolBatchSize;
+
+    private final int queryChunkSize;
+    private final int queryMaxPoints;
+    private final Aggregation queryAggregation;
+
     public InfluxDBConfiguration(Map<String, Object> config) {
         url = (String) config.getOrDefault(URL_PARAM, "http://127.0.0.1:8086");
         user = (String) config.getOrDefault(USER_PARAM, "openhab");
@@ -68,6 +84,17 @@ public class InfluxDBConfiguration {
         addCategoryTag = getConfigBooleanValue(config, ADD_CATEGORY_TAG_PARAM, false);
         addLabelTag = getConfigBooleanValue(config, ADD_LABEL_TAG_PARAM, false);
         addTypeTag = getConfigBooleanValue(config, ADD_TYPE_TAG_PARAM, false);
+
+        spoolEnabled = getConfigBooleanValue(config, SPOOL_PARAM, false);
+        spoolMaxSize = getConfigIntValue(config, SPOOL_MAX_SIZE_PARAM, 64);
+        spoolFsyncPolicy = parseFsyncPolicy(
+                (String) config.getOrDefault(SPOOL_FSYNC_PARAM, InfluxDBSpool.FsyncPolicy.INTERVAL.name()));
+        spoolBatchSize = getConfigIntValue(config, SPOOL_BATCH_SIZE_PARAM, 5000);
+
+        queryChunkSize = getConfigIntValue(config, QUERY_CHUNK_SIZE_PARAM, 0);
+        queryMaxPoints = getConfigIntValue(config, QUERY_MAX_POINTS_PARAM, 0);
+        queryAggregation = parseAggregation(
+                (String) config.getOrDefault(QUERY_AGGREGATION_PARAM, Aggregation.MEAN.name()));
     }
 
     private static boolean getConfigBooleanValue(Map<String, Object> config, String key, boolean defaultValue) {
@@ -81,6 +108,38 @@ public class InfluxDBConfiguration {
         }
     }
 
+    private int getConfigIntValue(Map<String, Object> config, String key, int defaultValue) {
+        Object object = config.get(key);
+        if (object instanceof Number) {
+            return ((Number) object).intValue();
+        } else if (object instanceof String) {
+            try {
+                return Integer.parseInt(((String) object).trim());
+            } catch (NumberFormatException e) {
+                logger.warn("Invalid value {} for {}, using {}", object, key, defaultValue);
+            }
+        }
+        return defaultValue;
+    }
+
+    private InfluxDBSpool.FsyncPolicy parseFsyncPolicy(String value) {
+        try {
+            return InfluxDBSpool.FsyncPolicy.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            logger.warn("Invalid spool fsync policy {}, using {}", value, InfluxDBSpool.FsyncPolicy.INTERVAL);
+            return InfluxDBSpool.FsyncPolicy.INTERVAL;
+        }
+    }
+
+    private Aggregation parseAggregation(String value) {
+        try {
+            return Aggregation.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            logger.warn("Invalid query aggregation {}, using {}", value, Aggregation.MEAN);
+            return Aggregation.MEAN;
+        }
+    }
+
     private InfluxDBVersion parseInfluxVersion(@Nullable String value) {
         try {
             return Optional.ofNullable(value).map(InfluxDBVersion::valueOf).orElse(InfluxDBVersion.UNKNOWN);
@@ -169,13 +228,44 @@ public class InfluxDBConfiguration {
         return version;
     }
 
+    public boolean isSpoolEnabled() {
+        return spoolEnabled;
+    }
+
+    public int getSpoolMaxSize() {
+        return spoolMaxSize;
+    }
+
+    public InfluxDBSpool.FsyncPolicy getSpoolFsyncPolicy() {
+        return spoolFsyncPolicy;
+    }
+
+    public int getSpoolBatchSize() {
+        return spoolBatchSize;
+    }
+
+    public int getQueryChunkSize() {
+        return queryChunkSize;
+    }
+
+    public int getQueryMaxPoints() {
+        return queryMaxPoints;
+    }
+
+    public Aggregation getQueryAggregation() {
+        return queryAggregation;
+    }
+
     @Override
     public String toString() {
         String sb = "InfluxDBConfiguration{" + "url='" + url + '\'' + ", user='" + user + '\'' + ", password='"
                 + password.length() + " chars" + '\'' + ", token='" + token.length() + " chars" + '\''
                 + ", databaseName='" + databaseName + '\'' + ", retentionPolicy='" + retentionPolicy + '\''
                 + ", version=" + version + ", replaceUnderscore=" + replaceUnderscore + ", addCategoryTag="
-                + addCategoryTag + ", addTypeTag=" + addTypeTag + ", addLabelTag=" + addLabelTag + '}';
+                + addCategoryTag + ", addTypeTag=" + addTypeTag + ", addLabelTag=" + addLabelTag + ", spool="
+                + spoolEnabled + ", spoolMaxSize=" + spoolMaxSize + ", spoolFsync=" + spoolFsyncPolicy
+                + ", spoolBatchSize=" + spoolBatchSize + ", queryChunkSize=" + queryChunkSize + ", queryMaxPoints="
+                + queryMaxPoints + ", queryAggregation=" + queryAggregation + '}';
         return sb;
     }
 
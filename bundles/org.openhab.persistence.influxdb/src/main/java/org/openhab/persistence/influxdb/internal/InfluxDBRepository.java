@@ -12,7 +12,6 @@
  */
 package org.openhab.persistence.influxdb.internal;
 
-import java.util.List;
 import java.util.Map;
 
 import org.eclipse.jdt.annotation.NonNullByDefault;
@@ -61,9 +60,11 @@ public interface InfluxDBRepository {
      * Executes Flux query
      *
      * @param query Query
-     * @return Query results
+     * @param maxRows Maximum number of rows returned by the query, results which may be larger than the configured
+     *            query chunk size are streamed while iterating
+     * @return Query results, a {@link java.util.Collection} unless they are streamed while iterating
      */
-    List<InfluxRow> query(String query);
+    Iterable<InfluxRow> query(String query, int maxRows);
 
     /**
      * Write point to database
@@ -71,4 +72,25 @@ public interface InfluxDBRepository {
      * @param influxPoint Point to write
      */
     void write(InfluxPoint influxPoint);
+
+    /**
+     * Returns if points can be written efficiently in line protocol with {@link #writeLine(String)}
+     *
+     * @return True if lines are supported, otherwise points should be written with {@link #write(InfluxPoint)}
+     */
+    boolean isLineProtocolSupported();
+
+    /**
+     * Write point in line protocol to database
+     *
+     * @param line Point in line protocol with millisecond precision
+     */
+    void writeLine(String line);
+
+    /**
+     * Returns the size of the points waiting in the spool to be written
+     *
+     * @return Pending bytes, 0 if the spool is disabled
+     */
+    long getPendingBytes();
 }
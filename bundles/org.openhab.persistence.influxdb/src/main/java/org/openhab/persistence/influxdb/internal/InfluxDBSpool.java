@@ -0,0 +1,555 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.influxdb.internal;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.OpenHAB;
+import org.openhab.core.common.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Durable write buffer for points in line protocol format. Points are appended to segment files and sent to the
+ * database by a background task in batches of at most <code>batchSize</code> points. If the database can't be reached
+ * the points stay on disk and are sent once it's available again, also after a restart.
+ *
+ * The spool is bounded by <code>maxSize</code> bytes, if it's full the oldest segment is dropped. After a restart the
+ * points of the segment that was being sent may be sent a second time, which is harmless as InfluxDB overwrites points
+ * with the same series and timestamp.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class InfluxDBSpool {
+    public static final Path DEFAULT_DIRECTORY = new File(OpenHAB.getUserDataFolder(), "persistence").toPath()
+            .resolve("influxdb");
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".lp";
+    private static final long MAX_SEGMENT_SIZE = 1024 * 1024;
+    private static final long DRAIN_INTERVAL = 1000;
+    private static final long MIN_RETRY_DELAY = 1000;
+    private static final long MAX_RETRY_DELAY = 60000;
+    private static final long CLOSE_MAX_BATCHES = 10;
+
+    /**
+     * When appended points are forced to disk
+     */
+    public enum FsyncPolicy {
+        /** after every point, slow but no point is lost on power failure */
+        ALWAYS,
+        /** once per drain interval, at most one second of points is lost on power failure */
+        INTERVAL,
+        /** left to the operating system */
+        NEVER
+    }
+
+    /**
+     * Sends a batch of points to the database
+     */
+    @FunctionalInterface
+    public interface LineWriter {
+        /**
+         * @param lines points in line protocol format with millisecond precision
+         * @throws RuntimeException if the points couldn't be written and should be retried later
+         */
+        void write(List<String> lines);
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(InfluxDBSpool.class);
+
+    private final Path directory;
+    private final long maxSize;
+    private final long segmentSize;
+    private final FsyncPolicy fsyncPolicy;
+    private final int batchSize;
+    private final LineWriter writer;
+    private final Object drainLock = new Object();
+
+    // guarded by this
+    private final Deque<Path> segments = new ArrayDeque<>();
+    private long closedSegmentsSize;
+    private @Nullable Path current;
+    private @Nullable FileChannel channel;
+    private long currentSize;
+    private long nextSequence;
+    private long readOffset;
+    private boolean unsynced;
+    private boolean closed;
+
+    private @Nullable ScheduledExecutorService scheduler;
+    private long retryDelay = MIN_RETRY_DELAY;
+    private long nextAttempt = System.nanoTime();
+    private volatile boolean failing;
+
+    private final AtomicLong appendedCount = new AtomicLong();
+    private final AtomicLong writtenCount = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong droppedSegmentCount = new AtomicLong();
+    private final AtomicLong droppedAfterCloseCount = new AtomicLong();
+
+    /**
+     * @param directory the directory of the segment files
+     * @param maxSize the maximum size of all segment files in bytes
+     * @param fsyncPolicy when appended points are forced to disk
+     * @param batchSize the maximum number of points sent at once
+     * @param writer sends the points to the database
+     */
+    public InfluxDBSpool(Path directory, long maxSize, FsyncPolicy fsyncPolicy, int batchSize, LineWriter writer) {
+        this.directory = directory;
+        this.maxSize = Math.max(1, maxSize);
+        this.segmentSize = Math.max(1, Math.min(MAX_SEGMENT_SIZE, this.maxSize / 4));
+        this.fsyncPolicy = fsyncPolicy;
+        this.batchSize = Math.max(1, batchSize);
+        this.writer = writer;
+    }
+
+    /**
+     * Creates the spool configured by the given configuration, opens it and starts sending points
+     *
+     * @param configuration the configuration
+     * @param writer sends the points to the database
+     * @return the started spool or null if it's disabled or can't be opened
+     */
+    public static @Nullable InfluxDBSpool start(InfluxDBConfiguration configuration, LineWriter writer) {
+        if (!configuration.isSpoolEnabled()) {
+            return null;
+        }
+        InfluxDBSpool spool = new InfluxDBSpool(DEFAULT_DIRECTORY.resolve("spool"),
+                configuration.getSpoolMaxSize() * 1024L * 1024L, configuration.getSpoolFsyncPolicy(),
+                configuration.getSpoolBatchSize(), writer);
+        try {
+            spool.open();
+        } catch (IOException e) {
+            LoggerFactory.getLogger(InfluxDBSpool.class).error("Cannot open spool in {}, writing points directly: {}",
+                    spool.directory, e.getMessage());
+            return null;
+        }
+        ScheduledExecutorService scheduler = Executors
+                .newSingleThreadScheduledExecutor(new NamedThreadFactory("influxdb-spool"));
+        scheduler.scheduleWithFixedDelay(spool::run, DRAIN_INTERVAL, DRAIN_INTERVAL, TimeUnit.MILLISECONDS);
+        spool.scheduler = scheduler;
+        return spool;
+    }
+
+    /**
+     * Opens the spool, recovering the segments left by a previous run
+     *
+     * @throws IOException if the directory can't be created or read
+     */
+    public synchronized void open() throws IOException {
+        Files.createDirectories(directory);
+        List<Path> existing = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory,
+                SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            stream.forEach(existing::add);
+        }
+        existing.sort(null);
+        for (Path segment : existing) {
+            long size = recoverSegment(segment);
+            if (size > 0) {
+                segments.add(segment);
+                closedSegmentsSize += size;
+            } else {
+                Files.deleteIfExists(segment);
+            }
+            nextSequence = Math.max(nextSequence, sequenceOf(segment) + 1);
+        }
+        if (!segments.isEmpty()) {
+            logger.info("Recovered {} bytes of spooled points in {} segments", closedSegmentsSize, segments.size());
+        }
+    }
+
+    /**
+     * Appends a point
+     *
+     * @param line the point in line protocol format with millisecond precision
+     */
+    public void append(String line) {
+        if (line.indexOf('\n') >= 0) {
+            logger.warn("Point '{}' contains a line break and can't be spooled, ignoring it", line);
+            return;
+        }
+        ByteBuffer bytes = ByteBuffer.wrap((line + '\n').getBytes(StandardCharsets.UTF_8));
+        synchronized (this) {
+            if (closed) {
+                // storing may go on for a while during shutdown, only the first point is logged as a warning
+                if (droppedAfterCloseCount.getAndIncrement() == 0) {
+                    logger.warn("Point '{}' ignored because the spool is closed, further points are ignored silently",
+                            line);
+                } else {
+                    logger.trace("Point '{}' ignored because the spool is closed", line);
+                }
+                return;
+            }
+            try {
+                FileChannel currentChannel = openCurrent();
+                while (bytes.hasRemaining()) {
+                    currentSize += currentChannel.write(bytes);
+                }
+                if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+                    currentChannel.force(false);
+                } else {
+                    unsynced = true;
+                }
+                appendedCount.incrementAndGet();
+                if (currentSize >= segmentSize) {
+                    rotate();
+                }
+                enforceMaxSize();
+            } catch (IOException e) {
+                logger.warn("Cannot spool point '{}': {}", line, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Sends spooled points until the spool is empty or sending fails
+     *
+     * @return true if all points have been sent, false if sending failed
+     */
+    public boolean drain() {
+        return drain(Long.MAX_VALUE);
+    }
+
+    private boolean drain(long maxBatches) {
+        synchronized (drainLock) {
+            for (long batch = 0; batch < maxBatches; batch++) {
+                Path segment;
+                long offset;
+                long limit;
+                synchronized (this) {
+                    Path head = head();
+                    if (head == null) {
+                        return true;
+                    }
+                    if (head.equals(current)) {
+                        if (readOffset >= currentSize) {
+                            truncateCurrent();
+                            return true;
+                        }
+                        limit = currentSize;
+                    } else {
+                        limit = Long.MAX_VALUE;
+                    }
+                    segment = head;
+                    offset = readOffset;
+                }
+
+                List<String> lines = new ArrayList<>();
+                long consumed;
+                try {
+                    consumed = readLines(segment, offset, limit, lines);
+                } catch (IOException e) {
+                    logger.warn("Cannot read spooled points from {}: {}", segment, e.getMessage());
+                    consumed = -1;
+                }
+                if (lines.isEmpty()) {
+                    synchronized (this) {
+                        if (segment.equals(current)) {
+                            return consumed >= 0;
+                        } else if (segment.equals(head())) {
+                            // completely sent or unreadable
+                            removeHead();
+                        }
+                    }
+                    continue;
+                }
+
+                try {
+                    writer.write(lines);
+                } catch (RuntimeException e) {
+                    if (!failing) {
+                        logger.warn("Cannot write {} spooled points, keeping them for later: {}", lines.size(),
+                                e.getMessage());
+                        failing = true;
+                    } else {
+                        logger.debug("Cannot write {} spooled points: {}", lines.size(), e.getMessage());
+                    }
+                    return false;
+                }
+                if (failing) {
+                    logger.info("Writing spooled points again, {}", this);
+                    failing = false;
+                }
+                writtenCount.addAndGet(lines.size());
+                batchCount.incrementAndGet();
+                synchronized (this) {
+                    // the segment has been dropped while writing if it's no longer the head
+                    if (segment.equals(head()) && readOffset == offset) {
+                        readOffset = offset + consumed;
+                    }
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Stops sending points in the background, tries to send the remaining ones and closes the segment files. Points
+     * that couldn't be sent in a few batches are kept for the next start.
+     */
+    public void close() {
+        ScheduledExecutorService currentScheduler = scheduler;
+        if (currentScheduler != null) {
+            currentScheduler.shutdown();
+            try {
+                currentScheduler.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            closed = true;
+        }
+        if (!failing) {
+            drain(CLOSE_MAX_BATCHES);
+        }
+        synchronized (this) {
+            scheduler = null;
+            closeChannel();
+            logger.debug("Closed spool, {}", this);
+        }
+    }
+
+    private void run() {
+        try {
+            if (fsyncPolicy == FsyncPolicy.INTERVAL) {
+                sync();
+            }
+            long now = System.nanoTime();
+            if (now - nextAttempt < 0) {
+                return;
+            }
+            if (drain()) {
+                retryDelay = MIN_RETRY_DELAY;
+            } else {
+                nextAttempt = now + TimeUnit.MILLISECONDS.toNanos(retryDelay);
+                logger.debug("Retrying to write spooled points in {} ms, {}", retryDelay, this);
+                retryDelay = Math.min(retryDelay * 2, MAX_RETRY_DELAY);
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Unexpected error while writing spooled points: {}", e.getMessage(), e);
+        }
+    }
+
+    private synchronized void sync() {
+        FileChannel currentChannel = channel;
+        if (unsynced && currentChannel != null) {
+            try {
+                currentChannel.force(false);
+                unsynced = false;
+            } catch (IOException e) {
+                logger.warn("Cannot sync spool segment {}: {}", current, e.getMessage());
+            }
+        }
+    }
+
+    private @Nullable Path head() {
+        Path head = segments.peekFirst();
+        return head != null ? head : current;
+    }
+
+    private FileChannel openCurrent() throws IOException {
+        FileChannel currentChannel = channel;
+        if (currentChannel == null) {
+            Path segment = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, nextSequence++, SEGMENT_SUFFIX));
+            currentChannel = FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+            current = segment;
+            channel = currentChannel;
+            currentSize = currentChannel.size();
+        }
+        return currentChannel;
+    }
+
+    private void rotate() throws IOException {
+        Path segment = current;
+        if (fsyncPolicy != FsyncPolicy.NEVER) {
+            FileChannel currentChannel = channel;
+            if (currentChannel != null) {
+                currentChannel.force(false);
+            }
+        }
+        closeChannel();
+        if (segment != null) {
+            segments.addLast(segment);
+            closedSegmentsSize += currentSize;
+        }
+        current = null;
+        currentSize = 0;
+    }
+
+    private void truncateCurrent() {
+        FileChannel currentChannel = channel;
+        if (currentChannel != null && currentSize > 0) {
+            try {
+                currentChannel.truncate(0);
+                currentSize = 0;
+                readOffset = 0;
+            } catch (IOException e) {
+                logger.debug("Cannot truncate spool segment {}: {}", current, e.getMessage());
+            }
+        }
+    }
+
+    private void enforceMaxSize() {
+        while (closedSegmentsSize + currentSize > maxSize && !segments.isEmpty()) {
+            Path dropped = segments.peekFirst();
+            removeHead();
+            droppedSegmentCount.incrementAndGet();
+            logger.warn("Spool exceeds its maximum size of {} bytes, dropped oldest points in {}", maxSize, dropped);
+        }
+    }
+
+    private void removeHead() {
+        Path segment = segments.pollFirst();
+        if (segment != null) {
+            try {
+                closedSegmentsSize -= Files.size(segment);
+                Files.deleteIfExists(segment);
+            } catch (IOException e) {
+                logger.warn("Cannot delete spool segment {}: {}", segment, e.getMessage());
+            }
+        }
+        readOffset = 0;
+    }
+
+    private void closeChannel() {
+        FileChannel currentChannel = channel;
+        if (currentChannel != null) {
+            try {
+                currentChannel.close();
+            } catch (IOException e) {
+                logger.debug("Cannot close spool segment {}: {}", current, e.getMessage());
+            }
+        }
+        channel = null;
+    }
+
+    /**
+     * Reads complete lines starting at <code>offset</code> up to <code>limit</code>
+     *
+     * @return the number of bytes of the lines read
+     */
+    private long readLines(Path segment, long offset, long limit, List<String> lines) throws IOException {
+        try (FileChannel in = FileChannel.open(segment, StandardOpenOption.READ)) {
+            in.position(offset);
+            InputStream stream = new BufferedInputStream(Channels.newInputStream(in), 64 * 1024);
+            ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+            long position = offset;
+            long consumed = offset;
+            int b;
+            while (lines.size() < batchSize && position < limit && (b = stream.read()) != -1) {
+                position++;
+                if (b == '\n') {
+                    lines.add(line.toString(StandardCharsets.UTF_8));
+                    line.reset();
+                    consumed = position;
+                } else {
+                    line.write(b);
+                }
+            }
+            return consumed - offset;
+        }
+    }
+
+    /**
+     * Cuts off an incomplete last line written before a crash
+     *
+     * @return the size of the recovered segment
+     */
+    private long recoverSegment(Path segment) throws IOException {
+        try (FileChannel file = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = file.size();
+            ByteBuffer b = ByteBuffer.allocate(1);
+            long end = size;
+            while (end > 0) {
+                b.clear();
+                file.read(b, end - 1);
+                if (b.get(0) == '\n') {
+                    break;
+                }
+                end--;
+            }
+            if (end < size) {
+                logger.debug("Cut off {} bytes of an incomplete point at the end of {}", size - end, segment);
+                file.truncate(end);
+            }
+            return end;
+        }
+    }
+
+    private static long sequenceOf(Path segment) {
+        String name = segment.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    public synchronized long getPendingBytes() {
+        return closedSegmentsSize + currentSize - readOffset;
+    }
+
+    public long getAppendedCount() {
+        return appendedCount.get();
+    }
+
+    public long getWrittenCount() {
+        return writtenCount.get();
+    }
+
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    public long getDroppedSegmentCount() {
+        return droppedSegmentCount.get();
+    }
+
+    public long getDroppedAfterCloseCount() {
+        return droppedAfterCloseCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "pendingBytes=" + getPendingBytes() + ", appended=" + getAppendedCount() + ", written="
+                + getWrittenCount() + ", batches=" + getBatchCount() + ", droppedSegments="
+                + getDroppedSegmentCount() + ", droppedAfterClose=" + getDroppedAfterCloseCount();
+    }
+}
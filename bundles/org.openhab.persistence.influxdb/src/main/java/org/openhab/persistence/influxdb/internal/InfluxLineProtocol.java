@@ -0,0 +1,143 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.influxdb.internal;
+
+import static org.openhab.persistence.influxdb.internal.InfluxDBConstants.FIELD_VALUE_NAME;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Encodes points in InfluxDB line protocol with millisecond precision, written the same way as the 1.x and 2.x client
+ * libraries do: numbers with a fraction as floats, other numbers as integers and strings quoted.
+ *
+ * The series key, i.e. the escaped measurement name and tags, can be encoded once and reused for every point of an
+ * item. The line itself is built in a per thread buffer.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class InfluxLineProtocol {
+    private static final int MAX_BUFFER_CAPACITY = 16 * 1024;
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+    private InfluxLineProtocol() {
+    }
+
+    /**
+     * Encodes the series key of a point
+     *
+     * @param measurementName the measurement name
+     * @param tags the tags, written in the iteration order of the map which should be sorted by key
+     * @return the series key
+     */
+    public static String encodeSeriesKey(String measurementName, Map<String, String> tags) {
+        StringBuilder sb = new StringBuilder(64);
+        escape(sb, measurementName, false);
+        tags.forEach((key, value) -> {
+            if (!key.isEmpty() && !value.isEmpty()) {
+                sb.append(',');
+                escape(sb, key, true);
+                sb.append('=');
+                escape(sb, value, true);
+            }
+        });
+        return sb.toString();
+    }
+
+    /**
+     * Encodes a point
+     *
+     * @param seriesKey the series key returned by {@link #encodeSeriesKey(String, Map)}
+     * @param value the value as returned by {@link InfluxDBStateConvertUtils#stateToObject}
+     * @param epochMillis the time of the point in milliseconds since the epoch
+     * @return the point in line protocol or null if the value can't be stored
+     */
+    public static @Nullable String encode(String seriesKey, Object value, long epochMillis) {
+        StringBuilder sb = BUFFER.get();
+        if (sb.capacity() > MAX_BUFFER_CAPACITY) {
+            // don't keep the memory of a huge string value
+            sb = new StringBuilder(256);
+            BUFFER.set(sb);
+        }
+        sb.setLength(0);
+        sb.append(seriesKey).append(' ').append(FIELD_VALUE_NAME).append('=');
+        if (!appendValue(sb, value)) {
+            return null;
+        }
+        sb.append(' ').append(epochMillis);
+        return sb.toString();
+    }
+
+    private static boolean appendValue(StringBuilder sb, Object value) {
+        if (value instanceof BigDecimal) {
+            sb.append(((BigDecimal) value).toPlainString());
+        } else if (value instanceof Double || value instanceof Float) {
+            double d = ((Number) value).doubleValue();
+            if (Double.isNaN(d) || Double.isInfinite(d)) {
+                return false;
+            }
+            sb.append(BigDecimal.valueOf(d).toPlainString());
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short
+                || value instanceof Byte || value instanceof BigInteger) {
+            sb.append(value).append('i');
+        } else if (value instanceof Boolean) {
+            sb.append(((Boolean) value).booleanValue());
+        } else {
+            String string = value.toString();
+            sb.append('"');
+            for (int i = 0; i < string.length(); i++) {
+                char c = string.charAt(i);
+                if (c == '"' || c == '\\') {
+                    sb.append('\\');
+                }
+                sb.append(c);
+            }
+            sb.append('"');
+        }
+        return true;
+    }
+
+    private static void escape(StringBuilder sb, String value, boolean escapeEquals) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\n':
+                    sb.append("\\n");
+                    continue;
+                case '\r':
+                    sb.append("\\r");
+                    continue;
+                case '\t':
+                    sb.append("\\t");
+                    continue;
+                case ' ':
+                case ',':
+                    sb.append('\\');
+                    break;
+                case '=':
+                    if (escapeEquals) {
+                        sb.append('\\');
+                    }
+                    break;
+                default:
+                    break;
+            }
+            sb.append(c);
+        }
+    }
+}
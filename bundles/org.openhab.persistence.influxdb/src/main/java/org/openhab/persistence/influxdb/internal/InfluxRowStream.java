@@ -0,0 +1,199 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.influxdb.internal;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Rows of a query that are streamed by the client library while iterating instead of being loaded into memory at once.
+ * The client hands rows over through a queue of <code>bufferSize</code> rows, so memory does not grow with the size of
+ * the result.
+ *
+ * Every call to {@link #iterator()} executes the query again. The query is cancelled as soon as the iterator is
+ * exhausted, fails or is closed. If the consumer stops reading without closing the iterator, the client waits at most
+ * {@link #CONSUMER_TIMEOUT_SECONDS} seconds for space in the queue before the query is cancelled, so that its thread
+ * is not blocked for longer.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class InfluxRowStream implements Iterable<InfluxRow> {
+    public static final long TIMEOUT_SECONDS = 60;
+    public static final long CONSUMER_TIMEOUT_SECONDS = 10;
+
+    private static final Object END = new Object();
+
+    private final Logger logger = LoggerFactory.getLogger(InfluxRowStream.class);
+
+    /**
+     * Receives the rows of a query from the client library
+     */
+    public interface Sink {
+        /**
+         * Adds a row, waiting for space in the queue
+         *
+         * @param row the row
+         * @return false if the rows are no longer consumed and the query must be cancelled
+         */
+        boolean add(InfluxRow row);
+
+        /**
+         * Signals that all rows have been added
+         */
+        void complete();
+
+        /**
+         * Signals that the query failed
+         *
+         * @param error the cause
+         */
+        void fail(Throwable error);
+    }
+
+    private final int bufferSize;
+    private final Consumer<Sink> query;
+
+    /**
+     * @param bufferSize the maximum number of rows waiting to be consumed
+     * @param query starts the query, passing its rows to the sink
+     */
+    public InfluxRowStream(int bufferSize, Consumer<Sink> query) {
+        this.bufferSize = Math.max(1, bufferSize);
+        this.query = query;
+    }
+
+    @Override
+    public RowIterator iterator() {
+        return new RowIterator();
+    }
+
+    /**
+     * Iterates over the rows of one execution of the query. Closing it cancels the query.
+     */
+    public class RowIterator implements Iterator<InfluxRow>, Sink, AutoCloseable {
+        private final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(bufferSize + 1);
+        private volatile boolean done;
+        private volatile @Nullable Throwable error;
+        private boolean started;
+        private @Nullable InfluxRow next;
+
+        @Override
+        public boolean hasNext() {
+            if (next != null) {
+                return true;
+            }
+            if (done) {
+                return false;
+            }
+            if (!started) {
+                started = true;
+                try {
+                    query.accept(this);
+                } catch (RuntimeException e) {
+                    fail(e);
+                }
+            }
+            try {
+                Object element = queue.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                if (element instanceof InfluxRow) {
+                    next = (InfluxRow) element;
+                    return true;
+                } else if (element == null) {
+                    logger.warn("No query result received for {} seconds, giving up", TIMEOUT_SECONDS);
+                } else {
+                    Throwable currentError = error;
+                    if (currentError != null) {
+                        logger.warn("Query failed: {}", currentError.getMessage());
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            close();
+            return false;
+        }
+
+        @Override
+        public InfluxRow next() {
+            InfluxRow next = this.next;
+            if (next == null && hasNext()) {
+                next = this.next;
+            }
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            this.next = null;
+            return next;
+        }
+
+        /**
+         * Stops the iteration. A query waiting for space in the queue is woken up and cancelled.
+         */
+        @Override
+        public void close() {
+            done = true;
+            next = null;
+            // makes room for a row being added, which is then rejected
+            queue.clear();
+        }
+
+        @Override
+        public boolean add(InfluxRow row) {
+            try {
+                if (done) {
+                    return false;
+                }
+                if (!queue.offer(row, CONSUMER_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    logger.debug("Rows not consumed for {} seconds, cancelling query", CONSUMER_TIMEOUT_SECONDS);
+                    close();
+                    return false;
+                }
+                if (done) {
+                    queue.clear();
+                    return false;
+                }
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        @Override
+        public void complete() {
+            try {
+                if (!done && !queue.offer(END, CONSUMER_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    close();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void fail(Throwable error) {
+            this.error = error;
+            complete();
+        }
+    }
+}
@@ -15,7 +15,10 @@ package org.openhab.persistence.influxdb.internal;
 import static org.openhab.persistence.influxdb.internal.InfluxDBConstants.*;
 
 import java.time.Instant;
+import java.util.Map;
 import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
@@ -30,12 +33,31 @@ import org.openhab.persistence.influxdb.InfluxDBPersistenceService;
 /**
  * Logic to create an InfluxDB {@link InfluxPoint} from an openHAB {@link Item}
  *
+ * Points can also be encoded directly in line protocol. The measurement name, tags and state conversion of every item
+ * are then cached until {@link #invalidate(String)} is called for the item.
+ *
  * @author Joan Pujol Espinar - Initial contribution
  */
 @NonNullByDefault
 public class ItemToStorePointCreator {
+    private static final int SERIES_CACHE_MAX_SIZE = 10000;
+
     private final InfluxDBConfiguration configuration;
     private final @Nullable MetadataRegistry metadataRegistry;
+    private final Map<String, Series> seriesCache = new ConcurrentHashMap<>();
+
+    /**
+     * What is needed to encode a point of an item besides its state
+     */
+    private static class Series {
+        private final String key;
+        private final @Nullable Class<? extends State> desiredConversion;
+
+        private Series(String key, @Nullable Class<? extends State> desiredConversion) {
+            this.key = key;
+            this.desiredConversion = desiredConversion;
+        }
+    }
 
     public ItemToStorePointCreator(InfluxDBConfiguration configuration, @Nullable MetadataRegistry metadataRegistry) {
         this.configuration = configuration;
@@ -48,19 +70,73 @@ public class ItemToStorePointCreator {
         }
 
         String measurementName = calculateMeasurementName(item, storeAlias);
-        String itemName = item.getName();
         State state = getItemState(item);
 
         Object value = InfluxDBStateConvertUtils.stateToObject(state);
 
-        InfluxPoint.Builder point = InfluxPoint.newBuilder(measurementName).withTime(Instant.now()).withValue(value)
-                .withTag(TAG_ITEM_NAME, itemName);
-
-        addPointTags(item, point);
+        InfluxPoint.Builder point = InfluxPoint.newBuilder(measurementName).withTime(Instant.now()).withValue(value);
+        calculateTags(item).forEach(point::withTag);
 
         return point.build();
     }
 
+    /**
+     * Encodes the current state of an item as a point in line protocol, like {@link #convert(Item, String)} does
+     *
+     * @param item the item
+     * @param storeAlias the alias of the item or null
+     * @return the point in line protocol with millisecond precision or null if it can't be stored
+     */
+    public @Nullable String convertToLineProtocol(Item item, @Nullable String storeAlias) {
+        State itemState = item.getState();
+        if (itemState instanceof UnDefType) {
+            return null;
+        }
+
+        String itemName = item.getName();
+        String cacheKey = storeAlias == null || storeAlias.isBlank() || storeAlias.equals(itemName) ? itemName
+                : itemName + '|' + storeAlias;
+        Series series = seriesCache.get(cacheKey);
+        if (series == null) {
+            if (seriesCache.size() >= SERIES_CACHE_MAX_SIZE) {
+                seriesCache.clear();
+            }
+            series = new Series(
+                    InfluxLineProtocol.encodeSeriesKey(calculateMeasurementName(item, storeAlias), calculateTags(item)),
+                    calculateDesiredTypeConversionToStore(item).orElse(null));
+            seriesCache.put(cacheKey, series);
+        }
+
+        State state = itemState;
+        Class<? extends State> desiredConversion = series.desiredConversion;
+        if (desiredConversion != null) {
+            State convertedState = item.getStateAs(desiredConversion);
+            if (convertedState != null) {
+                state = convertedState;
+            }
+        }
+
+        return InfluxLineProtocol.encode(series.key, InfluxDBStateConvertUtils.stateToObject(state),
+                System.currentTimeMillis());
+    }
+
+    /**
+     * Removes the cached measurement name, tags and state conversion of an item, for all its aliases
+     *
+     * @param itemName the name of the item
+     */
+    public void invalidate(String itemName) {
+        String aliasPrefix = itemName + '|';
+        seriesCache.keySet().removeIf(key -> key.equals(itemName) || key.startsWith(aliasPrefix));
+    }
+
+    /**
+     * Removes the cached measurement names, tags and state conversions of all items
+     */
+    public void invalidateAll() {
+        seriesCache.clear();
+    }
+
     private String calculateMeasurementName(Item item, @Nullable String storeAlias) {
         String name = storeAlias != null && !storeAlias.isBlank() ? storeAlias : item.getName();
 
@@ -95,17 +171,20 @@ public class ItemToStorePointCreator {
                 .findFirst().map(commandType -> commandType.asSubclass(State.class));
     }
 
-    private void addPointTags(Item item, InfluxPoint.Builder point) {
+    private Map<String, String> calculateTags(Item item) {
+        Map<String, String> tags = new TreeMap<>();
+        tags.put(TAG_ITEM_NAME, item.getName());
+
         if (configuration.isAddCategoryTag()) {
             String categoryName = item.getCategory();
             if (categoryName == null) {
                 categoryName = "n/a";
             }
-            point.withTag(TAG_CATEGORY_NAME, categoryName);
+            tags.put(TAG_CATEGORY_NAME, categoryName);
         }
 
         if (configuration.isAddTypeTag()) {
-            point.withTag(TAG_TYPE_NAME, item.getType());
+            tags.put(TAG_TYPE_NAME, item.getType());
         }
 
         if (configuration.isAddLabelTag()) {
@@ -113,7 +192,7 @@ public class ItemToStorePointCreator {
             if (labelName == null) {
                 labelName = "n/a";
             }
-            point.withTag(TAG_LABEL_NAME, labelName);
+            tags.put(TAG_LABEL_NAME, labelName);
         }
 
         final MetadataRegistry currentMetadataRegistry = metadataRegistry;
@@ -122,9 +201,10 @@ public class ItemToStorePointCreator {
             Metadata metadata = currentMetadataRegistry.get(key);
             if (metadata != null) {
                 metadata.getConfiguration().forEach((tagName, tagValue) -> {
-                    point.withTag(tagName, tagValue.toString());
+                    tags.put(tagName, tagValue.toString());
                 });
             }
         }
+        return tags;
     }
 }
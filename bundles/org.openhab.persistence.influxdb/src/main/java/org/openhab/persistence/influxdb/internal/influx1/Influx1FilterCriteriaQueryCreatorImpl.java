@@ -16,6 +16,9 @@ import static org.influxdb.querybuilder.BuiltQuery.QueryBuilder.*;
 import static org.openhab.persistence.influxdb.internal.InfluxDBConstants.*;
 import static org.openhab.persistence.influxdb.internal.InfluxDBStateConvertUtils.stateToObject;
 
+import java.math.BigDecimal;
+import java.util.StringJoiner;
+
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
 import org.influxdb.dto.Query;
@@ -26,6 +29,7 @@ import org.influxdb.querybuilder.Where;
 import org.influxdb.querybuilder.clauses.SimpleClause;
 import org.openhab.core.items.MetadataRegistry;
 import org.openhab.core.persistence.FilterCriteria;
+import org.openhab.persistence.influxdb.internal.Aggregation;
 import org.openhab.persistence.influxdb.internal.FilterCriteriaQueryCreator;
 import org.openhab.persistence.influxdb.internal.InfluxDBConfiguration;
 import org.openhab.persistence.influxdb.internal.InfluxDBMetadataUtils;
@@ -99,6 +103,56 @@ public class Influx1FilterCriteriaQueryCreatorImpl implements FilterCriteriaQuer
         return query.getCommand();
     }
 
+    /**
+     * Written by hand as the query builder doesn't support aliased functions
+     */
+    @Override
+    public String createAggregationQuery(FilterCriteria criteria, String retentionPolicy, Aggregation aggregation,
+            long windowSeconds) {
+        final String itemName = criteria.getItemName();
+        final String tableName = calculateTableName(itemName);
+
+        StringBuilder query = new StringBuilder("SELECT ");
+        query.append(aggregation.getFunctionName()).append("(\"").append(COLUMN_VALUE_NAME_V1).append("\") AS \"")
+                .append(COLUMN_VALUE_NAME_V1).append("\" FROM ")
+                .append(fullQualifiedTableName(retentionPolicy, tableName, itemName != null));
+
+        StringJoiner where = new StringJoiner(" AND ", " WHERE ", "").setEmptyValue("");
+        if (itemName != null && !tableName.equals(itemName)) {
+            where.add(TAG_ITEM_NAME + " = " + literal(itemName));
+        }
+        if (criteria.getBeginDate() != null) {
+            where.add(COLUMN_TIME_NAME_V1 + " >= " + literal(criteria.getBeginDate().toInstant().toString()));
+        }
+        if (criteria.getEndDate() != null) {
+            where.add(COLUMN_TIME_NAME_V1 + " <= " + literal(criteria.getEndDate().toInstant().toString()));
+        }
+        if (criteria.getState() != null && criteria.getOperator() != null) {
+            where.add(COLUMN_VALUE_NAME_V1 + " " + getOperationSymbol(criteria.getOperator(), InfluxDBVersion.V1)
+                    + " " + literal(stateToObject(criteria.getState())));
+        }
+        query.append(where);
+
+        // grouping by the item tag returns it with each series, as it can't be selected together with a function
+        query.append(" GROUP BY time(").append(windowSeconds).append("s),").append(TAG_ITEM_NAME)
+                .append(" fill(none)");
+
+        if (criteria.getOrdering() == FilterCriteria.Ordering.DESCENDING) {
+            query.append(" ORDER BY time DESC");
+        }
+        return query.append(';').toString();
+    }
+
+    private static String literal(Object value) {
+        if (value instanceof BigDecimal) {
+            return ((BigDecimal) value).toPlainString();
+        } else if (value instanceof Number) {
+            return value.toString();
+        } else {
+            return "'" + value.toString().replace("\\", "\\\\").replace("'", "\\'") + "'";
+        }
+    }
+
     private String calculateTableName(@Nullable String itemName) {
         if (itemName == null) {
             return "/.*/";
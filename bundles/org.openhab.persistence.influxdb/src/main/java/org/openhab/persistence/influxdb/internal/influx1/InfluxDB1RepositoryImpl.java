@@ -25,10 +25,13 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
 import org.influxdb.InfluxDB;
+import org.influxdb.InfluxDB.ConsistencyLevel;
+import org.influxdb.InfluxDBException;
 import org.influxdb.InfluxDBFactory;
 import org.influxdb.dto.Point;
 import org.influxdb.dto.Pong;
@@ -36,8 +39,10 @@ import org.influxdb.dto.Query;
 import org.influxdb.dto.QueryResult;
 import org.openhab.persistence.influxdb.internal.InfluxDBConfiguration;
 import org.openhab.persistence.influxdb.internal.InfluxDBRepository;
+import org.openhab.persistence.influxdb.internal.InfluxDBSpool;
 import org.openhab.persistence.influxdb.internal.InfluxPoint;
 import org.openhab.persistence.influxdb.internal.InfluxRow;
+import org.openhab.persistence.influxdb.internal.InfluxRowStream;
 import org.openhab.persistence.influxdb.internal.UnnexpectedConditionException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -56,6 +61,8 @@ public class InfluxDB1RepositoryImpl implements InfluxDBRepository {
     private InfluxDBConfiguration configuration;
     @Nullable
     private InfluxDB client;
+    @Nullable
+    private InfluxDBSpool spool;
 
     public InfluxDB1RepositoryImpl(InfluxDBConfiguration configuration) {
         this.configuration = configuration;
@@ -72,16 +79,31 @@ public class InfluxDB1RepositoryImpl implements InfluxDBRepository {
                 configuration.getPassword());
         createdClient.setDatabase(configuration.getDatabaseName());
         createdClient.setRetentionPolicy(configuration.getRetentionPolicy());
-        createdClient.enableBatch(200, 100, TimeUnit.MILLISECONDS);
+        closeSpool();
+        // the spool batches points itself and keeps them on disk until they are written
+        final InfluxDBSpool createdSpool = InfluxDBSpool.start(configuration, this::writeLines);
+        if (createdSpool == null) {
+            createdClient.enableBatch(200, 100, TimeUnit.MILLISECONDS);
+        }
+        this.spool = createdSpool;
         this.client = createdClient;
         return checkConnectionStatus();
     }
 
     @Override
     public void disconnect() {
+        closeSpool();
         this.client = null;
     }
 
+    private void closeSpool() {
+        final InfluxDBSpool currentSpool = spool;
+        if (currentSpool != null) {
+            currentSpool.close();
+        }
+        this.spool = null;
+    }
+
     @Override
     public boolean checkConnectionStatus() {
         boolean dbStatus = false;
@@ -116,8 +138,11 @@ public class InfluxDB1RepositoryImpl implements InfluxDBRepository {
 
     @Override
     public void write(InfluxPoint point) {
+        final InfluxDBSpool currentSpool = this.spool;
         final InfluxDB currentClient = this.client;
-        if (currentClient != null) {
+        if (currentSpool != null) {
+            currentSpool.append(convertPointToClientFormat(point).lineProtocol(TimeUnit.MILLISECONDS));
+        } else if (currentClient != null) {
             Point clientPoint = convertPointToClientFormat(point);
             currentClient.write(configuration.getDatabaseName(), configuration.getRetentionPolicy(), clientPoint);
         } else {
@@ -125,6 +150,49 @@ public class InfluxDB1RepositoryImpl implements InfluxDBRepository {
         }
     }
 
+    /**
+     * Lines are only supported with the spool, as the client batches points but not lines
+     */
+    @Override
+    public boolean isLineProtocolSupported() {
+        return spool != null;
+    }
+
+    @Override
+    public void writeLine(String line) {
+        final InfluxDBSpool currentSpool = this.spool;
+        final InfluxDB currentClient = this.client;
+        if (currentSpool != null) {
+            currentSpool.append(line);
+        } else if (currentClient != null) {
+            currentClient.write(configuration.getDatabaseName(), configuration.getRetentionPolicy(),
+                    ConsistencyLevel.ONE, TimeUnit.MILLISECONDS, line);
+        } else {
+            logger.warn("Write line {} ignored due to client isn't connected", line);
+        }
+    }
+
+    @Override
+    public long getPendingBytes() {
+        final InfluxDBSpool currentSpool = spool;
+        return currentSpool != null ? currentSpool.getPendingBytes() : 0;
+    }
+
+    private void writeLines(List<String> lines) {
+        final InfluxDB currentClient = this.client;
+        if (currentClient == null) {
+            throw new IllegalStateException("client isn't connected");
+        }
+        try {
+            currentClient.write(configuration.getDatabaseName(), configuration.getRetentionPolicy(),
+                    ConsistencyLevel.ONE, TimeUnit.MILLISECONDS, lines);
+        } catch (InfluxDBException.UnableToParseException | InfluxDBException.FieldTypeConflictException
+                | InfluxDBException.PointsBeyondRetentionPolicyException e) {
+            // retrying won't help, the valid points of the batch have been written
+            logger.warn("InfluxDB rejected points of a batch of {}: {}", lines.size(), e.getMessage());
+        }
+    }
+
     private Point convertPointToClientFormat(InfluxPoint point) {
         Point.Builder clientPoint = Point.measurement(point.getMeasurementName()).time(point.getTime().toEpochMilli(),
                 TimeUnit.MILLISECONDS);
@@ -148,20 +216,38 @@ public class InfluxDB1RepositoryImpl implements InfluxDBRepository {
     }
 
     @Override
-    public List<InfluxRow> query(String query) {
+    public Iterable<InfluxRow> query(String query, int maxRows) {
         final InfluxDB currentClient = client;
         if (currentClient != null) {
             Query parsedQuery = new Query(query, configuration.getDatabaseName());
+            int chunkSize = configuration.getQueryChunkSize();
+            if (chunkSize > 0 && maxRows > chunkSize) {
+                return new InfluxRowStream(chunkSize,
+                        sink -> currentClient.query(parsedQuery, chunkSize, (cancellable, queryResult) -> {
+                            List<QueryResult.Result> results = queryResult.getResults();
+                            if (queryResult.getError() != null) {
+                                logger.warn("{}", queryResult.getError());
+                            } else if (results != null && !convertClientResutToRepository(results, sink::add)) {
+                                cancellable.cancel();
+                            }
+                        }, sink::complete, sink::fail));
+            }
             List<QueryResult.Result> results = currentClient.query(parsedQuery, TimeUnit.MILLISECONDS).getResults();
-            return convertClientResutToRepository(results);
+            List<InfluxRow> rows = new ArrayList<>();
+            convertClientResutToRepository(results, rows::add);
+            return rows;
         } else {
             logger.warn("Returning empty list because queryAPI isn't present");
             return Collections.emptyList();
         }
     }
 
-    private List<InfluxRow> convertClientResutToRepository(List<QueryResult.Result> results) {
-        List<InfluxRow> rows = new ArrayList<>();
+    /**
+     * Converts the results and passes the rows to the consumer, until it returns false
+     *
+     * @return false if the consumer didn't accept all rows
+     */
+    private boolean convertClientResutToRepository(List<QueryResult.Result> results, Predicate<InfluxRow> consumer) {
         for (QueryResult.Result result : results) {
             List<QueryResult.Series> seriess = result.getSeries();
             if (result.getError() != null) {
@@ -196,24 +282,40 @@ public class InfluxDB1RepositoryImpl implements InfluxDBRepository {
                             if (valueColumn == null || timestampColumn == null) {
                                 throw new IllegalStateException("missing column");
                             }
+                            // aggregated queries return the item as tag of the series
+                            Map<String, String> tags = series.getTags();
+                            String taggedItemName = tags != null ? tags.get(TAG_ITEM_NAME) : null;
+                            String seriesItemName = taggedItemName != null ? taggedItemName : series.getName();
                             for (int i = 0; i < valuess.size(); i++) {
-                                Double rawTime = (Double) Objects.requireNonNull(valuess.get(i).get(timestampColumn));
-                                Instant time = Instant.ofEpochMilli(rawTime.longValue());
+                                Instant time = parseTime(Objects.requireNonNull(valuess.get(i).get(timestampColumn)));
                                 @Nullable
                                 Object value = valuess.get(i).get(valueColumn);
                                 var currentI = i;
                                 String itemName = Optional.ofNullable(itemNameColumn)
                                         .flatMap(inc -> Optional.ofNullable((String) valuess.get(currentI).get(inc)))
-                                        .orElse(series.getName());
+                                        .orElse(seriesItemName);
                                 logger.trace("adding historic item {}: time {} value {}", itemName, time, value);
-                                rows.add(new InfluxRow(time, itemName, value));
+                                if (!consumer.test(new InfluxRow(time, itemName, value))) {
+                                    return false;
+                                }
                             }
                         }
                     }
                 }
             }
         }
-        return rows;
+        return true;
+    }
+
+    /**
+     * Times are returned in milliseconds, but as RFC3339 strings for chunked queries
+     */
+    private Instant parseTime(Object rawTime) {
+        if (rawTime instanceof Number) {
+            return Instant.ofEpochMilli(((Number) rawTime).longValue());
+        } else {
+            return Instant.parse(rawTime.toString());
+        }
     }
 
     @Override
@@ -22,6 +22,7 @@ import java.time.temporal.ChronoUnit;
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.openhab.core.items.MetadataRegistry;
 import org.openhab.core.persistence.FilterCriteria;
+import org.openhab.persistence.influxdb.internal.Aggregation;
 import org.openhab.persistence.influxdb.internal.FilterCriteriaQueryCreator;
 import org.openhab.persistence.influxdb.internal.InfluxDBConfiguration;
 import org.openhab.persistence.influxdb.internal.InfluxDBMetadataUtils;
@@ -50,6 +51,40 @@ public class Influx2FilterCriteriaQueryCreatorImpl implements FilterCriteriaQuer
 
     @Override
     public String createQuery(FilterCriteria criteria, String retentionPolicy) {
+        Flux flux = createFilteredQuery(criteria, retentionPolicy);
+
+        if (criteria.getOrdering() != null) {
+            boolean desc = criteria.getOrdering() == FilterCriteria.Ordering.DESCENDING;
+            flux = flux.sort().withDesc(desc).withColumns(new String[] { COLUMN_TIME_NAME_V2 });
+        }
+
+        if (criteria.getPageSize() != Integer.MAX_VALUE) {
+            flux = flux.limit(criteria.getPageSize()).withPropertyValue("offset",
+                    criteria.getPageNumber() * criteria.getPageSize());
+        }
+
+        return flux.toString();
+    }
+
+    /**
+     * The windows are appended by hand, timestamped with their start like InfluxQL does
+     */
+    @Override
+    public String createAggregationQuery(FilterCriteria criteria, String retentionPolicy, Aggregation aggregation,
+            long windowSeconds) {
+        Flux flux = createFilteredQuery(criteria, retentionPolicy)
+                .filter(Restrictions.field().equal(FIELD_VALUE_NAME));
+
+        StringBuilder query = new StringBuilder(flux.toString());
+        query.append("\n\t|> aggregateWindow(every:").append(windowSeconds).append("s, fn:")
+                .append(aggregation.getFunctionName()).append(", timeSrc:\"_start\", createEmpty:false)");
+        if (criteria.getOrdering() == FilterCriteria.Ordering.DESCENDING) {
+            query.append("\n\t|> sort(desc:true, columns:[\"").append(COLUMN_TIME_NAME_V2).append("\"])");
+        }
+        return query.toString();
+    }
+
+    private Flux createFilteredQuery(FilterCriteria criteria, String retentionPolicy) {
         Flux flux = Flux.from(retentionPolicy);
 
         RangeFlux range = flux.range();
@@ -79,17 +114,7 @@ public class Influx2FilterCriteriaQueryCreatorImpl implements FilterCriteriaQuer
             flux = flux.filter(restrictions);
         }
 
-        if (criteria.getOrdering() != null) {
-            boolean desc = criteria.getOrdering() == FilterCriteria.Ordering.DESCENDING;
-            flux = flux.sort().withDesc(desc).withColumns(new String[] { COLUMN_TIME_NAME_V2 });
-        }
-
-        if (criteria.getPageSize() != Integer.MAX_VALUE) {
-            flux = flux.limit(criteria.getPageSize()).withPropertyValue("offset",
-                    criteria.getPageNumber() * criteria.getPageSize());
-        }
-
-        return flux.toString();
+        return flux;
     }
 
     private String calculateMeasurementName(String itemName) {
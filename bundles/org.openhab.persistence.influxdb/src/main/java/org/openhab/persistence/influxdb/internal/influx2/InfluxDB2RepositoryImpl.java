@@ -27,8 +27,10 @@ import org.eclipse.jdt.annotation.Nullable;
 import org.openhab.persistence.influxdb.internal.InfluxDBConfiguration;
 import org.openhab.persistence.influxdb.internal.InfluxDBConstants;
 import org.openhab.persistence.influxdb.internal.InfluxDBRepository;
+import org.openhab.persistence.influxdb.internal.InfluxDBSpool;
 import org.openhab.persistence.influxdb.internal.InfluxPoint;
 import org.openhab.persistence.influxdb.internal.InfluxRow;
+import org.openhab.persistence.influxdb.internal.InfluxRowStream;
 import org.openhab.persistence.influxdb.internal.UnnexpectedConditionException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -38,9 +40,12 @@ import com.influxdb.client.InfluxDBClientFactory;
 import com.influxdb.client.InfluxDBClientOptions;
 import com.influxdb.client.QueryApi;
 import com.influxdb.client.WriteApi;
+import com.influxdb.client.WriteApiBlocking;
 import com.influxdb.client.domain.Ready;
 import com.influxdb.client.domain.WritePrecision;
 import com.influxdb.client.write.Point;
+import com.influxdb.exceptions.BadRequestException;
+import com.influxdb.query.FluxRecord;
 import com.influxdb.query.FluxTable;
 
 /**
@@ -58,6 +63,10 @@ public class InfluxDB2RepositoryImpl implements InfluxDBRepository {
     private QueryApi queryAPI;
     @Nullable
     private WriteApi writeAPI;
+    @Nullable
+    private WriteApiBlocking writeAPIBlocking;
+    @Nullable
+    private InfluxDBSpool spool;
 
     public InfluxDB2RepositoryImpl(InfluxDBConfiguration configuration) {
         this.configuration = configuration;
@@ -91,10 +100,16 @@ public class InfluxDB2RepositoryImpl implements InfluxDBRepository {
         InfluxDBClientOptions clientOptions = optionsBuilder.build();
 
         final InfluxDBClient createdClient = InfluxDBClientFactory.create(clientOptions);
+        closeSpool();
+        // the spool batches points itself and keeps them on disk until they are written
+        writeAPIBlocking = createdClient.getWriteApiBlocking();
+        spool = InfluxDBSpool.start(configuration, this::writeLines);
         this.client = createdClient;
         logger.debug("Succesfully connected to InfluxDB. Instance ready={}", createdClient.ready());
         queryAPI = createdClient.getQueryApi();
-        writeAPI = createdClient.getWriteApi();
+        if (spool == null) {
+            writeAPI = createdClient.getWriteApi();
+        }
         return checkConnectionStatus();
     }
 
@@ -103,6 +118,7 @@ public class InfluxDB2RepositoryImpl implements InfluxDBRepository {
      */
     @Override
     public void disconnect() {
+        closeSpool();
         final InfluxDBClient currentClient = this.client;
         if (currentClient != null) {
             currentClient.close();
@@ -110,6 +126,14 @@ public class InfluxDB2RepositoryImpl implements InfluxDBRepository {
         this.client = null;
     }
 
+    private void closeSpool() {
+        final InfluxDBSpool currentSpool = spool;
+        if (currentSpool != null) {
+            currentSpool.close();
+        }
+        this.spool = null;
+    }
+
     /**
      * Check if connection is currently ready
      *
@@ -140,14 +164,59 @@ public class InfluxDB2RepositoryImpl implements InfluxDBRepository {
      */
     @Override
     public void write(InfluxPoint point) {
+        final InfluxDBSpool currentSpool = spool;
         final WriteApi currentWriteAPI = writeAPI;
-        if (currentWriteAPI != null) {
+        if (currentSpool != null) {
+            currentSpool.append(convertPointToClientFormat(point).toLineProtocol());
+        } else if (currentWriteAPI != null) {
             currentWriteAPI.writePoint(convertPointToClientFormat(point));
         } else {
             logger.warn("Write point {} ignored due to writeAPI isn't present", point);
         }
     }
 
+    @Override
+    public boolean isLineProtocolSupported() {
+        return true;
+    }
+
+    /**
+     * Write point in line protocol to database
+     *
+     * @param line
+     */
+    @Override
+    public void writeLine(String line) {
+        final InfluxDBSpool currentSpool = spool;
+        final WriteApi currentWriteAPI = writeAPI;
+        if (currentSpool != null) {
+            currentSpool.append(line);
+        } else if (currentWriteAPI != null) {
+            currentWriteAPI.writeRecord(WritePrecision.MS, line);
+        } else {
+            logger.warn("Write line {} ignored due to writeAPI isn't present", line);
+        }
+    }
+
+    @Override
+    public long getPendingBytes() {
+        final InfluxDBSpool currentSpool = spool;
+        return currentSpool != null ? currentSpool.getPendingBytes() : 0;
+    }
+
+    private void writeLines(List<String> lines) {
+        final WriteApiBlocking currentWriteAPI = writeAPIBlocking;
+        if (currentWriteAPI == null) {
+            throw new IllegalStateException("writeAPI isn't present");
+        }
+        try {
+            currentWriteAPI.writeRecords(WritePrecision.MS, lines);
+        } catch (BadRequestException e) {
+            // retrying won't help, the valid points of the batch have been written
+            logger.warn("InfluxDB rejected points of a batch of {}: {}", lines.size(), e.getMessage());
+        }
+    }
+
     private Point convertPointToClientFormat(InfluxPoint point) {
         Point clientPoint = Point.measurement(point.getMeasurementName()).time(point.getTime(), WritePrecision.MS);
         setPointValue(point.getValue(), clientPoint);
@@ -173,12 +242,21 @@ public class InfluxDB2RepositoryImpl implements InfluxDBRepository {
      * Executes Flux query
      *
      * @param query Query
+     * @param maxRows Maximum number of rows returned by the query
      * @return Query results
      */
     @Override
-    public List<InfluxRow> query(String query) {
+    public Iterable<InfluxRow> query(String query, int maxRows) {
         final QueryApi currentQueryAPI = queryAPI;
         if (currentQueryAPI != null) {
+            int chunkSize = configuration.getQueryChunkSize();
+            if (chunkSize > 0 && maxRows > chunkSize) {
+                return new InfluxRowStream(chunkSize, sink -> currentQueryAPI.query(query, (cancellable, record) -> {
+                    if (!sink.add(mapRecordToRow(record))) {
+                        cancellable.cancel();
+                    }
+                }, sink::fail, sink::complete));
+            }
             List<FluxTable> clientResult = currentQueryAPI.query(query);
             return convertClientResutToRepository(clientResult);
         } else {
@@ -192,15 +270,17 @@ public class InfluxDB2RepositoryImpl implements InfluxDBRepository {
     }
 
     private Stream<InfluxRow> mapRawResultToHistoric(FluxTable rawRow) {
-        return rawRow.getRecords().stream().map(r -> {
-            String itemName = (String) r.getValueByKey(InfluxDBConstants.TAG_ITEM_NAME);
-            if (itemName == null) { // use measurement name if item is not tagged
-                itemName = r.getMeasurement();
-            }
-            Object value = r.getValueByKey(COLUMN_VALUE_NAME_V2);
-            Instant time = (Instant) r.getValueByKey(COLUMN_TIME_NAME_V2);
-            return new InfluxRow(time, itemName, value);
-        });
+        return rawRow.getRecords().stream().map(this::mapRecordToRow);
+    }
+
+    private InfluxRow mapRecordToRow(FluxRecord r) {
+        String itemName = (String) r.getValueByKey(InfluxDBConstants.TAG_ITEM_NAME);
+        if (itemName == null) { // use measurement name if item is not tagged
+            itemName = r.getMeasurement();
+        }
+        Object value = r.getValueByKey(COLUMN_VALUE_NAME_V2);
+        Instant time = (Instant) r.getValueByKey(COLUMN_TIME_NAME_V2);
+        return new InfluxRow(time, itemName, value);
     }
 
     /**
@@ -13,6 +13,7 @@
 package org.openhab.persistence.influxdb.internal;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.startsWith;
 import static org.mockito.Mockito.*;
 
 import java.util.Map;
@@ -96,6 +97,16 @@ public class InfluxDBPersistenceServiceTest {
         verify(influxDBRepository).write(any());
     }
 
+    @Test
+    public void storeItemAsLineIfSupportedByRepository() {
+        instance.activate(validConfig);
+        when(influxDBRepository.isConnected()).thenReturn(true);
+        when(influxDBRepository.isLineProtocolSupported()).thenReturn(true);
+        instance.store(ItemTestHelper.createNumberItem("number", 5));
+        verify(influxDBRepository).writeLine(startsWith("number,item=number value=5 "));
+        verify(influxDBRepository, never()).write(any());
+    }
+
     @Test
     public void storeItemWithDisconnectedRepositoryIsIgnored() {
         instance.activate(validConfig);
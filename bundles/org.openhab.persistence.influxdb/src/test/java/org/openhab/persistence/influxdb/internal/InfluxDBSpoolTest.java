@@ -0,0 +1,166 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.influxdb.internal;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class InfluxDBSpoolTest {
+
+    private static final long MAX_SIZE = 1024 * 1024;
+
+    public @TempDir @NonNullByDefault({}) Path directory;
+
+    private final List<List<String>> batches = new ArrayList<>();
+    private boolean available = true;
+
+    private InfluxDBSpool createSpool(long maxSize, int batchSize) throws IOException {
+        InfluxDBSpool spool = new InfluxDBSpool(directory, maxSize, InfluxDBSpool.FsyncPolicy.NEVER, batchSize,
+                lines -> {
+                    if (!available) {
+                        throw new IllegalStateException("unavailable");
+                    }
+                    batches.add(new ArrayList<>(lines));
+                });
+        spool.open();
+        return spool;
+    }
+
+    private List<String> written() {
+        List<String> lines = new ArrayList<>();
+        batches.forEach(lines::addAll);
+        return lines;
+    }
+
+    private static String point(int i) {
+        return "item value=" + i + " " + (1600000000000L + i);
+    }
+
+    @Test
+    public void drainWritesPointsInOrderAndInBatches() throws IOException {
+        InfluxDBSpool spool = createSpool(MAX_SIZE, 10);
+        for (int i = 0; i < 25; i++) {
+            spool.append(point(i));
+        }
+
+        assertThat(spool.drain(), is(true));
+
+        assertThat(batches.size(), is(3));
+        assertThat(batches.get(0).size(), is(10));
+        assertThat(written().get(0), is(point(0)));
+        assertThat(written().get(24), is(point(24)));
+        assertThat(spool.getPendingBytes(), is(0L));
+        spool.close();
+    }
+
+    @Test
+    public void pointsAreKeptWhileDatabaseIsUnavailable() throws IOException {
+        InfluxDBSpool spool = createSpool(MAX_SIZE, 10);
+        available = false;
+        for (int i = 0; i < 5; i++) {
+            spool.append(point(i));
+        }
+
+        assertThat(spool.drain(), is(false));
+        assertThat(written(), is(empty()));
+
+        available = true;
+        spool.append(point(5));
+        assertThat(spool.drain(), is(true));
+
+        assertThat(written().size(), is(6));
+        assertThat(written().get(5), is(point(5)));
+        spool.close();
+    }
+
+    @Test
+    public void pointsAreRecoveredAfterRestart() throws IOException {
+        available = false;
+        InfluxDBSpool spool = createSpool(MAX_SIZE, 10);
+        for (int i = 0; i < 5; i++) {
+            spool.append(point(i));
+        }
+        assertThat(spool.drain(), is(false));
+        spool.close();
+
+        available = true;
+        InfluxDBSpool restarted = createSpool(MAX_SIZE, 10);
+        restarted.append(point(5));
+        assertThat(restarted.drain(), is(true));
+
+        assertThat(written().size(), is(6));
+        assertThat(written().get(0), is(point(0)));
+        assertThat(written().get(5), is(point(5)));
+        restarted.close();
+    }
+
+    @Test
+    public void incompleteLastPointIsCutOff() throws IOException {
+        Files.write(directory.resolve("segment-00000000000000000000.lp"),
+                (point(0) + "\n" + "item val").getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE);
+
+        InfluxDBSpool spool = createSpool(MAX_SIZE, 10);
+        assertThat(spool.drain(), is(true));
+
+        assertThat(written(), contains(point(0)));
+        spool.close();
+    }
+
+    @Test
+    public void oldestPointsAreDroppedWhenFull() throws IOException {
+        available = false;
+        InfluxDBSpool spool = createSpool(4096, 100);
+        for (int i = 0; i < 1000; i++) {
+            spool.append(point(i));
+        }
+
+        assertThat(spool.getPendingBytes(), is(lessThanOrEqualTo(4096L)));
+        assertThat(spool.getDroppedSegmentCount(), is(greaterThan(0L)));
+
+        available = true;
+        assertThat(spool.drain(), is(true));
+        List<String> written = written();
+        assertThat(written.get(written.size() - 1), is(point(999)));
+        assertThat(written, not(hasItem(point(0))));
+        spool.close();
+    }
+
+    @Test
+    public void pointsAppendedAfterCloseAreCounted() throws IOException {
+        InfluxDBSpool spool = createSpool(MAX_SIZE, 10);
+        spool.close();
+
+        spool.append(point(0));
+        spool.append(point(1));
+
+        assertThat(spool.getDroppedAfterCloseCount(), is(2L));
+        assertThat(spool.getAppendedCount(), is(0L));
+        assertThat(spool.getPendingBytes(), is(0L));
+    }
+}
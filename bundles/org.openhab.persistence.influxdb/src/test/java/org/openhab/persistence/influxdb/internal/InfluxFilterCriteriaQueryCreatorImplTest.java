@@ -201,4 +201,49 @@ public class InfluxFilterCriteriaQueryCreatorImplTest {
         assertThat(queryV2, equalTo("from(bucket:\"origin\")\n\t" + "|> range(start:-100y)\n\t"
                 + "|> filter(fn: (r) => r[\"_measurement\"] == \"sampleItem\")"));
     }
+
+    @Test
+    public void testAggregationQuery() {
+        FilterCriteria criteria = createBaseCriteria();
+        ZonedDateTime now = ZonedDateTime.now();
+        ZonedDateTime tomorrow = now.plus(1, ChronoUnit.DAYS);
+        criteria.setBeginDate(now);
+        criteria.setEndDate(tomorrow);
+
+        String queryV1 = instanceV1.createAggregationQuery(criteria, RETENTION_POLICY, Aggregation.MEAN, 3600);
+        String expectedQueryV1 = String.format(
+                "SELECT mean(\"value\") AS \"value\" FROM origin.sampleItem WHERE time >= '%s' AND time <= '%s'"
+                        + " GROUP BY time(3600s),item fill(none);",
+                now.toInstant(), tomorrow.toInstant());
+        assertThat(queryV1, equalTo(expectedQueryV1));
+
+        String queryV2 = instanceV2.createAggregationQuery(criteria, RETENTION_POLICY, Aggregation.MEAN, 3600);
+        String expectedQueryV2 = String.format("from(bucket:\"origin\")\n\t" + "|> range(start:%s, stop:%s)\n\t"
+                + "|> filter(fn: (r) => r[\"_measurement\"] == \"sampleItem\")\n\t"
+                + "|> filter(fn: (r) => r[\"_field\"] == \"value\")\n\t"
+                + "|> aggregateWindow(every:3600s, fn:mean, timeSrc:\"_start\", createEmpty:false)",
+                INFLUX2_DATE_FORMATTER.format(now.toInstant()), INFLUX2_DATE_FORMATTER.format(tomorrow.toInstant()));
+        assertThat(queryV2, equalTo(expectedQueryV2));
+    }
+
+    @Test
+    public void testAggregationQueryWithMeasurementNameAndOrdering() {
+        FilterCriteria criteria = createBaseCriteria();
+        criteria.setOrdering(FilterCriteria.Ordering.DESCENDING);
+        MetadataKey metadataKey = new MetadataKey(InfluxDBPersistenceService.SERVICE_NAME, "sampleItem");
+        when(metadataRegistry.get(metadataKey)).thenReturn(new Metadata(metadataKey, "measurementName", Map.of()));
+
+        String queryV1 = instanceV1.createAggregationQuery(criteria, RETENTION_POLICY, Aggregation.MAX, 60);
+        assertThat(queryV1, equalTo("SELECT max(\"value\") AS \"value\" FROM origin.measurementName"
+                + " WHERE item = 'sampleItem' GROUP BY time(60s),item fill(none) ORDER BY time DESC;"));
+
+        String queryV2 = instanceV2.createAggregationQuery(criteria, RETENTION_POLICY, Aggregation.MAX, 60);
+        assertThat(queryV2,
+                equalTo("from(bucket:\"origin\")\n\t" + "|> range(start:-100y)\n\t"
+                        + "|> filter(fn: (r) => r[\"_measurement\"] == \"measurementName\")\n\t"
+                        + "|> filter(fn: (r) => r[\"item\"] == \"sampleItem\")\n\t"
+                        + "|> filter(fn: (r) => r[\"_field\"] == \"value\")\n\t"
+                        + "|> aggregateWindow(every:60s, fn:max, timeSrc:\"_start\", createEmpty:false)\n\t"
+                        + "|> sort(desc:true, columns:[\"_time\"])"));
+    }
 }
@@ -0,0 +1,86 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.influxdb.internal;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class InfluxRowStreamTest {
+
+    private static InfluxRow row(int i) {
+        return new InfluxRow(Instant.ofEpochSecond(i), "item", i);
+    }
+
+    @Test
+    public void rowsAreReadUntilComplete() {
+        InfluxRowStream stream = new InfluxRowStream(2, sink -> CompletableFuture.runAsync(() -> {
+            for (int i = 0; i < 10; i++) {
+                if (!sink.add(row(i))) {
+                    return;
+                }
+            }
+            sink.complete();
+        }));
+
+        List<Object> values = new ArrayList<>();
+        stream.forEach(row -> values.add(row.getValue()));
+
+        assertThat(values, contains(0, 1, 2, 3, 4, 5, 6, 7, 8, 9));
+    }
+
+    @Test
+    public void closingTheIteratorCancelsTheQuery() throws Exception {
+        CompletableFuture<Integer> added = new CompletableFuture<>();
+        InfluxRowStream stream = new InfluxRowStream(2, sink -> CompletableFuture.runAsync(() -> {
+            int i = 0;
+            while (sink.add(row(i))) {
+                i++;
+            }
+            added.complete(i);
+        }));
+
+        InfluxRowStream.RowIterator iterator = stream.iterator();
+        assertThat(iterator.next().getValue(), is(0));
+        iterator.close();
+
+        // the producer waiting for space is woken up and told to cancel long before the consumer timeout
+        assertThat(added.get(2, TimeUnit.SECONDS), lessThan(5));
+        assertThat(iterator.hasNext(), is(false));
+    }
+
+    @Test
+    public void failedQueryEndsTheIteration() {
+        InfluxRowStream stream = new InfluxRowStream(2, sink -> CompletableFuture.runAsync(() -> {
+            sink.add(row(0));
+            sink.fail(new IllegalStateException("test"));
+        }));
+
+        List<Object> values = new ArrayList<>();
+        stream.forEach(row -> values.add(row.getValue()));
+
+        assertThat(values, contains(0));
+    }
+}
@@ -167,4 +167,39 @@ public class ItemToStorePointCreatorTest {
         assertThat(point.getMeasurementName(), equalTo(item.getName()));
         assertThat(point.getTags(), hasEntry("item", item.getName()));
     }
+
+    @Test
+    public void convertToLineProtocol() {
+        NumberItem item = ItemTestHelper.createNumberItem("myitem", 5.5);
+        MetadataKey metadataKey = new MetadataKey(InfluxDBPersistenceService.SERVICE_NAME, item.getName());
+        when(metadataRegistry.get(metadataKey))
+                .thenReturn(new Metadata(metadataKey, "my measurement", Map.of("b key", "x,y", "a", "1=2")));
+
+        String line = instance.convertToLineProtocol(item, null);
+
+        assertThat(line, startsWith("my\\ measurement,a=1\\=2,b\\ key=x\\,y,item=myitem value=5.5 "));
+    }
+
+    @Test
+    public void convertToLineProtocolShouldWriteIntegersAndStrings() {
+        assertThat(InfluxLineProtocol.encode("m", 1, 1000L), is("m value=1i 1000"));
+        assertThat(InfluxLineProtocol.encode("m", new BigDecimal("20.50"), 1000L), is("m value=20.50 1000"));
+        assertThat(InfluxLineProtocol.encode("m", "say \"hi\"", 1000L), is("m value=\"say \\\"hi\\\"\" 1000"));
+        assertThat(InfluxLineProtocol.encode("m", Double.NaN, 1000L), is(nullValue()));
+    }
+
+    @Test
+    public void convertToLineProtocolShouldCacheSeriesUntilInvalidated() {
+        NumberItem item = ItemTestHelper.createNumberItem("myitem", 5);
+        MetadataKey metadataKey = new MetadataKey(InfluxDBPersistenceService.SERVICE_NAME, item.getName());
+
+        assertThat(instance.convertToLineProtocol(item, null), startsWith("myitem,item=myitem value=5 "));
+
+        when(metadataRegistry.get(metadataKey)).thenReturn(new Metadata(metadataKey, "measurementName", Map.of()));
+        assertThat(instance.convertToLineProtocol(item, null), startsWith("myitem,item=myitem value=5 "));
+
+        instance.invalidate(item.getName());
+        assertThat(instance.convertToLineProtocol(item, null), startsWith("measurementName,item=myitem value=5 "));
+        assertThat(instance.convertToLineProtocol(item, "aliasName"), startsWith("measurementName,item=myitem "));
+    }
 }
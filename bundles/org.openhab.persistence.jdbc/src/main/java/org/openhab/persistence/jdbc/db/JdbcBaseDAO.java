@@ -18,10 +18,17 @@ import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import javax.measure.Quantity;
@@ -50,6 +57,7 @@ import org.openhab.core.persistence.FilterCriteria.Ordering;
 import org.openhab.core.persistence.HistoricItem;
 import org.openhab.core.types.State;
 import org.openhab.core.types.TypeParser;
+import org.openhab.persistence.jdbc.dto.Aggregation;
 import org.openhab.persistence.jdbc.dto.ItemVO;
 import org.openhab.persistence.jdbc.dto.ItemsVO;
 import org.openhab.persistence.jdbc.dto.JdbcHistoricItem;
@@ -84,6 +92,15 @@ public class JdbcBaseDAO {
     protected String sqlCreateItemTable;
     protected String sqlInsertItemValue;
 
+    // rows read by one query while iterating over a query result, 0 to read the whole result at once
+    private int fetchSize;
+
+    // SQL of the per item table statements, see cachedSql()
+    private static final int SQL_CACHE_MAX_SIZE = 5000;
+    private final Map<String, String> sqlCache = new ConcurrentHashMap<>();
+    private final AtomicLong sqlCacheHits = new AtomicLong();
+    private final AtomicLong sqlCacheMisses = new AtomicLong();
+
     /********
      * INIT *
      ********/
@@ -312,6 +329,7 @@ public class JdbcBaseDAO {
         if (!vol.isEmpty()) {
             String sql = updateItemTableNamesProvider(vol);
             Yank.execute(sql, null);
+            clearSqlCache();
         }
     }
 
@@ -325,24 +343,70 @@ public class JdbcBaseDAO {
 
     public void doStoreItemValue(Item item, ItemVO vo) {
         ItemVO storedVO = storeItemValueProvider(item, vo);
-        String sql = StringUtilsExt.replaceArrayMerge(sqlInsertItemValue,
-                new String[] { "#tableName#", "#tablePrimaryValue#" },
-                new String[] { storedVO.getTableName(), sqlTypes.get("tablePrimaryValue") });
-        Object[] params = new Object[] { storedVO.getValue(), storedVO.getValue() };
+        String sql = cachedSql(insertItemValueKey(storedVO),
+                () -> StringUtilsExt.replaceArrayMerge(sqlInsertItemValue,
+                        new String[] { "#tableName#", "#tablePrimaryValue#" },
+                        new String[] { storedVO.getTableName(), sqlTypes.get("tablePrimaryValue") }));
+        Object[] params = insertItemValueParameters(storedVO);
         logger.debug("JDBC::doStoreItemValue sql={} value='{}'", sql, storedVO.getValue());
         Yank.execute(sql, params);
     }
 
-    public List<HistoricItem> doGetHistItemFilterQuery(Item item, FilterCriteria filter, int numberDecimalcount,
+    /**
+     * Inserts several values into the same item table with a single JDBC batch. In contrast to
+     * {@link #doStoreItemValue(Item, ItemVO)}, the time of each row is taken from {@link ItemVO#getTime()} instead of
+     * being set by the database.
+     *
+     * @param vos the values to insert, as returned by {@link #prepareItemValue(Item, ItemVO)}
+     */
+    public void doStoreItemValues(List<ItemVO> vos) {
+        if (vos.isEmpty()) {
+            return;
+        }
+        ItemVO first = vos.get(0);
+        String sql = cachedSql("batch#" + insertItemValueKey(first), () -> insertItemValuesProvider(first));
+        Object[][] params = new Object[vos.size()][];
+        for (int i = 0; i < vos.size(); i++) {
+            ItemVO vo = vos.get(i);
+            // the time replaces #tablePrimaryValue#, which precedes the value placeholders
+            Object[] values = insertItemValueParameters(vo);
+            Object[] row = new Object[values.length + 1];
+            row[0] = timestampParameter(vo.getTime());
+            System.arraycopy(values, 0, row, 1, values.length);
+            params[i] = row;
+        }
+        logger.debug("JDBC::doStoreItemValues sql={} rows={}", sql, vos.size());
+        Yank.executeBatch(sql, params);
+    }
+
+    public Iterable<HistoricItem> doGetHistItemFilterQuery(Item item, FilterCriteria filter, int numberDecimalcount,
             String table, String name, ZoneId timeZone) {
-        String sql = histItemFilterQueryProvider(filter, numberDecimalcount, table, name, timeZone);
-        logger.debug("JDBC::doGetHistItemFilterQuery sql={}", sql);
-        List<Object[]> m = Yank.queryObjectArrays(sql, null);
         // we already retrieve the unit here once as it is a very costly operation
         String itemName = item.getName();
         Unit<? extends Quantity<?>> unit = item instanceof NumberItem ? ((NumberItem) item).getUnit() : null;
-        return m.stream().map(o -> new JdbcHistoricItem(itemName, getState(item, unit, o[1]), objectAsDate(o[0])))
-                .collect(Collectors.<HistoricItem> toList());
+        return queryHistItemFilter(filter, numberDecimalcount, table, name, timeZone,
+                o -> new JdbcHistoricItem(itemName, getState(item, unit, o[1]), objectAsDate(o[0])));
+    }
+
+    /**
+     * Queries the values of a number item aggregated by the database into buckets of <code>bucketSeconds</code>, so
+     * that the number of returned rows is bounded by the length of the time range instead of the number of stored
+     * values. Paging of the filter is ignored.
+     */
+    public Iterable<HistoricItem> doGetHistItemAggregateQuery(Item item, FilterCriteria filter, Aggregation aggregation,
+            long bucketSeconds, String table, ZoneId timeZone) {
+        String key = "aggregate#" + table + "#" + aggregation + "#" + bucketSeconds + "#"
+                + (filter.getBeginDate() != null) + "#" + (filter.getEndDate() != null) + "#" + filter.getOrdering();
+        String sql = cachedSql(key, () -> histItemAggregateQueryProvider(filter, aggregation, bucketSeconds, table));
+        Object[] params = timeRangeParameters(filter, timeZone).toArray();
+        logger.debug("JDBC::doGetHistItemAggregateQuery sql={} params={}", sql, Arrays.toString(params));
+        String itemName = item.getName();
+        Unit<? extends Quantity<?>> unit = item instanceof NumberItem ? ((NumberItem) item).getUnit() : null;
+        // one row per bucket, so the result is read at once
+        return Yank.queryObjectArrays(sql, params).stream().map(o -> {
+            State state = aggregation == Aggregation.LAST ? getState(item, unit, o[1]) : getAggregateState(unit, o[1]);
+            return new JdbcHistoricItem(itemName, state, objectAsDate(o[0]));
+        }).collect(Collectors.toList());
     }
 
     /*************
@@ -350,26 +414,41 @@ public class JdbcBaseDAO {
      *************/
     static final DateTimeFormatter JDBC_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
 
+    /**
+     * Builds the query for the given filter. Times and paging are bind parameters, see
+     * {@link #histItemFilterParameters(FilterCriteria, ZoneId)}, so that the statement only depends on the table and the
+     * kind of filter and can be cached.
+     */
     protected String histItemFilterQueryProvider(FilterCriteria filter, int numberDecimalcount, String table,
             String simpleName, ZoneId timeZone) {
-        logger.debug(
-                "JDBC::getHistItemFilterQueryProvider filter = {}, numberDecimalcount = {}, table = {}, simpleName = {}",
-                filter, numberDecimalcount, table, simpleName);
+        return histItemQueryProvider(filter.getBeginDate() != null, filter.getEndDate() != null, filter.getOrdering(),
+                filter.getPageSize() != 0x7fffffff, numberDecimalcount, table, simpleName);
+    }
+
+    /**
+     * Builds a query of the values of an item table. Its bind parameters are, in this order, the lower bound of the
+     * time if <code>lowerBound</code> is set, the upper bound of the time if <code>upperBound</code> is set and the
+     * paging parameters, see {@link #pagingParameters(int, int)}, if <code>paged</code> is set. The bounds are
+     * exclusive.
+     */
+    protected String histItemQueryProvider(boolean lowerBound, boolean upperBound, Ordering ordering, boolean paged,
+            int numberDecimalcount, String table, String simpleName) {
+        logger.debug("JDBC::histItemQueryProvider lowerBound = {}, upperBound = {}, ordering = {}, paged = {}, "
+                + "numberDecimalcount = {}, table = {}, simpleName = {}", lowerBound, upperBound, ordering, paged,
+                numberDecimalcount, table, simpleName);
 
         String filterString = "";
-        if (filter.getBeginDate() != null) {
+        if (lowerBound) {
             filterString += filterString.isEmpty() ? " WHERE" : " AND";
-            filterString += " TIME>'" + JDBC_DATE_FORMAT.format(filter.getBeginDate().withZoneSameInstant(timeZone))
-                    + "'";
+            filterString += " TIME>?";
         }
-        if (filter.getEndDate() != null) {
+        if (upperBound) {
             filterString += filterString.isEmpty() ? " WHERE" : " AND";
-            filterString += " TIME<'" + JDBC_DATE_FORMAT.format(filter.getEndDate().withZoneSameInstant(timeZone))
-                    + "'";
+            filterString += " TIME<?";
         }
-        filterString += (filter.getOrdering() == Ordering.ASCENDING) ? " ORDER BY time ASC" : " ORDER BY time DESC ";
-        if (filter.getPageSize() != 0x7fffffff) {
-            filterString += " LIMIT " + filter.getPageNumber() * filter.getPageSize() + "," + filter.getPageSize();
+        filterString += (ordering == Ordering.ASCENDING) ? " ORDER BY time ASC" : " ORDER BY time DESC ";
+        if (paged) {
+            filterString += " LIMIT ?,?";
         }
         // SELECT time, ROUND(value,3) FROM number_item_0114 ORDER BY time DESC LIMIT 0,1
         // rounding HALF UP
@@ -383,6 +462,112 @@ public class JdbcBaseDAO {
         return queryString;
     }
 
+    /**
+     * Builds the query for {@link #doGetHistItemAggregateQuery(Item, FilterCriteria, Aggregation, long, String, ZoneId)}.
+     * The time range is bound as in {@link #histItemFilterQueryProvider(FilterCriteria, int, String, String, ZoneId)},
+     * the bucket size is part of the statement.
+     */
+    protected String histItemAggregateQueryProvider(FilterCriteria filter, Aggregation aggregation, long bucketSeconds,
+            String table) {
+        String bucket = timeBucketProvider(bucketSeconds);
+        String condition = timeRangeConditionProvider(filter);
+        String order = filter.getOrdering() == Ordering.ASCENDING ? " ASC" : " DESC";
+        String queryString;
+        if (aggregation == Aggregation.LAST) {
+            queryString = "SELECT time, value FROM " + table + " WHERE time IN (SELECT MAX(time) FROM " + table
+                    + condition + " GROUP BY " + bucket + ") ORDER BY time" + order;
+        } else {
+            queryString = "SELECT MIN(time), " + aggregation.name() + "(value) FROM " + table + condition
+                    + " GROUP BY " + bucket + " ORDER BY 1" + order;
+        }
+        logger.debug("JDBC::query queryString = {}", queryString);
+        return queryString;
+    }
+
+    /**
+     * Returns the WHERE clause for the begin and end date of the filter, with the dates as bind parameters.
+     */
+    protected String timeRangeConditionProvider(FilterCriteria filter) {
+        String condition = "";
+        if (filter.getBeginDate() != null) {
+            condition += " WHERE TIME>?";
+        }
+        if (filter.getEndDate() != null) {
+            condition += condition.isEmpty() ? " WHERE" : " AND";
+            condition += " TIME<?";
+        }
+        return condition;
+    }
+
+    /**
+     * Returns an SQL expression numbering the bucket the time column falls into. Buckets are counted from
+     * 1970-01-01 00:00:00 in the time zone of the stored times.
+     */
+    protected String timeBucketProvider(long bucketSeconds) {
+        return "TIMESTAMPDIFF(SECOND, '1970-01-01 00:00:00', time) DIV " + bucketSeconds;
+    }
+
+    /**
+     * Returns the bind parameters of the query built by
+     * {@link #histItemFilterQueryProvider(FilterCriteria, int, String, String, ZoneId)}.
+     */
+    protected Object[] histItemFilterParameters(FilterCriteria filter, ZoneId timeZone) {
+        List<Object> params = timeRangeParameters(filter, timeZone);
+        if (filter.getPageSize() != 0x7fffffff) {
+            params.addAll(Arrays.asList(pagingParameters(filter)));
+        }
+        return params.toArray();
+    }
+
+    /**
+     * Returns the bind parameters of the begin and end date of the filter, see
+     * {@link #timeRangeConditionProvider(FilterCriteria)}.
+     */
+    protected List<Object> timeRangeParameters(FilterCriteria filter, ZoneId timeZone) {
+        List<Object> params = new ArrayList<>(4);
+        ZonedDateTime beginDate = filter.getBeginDate();
+        if (beginDate != null) {
+            params.add(timestampParameter(beginDate.withZoneSameInstant(timeZone)));
+        }
+        ZonedDateTime endDate = filter.getEndDate();
+        if (endDate != null) {
+            params.add(timestampParameter(endDate.withZoneSameInstant(timeZone)));
+        }
+        return params;
+    }
+
+    /**
+     * Returns the bind parameters of the paging clause, in the order they appear in the query.
+     */
+    protected Object[] pagingParameters(FilterCriteria filter) {
+        return pagingParameters(filter.getPageNumber() * filter.getPageSize(), filter.getPageSize());
+    }
+
+    /**
+     * Returns the bind parameters of a paging clause skipping <code>offset</code> rows and returning at most
+     * <code>limit</code> rows.
+     */
+    protected Object[] pagingParameters(int offset, int limit) {
+        return new Object[] { offset, limit };
+    }
+
+    /**
+     * Returns the bind parameters of the value placeholders of {@link #sqlInsertItemValue}, in the order they appear
+     * in the statement. The value is inserted and, if a row with the same time exists, updated.
+     */
+    protected Object[] insertItemValueParameters(ItemVO vo) {
+        return new Object[] { vo.getValue(), vo.getValue() };
+    }
+
+    /**
+     * Builds the statement used by {@link #doStoreItemValues(List)}, i.e. {@link #sqlInsertItemValue} with the time
+     * as first bind parameter.
+     */
+    protected String insertItemValuesProvider(ItemVO vo) {
+        return sqlInsertItemValue.replace("#tableName#", vo.getTableName()).replace("#dbType#", vo.getDbType())
+                .replace("#tablePrimaryValue#", "?");
+    }
+
     private String updateItemTableNamesProvider(List<ItemVO> namesList) {
         logger.debug("JDBC::updateItemTableNamesProvider namesList.size = {}", namesList.size());
         String queryString = "";
@@ -482,9 +667,133 @@ public class JdbcBaseDAO {
         return vo;
     }
 
+    /**
+     * Converts the current state of the item into the value to be stored, without accessing the database.
+     *
+     * @param item the item to convert the state of
+     * @param vo the value object to fill, with the table name already set
+     * @return the filled value object
+     */
+    public ItemVO prepareItemValue(Item item, ItemVO vo) {
+        return storeItemValueProvider(item, vo);
+    }
+
     /*****************
      * H E L P E R S *
      *****************/
+    /**
+     * Returns the SQL for the given key, building it only if it is not yet cached. The key has to contain everything
+     * the SQL depends on, usually the kind of statement and the item table. As the SQL does not change from call to
+     * call, the driver and the database can reuse the prepared statement.
+     */
+    protected String cachedSql(String key, Supplier<String> builder) {
+        String sql = sqlCache.get(key);
+        if (sql != null) {
+            sqlCacheHits.incrementAndGet();
+            return sql;
+        }
+        sqlCacheMisses.incrementAndGet();
+        sql = builder.get();
+        if (sqlCache.size() >= SQL_CACHE_MAX_SIZE) {
+            logger.debug("JDBC::cachedSql: cache size limit {} reached, clearing", SQL_CACHE_MAX_SIZE);
+            sqlCache.clear();
+        }
+        sqlCache.put(key, sql);
+        return sql;
+    }
+
+    /**
+     * Removes all cached SQL, e.g. after the sqlTypes or the table names changed.
+     */
+    public void clearSqlCache() {
+        sqlCache.clear();
+    }
+
+    protected String insertItemValueKey(ItemVO vo) {
+        return "insert#" + vo.getTableName() + "#" + vo.getDbType();
+    }
+
+    /**
+     * Runs the query built by {@link #histItemFilterQueryProvider(FilterCriteria, int, String, String, ZoneId)},
+     * taking the SQL from the cache if possible. If a fetch size is set and the filter asks for more rows, the rows are
+     * read in chunks while iterating over the result, otherwise they are all read before returning.
+     */
+    protected Iterable<HistoricItem> queryHistItemFilter(FilterCriteria filter, int numberDecimalcount, String table,
+            String name, ZoneId timeZone, Function<Object[], HistoricItem> rowMapper) {
+        if (fetchSize > 0 && filter.getPageSize() > fetchSize) {
+            return new JdbcResultIterable<>(
+                    (after, offset, limit) -> queryHistItemChunk(filter, numberDecimalcount, table, name, timeZone,
+                            after, offset, limit),
+                    filter.getPageNumber() * filter.getPageSize(), filter.getPageSize(), fetchSize, rowMapper);
+        }
+        String sql = cachedSql(
+                histItemQueryKey(filter.getBeginDate() != null, filter.getEndDate() != null, filter.getOrdering(),
+                        filter.getPageSize() != 0x7fffffff, numberDecimalcount, table, name),
+                () -> histItemFilterQueryProvider(filter, numberDecimalcount, table, name, timeZone));
+        Object[] params = histItemFilterParameters(filter, timeZone);
+        logger.debug("JDBC::doGetHistItemFilterQuery sql={} params={}", sql, Arrays.toString(params));
+        return Yank.queryObjectArrays(sql, params).stream().map(rowMapper).collect(Collectors.toList());
+    }
+
+    /**
+     * Reads a chunk of a streamed query result on a connection of its own. Rows are continued after the time of the
+     * last row read, so that the result is not affected by values inserted meanwhile and no rows are skipped.
+     */
+    private List<Object[]> queryHistItemChunk(FilterCriteria filter, int numberDecimalcount, String table, String name,
+            ZoneId timeZone, @Nullable Object after, int offset, int limit) {
+        Ordering ordering = filter.getOrdering();
+        ZonedDateTime beginDate = filter.getBeginDate();
+        ZonedDateTime endDate = filter.getEndDate();
+        @Nullable
+        Object lower = beginDate == null ? null : timestampParameter(beginDate.withZoneSameInstant(timeZone));
+        @Nullable
+        Object upper = endDate == null ? null : timestampParameter(endDate.withZoneSameInstant(timeZone));
+        if (after != null) {
+            // the last row read is within the bounds of the filter, so its time replaces the bound it continues from
+            if (ordering == Ordering.ASCENDING) {
+                lower = after;
+            } else {
+                upper = after;
+            }
+        }
+        List<Object> params = new ArrayList<>(4);
+        if (lower != null) {
+            params.add(lower);
+        }
+        if (upper != null) {
+            params.add(upper);
+        }
+        params.addAll(Arrays.asList(pagingParameters(offset, limit)));
+        boolean lowerBound = lower != null;
+        boolean upperBound = upper != null;
+        String sql = cachedSql(
+                histItemQueryKey(lowerBound, upperBound, ordering, true, numberDecimalcount, table, name),
+                () -> histItemQueryProvider(lowerBound, upperBound, ordering, true, numberDecimalcount, table, name));
+        logger.debug("JDBC::queryHistItemChunk sql={} params={}", sql, params);
+        return Yank.queryObjectArrays(sql, params.toArray());
+    }
+
+    private String histItemQueryKey(boolean lowerBound, boolean upperBound, Ordering ordering, boolean paged,
+            int numberDecimalcount, String table, String name) {
+        return "query#" + table + "#" + lowerBound + "#" + upperBound + "#" + ordering + "#" + paged + "#"
+                + ("NUMBERITEM".equalsIgnoreCase(name) ? numberDecimalcount : -1);
+    }
+
+    /**
+     * Converts the time of a row into the bind parameter for the time column.
+     */
+    protected Object timestampParameter(Date time) {
+        return new Timestamp(time.getTime());
+    }
+
+    /**
+     * Converts a time of a query filter into the bind parameter compared with the time column. The local date and
+     * time are kept, so the column is compared in the configured time zone.
+     */
+    protected Object timestampParameter(ZonedDateTime time) {
+        return Timestamp.valueOf(time.toLocalDateTime());
+    }
+
     protected State getState(Item item, @Nullable Unit<? extends Quantity<?>> unit, Object v) {
         logger.debug(
                 "JDBC::ItemResultHandler::handleResult getState value = '{}', unit = '{}', getClass = '{}', clazz = '{}'",
@@ -517,6 +826,14 @@ public class JdbcBaseDAO {
         }
     }
 
+    /**
+     * Converts an aggregated value, whose type depends on the database and the aggregate function, into a state.
+     */
+    protected State getAggregateState(@Nullable Unit<? extends Quantity<?>> unit, Object v) {
+        double value = v instanceof Number ? ((Number) v).doubleValue() : Double.parseDouble(v.toString());
+        return unit == null ? new DecimalType(value) : QuantityType.valueOf(value, unit);
+    }
+
     protected ZonedDateTime objectAsDate(Object v) {
         if (v instanceof java.lang.String) {
             return ZonedDateTime.ofInstant(Timestamp.valueOf(v.toString()).toInstant(), ZoneId.systemDefault());
@@ -587,4 +904,24 @@ public class JdbcBaseDAO {
     public String getDataType(Item item) {
         return sqlTypes.get(getItemType(item));
     }
+
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    public void setFetchSize(int fetchSize) {
+        this.fetchSize = fetchSize;
+    }
+
+    public long getSqlCacheHits() {
+        return sqlCacheHits.get();
+    }
+
+    public long getSqlCacheMisses() {
+        return sqlCacheMisses.get();
+    }
+
+    public int getSqlCacheSize() {
+        return sqlCache.size();
+    }
 }
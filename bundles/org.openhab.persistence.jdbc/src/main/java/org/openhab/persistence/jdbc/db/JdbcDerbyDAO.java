@@ -13,8 +13,6 @@
 package org.openhab.persistence.jdbc.db;
 
 import java.time.ZoneId;
-import java.util.List;
-import java.util.stream.Collectors;
 
 import javax.measure.Quantity;
 import javax.measure.Unit;
@@ -25,6 +23,7 @@ import org.openhab.core.library.items.NumberItem;
 import org.openhab.core.persistence.FilterCriteria;
 import org.openhab.core.persistence.FilterCriteria.Ordering;
 import org.openhab.core.persistence.HistoricItem;
+import org.openhab.persistence.jdbc.dto.Aggregation;
 import org.openhab.persistence.jdbc.dto.ItemVO;
 import org.openhab.persistence.jdbc.dto.ItemsVO;
 import org.openhab.persistence.jdbc.dto.JdbcHistoricItem;
@@ -149,28 +148,38 @@ public class JdbcDerbyDAO extends JdbcBaseDAO {
 
     @Override
     public void doStoreItemValue(Item item, ItemVO vo) {
-        vo = storeItemValueProvider(item, vo);
-        String sql = StringUtilsExt.replaceArrayMerge(sqlInsertItemValue,
-                new String[] { "#tableName#", "#dbType#", "#tablePrimaryValue#" },
-                new String[] { vo.getTableName().toUpperCase(), vo.getDbType(), sqlTypes.get("tablePrimaryValue") });
-        Object[] params = new Object[] { vo.getValue() };
-        logger.debug("JDBC::doStoreItemValue sql={} value='{}'", sql, vo.getValue());
+        ItemVO storedVO = storeItemValueProvider(item, vo);
+        String sql = cachedSql(insertItemValueKey(storedVO),
+                () -> StringUtilsExt.replaceArrayMerge(sqlInsertItemValue,
+                        new String[] { "#tableName#", "#dbType#", "#tablePrimaryValue#" },
+                        new String[] { storedVO.getTableName().toUpperCase(), storedVO.getDbType(),
+                                sqlTypes.get("tablePrimaryValue") }));
+        Object[] params = insertItemValueParameters(storedVO);
+        logger.debug("JDBC::doStoreItemValue sql={} value='{}'", sql, storedVO.getValue());
         Yank.execute(sql, params);
     }
 
     @Override
-    public List<HistoricItem> doGetHistItemFilterQuery(Item item, FilterCriteria filter, int numberDecimalcount,
+    protected Object[] insertItemValueParameters(ItemVO vo) {
+        return new Object[] { vo.getValue() };
+    }
+
+    @Override
+    protected String insertItemValuesProvider(ItemVO vo) {
+        return sqlInsertItemValue.replace("#tableName#", vo.getTableName().toUpperCase())
+                .replace("#dbType#", vo.getDbType()).replace("#tablePrimaryValue#", "?");
+    }
+
+    @Override
+    public Iterable<HistoricItem> doGetHistItemFilterQuery(Item item, FilterCriteria filter, int numberDecimalcount,
             String table, String name, ZoneId timeZone) {
-        String sql = histItemFilterQueryProvider(filter, numberDecimalcount, table, name, timeZone);
-        List<Object[]> m = Yank.queryObjectArrays(sql, null);
-        logger.debug("JDBC::doGetHistItemFilterQuery got Array length={}", m.size());
         // we already retrieve the unit here once as it is a very costly operation
         String itemName = item.getName();
         Unit<? extends Quantity<?>> unit = item instanceof NumberItem ? ((NumberItem) item).getUnit() : null;
-        return m.stream().map(o -> {
+        return queryHistItemFilter(filter, numberDecimalcount, table, name, timeZone, o -> {
             logger.debug("JDBC::doGetHistItemFilterQuery 0='{}' 1='{}'", o[0], o[1]);
             return new JdbcHistoricItem(itemName, getState(item, unit, o[1]), objectAsDate(o[0]));
-        }).collect(Collectors.<HistoricItem> toList());
+        });
     }
 
     /****************************
@@ -178,25 +187,34 @@ public class JdbcDerbyDAO extends JdbcBaseDAO {
      ****************************/
 
     @Override
-    protected String histItemFilterQueryProvider(FilterCriteria filter, int numberDecimalcount, String table,
-            String simpleName, ZoneId timeZone) {
-        logger.debug(
-                "JDBC::getHistItemFilterQueryProvider filter = {}, numberDecimalcount = {}, table = {}, simpleName = {}",
-                StringUtilsExt.filterToString(filter), numberDecimalcount, table, simpleName);
+    protected String histItemAggregateQueryProvider(FilterCriteria filter, Aggregation aggregation, long bucketSeconds,
+            String table) {
+        return super.histItemAggregateQueryProvider(filter, aggregation, bucketSeconds, table.toUpperCase());
+    }
+
+    @Override
+    protected String timeBucketProvider(long bucketSeconds) {
+        return "{fn TIMESTAMPDIFF(SQL_TSI_SECOND, TIMESTAMP('1970-01-01 00:00:00'), time)} / " + bucketSeconds;
+    }
+
+    @Override
+    protected String histItemQueryProvider(boolean lowerBound, boolean upperBound, Ordering ordering, boolean paged,
+            int numberDecimalcount, String table, String simpleName) {
+        logger.debug("JDBC::histItemQueryProvider lowerBound = {}, upperBound = {}, ordering = {}, paged = {}, "
+                + "numberDecimalcount = {}, table = {}, simpleName = {}", lowerBound, upperBound, ordering, paged,
+                numberDecimalcount, table, simpleName);
 
         String filterString = "";
-        if (filter.getBeginDate() != null) {
+        if (lowerBound) {
             filterString += filterString.isEmpty() ? " WHERE" : " AND";
-            filterString += " TIME>'" + JDBC_DATE_FORMAT.format(filter.getBeginDate().withZoneSameInstant(timeZone))
-                    + "'";
+            filterString += " TIME>?";
         }
-        if (filter.getEndDate() != null) {
+        if (upperBound) {
             filterString += filterString.isEmpty() ? " WHERE" : " AND";
-            filterString += " TIME<'" + JDBC_DATE_FORMAT.format(filter.getEndDate().withZoneSameInstant(timeZone))
-                    + "'";
+            filterString += " TIME<?";
         }
-        filterString += (filter.getOrdering() == Ordering.ASCENDING) ? " ORDER BY time ASC" : " ORDER BY time DESC";
-        if (filter.getPageSize() != 0x7fffffff) {
+        filterString += (ordering == Ordering.ASCENDING) ? " ORDER BY time ASC" : " ORDER BY time DESC";
+        if (paged) {
             // TODO: TESTING!!!
             // filterString += " LIMIT " + filter.getPageNumber() *
             // filter.getPageSize() + "," + filter.getPageSize();
@@ -205,8 +223,7 @@ public class JdbcDerbyDAO extends JdbcBaseDAO {
             // filterString += " OFFSET " + filter.getPageSize() +" ROWS FETCH
             // FIRST||NEXT " + filter.getPageNumber() * filter.getPageSize() + "
             // ROWS ONLY";
-            filterString += " OFFSET " + filter.getPageSize() + " ROWS FETCH FIRST "
-                    + (filter.getPageNumber() * filter.getPageSize() + 1) + " ROWS ONLY";
+            filterString += " OFFSET ? ROWS FETCH FIRST ? ROWS ONLY";
         }
 
         // http://www.seemoredata.com/en/showthread.php?132-Round-function-in-Apache-Derby
@@ -233,6 +250,11 @@ public class JdbcDerbyDAO extends JdbcBaseDAO {
         return queryString;
     }
 
+    @Override
+    protected Object[] pagingParameters(FilterCriteria filter) {
+        return new Object[] { filter.getPageSize(), filter.getPageNumber() * filter.getPageSize() + 1 };
+    }
+
     /*****************
      * H E L P E R S *
      *****************/
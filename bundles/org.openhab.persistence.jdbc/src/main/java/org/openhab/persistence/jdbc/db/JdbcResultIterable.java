@@ -0,0 +1,111 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.jdbc.db;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * The rows of a query, read from the database in chunks of <code>chunkSize</code> rows while iterating instead of
+ * being loaded into memory at once.
+ *
+ * Every chunk is a query of its own, continuing after the time of the last row read. No connection is held between
+ * two chunks, so an iterator that is not read to the end does not need to be closed.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class JdbcResultIterable<T> implements Iterable<T> {
+
+    /**
+     * Reads a chunk of rows.
+     */
+    @FunctionalInterface
+    public interface ChunkQuery {
+        /**
+         * @param after the time column of the last row read, or null for the first chunk
+         * @param offset the number of rows to skip
+         * @param limit the maximum number of rows to return
+         * @return the rows, in the order of the query
+         */
+        List<Object[]> query(@Nullable Object after, int offset, int limit);
+    }
+
+    private final ChunkQuery query;
+    private final int offset;
+    private final int limit;
+    private final int chunkSize;
+    private final Function<Object[], T> rowMapper;
+
+    /**
+     * @param query reads a chunk of rows
+     * @param offset the number of rows to skip before the first row
+     * @param limit the maximum number of rows to return
+     * @param chunkSize the maximum number of rows read by one query
+     * @param rowMapper converts the columns of a row into an element
+     */
+    public JdbcResultIterable(ChunkQuery query, int offset, int limit, int chunkSize,
+            Function<Object[], T> rowMapper) {
+        this.query = query;
+        this.offset = offset;
+        this.limit = limit;
+        this.chunkSize = chunkSize;
+        this.rowMapper = rowMapper;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new ChunkIterator();
+    }
+
+    private class ChunkIterator implements Iterator<T> {
+        private Iterator<Object[]> rows = Collections.emptyIterator();
+        private @Nullable Object after;
+        private int returned;
+        private boolean first = true;
+        private boolean last;
+
+        @Override
+        public boolean hasNext() {
+            if (rows.hasNext()) {
+                return true;
+            }
+            if (last || returned >= limit) {
+                return false;
+            }
+            int size = Math.min(chunkSize, limit - returned);
+            List<Object[]> chunk = query.query(after, first ? offset : 0, size);
+            first = false;
+            last = chunk.size() < size;
+            rows = chunk.iterator();
+            return rows.hasNext();
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Object[] row = rows.next();
+            after = row[0];
+            returned++;
+            return rowMapper.apply(row);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.jdbc.dto;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+
+/**
+ * The function used to combine all values of a time bucket into one value in aggregated queries.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public enum Aggregation {
+    /** the average of the values, timestamped with the first value of the bucket */
+    AVG,
+    /** the lowest value, timestamped with the first value of the bucket */
+    MIN,
+    /** the highest value, timestamped with the first value of the bucket */
+    MAX,
+    /** the last value of the bucket with its original timestamp */
+    LAST
+}
@@ -22,6 +22,7 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.openhab.persistence.jdbc.db.JdbcBaseDAO;
+import org.openhab.persistence.jdbc.dto.Aggregation;
 import org.openhab.persistence.jdbc.utils.MovingAverage;
 import org.openhab.persistence.jdbc.utils.StringUtilsExt;
 import org.slf4j.Logger;
@@ -60,6 +61,13 @@ public class JdbcConfiguration {
 
     private int errReconnectThreshold = 0;
 
+    private int writeQueueSize = 0;
+    private int writeBatchSize = 100;
+    private int writeMaxLatency = 1000;
+    private int queryFetchSize = 0;
+    private int queryMaxPoints = 0;
+    private Aggregation queryAggregation = Aggregation.AVG;
+
     public int timerCount = 0;
     public int time1000Statements = 0;
     public long timer1000 = 0;
@@ -173,6 +181,47 @@ public class JdbcConfiguration {
             logger.debug("JDBC::updateConfig: rebuildTableNames={}", rebuildTableNames);
         }
 
+        String wq = (String) configuration.get("writeQueueSize");
+        if (wq != null && !wq.isBlank() && isNumericPattern.matcher(wq).matches()) {
+            writeQueueSize = Integer.parseInt(wq);
+            logger.debug("JDBC::updateConfig: writeQueueSize={}", writeQueueSize);
+        }
+
+        String wb = (String) configuration.get("writeBatchSize");
+        if (wb != null && !wb.isBlank() && isNumericPattern.matcher(wb).matches()) {
+            writeBatchSize = Integer.parseInt(wb);
+            logger.debug("JDBC::updateConfig: writeBatchSize={}", writeBatchSize);
+        }
+
+        String wl = (String) configuration.get("writeMaxLatency");
+        if (wl != null && !wl.isBlank() && isNumericPattern.matcher(wl).matches()) {
+            writeMaxLatency = Integer.parseInt(wl);
+            logger.debug("JDBC::updateConfig: writeMaxLatency={}", writeMaxLatency);
+        }
+
+        String qf = (String) configuration.get("queryFetchSize");
+        if (qf != null && !qf.isBlank() && isNumericPattern.matcher(qf).matches()) {
+            queryFetchSize = Integer.parseInt(qf);
+            logger.debug("JDBC::updateConfig: queryFetchSize={}", queryFetchSize);
+        }
+        dBDAO.setFetchSize(queryFetchSize);
+
+        String qm = (String) configuration.get("queryMaxPoints");
+        if (qm != null && !qm.isBlank() && isNumericPattern.matcher(qm).matches()) {
+            queryMaxPoints = Integer.parseInt(qm);
+            logger.debug("JDBC::updateConfig: queryMaxPoints={}", queryMaxPoints);
+        }
+
+        String qa = (String) configuration.get("queryAggregation");
+        if (qa != null && !qa.isBlank()) {
+            try {
+                queryAggregation = Aggregation.valueOf(qa.trim().toUpperCase());
+                logger.debug("JDBC::updateConfig: queryAggregation={}", queryAggregation);
+            } catch (IllegalArgumentException e) {
+                logger.warn("JDBC::updateConfig: unknown queryAggregation '{}', using {}", qa, queryAggregation);
+            }
+        }
+
         // undocumented
         String ac = (String) configuration.get("maximumPoolSize");
         if (ac != null && !ac.isBlank()) {
@@ -358,6 +407,30 @@ public class JdbcConfiguration {
         return tableIdDigitCount;
     }
 
+    public int getWriteQueueSize() {
+        return writeQueueSize;
+    }
+
+    public int getWriteBatchSize() {
+        return writeBatchSize;
+    }
+
+    public int getWriteMaxLatency() {
+        return writeMaxLatency;
+    }
+
+    public int getQueryFetchSize() {
+        return queryFetchSize;
+    }
+
+    public int getQueryMaxPoints() {
+        return queryMaxPoints;
+    }
+
+    public Aggregation getQueryAggregation() {
+        return queryAggregation;
+    }
+
     public JdbcBaseDAO getDBDAO() {
         return dBDAO;
     }
@@ -381,6 +454,7 @@ public class JdbcConfiguration {
         dBDAO.initAfterFirstDbConnection();
         // Running once again to prior external configured SqlTypes!
         setSqlTypes();
+        dBDAO.clearSqlCache();
         this.dbConnected = dbConnected;
     }
 
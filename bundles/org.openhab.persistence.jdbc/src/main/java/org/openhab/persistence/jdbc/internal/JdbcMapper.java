@@ -13,10 +13,12 @@
 package org.openhab.persistence.jdbc.internal;
 
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import org.knowm.yank.Yank;
@@ -25,6 +27,7 @@ import org.openhab.core.items.Item;
 import org.openhab.core.persistence.FilterCriteria;
 import org.openhab.core.persistence.HistoricItem;
 import org.openhab.core.persistence.PersistenceItemInfo;
+import org.openhab.persistence.jdbc.dto.Aggregation;
 import org.openhab.persistence.jdbc.dto.ItemVO;
 import org.openhab.persistence.jdbc.dto.ItemsVO;
 import org.openhab.persistence.jdbc.dto.JdbcPersistenceItemInfo;
@@ -46,6 +49,7 @@ public class JdbcMapper {
     protected boolean initialized = false;
     protected JdbcConfiguration conf = null;
     protected final Map<String, String> sqlTables = new HashMap<>();
+    private final Map<String, Long> lastQueuedTimes = new ConcurrentHashMap<>();
     private long afterAccessMin = 10000;
     private long afterAccessMax = 0;
     private static final String ITEM_NAME_PATTERN = "[^a-zA-Z_0-9\\-]";
@@ -159,15 +163,49 @@ public class JdbcMapper {
         return item;
     }
 
-    public List<HistoricItem> getHistItemFilterQuery(FilterCriteria filter, int numberDecimalcount, String table,
-            Item item) {
+    /**
+     * Converts the current state of the item into a value that can be inserted later on by
+     * {@link #storeItemValues(List)}.
+     *
+     * @param item the item to store
+     * @return the value including table name and time, or <code>null</code> if no table could be determined
+     */
+    public ItemVO prepareItemValue(Item item) {
+        String tableName = getTable(item);
+        if (tableName == null) {
+            logger.error("JDBC::store: Unable to store item '{}'.", item.getName());
+            return null;
+        }
+        ItemVO vo = conf.getDBDAO().prepareItemValue(item, new ItemVO(tableName, null));
+        // the time is the primary key, so make sure that values queued in the same millisecond do not collide
+        long now = System.currentTimeMillis();
+        long time = lastQueuedTimes.merge(tableName, now, (last, current) -> current > last ? current : last + 1);
+        vo.setTime(new Date(time));
+        return vo;
+    }
+
+    /**
+     * Inserts values of the same item table as one batch.
+     *
+     * @param vos the values as returned by {@link #prepareItemValue(Item)}
+     */
+    public void storeItemValues(List<ItemVO> vos) {
+        logger.debug("JDBC::storeItemValues: {} values", vos.size());
+        long timerStart = System.currentTimeMillis();
+        conf.getDBDAO().doStoreItemValues(vos);
+        logTime("storeItemValues", timerStart, System.currentTimeMillis());
+        errCnt = 0;
+    }
+
+    public Iterable<HistoricItem> getHistItemFilterQuery(FilterCriteria filter, int numberDecimalcount,
+            String table, Item item) {
         logger.debug(
                 "JDBC::getHistItemFilterQuery filter='{}' numberDecimalcount='{}' table='{}' item='{}' itemName='{}'",
                 (filter != null), numberDecimalcount, table, item, item.getName());
         if (table != null) {
             long timerStart = System.currentTimeMillis();
-            List<HistoricItem> result = conf.getDBDAO().doGetHistItemFilterQuery(item, filter, numberDecimalcount,
-                    table, item.getName(), timeZoneProvider.getTimeZone());
+            Iterable<HistoricItem> result = conf.getDBDAO().doGetHistItemFilterQuery(item, filter,
+                    numberDecimalcount, table, item.getName(), timeZoneProvider.getTimeZone());
             logTime("getHistItemFilterQuery", timerStart, System.currentTimeMillis());
             errCnt = 0;
             return result;
@@ -177,6 +215,18 @@ public class JdbcMapper {
         return null;
     }
 
+    public Iterable<HistoricItem> getHistItemAggregateQuery(FilterCriteria filter, Aggregation aggregation,
+            long bucketSeconds, String table, Item item) {
+        logger.debug("JDBC::getHistItemAggregateQuery aggregation='{}' bucketSeconds='{}' table='{}' itemName='{}'",
+                aggregation, bucketSeconds, table, item.getName());
+        long timerStart = System.currentTimeMillis();
+        Iterable<HistoricItem> result = conf.getDBDAO().doGetHistItemAggregateQuery(item, filter, aggregation,
+                bucketSeconds, table, timeZoneProvider.getTimeZone());
+        logTime("getHistItemAggregateQuery", timerStart, System.currentTimeMillis());
+        errCnt = 0;
+        return result;
+    }
+
     /***********************
      * DATABASE CONNECTION *
      ***********************/
@@ -412,10 +462,11 @@ public class JdbcMapper {
                 conf.timerCount = 0;
             }
             logger.info(
-                    "JDBC::logTime: '{}':\n afterAccess     = {} ms\n timeAverage50  = {} ms\n timeAverage100 = {} ms\n timeAverage200 = {} ms\n afterAccessMin  = {} ms\n afterAccessMax  = {} ms\n 1000Statements = {} sec\n statementCount = {}\n",
+                    "JDBC::logTime: '{}':\n afterAccess     = {} ms\n timeAverage50  = {} ms\n timeAverage100 = {} ms\n timeAverage200 = {} ms\n afterAccessMin  = {} ms\n afterAccessMax  = {} ms\n 1000Statements = {} sec\n statementCount = {}\n sqlCacheHits   = {}\n sqlCacheMisses = {}\n",
                     me, timerDiff, conf.timeAverage50arr.getAverageInteger(),
                     conf.timeAverage100arr.getAverageInteger(), conf.timeAverage200arr.getAverageInteger(),
-                    afterAccessMin, afterAccessMax, conf.time1000Statements, conf.timerCount);
+                    afterAccessMin, afterAccessMax, conf.time1000Statements, conf.timerCount,
+                    conf.getDBDAO().getSqlCacheHits(), conf.getDBDAO().getSqlCacheMisses());
         }
     }
 }
@@ -12,6 +12,9 @@
  */
 package org.openhab.persistence.jdbc.internal;
 
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -25,6 +28,7 @@ import org.openhab.core.items.GroupItem;
 import org.openhab.core.items.Item;
 import org.openhab.core.items.ItemNotFoundException;
 import org.openhab.core.items.ItemRegistry;
+import org.openhab.core.library.items.NumberItem;
 import org.openhab.core.persistence.FilterCriteria;
 import org.openhab.core.persistence.HistoricItem;
 import org.openhab.core.persistence.PersistenceItemInfo;
@@ -32,6 +36,8 @@ import org.openhab.core.persistence.PersistenceService;
 import org.openhab.core.persistence.QueryablePersistenceService;
 import org.openhab.core.persistence.strategy.PersistenceStrategy;
 import org.openhab.core.types.UnDefType;
+import org.openhab.io.metrics.AddonMeters;
+import org.openhab.persistence.jdbc.dto.ItemVO;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Constants;
 import org.osgi.service.component.annotations.Activate;
@@ -60,6 +66,9 @@ public class JdbcPersistenceService extends JdbcMapper implements QueryablePersi
 
     private final ItemRegistry itemRegistry;
 
+    private volatile @Nullable JdbcWriteQueue writeQueue;
+    private @Nullable AddonMeters meters;
+
     @Activate
     public JdbcPersistenceService(final @Reference ItemRegistry itemRegistry,
             final @Reference TimeZoneProvider timeZoneProvider) {
@@ -81,6 +90,7 @@ public class JdbcPersistenceService extends JdbcMapper implements QueryablePersi
     public void activate(BundleContext bundleContext, Map<Object, Object> configuration) {
         logger.debug("JDBC::activate: persistence service activated");
         updateConfig(configuration);
+        meters = registerMeters();
     }
 
     /**
@@ -104,7 +114,13 @@ public class JdbcPersistenceService extends JdbcMapper implements QueryablePersi
     public void deactivate(final int reason) {
         logger.debug("JDBC::deactivate:  persistence bundle stopping. Disconnecting from database. reason={}", reason);
         // closeConnection();
+        stopWriteQueue();
         initialized = false;
+        AddonMeters meters = this.meters;
+        if (meters != null) {
+            this.meters = null;
+            meters.close();
+        }
     }
 
     @Override
@@ -140,7 +156,20 @@ public class JdbcPersistenceService extends JdbcMapper implements QueryablePersi
             return;
         }
         long timerStart = System.currentTimeMillis();
+        long meterStart = System.nanoTime();
+        JdbcWriteQueue writeQueue = this.writeQueue;
+        if (writeQueue != null) {
+            ItemVO vo = prepareItemValue(item);
+            if (vo != null) {
+                writeQueue.add(vo);
+                recordMeter("store", meterStart);
+                logger.debug("JDBC: Queued item '{}' as '{}' for SQL database in {} ms.", item.getName(),
+                        item.getState(), System.currentTimeMillis() - timerStart);
+            }
+            return;
+        }
         storeItemValue(item);
+        recordMeter("store", meterStart);
         logger.debug("JDBC: Stored item '{}' as '{}' in SQL database at {} in {} ms.", item.getName(), item.getState(),
                 new java.util.Date(), System.currentTimeMillis() - timerStart);
     }
@@ -201,11 +230,28 @@ public class JdbcPersistenceService extends JdbcMapper implements QueryablePersi
             table = getTable(item);
         }
 
+        JdbcWriteQueue writeQueue = this.writeQueue;
+        if (writeQueue != null) {
+            // make sure that queued values are part of the result
+            writeQueue.flush();
+        }
+
         long timerStart = System.currentTimeMillis();
-        List<HistoricItem> items = getHistItemFilterQuery(filter, conf.getNumberDecimalcount(), table, item);
+        long meterStart = System.nanoTime();
+        // charts and the REST API query number items without paging, their values are aggregated if configured
+        long bucketSeconds = item instanceof NumberItem ? getBucketSeconds(filter, conf.getQueryMaxPoints()) : 0;
+        Iterable<HistoricItem> items = bucketSeconds > 0
+                ? getHistItemAggregateQuery(filter, conf.getQueryAggregation(), bucketSeconds, table, item)
+                : getHistItemFilterQuery(filter, conf.getNumberDecimalcount(), table, item);
+        recordMeter("query", meterStart);
 
-        logger.debug("JDBC::query: query for {} returned {} rows in {} ms", itemName, items.size(),
-                System.currentTimeMillis() - timerStart);
+        if (items instanceof Collection) {
+            logger.debug("JDBC::query: query for {} returned {} rows in {} ms", itemName,
+                    ((Collection<?>) items).size(), System.currentTimeMillis() - timerStart);
+        } else {
+            logger.debug("JDBC::query: query for {} prepared in {} ms, rows are read while iterating", itemName,
+                    System.currentTimeMillis() - timerStart);
+        }
 
         // Success
         errCnt = 0;
@@ -215,11 +261,17 @@ public class JdbcPersistenceService extends JdbcMapper implements QueryablePersi
     public void updateConfig(Map<Object, Object> configuration) {
         logger.debug("JDBC::updateConfig");
 
+        stopWriteQueue();
         conf = new JdbcConfiguration(configuration);
         if (conf.valid && checkDBAccessability()) {
             checkDBSchema();
             // connection has been established ... initialization completed!
             initialized = true;
+            if (conf.getWriteQueueSize() > 0) {
+                writeQueue = new JdbcWriteQueue(conf.getWriteQueueSize(), conf.getWriteBatchSize(),
+                        conf.getWriteMaxLatency(), this::storeItemValues);
+                logger.debug("JDBC::updateConfig: using write queue of size {}", conf.getWriteQueueSize());
+            }
         } else {
             initialized = false;
         }
@@ -227,6 +279,56 @@ public class JdbcPersistenceService extends JdbcMapper implements QueryablePersi
         logger.debug("JDBC::updateConfig: configuration complete for service={}.", getId());
     }
 
+    /**
+     * Returns the length of the buckets needed to split the time range of the filter into at most
+     * <code>maxPoints</code> buckets, or 0 if the values cannot be aggregated.
+     */
+    private long getBucketSeconds(FilterCriteria filter, int maxPoints) {
+        ZonedDateTime beginDate = filter.getBeginDate();
+        if (beginDate == null || maxPoints <= 0 || filter.getPageSize() != Integer.MAX_VALUE) {
+            return 0;
+        }
+        ZonedDateTime endDate = filter.getEndDate();
+        long range = Duration.between(beginDate, endDate == null ? ZonedDateTime.now() : endDate).getSeconds();
+        if (range <= 0) {
+            return 0;
+        }
+        return Math.max(1, (range + maxPoints - 1) / maxPoints);
+    }
+
+    /**
+     * Registers the store and query latency and the write queue depth with the metrics service, if it is installed.
+     */
+    private @Nullable AddonMeters registerMeters() {
+        try {
+            AddonMeters meters = AddonMeters.forPersistenceService(getId());
+            meters.gauge("queue.depth", () -> {
+                JdbcWriteQueue writeQueue = this.writeQueue;
+                return writeQueue == null ? 0 : writeQueue.getQueueDepth();
+            });
+            return meters;
+        } catch (NoClassDefFoundError e) {
+            logger.debug("JDBC::registerMeters: metrics service not installed, no meters registered");
+            return null;
+        }
+    }
+
+    private void recordMeter(String operation, long startNanos) {
+        AddonMeters meters = this.meters;
+        if (meters != null) {
+            meters.record(operation, startNanos);
+        }
+    }
+
+    private void stopWriteQueue() {
+        JdbcWriteQueue writeQueue = this.writeQueue;
+        if (writeQueue != null) {
+            this.writeQueue = null;
+            writeQueue.shutdown();
+            logger.debug("JDBC::stopWriteQueue: write queue stopped, {}", writeQueue);
+        }
+    }
+
     @Override
     public List<PersistenceStrategy> getDefaultStrategies() {
         return List.of(PersistenceStrategy.Globals.CHANGE);
@@ -0,0 +1,323 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.jdbc.internal;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.openhab.core.common.NamedThreadFactory;
+import org.openhab.persistence.jdbc.dto.ItemVO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded queue of item values waiting to be inserted. Values are grouped by item table and written as JDBC batches
+ * of at most <code>batchSize</code> rows, either when enough values are pending or after <code>maxLatency</code>
+ * milliseconds at the latest.
+ *
+ * If the queue is full, the storing thread writes the pending values itself. This slows down the producer instead of
+ * dropping values.
+ *
+ * A batch that fails is kept and retried after an exponential backoff, up to {@link #MAX_ATTEMPTS} times. The backoff
+ * only applies to the table of the batch, the other tables are still written. While the database is unavailable, at
+ * most <code>capacity</code> values are kept for retrying, older batches are dropped first.
+ * Dropped values are logged and counted.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class JdbcWriteQueue {
+    static final int MAX_ATTEMPTS = 10;
+
+    private static final long MIN_BACKOFF_MILLIS = 1000;
+    private static final long MAX_BACKOFF_MILLIS = 60000;
+
+    private final Logger logger = LoggerFactory.getLogger(JdbcWriteQueue.class);
+
+    private static class Batch {
+        private final String tableName;
+        private final List<ItemVO> values;
+        private int attempts;
+
+        private Batch(String tableName, List<ItemVO> values) {
+            this.tableName = tableName;
+            this.values = values;
+        }
+    }
+
+    private static class Backoff {
+        private long millis;
+        private long resumeAt;
+    }
+
+    private final BlockingQueue<ItemVO> queue;
+    private final int capacity;
+    private final int batchSize;
+    private final Consumer<List<ItemVO>> writer;
+    private final LongSupplier clock;
+    private final ScheduledExecutorService scheduler = Executors
+            .newSingleThreadScheduledExecutor(new NamedThreadFactory("jdbc-writer"));
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    // batches taken from the queue and not written yet, failed batches first. Guarded by this.
+    private final Deque<Batch> batches = new ArrayDeque<>();
+    private int retainedCount;
+    // tables whose last batch failed, by name. Guarded by this.
+    private final Map<String, Backoff> backoffs = new HashMap<>();
+
+    private final AtomicLong queuedCount = new AtomicLong();
+    private final AtomicLong writtenCount = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong backPressureCount = new AtomicLong();
+    private final AtomicLong retryCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private volatile int maxQueueDepth;
+
+    /**
+     * Creates and starts a write queue.
+     *
+     * @param capacity the maximum number of pending values
+     * @param batchSize the maximum number of rows per batch
+     * @param maxLatency the maximum time in milliseconds a value stays in the queue
+     * @param writer inserts a list of values belonging to the same item table
+     */
+    public JdbcWriteQueue(int capacity, int batchSize, int maxLatency, Consumer<List<ItemVO>> writer) {
+        this(capacity, batchSize, maxLatency, writer, System::currentTimeMillis);
+    }
+
+    JdbcWriteQueue(int capacity, int batchSize, int maxLatency, Consumer<List<ItemVO>> writer, LongSupplier clock) {
+        this.clock = clock;
+        this.capacity = Math.max(1, capacity);
+        this.queue = new ArrayBlockingQueue<>(this.capacity);
+        this.batchSize = Math.max(1, batchSize);
+        this.writer = writer;
+        long interval = Math.max(1, maxLatency);
+        scheduler.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Adds a value to the queue.
+     *
+     * @param vo the value to insert, with table name and time set
+     */
+    public void add(ItemVO vo) {
+        if (!queue.offer(vo)) {
+            backPressureCount.incrementAndGet();
+            logger.debug("JDBC::JdbcWriteQueue: queue is full, writing pending values on the storing thread");
+            flush();
+            if (!queue.offer(vo)) {
+                // filled up again by other threads, keep the value for the next flush
+                queuedCount.incrementAndGet();
+                synchronized (this) {
+                    batches.addLast(new Batch(vo.getTableName(), new ArrayList<>(List.of(vo))));
+                    retainedCount++;
+                    trimRetained();
+                }
+                return;
+            }
+        }
+        queuedCount.incrementAndGet();
+        int depth = queue.size();
+        if (depth > maxQueueDepth) {
+            maxQueueDepth = depth;
+        }
+        if (depth >= batchSize && flushScheduled.compareAndSet(false, true)) {
+            try {
+                scheduler.execute(() -> {
+                    flushScheduled.set(false);
+                    flush();
+                });
+            } catch (RejectedExecutionException e) {
+                // shutting down, pending values are written by shutdown()
+                flushScheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * Writes all pending values, except those of tables backing off after a failed batch.
+     */
+    public void flush() {
+        flush(false);
+    }
+
+    private synchronized void flush(boolean shutdown) {
+        List<ItemVO> pending = new ArrayList<>();
+        queue.drainTo(pending);
+        Map<String, List<ItemVO>> byTable = new LinkedHashMap<>();
+        for (ItemVO vo : pending) {
+            byTable.computeIfAbsent(vo.getTableName(), t -> new ArrayList<>()).add(vo);
+        }
+        byTable.forEach((tableName, tableValues) -> {
+            for (int i = 0; i < tableValues.size(); i += batchSize) {
+                int end = Math.min(i + batchSize, tableValues.size());
+                batches.addLast(new Batch(tableName, new ArrayList<>(tableValues.subList(i, end))));
+                retainedCount += end - i;
+            }
+        });
+
+        long now = clock.getAsLong();
+        long written = 0;
+        // tables with a batch failing in this flush, their later batches are not written to keep the order
+        Set<String> failed = new HashSet<>();
+        Iterator<Batch> iterator = batches.iterator();
+        while (iterator.hasNext()) {
+            Batch batch = iterator.next();
+            String tableName = batch.tableName;
+            boolean skip = failed.contains(tableName) || (!shutdown && isBackingOff(tableName, now));
+            if (!skip && write(batch)) {
+                backoffs.remove(tableName);
+                written += batch.values.size();
+            } else if (shutdown) {
+                failed.add(tableName);
+                drop(batch.values.size(), "at shutdown");
+            } else if (batch.attempts >= MAX_ATTEMPTS) {
+                failed.add(tableName);
+                drop(batch.values.size(), "after " + batch.attempts + " attempts");
+            } else {
+                if (!skip) {
+                    failed.add(tableName);
+                    backOff(tableName, now);
+                }
+                continue;
+            }
+            iterator.remove();
+            retainedCount -= batch.values.size();
+        }
+        trimRetained();
+        if (written > 0) {
+            logger.debug("JDBC::JdbcWriteQueue: wrote {} values, {}", written, this);
+        }
+    }
+
+    /**
+     * Writes all pending values and stops the background writer.
+     */
+    public void shutdown() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush(true);
+    }
+
+    /**
+     * Writes a batch.
+     *
+     * @return true if the batch is written, false if it failed
+     */
+    private boolean write(Batch batch) {
+        try {
+            writer.accept(batch.values);
+            writtenCount.addAndGet(batch.values.size());
+            batchCount.incrementAndGet();
+            return true;
+        } catch (RuntimeException e) {
+            batch.attempts++;
+            if (batch.attempts < MAX_ATTEMPTS) {
+                retryCount.incrementAndGet();
+            }
+            logger.warn("JDBC::JdbcWriteQueue: failed to write {} values to table '{}' (attempt {}): {}",
+                    batch.values.size(), batch.tableName, batch.attempts, e.getMessage());
+            return false;
+        }
+    }
+
+    private boolean isBackingOff(String tableName, long now) {
+        Backoff backoff = backoffs.get(tableName);
+        return backoff != null && now < backoff.resumeAt;
+    }
+
+    private void backOff(String tableName, long now) {
+        Backoff backoff = backoffs.computeIfAbsent(tableName, t -> new Backoff());
+        backoff.millis = backoff.millis == 0 ? MIN_BACKOFF_MILLIS : Math.min(MAX_BACKOFF_MILLIS, backoff.millis * 2);
+        backoff.resumeAt = now + backoff.millis;
+    }
+
+    /**
+     * Drops the oldest batches while more than <code>capacity</code> values are kept for retrying.
+     */
+    private void trimRetained() {
+        while (retainedCount > capacity && batches.size() > 1) {
+            Batch oldest = batches.removeFirst();
+            retainedCount -= oldest.values.size();
+            drop(oldest.values.size(), "as the write queue is full");
+        }
+    }
+
+    private void drop(int count, String reason) {
+        if (count > 0) {
+            droppedCount.addAndGet(count);
+            logger.warn("JDBC::JdbcWriteQueue: dropping {} values {}", count, reason);
+        }
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    public long getQueuedCount() {
+        return queuedCount.get();
+    }
+
+    public long getWrittenCount() {
+        return writtenCount.get();
+    }
+
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    public long getBackPressureCount() {
+        return backPressureCount.get();
+    }
+
+    public long getRetryCount() {
+        return retryCount.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "queueDepth=" + getQueueDepth() + ", maxQueueDepth=" + maxQueueDepth + ", queued=" + getQueuedCount()
+                + ", written=" + getWrittenCount() + ", batches=" + getBatchCount() + ", backPressure="
+                + getBackPressureCount() + ", retries=" + getRetryCount() + ", dropped=" + getDroppedCount();
+    }
+}
@@ -0,0 +1,184 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.jdbc.internal;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+import org.openhab.persistence.jdbc.dto.ItemVO;
+
+/**
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class JdbcWriteQueueTest {
+
+    private static final int NO_LATENCY_FLUSH = 3600000;
+
+    private final AtomicLong now = new AtomicLong(1000000);
+    private final Set<String> unavailableTables = new HashSet<>();
+    private final List<String> writes = new ArrayList<>();
+    private int failures;
+
+    private void write(List<ItemVO> values) {
+        String tableName = values.get(0).getTableName();
+        if (unavailableTables.contains(tableName)) {
+            failures++;
+            throw new IllegalStateException("table " + tableName + " is locked");
+        }
+        writes.add(tableName + ":" + values.size());
+    }
+
+    private JdbcWriteQueue queue(int capacity, int batchSize) {
+        return new JdbcWriteQueue(capacity, batchSize, NO_LATENCY_FLUSH, this::write, now::get);
+    }
+
+    private static ItemVO value(String tableName) {
+        return new ItemVO(tableName, null);
+    }
+
+    @Test
+    public void valuesAreWrittenInBatchesPerTable() {
+        JdbcWriteQueue queue = queue(10, 2);
+        for (int i = 0; i < 3; i++) {
+            queue.add(value("item1"));
+        }
+        queue.add(value("item2"));
+        queue.flush();
+        queue.shutdown();
+
+        assertThat(writes, contains("item1:2", "item1:1", "item2:1"));
+        assertThat(queue.getWrittenCount(), is(4L));
+        assertThat(queue.getBatchCount(), is(3L));
+        assertThat(queue.getDroppedCount(), is(0L));
+    }
+
+    @Test
+    public void failedBatchIsRetriedAfterBackoff() {
+        JdbcWriteQueue queue = queue(10, 10);
+        unavailableTables.add("item1");
+        queue.add(value("item1"));
+        queue.flush();
+        assertThat(failures, is(1));
+        assertThat(queue.getRetryCount(), is(1L));
+
+        // still backing off
+        unavailableTables.clear();
+        now.addAndGet(999);
+        queue.flush();
+        assertThat(writes, is(empty()));
+
+        now.addAndGet(1);
+        queue.flush();
+        assertThat(writes, contains("item1:1"));
+        assertThat(queue.getDroppedCount(), is(0L));
+        queue.shutdown();
+    }
+
+    @Test
+    public void backoffDoublesWithEveryFailure() {
+        JdbcWriteQueue queue = queue(10, 10);
+        unavailableTables.add("item1");
+        queue.add(value("item1"));
+        queue.flush();
+        now.addAndGet(1000);
+        queue.flush();
+        assertThat(failures, is(2));
+
+        now.addAndGet(1999);
+        queue.flush();
+        assertThat(failures, is(2));
+        now.addAndGet(1);
+        queue.flush();
+        assertThat(failures, is(3));
+        queue.shutdown();
+    }
+
+    @Test
+    public void backoffOnlyDelaysTheFailingTable() {
+        JdbcWriteQueue queue = queue(10, 10);
+        unavailableTables.add("item1");
+        queue.add(value("item1"));
+        queue.add(value("item2"));
+        queue.flush();
+        assertThat(writes, contains("item2:1"));
+
+        queue.add(value("item1"));
+        queue.add(value("item2"));
+        queue.flush();
+        assertThat(writes, contains("item2:1", "item2:1"));
+        assertThat(failures, is(1));
+
+        // the retained batches of the table are written in order once it is available again
+        unavailableTables.clear();
+        now.addAndGet(1000);
+        queue.flush();
+        assertThat(writes, contains("item2:1", "item2:1", "item1:1", "item1:1"));
+        queue.shutdown();
+    }
+
+    @Test
+    public void batchIsDroppedAfterMaxAttempts() {
+        JdbcWriteQueue queue = queue(10, 10);
+        unavailableTables.add("item1");
+        queue.add(value("item1"));
+        queue.add(value("item1"));
+        for (int i = 0; i < JdbcWriteQueue.MAX_ATTEMPTS; i++) {
+            queue.flush();
+            now.addAndGet(60000);
+        }
+
+        assertThat(failures, is(JdbcWriteQueue.MAX_ATTEMPTS));
+        assertThat(queue.getRetryCount(), is((long) JdbcWriteQueue.MAX_ATTEMPTS - 1));
+        assertThat(queue.getDroppedCount(), is(2L));
+        queue.flush();
+        assertThat(failures, is(JdbcWriteQueue.MAX_ATTEMPTS));
+        queue.shutdown();
+    }
+
+    @Test
+    public void oldestValuesAreDroppedWhenRetainingMoreThanCapacity() {
+        JdbcWriteQueue queue = queue(2, 10);
+        unavailableTables.add("item1");
+        queue.add(value("item1"));
+        queue.flush();
+        for (int i = 0; i < 4; i++) {
+            queue.add(value("item1"));
+        }
+
+        assertThat(queue.getBackPressureCount(), is(1L));
+        assertThat(queue.getDroppedCount(), is(1L));
+        assertThat(queue.getQueueDepth(), is(2));
+    }
+
+    @Test
+    public void pendingValuesAreDroppedAtShutdownIfWritingFails() {
+        JdbcWriteQueue queue = queue(10, 10);
+        unavailableTables.add("item1");
+        queue.add(value("item1"));
+        queue.add(value("item2"));
+        queue.add(value("item1"));
+        queue.shutdown();
+
+        assertThat(writes, contains("item2:1"));
+        assertThat(queue.getDroppedCount(), is(2L));
+    }
+}
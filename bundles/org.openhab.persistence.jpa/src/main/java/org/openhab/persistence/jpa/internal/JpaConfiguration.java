@@ -32,6 +32,9 @@ public class JpaConfiguration {
     private static final String CFG_USERNAME = "user";
     private static final String CFG_PASSWORD = "password";
     private static final String CFG_SYNCMAPPING = "syncmappings";
+    private static final String CFG_WRITE_QUEUE_SIZE = "writeQueueSize";
+    private static final String CFG_WRITE_BATCH_SIZE = "writeBatchSize";
+    private static final String CFG_WRITE_MAX_LATENCY = "writeMaxLatency";
 
     public static boolean isInitialized = false;
 
@@ -40,6 +43,9 @@ public class JpaConfiguration {
     public final String dbUserName;
     public final String dbPassword;
     public final String dbSyncMapping;
+    public final int writeQueueSize;
+    public final int writeBatchSize;
+    public final int writeMaxLatency;
 
     public JpaConfiguration(final Map<String, Object> properties) {
         logger.debug("Update config...");
@@ -77,7 +83,27 @@ public class JpaConfiguration {
         }
         dbSyncMapping = (String) properties.get(CFG_SYNCMAPPING);
 
+        writeQueueSize = getIntValue(properties, CFG_WRITE_QUEUE_SIZE, 0);
+        writeBatchSize = getIntValue(properties, CFG_WRITE_BATCH_SIZE, 100);
+        writeMaxLatency = getIntValue(properties, CFG_WRITE_MAX_LATENCY, 1000);
+        logger.debug("writeQueueSize: {}, writeBatchSize: {}, writeMaxLatency: {}", writeQueueSize, writeBatchSize,
+                writeMaxLatency);
+
         isInitialized = true;
         logger.debug("Update config... done");
     }
+
+    private int getIntValue(final Map<String, Object> properties, String key, int defaultValue) {
+        Object value = properties.get(key);
+        if (value instanceof Number) {
+            return ((Number) value).intValue();
+        } else if (value instanceof String && !((String) value).isBlank()) {
+            try {
+                return Integer.parseInt(((String) value).trim());
+            } catch (NumberFormatException e) {
+                logger.warn("Invalid value '{}' for {} in jpa.cfg, using {}", value, key, defaultValue);
+            }
+        }
+        return defaultValue;
+    }
 }
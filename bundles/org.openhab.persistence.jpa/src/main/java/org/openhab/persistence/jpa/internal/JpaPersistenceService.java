@@ -12,6 +12,11 @@
  */
 package org.openhab.persistence.jpa.internal;
 
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -23,8 +28,9 @@ import java.util.Set;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.Persistence;
-import javax.persistence.Query;
+import javax.persistence.TypedQuery;
 
+import org.apache.openjpa.persistence.OpenJPAPersistence;
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
 import org.openhab.core.items.Item;
@@ -38,6 +44,7 @@ import org.openhab.core.persistence.PersistenceService;
 import org.openhab.core.persistence.QueryablePersistenceService;
 import org.openhab.core.persistence.strategy.PersistenceStrategy;
 import org.openhab.core.types.UnDefType;
+import org.openhab.io.metrics.AddonMeters;
 import org.openhab.persistence.jpa.internal.model.JpaPersistentItem;
 import org.osgi.framework.BundleContext;
 import org.osgi.service.component.annotations.Activate;
@@ -57,6 +64,9 @@ import org.slf4j.LoggerFactory;
 @Component(service = { PersistenceService.class,
         QueryablePersistenceService.class }, configurationPid = "org.openhab.jpa", configurationPolicy = ConfigurationPolicy.REQUIRE)
 public class JpaPersistenceService implements QueryablePersistenceService {
+    private static final String TABLE_NAME = "HISTORIC_ITEM";
+    private static final String INDEX_NAME = "HISTORIC_ITEM_NAME_TIME";
+
     private final Logger logger = LoggerFactory.getLogger(JpaPersistenceService.class);
 
     private final ItemRegistry itemRegistry;
@@ -65,6 +75,9 @@ public class JpaPersistenceService implements QueryablePersistenceService {
 
     private @NonNullByDefault({}) JpaConfiguration config;
 
+    private volatile @Nullable JpaWriteQueue writeQueue;
+    private @Nullable AddonMeters meters;
+
     @Activate
     public JpaPersistenceService(final @Reference ItemRegistry itemRegistry) {
         this.itemRegistry = itemRegistry;
@@ -86,6 +99,12 @@ public class JpaPersistenceService implements QueryablePersistenceService {
     public void activate(BundleContext context, Map<String, Object> properties) {
         logger.debug("Activating jpa persistence service");
         config = new JpaConfiguration(properties);
+        if (config.writeQueueSize > 0) {
+            writeQueue = new JpaWriteQueue(config.writeQueueSize, config.writeBatchSize, config.writeMaxLatency,
+                    this::persist);
+            logger.debug("Using write queue of size {}", config.writeQueueSize);
+        }
+        meters = registerMeters();
     }
 
     /**
@@ -94,9 +113,44 @@ public class JpaPersistenceService implements QueryablePersistenceService {
     @Deactivate
     public void deactivate() {
         logger.debug("Deactivating jpa persistence service");
+        JpaWriteQueue writeQueue = this.writeQueue;
+        if (writeQueue != null) {
+            this.writeQueue = null;
+            writeQueue.shutdown();
+            logger.debug("Write queue stopped, {}", writeQueue);
+        }
+        AddonMeters meters = this.meters;
+        if (meters != null) {
+            this.meters = null;
+            meters.close();
+        }
         closeEntityManagerFactory();
     }
 
+    /**
+     * Registers the store and query latency and the write queue depth with the metrics service, if it is installed.
+     */
+    private @Nullable AddonMeters registerMeters() {
+        try {
+            AddonMeters meters = AddonMeters.forPersistenceService(getId());
+            meters.gauge("queue.depth", () -> {
+                JpaWriteQueue writeQueue = this.writeQueue;
+                return writeQueue == null ? 0 : writeQueue.getQueueDepth();
+            });
+            return meters;
+        } catch (NoClassDefFoundError e) {
+            logger.debug("Metrics service not installed, no meters registered");
+            return null;
+        }
+    }
+
+    private void recordMeter(String operation, long startNanos) {
+        AddonMeters meters = this.meters;
+        if (meters != null) {
+            meters.record(operation, startNanos);
+        }
+    }
+
     @Override
     public String getId() {
         return "jpa";
@@ -126,6 +180,7 @@ public class JpaPersistenceService implements QueryablePersistenceService {
             return;
         }
 
+        long meterStart = System.nanoTime();
         // determine item name to be stored
         String name = (alias != null) ? alias : item.getName();
 
@@ -142,22 +197,49 @@ public class JpaPersistenceService implements QueryablePersistenceService {
         pItem.setRealName(item.getName());
         pItem.setTimestamp(new Date());
 
-        EntityManager em = getEntityManagerFactory().createEntityManager();
+        JpaWriteQueue writeQueue = this.writeQueue;
+        if (writeQueue != null) {
+            writeQueue.add(pItem);
+            recordMeter("store", meterStart);
+            logger.debug("Storing item...queued");
+            return;
+        }
+
         try {
             logger.debug("Persisting item...");
+            persist(List.of(pItem));
+            recordMeter("store", meterStart);
+            logger.debug("Persisting item...done");
+        } catch (RuntimeException e) {
+            logger.error("Error on persisting item! Rolled back!", e);
+        }
+
+        logger.debug("Storing item...done");
+    }
+
+    /**
+     * Persists items in a single transaction. The inserts are sent to the database in JDBC batches.
+     *
+     * @param items the items to persist
+     * @throws RuntimeException if the transaction failed and has been rolled back
+     */
+    private void persist(List<JpaPersistentItem> items) {
+        EntityManager em = getEntityManagerFactory().createEntityManager();
+        try {
             // In RESOURCE_LOCAL calls to EntityManager require a begin/commit
             em.getTransaction().begin();
-            em.persist(pItem);
+            for (JpaPersistentItem pItem : items) {
+                em.persist(pItem);
+            }
             em.getTransaction().commit();
-            logger.debug("Persisting item...done");
-        } catch (Exception e) {
-            logger.error("Error on persisting item! Rolling back!", e);
-            em.getTransaction().rollback();
+        } catch (RuntimeException e) {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            throw e;
         } finally {
             em.close();
         }
-
-        logger.debug("Storing item...done");
     }
 
     @Override
@@ -174,8 +256,17 @@ public class JpaPersistenceService implements QueryablePersistenceService {
             return Collections.emptyList();
         }
 
+        long meterStart = System.nanoTime();
+        JpaWriteQueue writeQueue = this.writeQueue;
+        if (writeQueue != null) {
+            writeQueue.flush();
+        }
+
         String itemName = filter.getItemName();
         Item item = getItemFromRegistry(itemName);
+        if (item == null) {
+            return Collections.emptyList();
+        }
 
         String sortOrder;
         if (filter.getOrdering() == Ordering.ASCENDING) {
@@ -206,7 +297,7 @@ public class JpaPersistenceService implements QueryablePersistenceService {
             em.getTransaction().begin();
 
             logger.debug("Creating query...");
-            Query query = em.createQuery(queryString);
+            TypedQuery<JpaPersistentItem> query = em.createQuery(queryString, JpaPersistentItem.class);
             query.setParameter("itemName", item.getName());
             if (hasBeginDate) {
                 query.setParameter("beginDate", Date.from(filter.getBeginDate().toInstant()));
@@ -220,7 +311,6 @@ public class JpaPersistenceService implements QueryablePersistenceService {
             logger.debug("Creating query...done");
 
             logger.debug("Retrieving result list...");
-            @SuppressWarnings("unchecked")
             List<JpaPersistentItem> result = query.getResultList();
             logger.debug("Retrieving result list...done");
 
@@ -228,6 +318,7 @@ public class JpaPersistenceService implements QueryablePersistenceService {
             logger.debug("{}", String.format("Convert to HistoricItem: %d", historicList.size()));
 
             em.getTransaction().commit();
+            recordMeter("query", meterStart);
 
             return historicList;
         } catch (Exception e) {
@@ -264,13 +355,90 @@ public class JpaPersistenceService implements QueryablePersistenceService {
             logger.warn("You are settings openjpa.jdbc.SynchronizeMappings, I hope you know what you're doing!");
             properties.put("openjpa.jdbc.SynchronizeMappings", config.dbSyncMapping);
         }
+        if (config.writeQueueSize > 0) {
+            properties.put("openjpa.jdbc.DBDictionary", "batchLimit=" + Math.max(1, config.writeBatchSize));
+        }
 
         EntityManagerFactory fac = Persistence.createEntityManagerFactory(getPersistenceUnitName(), properties);
         logger.debug("Creating EntityManagerFactory...done");
 
+        createIndex(fac);
+
         return fac;
     }
 
+    /**
+     * Creates an index on the item name and timestamp columns that are used by every query, if it does not exist
+     * yet. JPA 1.0/2.0 mappings cannot declare multi column indexes, so the index is created with the column names
+     * found in the database.
+     *
+     * @param fac the EntityManagerFactory, whose first EntityManager creates the table if needed
+     */
+    private void createIndex(EntityManagerFactory fac) {
+        EntityManager em = fac.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            Connection connection = (Connection) OpenJPAPersistence.cast(em).getConnection();
+            try {
+                DatabaseMetaData metaData = connection.getMetaData();
+                String schema = null;
+                String table = null;
+                try (ResultSet tables = metaData.getTables(null, null, "%", new String[] { "TABLE" })) {
+                    while (table == null && tables.next()) {
+                        if (TABLE_NAME.equalsIgnoreCase(tables.getString("TABLE_NAME"))) {
+                            schema = tables.getString("TABLE_SCHEM");
+                            table = tables.getString("TABLE_NAME");
+                        }
+                    }
+                }
+                if (table == null) {
+                    logger.debug("Table {} not found, not creating index", TABLE_NAME);
+                    return;
+                }
+                try (ResultSet indexes = metaData.getIndexInfo(null, schema, table, false, true)) {
+                    while (indexes.next()) {
+                        if (INDEX_NAME.equalsIgnoreCase(indexes.getString("INDEX_NAME"))) {
+                            return;
+                        }
+                    }
+                }
+                String nameColumn = null;
+                String timestampColumn = null;
+                try (ResultSet columns = metaData.getColumns(null, schema, table, "%")) {
+                    while (columns.next()) {
+                        String column = columns.getString("COLUMN_NAME");
+                        if ("realName".equalsIgnoreCase(column)) {
+                            nameColumn = column;
+                        } else if (column.toLowerCase(Locale.ROOT).startsWith("timestamp")) {
+                            // some databases reserve the word, in which case the column name gets a suffix
+                            timestampColumn = column;
+                        }
+                    }
+                }
+                if (nameColumn == null || timestampColumn == null) {
+                    logger.debug("Columns of table {} not found, not creating index", table);
+                    return;
+                }
+                try (Statement statement = connection.createStatement()) {
+                    statement.executeUpdate("CREATE INDEX " + INDEX_NAME + " ON "
+                            + (schema != null ? schema + "." : "") + table + " (" + nameColumn + ", "
+                            + timestampColumn + ")");
+                }
+                logger.info("Created index {} on table {}", INDEX_NAME, table);
+            } finally {
+                connection.close();
+            }
+            em.getTransaction().commit();
+        } catch (SQLException | RuntimeException e) {
+            logger.warn("Failed to create index {}: {}", INDEX_NAME, e.getMessage());
+        } finally {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            em.close();
+        }
+    }
+
     /**
      * Closes EntityManagerFactory
      */
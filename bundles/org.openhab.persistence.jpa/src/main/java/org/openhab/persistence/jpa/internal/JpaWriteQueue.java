@@ -0,0 +1,293 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.jpa.internal;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.openhab.core.common.NamedThreadFactory;
+import org.openhab.persistence.jpa.internal.model.JpaPersistentItem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded queue of items waiting to be persisted. The items are persisted in one transaction per flush, either when
+ * <code>batchSize</code> items are pending or after <code>maxLatency</code> milliseconds at the latest.
+ *
+ * If the queue is full, the storing thread persists the pending items itself. This slows down the producer instead of
+ * dropping items.
+ *
+ * The items of a failed transaction are kept and persisted again after an exponential backoff, up to
+ * {@link #MAX_ATTEMPTS} times. Their ids are reset, as the ids generated by the rolled back transaction are not
+ * valid. While the database is unavailable, at most <code>capacity</code> items are kept for retrying, older
+ * transactions are dropped first. Dropped items are logged and counted.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class JpaWriteQueue {
+    static final int MAX_ATTEMPTS = 10;
+
+    private static final long MIN_BACKOFF_MILLIS = 1000;
+    private static final long MAX_BACKOFF_MILLIS = 60000;
+
+    private final Logger logger = LoggerFactory.getLogger(JpaWriteQueue.class);
+
+    private static class Batch {
+        private final List<JpaPersistentItem> items;
+        private int attempts;
+
+        private Batch(List<JpaPersistentItem> items) {
+            this.items = items;
+        }
+    }
+
+    private final BlockingQueue<JpaPersistentItem> queue;
+    private final int capacity;
+    private final int batchSize;
+    private final Consumer<List<JpaPersistentItem>> writer;
+    private final LongSupplier clock;
+    private final ScheduledExecutorService scheduler = Executors
+            .newSingleThreadScheduledExecutor(new NamedThreadFactory("jpa-writer"));
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    // transactions taken from the queue and not committed yet, failed ones first. Guarded by this.
+    private final Deque<Batch> batches = new ArrayDeque<>();
+    private int retainedCount;
+    private long backoffMillis;
+    private long resumeAt;
+
+    private final AtomicLong queuedCount = new AtomicLong();
+    private final AtomicLong writtenCount = new AtomicLong();
+    private final AtomicLong transactionCount = new AtomicLong();
+    private final AtomicLong backPressureCount = new AtomicLong();
+    private final AtomicLong retryCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private volatile int maxQueueDepth;
+
+    /**
+     * Creates and starts a write queue.
+     *
+     * @param capacity the maximum number of pending items
+     * @param batchSize the number of pending items that triggers a flush
+     * @param maxLatency the maximum time in milliseconds an item stays in the queue
+     * @param writer persists a list of items in a single transaction, rolling it back if it fails
+     */
+    public JpaWriteQueue(int capacity, int batchSize, int maxLatency, Consumer<List<JpaPersistentItem>> writer) {
+        this(capacity, batchSize, maxLatency, writer, System::currentTimeMillis);
+    }
+
+    JpaWriteQueue(int capacity, int batchSize, int maxLatency, Consumer<List<JpaPersistentItem>> writer,
+            LongSupplier clock) {
+        this.clock = clock;
+        this.capacity = Math.max(1, capacity);
+        this.queue = new ArrayBlockingQueue<>(this.capacity);
+        this.batchSize = Math.max(1, batchSize);
+        this.writer = writer;
+        long interval = Math.max(1, maxLatency);
+        scheduler.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Adds an item to the queue.
+     *
+     * @param item the item to persist
+     */
+    public void add(JpaPersistentItem item) {
+        if (!queue.offer(item)) {
+            backPressureCount.incrementAndGet();
+            logger.debug("JPA write queue is full, persisting pending items on the storing thread");
+            flush();
+            if (!queue.offer(item)) {
+                // still full as writing is backing off, keep the item for the next retry
+                queuedCount.incrementAndGet();
+                synchronized (this) {
+                    batches.addLast(new Batch(new ArrayList<>(List.of(item))));
+                    retainedCount++;
+                    trimRetained();
+                }
+                return;
+            }
+        }
+        queuedCount.incrementAndGet();
+        int depth = queue.size();
+        if (depth > maxQueueDepth) {
+            maxQueueDepth = depth;
+        }
+        if (depth >= batchSize && flushScheduled.compareAndSet(false, true)) {
+            try {
+                scheduler.execute(() -> {
+                    flushScheduled.set(false);
+                    flush();
+                });
+            } catch (RejectedExecutionException e) {
+                // shutting down, pending items are persisted by shutdown()
+                flushScheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * Persists all pending items, unless writing is backing off after a failed transaction.
+     */
+    public void flush() {
+        flush(false);
+    }
+
+    private synchronized void flush(boolean shutdown) {
+        if (!shutdown && clock.getAsLong() < resumeAt) {
+            return;
+        }
+        List<JpaPersistentItem> pending = new ArrayList<>();
+        queue.drainTo(pending);
+        if (!pending.isEmpty()) {
+            batches.addLast(new Batch(pending));
+            retainedCount += pending.size();
+        }
+
+        int written = 0;
+        while (!batches.isEmpty()) {
+            Batch batch = batches.peekFirst();
+            if (!write(batch)) {
+                if (shutdown) {
+                    drop(retainedCount, "at shutdown");
+                    batches.clear();
+                    retainedCount = 0;
+                } else {
+                    backOff();
+                }
+                break;
+            }
+            batches.removeFirst();
+            retainedCount -= batch.items.size();
+            written += batch.items.size();
+            backoffMillis = 0;
+        }
+        if (written > 0) {
+            logger.debug("JPA persisted {} items, {}", written, this);
+        }
+    }
+
+    /**
+     * Persists all pending items and stops the background writer.
+     */
+    public void shutdown() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush(true);
+    }
+
+    private boolean write(Batch batch) {
+        try {
+            writer.accept(batch.items);
+            writtenCount.addAndGet(batch.items.size());
+            transactionCount.incrementAndGet();
+            return true;
+        } catch (RuntimeException e) {
+            // the items are persisted again as new entities
+            for (JpaPersistentItem item : batch.items) {
+                item.setId(null);
+            }
+            batch.attempts++;
+            if (batch.attempts >= MAX_ATTEMPTS) {
+                batches.remove(batch);
+                retainedCount -= batch.items.size();
+                drop(batch.items.size(), "after " + batch.attempts + " attempts");
+            } else {
+                retryCount.incrementAndGet();
+            }
+            logger.warn("JPA failed to persist {} items (attempt {}): {}", batch.items.size(), batch.attempts,
+                    e.getMessage());
+            return false;
+        }
+    }
+
+    private void backOff() {
+        backoffMillis = backoffMillis == 0 ? MIN_BACKOFF_MILLIS : Math.min(MAX_BACKOFF_MILLIS, backoffMillis * 2);
+        resumeAt = clock.getAsLong() + backoffMillis;
+        trimRetained();
+    }
+
+    /**
+     * Drops the oldest transactions while more than <code>capacity</code> items are kept for retrying.
+     */
+    private void trimRetained() {
+        while (retainedCount > capacity && batches.size() > 1) {
+            Batch oldest = batches.removeFirst();
+            retainedCount -= oldest.items.size();
+            drop(oldest.items.size(), "as the write queue is full");
+        }
+    }
+
+    private void drop(int count, String reason) {
+        if (count > 0) {
+            droppedCount.addAndGet(count);
+            logger.warn("JPA dropping {} items {}", count, reason);
+        }
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    public long getQueuedCount() {
+        return queuedCount.get();
+    }
+
+    public long getWrittenCount() {
+        return writtenCount.get();
+    }
+
+    public long getTransactionCount() {
+        return transactionCount.get();
+    }
+
+    public long getBackPressureCount() {
+        return backPressureCount.get();
+    }
+
+    public long getRetryCount() {
+        return retryCount.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "queueDepth=" + getQueueDepth() + ", maxQueueDepth=" + maxQueueDepth + ", queued=" + getQueuedCount()
+                + ", written=" + getWrittenCount() + ", transactions=" + getTransactionCount() + ", backPressure="
+                + getBackPressureCount() + ", retries=" + getRetryCount() + ", dropped=" + getDroppedCount();
+    }
+}
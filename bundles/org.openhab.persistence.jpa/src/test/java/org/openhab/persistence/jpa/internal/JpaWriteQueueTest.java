@@ -0,0 +1,168 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.jpa.internal;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+import org.openhab.persistence.jpa.internal.model.JpaPersistentItem;
+
+/**
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class JpaWriteQueueTest {
+
+    private static final int NO_LATENCY_FLUSH = 3600000;
+
+    private final AtomicLong now = new AtomicLong(1000000);
+    private final List<Integer> transactions = new ArrayList<>();
+    private long nextId = 1;
+    private boolean unavailable;
+    private int failures;
+
+    /**
+     * Persists the items like the service does: ids are generated before the commit fails.
+     */
+    private void persist(List<JpaPersistentItem> items) {
+        for (JpaPersistentItem item : items) {
+            assertThat(item.getId(), is(nullValue()));
+            item.setId(nextId++);
+        }
+        if (unavailable) {
+            failures++;
+            throw new IllegalStateException("database is not available");
+        }
+        transactions.add(items.size());
+    }
+
+    private JpaWriteQueue queue(int capacity, int batchSize) {
+        return new JpaWriteQueue(capacity, batchSize, NO_LATENCY_FLUSH, this::persist, now::get);
+    }
+
+    private static JpaPersistentItem item(String name) {
+        JpaPersistentItem item = new JpaPersistentItem();
+        item.setName(name);
+        return item;
+    }
+
+    @Test
+    public void pendingItemsArePersistedInOneTransaction() {
+        JpaWriteQueue queue = queue(10, 10);
+        for (int i = 0; i < 3; i++) {
+            queue.add(item("item" + i));
+        }
+        queue.flush();
+        queue.add(item("item3"));
+        queue.shutdown();
+
+        assertThat(transactions, contains(3, 1));
+        assertThat(queue.getWrittenCount(), is(4L));
+        assertThat(queue.getTransactionCount(), is(2L));
+        assertThat(queue.getDroppedCount(), is(0L));
+    }
+
+    @Test
+    public void itemsOfRolledBackTransactionArePersistedAgainWithNewIds() {
+        JpaWriteQueue queue = queue(10, 10);
+        JpaPersistentItem item = item("item1");
+        unavailable = true;
+        queue.add(item);
+        queue.flush();
+        assertThat(failures, is(1));
+        assertThat(item.getId(), is(nullValue()));
+
+        unavailable = false;
+        now.addAndGet(1000);
+        queue.flush();
+        assertThat(transactions, contains(1));
+        assertThat(item.getId(), is(2L));
+        assertThat(queue.getRetryCount(), is(1L));
+        queue.shutdown();
+    }
+
+    @Test
+    public void writingBacksOffAfterFailedTransaction() {
+        JpaWriteQueue queue = queue(10, 10);
+        unavailable = true;
+        queue.add(item("item1"));
+        queue.flush();
+        now.addAndGet(999);
+        queue.flush();
+        assertThat(failures, is(1));
+
+        now.addAndGet(1);
+        queue.flush();
+        assertThat(failures, is(2));
+
+        // the delay doubles with every failure
+        now.addAndGet(1999);
+        queue.flush();
+        assertThat(failures, is(2));
+        now.addAndGet(1);
+        queue.flush();
+        assertThat(failures, is(3));
+        queue.shutdown();
+    }
+
+    @Test
+    public void transactionIsDroppedAfterMaxAttempts() {
+        JpaWriteQueue queue = queue(10, 10);
+        unavailable = true;
+        queue.add(item("item1"));
+        queue.add(item("item2"));
+        for (int i = 0; i < JpaWriteQueue.MAX_ATTEMPTS; i++) {
+            queue.flush();
+            now.addAndGet(60000);
+        }
+
+        assertThat(failures, is(JpaWriteQueue.MAX_ATTEMPTS));
+        assertThat(queue.getRetryCount(), is((long) JpaWriteQueue.MAX_ATTEMPTS - 1));
+        assertThat(queue.getDroppedCount(), is(2L));
+        queue.flush();
+        assertThat(failures, is(JpaWriteQueue.MAX_ATTEMPTS));
+        queue.shutdown();
+    }
+
+    @Test
+    public void oldestItemsAreDroppedWhenRetainingMoreThanCapacity() {
+        JpaWriteQueue queue = queue(2, 10);
+        unavailable = true;
+        queue.add(item("item1"));
+        queue.flush();
+        for (int i = 0; i < 4; i++) {
+            queue.add(item("item1"));
+        }
+
+        assertThat(queue.getDroppedCount(), is(1L));
+        assertThat(queue.getQueueDepth(), is(2));
+    }
+
+    @Test
+    public void pendingItemsAreDroppedAtShutdownIfWritingFails() {
+        JpaWriteQueue queue = queue(10, 10);
+        unavailable = true;
+        queue.add(item("item1"));
+        queue.add(item("item2"));
+        queue.shutdown();
+
+        assertThat(transactions, is(empty()));
+        assertThat(queue.getDroppedCount(), is(2L));
+    }
+}
@@ -0,0 +1,155 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.mapdb.internal;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Coalesces commit requests: changes only mark the database as dirty, and a single commit is scheduled at most
+ * <code>maxDelay</code> milliseconds later. Changes made while a commit is running are committed by the next one, so
+ * there is never more than one commit in flight.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class MapDbCommitScheduler {
+
+    private final Logger logger = LoggerFactory.getLogger(MapDbCommitScheduler.class);
+
+    private final ScheduledExecutorService scheduler;
+    private final Runnable commit;
+    private final long maxDelay;
+
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong commitCount = new AtomicLong();
+    private final AtomicLong totalCommitNanos = new AtomicLong();
+    private volatile long lastCommitNanos;
+    private volatile long maxCommitNanos;
+
+    /**
+     * @param scheduler the scheduler running the commits
+     * @param commit commits the database
+     * @param maxDelay the maximum time in milliseconds between a change and the start of its commit
+     */
+    public MapDbCommitScheduler(ScheduledExecutorService scheduler, Runnable commit, long maxDelay) {
+        this.scheduler = scheduler;
+        this.commit = commit;
+        this.maxDelay = Math.max(0, maxDelay);
+    }
+
+    /**
+     * Marks the database as changed and makes sure a commit is scheduled.
+     */
+    public void requestCommit() {
+        requestCount.incrementAndGet();
+        dirty.set(true);
+        schedule();
+    }
+
+    /**
+     * Commits pending changes on the calling thread, waiting for a commit in flight to finish first.
+     */
+    public void flush() {
+        commitIfDirty();
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            try {
+                scheduler.schedule(this::run, maxDelay, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                scheduled.set(false);
+                logger.debug("Could not schedule MapDB commit: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void run() {
+        try {
+            commitIfDirty();
+        } finally {
+            scheduled.set(false);
+            // changes made while committing
+            if (dirty.get()) {
+                schedule();
+            }
+        }
+    }
+
+    private synchronized void commitIfDirty() {
+        if (!dirty.getAndSet(false)) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            commit.run();
+        } catch (RuntimeException e) {
+            logger.warn("Failed to commit MapDB: {}", e.getMessage());
+        }
+        long duration = System.nanoTime() - start;
+        commitCount.incrementAndGet();
+        totalCommitNanos.addAndGet(duration);
+        lastCommitNanos = duration;
+        if (duration > maxCommitNanos) {
+            maxCommitNanos = duration;
+        }
+        if (logger.isTraceEnabled()) {
+            logger.trace("Committed MapDB in {} ms, {}", TimeUnit.NANOSECONDS.toMillis(duration), this);
+        }
+    }
+
+    /**
+     * @return the number of requested commits
+     */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * @return the number of executed commits
+     */
+    public long getCommitCount() {
+        return commitCount.get();
+    }
+
+    public double getAverageCommitMillis() {
+        long count = commitCount.get();
+        return count == 0 ? 0 : totalCommitNanos.get() / 1e6 / count;
+    }
+
+    public double getLastCommitMillis() {
+        return lastCommitNanos / 1e6;
+    }
+
+    public double getMaxCommitMillis() {
+        return maxCommitNanos / 1e6;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("requests=%d, commits=%d, last=%.1f ms, average=%.1f ms, max=%.1f ms",
+                getRequestCount(), getCommitCount(), getLastCommitMillis(), getAverageCommitMillis(),
+                getMaxCommitMillis());
+    }
+}
@@ -0,0 +1,213 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.mapdb.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.library.types.HSBType;
+import org.openhab.core.library.types.OnOffType;
+import org.openhab.core.library.types.OpenClosedType;
+import org.openhab.core.library.types.PercentType;
+import org.openhab.core.library.types.QuantityType;
+import org.openhab.core.library.types.StringType;
+import org.openhab.core.types.State;
+import org.openhab.core.types.TypeParser;
+
+/**
+ * Compact binary encoding of a {@link MapDbItem}: a format version, the name, the timestamp in milliseconds since the
+ * epoch and the state as a type tag followed by its value. Numbers are stored as scale and unscaled bytes, the common
+ * enum states as a single byte. States of other types are stored with their class name and full string, as done by
+ * {@link StateTypeAdapter}.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class MapDbItemCodec {
+
+    private static final byte VERSION = 1;
+
+    private static final byte TAG_OTHER = 0;
+    private static final byte TAG_DECIMAL = 1;
+    private static final byte TAG_PERCENT = 2;
+    private static final byte TAG_HSB = 3;
+    private static final byte TAG_QUANTITY = 4;
+    private static final byte TAG_STRING = 5;
+    private static final byte TAG_ON = 6;
+    private static final byte TAG_OFF = 7;
+    private static final byte TAG_OPEN = 8;
+    private static final byte TAG_CLOSED = 9;
+
+    private MapDbItemCodec() {
+    }
+
+    /**
+     * Encodes an item.
+     *
+     * @param item the item to encode
+     * @return the encoded item
+     */
+    public static byte[] encode(MapDbItem item) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            writeString(out, item.getName());
+            out.writeLong(item.getTimestamp().toInstant().toEpochMilli());
+            writeState(out, item.getState());
+        } catch (IOException e) {
+            // cannot happen when writing to a byte array
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes an item.
+     *
+     * @param data the encoded item
+     * @return the item
+     * @throws IOException if the data is not a valid encoded item
+     */
+    public static MapDbItem decode(byte[] data) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            byte version = in.readByte();
+            if (version != VERSION) {
+                throw new IOException("Unsupported format version " + version);
+            }
+            MapDbItem item = new MapDbItem();
+            item.setName(readString(in));
+            item.setTimestamp(new Date(in.readLong()));
+            item.setState(readState(in));
+            return item;
+        }
+    }
+
+    private static void writeState(DataOutputStream out, State state) throws IOException {
+        if (state instanceof HSBType) {
+            HSBType hsb = (HSBType) state;
+            out.writeByte(TAG_HSB);
+            writeDecimal(out, hsb.getHue().toBigDecimal());
+            writeDecimal(out, hsb.getSaturation().toBigDecimal());
+            writeDecimal(out, hsb.getBrightness().toBigDecimal());
+        } else if (state instanceof PercentType) {
+            out.writeByte(TAG_PERCENT);
+            writeDecimal(out, ((PercentType) state).toBigDecimal());
+        } else if (state instanceof DecimalType) {
+            out.writeByte(TAG_DECIMAL);
+            writeDecimal(out, ((DecimalType) state).toBigDecimal());
+        } else if (state instanceof QuantityType) {
+            out.writeByte(TAG_QUANTITY);
+            writeString(out, state.toFullString());
+        } else if (state instanceof StringType) {
+            out.writeByte(TAG_STRING);
+            writeString(out, state.toFullString());
+        } else if (state == OnOffType.ON) {
+            out.writeByte(TAG_ON);
+        } else if (state == OnOffType.OFF) {
+            out.writeByte(TAG_OFF);
+        } else if (state == OpenClosedType.OPEN) {
+            out.writeByte(TAG_OPEN);
+        } else if (state == OpenClosedType.CLOSED) {
+            out.writeByte(TAG_CLOSED);
+        } else {
+            out.writeByte(TAG_OTHER);
+            writeString(out, state.getClass().getName());
+            writeString(out, state.toFullString());
+        }
+    }
+
+    private static State readState(DataInputStream in) throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case TAG_HSB:
+                return new HSBType(new DecimalType(readDecimal(in)), new PercentType(readDecimal(in)),
+                        new PercentType(readDecimal(in)));
+            case TAG_PERCENT:
+                return new PercentType(readDecimal(in));
+            case TAG_DECIMAL:
+                return new DecimalType(readDecimal(in));
+            case TAG_QUANTITY:
+                return new QuantityType<>(readString(in));
+            case TAG_STRING:
+                return new StringType(readString(in));
+            case TAG_ON:
+                return OnOffType.ON;
+            case TAG_OFF:
+                return OnOffType.OFF;
+            case TAG_OPEN:
+                return OpenClosedType.OPEN;
+            case TAG_CLOSED:
+                return OpenClosedType.CLOSED;
+            case TAG_OTHER:
+                return readOtherState(readString(in), readString(in));
+            default:
+                throw new IOException("Unknown state type tag " + tag);
+        }
+    }
+
+    private static State readOtherState(String typeName, String value) throws IOException {
+        State state = null;
+        try {
+            @SuppressWarnings("unchecked")
+            Class<? extends State> type = (Class<? extends State>) Class.forName(typeName);
+            state = TypeParser.parseState(List.of(type), value);
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Unknown state type " + typeName, e);
+        }
+        if (state == null) {
+            throw new IOException("Couldn't parse '" + value + "' as " + typeName);
+        }
+        return state;
+    }
+
+    private static void writeDecimal(DataOutputStream out, BigDecimal value) throws IOException {
+        byte[] unscaled = value.unscaledValue().toByteArray();
+        out.writeInt(value.scale());
+        out.writeShort(unscaled.length);
+        out.write(unscaled);
+    }
+
+    private static BigDecimal readDecimal(DataInputStream in) throws IOException {
+        int scale = in.readInt();
+        byte[] unscaled = new byte[in.readUnsignedShort()];
+        in.readFully(unscaled);
+        return new BigDecimal(new BigInteger(unscaled), scale);
+    }
+
+    private static void writeString(DataOutputStream out, @Nullable String value) throws IOException {
+        byte[] bytes = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > in.available()) {
+            throw new IOException("Invalid string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -19,21 +19,23 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Instant;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
 import org.mapdb.DB;
 import org.mapdb.DBMaker;
+import org.mapdb.Serializer;
 import org.openhab.core.OpenHAB;
 import org.openhab.core.common.ThreadPoolManager;
+import org.openhab.core.config.core.ConfigurableService;
 import org.openhab.core.items.Item;
 import org.openhab.core.persistence.FilterCriteria;
 import org.openhab.core.persistence.HistoricItem;
@@ -43,9 +45,12 @@ import org.openhab.core.persistence.QueryablePersistenceService;
 import org.openhab.core.persistence.strategy.PersistenceStrategy;
 import org.openhab.core.types.State;
 import org.openhab.core.types.UnDefType;
+import org.osgi.framework.Constants;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.ConfigurationPolicy;
 import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Modified;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -60,30 +65,46 @@ import com.google.gson.GsonBuilder;
  * @author Martin Kühl - Port to 3.x
  */
 @NonNullByDefault
-@Component(service = { PersistenceService.class, QueryablePersistenceService.class })
+@Component(service = { PersistenceService.class,
+        QueryablePersistenceService.class }, configurationPid = "org.openhab.mapdb", configurationPolicy = ConfigurationPolicy.OPTIONAL, //
+        property = Constants.SERVICE_PID + "=org.openhab.mapdb")
+@ConfigurableService(category = "persistence", label = "MapDB Persistence Service", description_uri = MapDbPersistenceService.CONFIG_URI)
 public class MapDbPersistenceService implements QueryablePersistenceService {
 
+    protected static final String CONFIG_URI = "persistence:mapdb";
+
     private static final String SERVICE_ID = "mapdb";
     private static final String SERVICE_LABEL = "MapDB";
     private static final Path DB_DIR = new File(OpenHAB.getUserDataFolder(), "persistence").toPath().resolve("mapdb");
     private static final Path BACKUP_DIR = DB_DIR.resolve("backup");
     private static final String DB_FILE_NAME = "storage.mapdb";
+    private static final String ITEMS_MAP = "items";
+    private static final String INDEX_MAP = "itemIndex";
+    // JSON entries written by previous versions, migrated on activation
+    private static final String JSON_ITEMS_MAP = "itemStore";
+    private static final String CONFIG_COMMIT_INTERVAL = "commitInterval";
+    private static final long DEFAULT_COMMIT_INTERVAL = 1000;
 
     private final Logger logger = LoggerFactory.getLogger(MapDbPersistenceService.class);
 
-    private final ExecutorService threadPool = ThreadPoolManager.getPool(getClass().getSimpleName());
+    private final ScheduledExecutorService threadPool = ThreadPoolManager
+            .getScheduledPool(getClass().getSimpleName());
 
     /** holds the local instance of the MapDB database */
 
     private @NonNullByDefault({}) DB db;
-    private @NonNullByDefault({}) Map<String, String> map;
+    private @NonNullByDefault({}) Map<String, byte[]> map;
+    // item name -> timestamp, so that listing the items does not need to decode states
+    private @NonNullByDefault({}) Map<String, Long> index;
+    private @NonNullByDefault({}) MapDbCommitScheduler commitScheduler;
 
     private transient Gson mapper = new GsonBuilder().registerTypeHierarchyAdapter(State.class, new StateTypeAdapter())
             .create();
 
     @Activate
-    public void activate() {
+    public void activate(Map<String, Object> config) {
         logger.debug("MapDB persistence service is being activated");
+        modified(config);
 
         try {
             Files.createDirectories(DB_DIR);
@@ -96,7 +117,7 @@ public class MapDbPersistenceService implements QueryablePersistenceService {
         File dbFile = DB_DIR.resolve(DB_FILE_NAME).toFile();
         try {
             db = DBMaker.newFileDB(dbFile).closeOnJvmShutdown().make();
-            map = db.createTreeMap("itemStore").makeOrGet();
+            openMaps();
         } catch (RuntimeException re) {
             Throwable cause = re.getCause();
             if (cause instanceof ClassNotFoundException) {
@@ -129,7 +150,7 @@ public class MapDbPersistenceService implements QueryablePersistenceService {
                 }
 
                 db = DBMaker.newFileDB(dbFile).closeOnJvmShutdown().make();
-                map = db.createTreeMap("itemStore").makeOrGet();
+                openMaps();
             } else {
                 logger.warn("Failed to create or open the MapDB: {}", re.getMessage());
                 logger.warn("MapDB persistence service activation has failed.");
@@ -138,10 +159,81 @@ public class MapDbPersistenceService implements QueryablePersistenceService {
         logger.debug("MapDB persistence service is now activated");
     }
 
+    private void openMaps() {
+        map = db.createTreeMap(ITEMS_MAP).valueSerializer(Serializer.BYTE_ARRAY).makeOrGet();
+        index = db.createTreeMap(INDEX_MAP).makeOrGet();
+        migrateJsonItems();
+    }
+
+    /**
+     * Converts the JSON entries written by previous versions into the binary format. Converted entries are removed
+     * from the old map, which is deleted once it is empty. Entries that cannot be converted are kept, so that they are
+     * not lost and the conversion is tried again on the next activation.
+     */
+    private void migrateJsonItems() {
+        if (!db.exists(JSON_ITEMS_MAP)) {
+            return;
+        }
+        Map<String, String> jsonMap = db.getTreeMap(JSON_ITEMS_MAP);
+        int total = jsonMap.size();
+        int migrated = 0;
+        for (Iterator<Map.Entry<String, String>> iterator = jsonMap.entrySet().iterator(); iterator.hasNext();) {
+            Map.Entry<String, String> entry = iterator.next();
+            if (map.containsKey(entry.getKey())) {
+                // stored in the binary format meanwhile, the JSON entry is outdated
+                iterator.remove();
+                continue;
+            }
+            try {
+                Optional<MapDbItem> item = deserialize(entry.getValue());
+                if (item.isPresent()) {
+                    put(entry.getKey(), item.get());
+                    iterator.remove();
+                    migrated++;
+                }
+            } catch (RuntimeException e) {
+                logger.warn("Failed to migrate MapDB entry '{}': {}", entry.getKey(), e.getMessage());
+            }
+        }
+        int failed = jsonMap.size();
+        if (failed == 0) {
+            db.delete(JSON_ITEMS_MAP);
+        }
+        db.commit();
+        if (failed == 0) {
+            logger.info("Migrated {} of {} MapDB entries to the binary format", migrated, total);
+        } else {
+            logger.warn("Migrated {} of {} MapDB entries to the binary format, kept {} entries that failed in '{}'",
+                    migrated, total, failed, JSON_ITEMS_MAP);
+        }
+    }
+
+    @Modified
+    protected void modified(Map<String, Object> config) {
+        long commitInterval = DEFAULT_COMMIT_INTERVAL;
+        Object value = config.get(CONFIG_COMMIT_INTERVAL);
+        if (value != null) {
+            try {
+                commitInterval = Long.parseLong(value.toString().trim());
+            } catch (NumberFormatException e) {
+                logger.warn("Invalid value '{}' for {}, using {}", value, CONFIG_COMMIT_INTERVAL,
+                        DEFAULT_COMMIT_INTERVAL);
+            }
+        }
+        MapDbCommitScheduler oldScheduler = commitScheduler;
+        commitScheduler = new MapDbCommitScheduler(threadPool, this::commitNow, commitInterval);
+        if (oldScheduler != null) {
+            oldScheduler.flush();
+        }
+        logger.debug("MapDB commits are delayed by up to {} ms", commitInterval);
+    }
+
     @Deactivate
     public void deactivate() {
         logger.debug("MapDB persistence service deactivated");
         if (db != null) {
+            commitScheduler.flush();
+            logger.debug("MapDB commit statistics: {}", commitScheduler);
             db.close();
         }
     }
@@ -158,8 +250,12 @@ public class MapDbPersistenceService implements QueryablePersistenceService {
 
     @Override
     public Set<PersistenceItemInfo> getItemInfo() {
-        return map.values().stream().map(this::deserialize).flatMap(MapDbPersistenceService::streamOptional)
-                .collect(Collectors.<PersistenceItemInfo> toUnmodifiableSet());
+        return index.entrySet().stream().map(entry -> {
+            MapDbItem info = new MapDbItem();
+            info.setName(entry.getKey());
+            info.setTimestamp(new Date(entry.getValue()));
+            return info;
+        }).collect(Collectors.<PersistenceItemInfo> toUnmodifiableSet());
     }
 
     @Override
@@ -182,26 +278,35 @@ public class MapDbPersistenceService implements QueryablePersistenceService {
         mItem.setName(localAlias);
         mItem.setState(state);
         mItem.setTimestamp(new Date());
-        String json = serialize(mItem);
-        map.put(localAlias, json);
+        put(localAlias, mItem);
         commit();
-        if (logger.isDebugEnabled()) {
-            logger.debug("Stored '{}' with state '{}' as '{}' in MapDB database", localAlias, state, json);
-        }
+        logger.debug("Stored '{}' with state '{}' in MapDB database", localAlias, state);
     }
 
     @Override
     public Iterable<HistoricItem> query(FilterCriteria filter) {
-        String json = map.get(filter.getItemName());
-        if (json == null) {
+        byte[] data = map.get(filter.getItemName());
+        if (data == null) {
             return List.of();
         }
-        Optional<MapDbItem> item = deserialize(json);
+        Optional<MapDbItem> item = decode(data);
         return item.isPresent() ? List.of(item.get()) : List.of();
     }
 
-    private String serialize(MapDbItem item) {
-        return mapper.toJson(item);
+    private void put(String name, MapDbItem item) {
+        map.put(name, MapDbItemCodec.encode(item));
+        index.put(name, item.getTimestamp().toInstant().toEpochMilli());
+    }
+
+    private Optional<MapDbItem> decode(byte[] data) {
+        try {
+            MapDbItem item = MapDbItemCodec.decode(data);
+            logger.debug("Decoded '{}' with state '{}'", item.getName(), item.getState());
+            return Optional.of(item);
+        } catch (IOException e) {
+            logger.warn("Failed to decode item: {}", e.getMessage());
+            return Optional.empty();
+        }
     }
 
     @SuppressWarnings("null")
@@ -218,11 +323,13 @@ public class MapDbPersistenceService implements QueryablePersistenceService {
     }
 
     private void commit() {
-        threadPool.submit(() -> db.commit());
+        commitScheduler.requestCommit();
     }
 
-    private static <T> Stream<T> streamOptional(Optional<T> opt) {
-        return opt.isPresent() ? Stream.of(opt.get()) : Stream.empty();
+    private void commitNow() {
+        if (!db.isClosed()) {
+            db.commit();
+        }
     }
 
     @Override
@@ -0,0 +1,96 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.mapdb;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.openhab.persistence.mapdb.internal.MapDbCommitScheduler;
+
+/**
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class MapDbCommitSchedulerTest {
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    @AfterEach
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void burstOfRequestsShouldBeCoalescedIntoOneCommit() throws InterruptedException {
+        AtomicInteger commits = new AtomicInteger();
+        CountDownLatch committed = new CountDownLatch(1);
+        MapDbCommitScheduler commitScheduler = new MapDbCommitScheduler(scheduler, () -> {
+            commits.incrementAndGet();
+            committed.countDown();
+        }, 100);
+
+        for (int i = 0; i < 1000; i++) {
+            commitScheduler.requestCommit();
+        }
+
+        assertThat(committed.await(5, TimeUnit.SECONDS), is(true));
+        // waits for the running commit to finish
+        commitScheduler.flush();
+        assertThat(commits.get(), is(1));
+        assertThat(commitScheduler.getRequestCount(), is(1000L));
+        assertThat(commitScheduler.getCommitCount(), is(1L));
+    }
+
+    @Test
+    public void flushShouldCommitPendingChangesOnce() {
+        AtomicInteger commits = new AtomicInteger();
+        MapDbCommitScheduler commitScheduler = new MapDbCommitScheduler(scheduler, commits::incrementAndGet,
+                60000);
+
+        commitScheduler.flush();
+        assertThat(commits.get(), is(0));
+
+        commitScheduler.requestCommit();
+        commitScheduler.requestCommit();
+        commitScheduler.flush();
+        commitScheduler.flush();
+        assertThat(commits.get(), is(1));
+    }
+
+    @Test
+    public void changesDuringCommitShouldBeCommittedAgain() throws InterruptedException {
+        AtomicInteger commits = new AtomicInteger();
+        CountDownLatch secondCommit = new CountDownLatch(2);
+        MapDbCommitScheduler[] holder = new MapDbCommitScheduler[1];
+        holder[0] = new MapDbCommitScheduler(scheduler, () -> {
+            if (commits.incrementAndGet() == 1) {
+                holder[0].requestCommit();
+            }
+            secondCommit.countDown();
+        }, 10);
+
+        holder[0].requestCommit();
+
+        assertThat(secondCommit.await(5, TimeUnit.SECONDS), is(true));
+        assertThat(commits.get(), is(2));
+    }
+}
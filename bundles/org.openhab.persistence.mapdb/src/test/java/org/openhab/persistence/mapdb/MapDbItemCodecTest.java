@@ -0,0 +1,88 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.mapdb;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.openhab.core.library.types.DateTimeType;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.library.types.HSBType;
+import org.openhab.core.library.types.OnOffType;
+import org.openhab.core.library.types.OpenClosedType;
+import org.openhab.core.library.types.PercentType;
+import org.openhab.core.library.types.PlayPauseType;
+import org.openhab.core.library.types.PointType;
+import org.openhab.core.library.types.QuantityType;
+import org.openhab.core.library.types.StringType;
+import org.openhab.core.library.types.UpDownType;
+import org.openhab.core.library.unit.SIUnits;
+import org.openhab.core.library.unit.Units;
+import org.openhab.core.types.State;
+import org.openhab.persistence.mapdb.internal.MapDbItem;
+import org.openhab.persistence.mapdb.internal.MapDbItemCodec;
+
+/**
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class MapDbItemCodecTest {
+
+    private static final List<State> VALUES = List.of(DecimalType.ZERO, new DecimalType(1.123),
+            new DecimalType(-10000000), new DecimalType(new BigDecimal("1234567890123456789012345.6789")),
+            HSBType.BLACK, HSBType.fromRGB(11, 22, 33), PercentType.ZERO, PercentType.valueOf("99.999"),
+            QuantityType.valueOf("1 kW"), QuantityType.valueOf(20, Units.AMPERE),
+            new QuantityType<>(new BigDecimal("21.23"), SIUnits.CELSIUS), StringType.valueOf(""),
+            StringType.valueOf("a b c @@@ äöü"), OnOffType.ON, OnOffType.OFF, OpenClosedType.OPEN,
+            OpenClosedType.CLOSED, UpDownType.UP, PlayPauseType.PAUSE, new PointType("52.5,13.4"),
+            new DateTimeType(ZonedDateTime.of(2021, 3, 4, 5, 6, 7, 0, ZoneOffset.UTC)));
+
+    @ParameterizedTest
+    @MethodSource
+    public void encodeDecodeRoundtripShouldRecreateTheItem(State state) throws IOException {
+        MapDbItem item = new MapDbItem();
+        item.setName("Item_" + state.getClass().getSimpleName());
+        item.setState(state);
+        item.setTimestamp(new Date(1614834367123L));
+
+        MapDbItem actual = MapDbItemCodec.decode(MapDbItemCodec.encode(item));
+
+        assertThat(actual.getName(), is(equalTo(item.getName())));
+        assertThat(actual.getTimestamp(), is(equalTo(item.getTimestamp())));
+        assertThat(actual.getState(), is(equalTo(state)));
+    }
+
+    public static Stream<State> encodeDecodeRoundtripShouldRecreateTheItem() {
+        return VALUES.stream();
+    }
+
+    @Test
+    public void decodeShouldRejectInvalidData() {
+        assertThrows(IOException.class, () -> MapDbItemCodec.decode(new byte[0]));
+        assertThrows(IOException.class, () -> MapDbItemCodec.decode("{\"name\":\"x\"}".getBytes()));
+    }
+}
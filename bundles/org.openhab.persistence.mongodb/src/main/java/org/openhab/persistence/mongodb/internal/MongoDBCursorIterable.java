@@ -0,0 +1,106 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.mongodb.internal;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Supplier;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoCursor;
+
+/**
+ * The results of a query, read from a cursor while iterating instead of being loaded into memory at once. The driver
+ * fetches the documents from the server in batches.
+ *
+ * Every call to {@link #iterator()} executes the query again. The cursor is closed as soon as the iterator is
+ * exhausted, fails or is closed. The server closes the cursor of an iterator that is abandoned after 10 minutes of
+ * inactivity.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class MongoDBCursorIterable<T> implements Iterable<T> {
+
+    private final Logger logger = LoggerFactory.getLogger(MongoDBCursorIterable.class);
+
+    private final Supplier<MongoCursor<T>> query;
+
+    /**
+     * @param query executes the query and returns its cursor
+     */
+    public MongoDBCursorIterable(Supplier<MongoCursor<T>> query) {
+        this.query = query;
+    }
+
+    @Override
+    public CursorIterator iterator() {
+        return new CursorIterator();
+    }
+
+    /**
+     * Iterates over the results of one execution of the query.
+     */
+    public class CursorIterator implements Iterator<T>, AutoCloseable {
+        private @Nullable MongoCursor<T> cursor;
+        private boolean done;
+
+        @Override
+        public boolean hasNext() {
+            if (done) {
+                return false;
+            }
+            try {
+                MongoCursor<T> currentCursor = cursor;
+                if (currentCursor == null) {
+                    currentCursor = query.get();
+                    cursor = currentCursor;
+                }
+                if (currentCursor.hasNext()) {
+                    return true;
+                }
+            } catch (MongoException e) {
+                logger.warn("MongoDB query failed: {}", e.getMessage());
+            }
+            close();
+            return false;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            MongoCursor<T> currentCursor = cursor;
+            if (currentCursor == null) {
+                throw new NoSuchElementException();
+            }
+            return currentCursor.next();
+        }
+
+        @Override
+        public void close() {
+            done = true;
+            MongoCursor<T> currentCursor = cursor;
+            if (currentCursor != null) {
+                cursor = null;
+                currentCursor.close();
+            }
+        }
+    }
+}
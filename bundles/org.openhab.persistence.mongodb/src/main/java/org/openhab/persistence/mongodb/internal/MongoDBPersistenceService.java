@@ -14,14 +14,16 @@ package org.openhab.persistence.mongodb.internal;
 
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+import org.bson.Document;
+import org.bson.conversions.Bson;
 import org.bson.types.ObjectId;
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
@@ -50,6 +52,7 @@ import org.openhab.core.persistence.QueryablePersistenceService;
 import org.openhab.core.persistence.strategy.PersistenceStrategy;
 import org.openhab.core.types.State;
 import org.openhab.core.types.UnDefType;
+import org.openhab.io.metrics.AddonMeters;
 import org.osgi.framework.BundleContext;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
@@ -60,11 +63,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.mongodb.BasicDBObject;
-import com.mongodb.DBCollection;
-import com.mongodb.DBCursor;
-import com.mongodb.DBObject;
 import com.mongodb.MongoClient;
 import com.mongodb.MongoClientURI;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoIterable;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.model.Projections;
 
 /**
  * This is the implementation of the MongoDB {@link PersistenceService}.
@@ -83,12 +89,24 @@ public class MongoDBPersistenceService implements QueryablePersistenceService {
     private static final String FIELD_TIMESTAMP = "timestamp";
     private static final String FIELD_VALUE = "value";
 
+    static final Bson INDEX = Indexes.ascending(FIELD_ITEM, FIELD_TIMESTAMP);
+    static final Bson QUERY_PROJECTION = Projections.fields(Projections.include(FIELD_TIMESTAMP, FIELD_VALUE),
+            Projections.excludeId());
+
     private final Logger logger = LoggerFactory.getLogger(MongoDBPersistenceService.class);
 
     private String url = "";
     private String db = "";
     private String collection = "";
     private boolean collectionPerItem;
+    private int writeQueueSize;
+    private int writeBatchSize = 500;
+    private int writeMaxLatency = 1000;
+    private int queryBatchSize;
+
+    private final Set<String> indexedCollections = ConcurrentHashMap.newKeySet();
+    private volatile @Nullable MongoDBWriteQueue writeQueue;
+    private @Nullable AddonMeters meters;
 
     private boolean initialized = false;
 
@@ -127,19 +145,79 @@ public class MongoDBPersistenceService implements QueryablePersistenceService {
         collection = dbCollection == null ? "" : dbCollection;
         collectionPerItem = dbCollection == null || dbCollection.isBlank();
 
+        writeQueueSize = getConfigIntValue(config, "writeQueueSize", 0);
+        writeBatchSize = getConfigIntValue(config, "writeBatchSize", 500);
+        writeMaxLatency = getConfigIntValue(config, "writeMaxLatency", 1000);
+        queryBatchSize = getConfigIntValue(config, "queryBatchSize", 0);
+
         if (!tryConnectToDatabase()) {
             logger.warn("Failed to connect to MongoDB server. Trying to reconnect later.");
         }
 
+        if (writeQueueSize > 0) {
+            writeQueue = new MongoDBWriteQueue(writeQueueSize, writeBatchSize, writeMaxLatency, this::insertMany);
+            logger.debug("MongoDB using write queue of size {}", writeQueueSize);
+        }
+        meters = registerMeters();
+
         initialized = true;
     }
 
     @Deactivate
     public void deactivate(final int reason) {
         logger.debug("MongoDB persistence bundle stopping. Disconnecting from database.");
+        MongoDBWriteQueue writeQueue = this.writeQueue;
+        if (writeQueue != null) {
+            this.writeQueue = null;
+            writeQueue.shutdown();
+            logger.debug("MongoDB write queue stopped, {}", writeQueue);
+        }
+        AddonMeters meters = this.meters;
+        if (meters != null) {
+            this.meters = null;
+            meters.close();
+        }
         disconnectFromDatabase();
     }
 
+    /**
+     * Registers the store and query latency and the write queue depth with the metrics service, if it is installed.
+     */
+    private @Nullable AddonMeters registerMeters() {
+        try {
+            AddonMeters meters = AddonMeters.forPersistenceService(getId());
+            meters.gauge("queue.depth", () -> {
+                MongoDBWriteQueue writeQueue = this.writeQueue;
+                return writeQueue == null ? 0 : writeQueue.getQueueDepth();
+            });
+            return meters;
+        } catch (NoClassDefFoundError e) {
+            logger.debug("Metrics service not installed, no meters registered");
+            return null;
+        }
+    }
+
+    private void recordMeter(String operation, long startNanos) {
+        AddonMeters meters = this.meters;
+        if (meters != null) {
+            meters.record(operation, startNanos);
+        }
+    }
+
+    private int getConfigIntValue(Map<String, Object> config, String key, int defaultValue) {
+        Object value = config.get(key);
+        if (value instanceof Number) {
+            return ((Number) value).intValue();
+        } else if (value instanceof String && !((String) value).isBlank()) {
+            try {
+                return Integer.parseInt(((String) value).trim());
+            } catch (NumberFormatException e) {
+                logger.warn("Invalid value '{}' for MongoDB parameter {}, using {}", value, key, defaultValue);
+            }
+        }
+        return defaultValue;
+    }
+
     @Override
     public String getId() {
         return "mongodb";
@@ -163,6 +241,27 @@ public class MongoDBPersistenceService implements QueryablePersistenceService {
             return;
         }
 
+        long meterStart = System.nanoTime();
+        String realItemName = item.getName();
+        String collectionName = collectionPerItem ? realItemName : this.collection;
+        String name = (alias != null) ? alias : realItemName;
+        Object value = this.convertValue(item.getState());
+
+        Document obj = new Document();
+        obj.put(FIELD_ID, new ObjectId());
+        obj.put(FIELD_ITEM, name);
+        obj.put(FIELD_REALNAME, realItemName);
+        obj.put(FIELD_TIMESTAMP, new Date());
+        obj.put(FIELD_VALUE, value);
+
+        MongoDBWriteQueue writeQueue = this.writeQueue;
+        if (writeQueue != null) {
+            writeQueue.add(collectionName, obj);
+            recordMeter("store", meterStart);
+            logger.debug("MongoDB queued {}={}", name, value);
+            return;
+        }
+
         // Connect to mongodb server if we're not already connected
         // If we can't connect, log.
         if (!tryConnectToDatabase()) {
@@ -172,31 +271,36 @@ public class MongoDBPersistenceService implements QueryablePersistenceService {
             return;
         }
 
-        String realItemName = item.getName();
-        String collectionName = collectionPerItem ? realItemName : this.collection;
-
         @Nullable
-        DBCollection collection = connectToCollection(collectionName);
+        MongoCollection<Document> collection = connectToCollection(collectionName);
 
         if (collection == null) {
             // Logging is done in connectToCollection()
             return;
         }
 
-        String name = (alias != null) ? alias : realItemName;
-        Object value = this.convertValue(item.getState());
-
-        DBObject obj = new BasicDBObject();
-        obj.put(FIELD_ID, new ObjectId());
-        obj.put(FIELD_ITEM, name);
-        obj.put(FIELD_REALNAME, realItemName);
-        obj.put(FIELD_TIMESTAMP, new Date());
-        obj.put(FIELD_VALUE, value);
-        collection.save(obj);
+        collection.insertOne(obj);
+        recordMeter("store", meterStart);
 
         logger.debug("MongoDB save {}={}", name, value);
     }
 
+    /**
+     * Inserts the documents of the write queue with a single unordered bulk write, so that one failing document does
+     * not prevent the others from being inserted.
+     */
+    private void insertMany(String collectionName, List<Document> documents) {
+        if (!tryConnectToDatabase()) {
+            throw new IllegalStateException("No connection to database");
+        }
+        @Nullable
+        MongoCollection<Document> collection = connectToCollection(collectionName);
+        if (collection == null) {
+            throw new IllegalStateException("Failed to connect to collection");
+        }
+        collection.insertMany(documents, new InsertManyOptions().ordered(false));
+    }
+
     private Object convertValue(State state) {
         Object value;
         if (state instanceof PercentType) {
@@ -282,11 +386,12 @@ public class MongoDBPersistenceService implements QueryablePersistenceService {
     }
 
     /**
-     * Connects to the Collection
+     * Connects to the Collection. The compound index on item and timestamp is created the first time a collection is
+     * used after connecting.
      *
      * @return The collection object when collection creation was successful. Null otherwise.
      */
-    private @Nullable DBCollection connectToCollection(String collectionName) {
+    private @Nullable MongoCollection<Document> connectToCollection(String collectionName) {
         try {
             @Nullable
             MongoClient db = getDatabase();
@@ -296,11 +401,12 @@ public class MongoDBPersistenceService implements QueryablePersistenceService {
                 return null;
             }
 
-            DBCollection mongoCollection = db.getDB(this.db).getCollection(collectionName);
+            MongoCollection<Document> mongoCollection = db.getDatabase(this.db).getCollection(collectionName);
 
-            BasicDBObject idx = new BasicDBObject();
-            idx.append(FIELD_ITEM, 1).append(FIELD_TIMESTAMP, 1);
-            mongoCollection.createIndex(idx);
+            if (!indexedCollections.contains(collectionName)) {
+                mongoCollection.createIndex(INDEX);
+                indexedCollections.add(collectionName);
+            }
 
             return mongoCollection;
         } catch (Exception e) {
@@ -318,6 +424,7 @@ public class MongoDBPersistenceService implements QueryablePersistenceService {
         }
 
         cl = null;
+        indexedCollections.clear();
     }
 
     @Override
@@ -326,6 +433,12 @@ public class MongoDBPersistenceService implements QueryablePersistenceService {
             return Collections.emptyList();
         }
 
+        long meterStart = System.nanoTime();
+        MongoDBWriteQueue writeQueue = this.writeQueue;
+        if (writeQueue != null) {
+            writeQueue.flush();
+        }
+
         if (!tryConnectToDatabase()) {
             return Collections.emptyList();
         }
@@ -333,7 +446,7 @@ public class MongoDBPersistenceService implements QueryablePersistenceService {
         String realItemName = filter.getItemName();
         String collectionName = collectionPerItem ? realItemName : this.collection;
         @Nullable
-        DBCollection collection = connectToCollection(collectionName);
+        MongoCollection<Document> collection = connectToCollection(collectionName);
 
         // If collection creation failed, return nothing.
         if (collection == null) {
@@ -349,7 +462,6 @@ public class MongoDBPersistenceService implements QueryablePersistenceService {
             return Collections.emptyList();
         }
 
-        List<HistoricItem> items = new ArrayList<>();
         BasicDBObject query = new BasicDBObject();
         if (filter.getItemName() != null) {
             query.put(FIELD_ITEM, filter.getItemName());
@@ -381,35 +493,48 @@ public class MongoDBPersistenceService implements QueryablePersistenceService {
         logger.debug("Query: {}", query);
 
         Integer sortDir = (filter.getOrdering() == Ordering.ASCENDING) ? 1 : -1;
-        DBCursor cursor = collection.find(query).sort(new BasicDBObject(FIELD_TIMESTAMP, sortDir))
+        FindIterable<Document> documents = collection.find(query).projection(QUERY_PROJECTION)
+                .sort(new BasicDBObject(FIELD_TIMESTAMP, sortDir))
                 .skip(filter.getPageNumber() * filter.getPageSize()).limit(filter.getPageSize());
+        if (queryBatchSize > 0) {
+            documents.batchSize(queryBatchSize);
+        }
 
-        while (cursor.hasNext()) {
-            BasicDBObject obj = (BasicDBObject) cursor.next();
-
-            final State state;
-            if (item instanceof NumberItem) {
-                state = new DecimalType(obj.getDouble(FIELD_VALUE));
-            } else if (item instanceof DimmerItem) {
-                state = new PercentType(obj.getInt(FIELD_VALUE));
-            } else if (item instanceof SwitchItem) {
-                state = OnOffType.valueOf(obj.getString(FIELD_VALUE));
-            } else if (item instanceof ContactItem) {
-                state = OpenClosedType.valueOf(obj.getString(FIELD_VALUE));
-            } else if (item instanceof RollershutterItem) {
-                state = new PercentType(obj.getInt(FIELD_VALUE));
-            } else if (item instanceof DateTimeItem) {
-                state = new DateTimeType(
-                        ZonedDateTime.ofInstant(obj.getDate(FIELD_VALUE).toInstant(), ZoneId.systemDefault()));
-            } else {
-                state = new StringType(obj.getString(FIELD_VALUE));
-            }
+        recordMeter("query", meterStart);
+        // the documents are read while iterating, the page size is unlimited by default
+        MongoIterable<HistoricItem> items = documents.map(obj -> toHistoricItem(item, realItemName, obj));
+        return new MongoDBCursorIterable<>(items::iterator);
+    }
 
-            items.add(new MongoDBItem(realItemName, state,
-                    ZonedDateTime.ofInstant(obj.getDate(FIELD_TIMESTAMP).toInstant(), ZoneId.systemDefault())));
+    private HistoricItem toHistoricItem(Item item, String realItemName, Document obj) {
+        final State state;
+        if (item instanceof NumberItem) {
+            state = new DecimalType(getNumber(obj).doubleValue());
+        } else if (item instanceof DimmerItem) {
+            state = new PercentType(getNumber(obj).intValue());
+        } else if (item instanceof SwitchItem) {
+            state = OnOffType.valueOf(String.valueOf(obj.get(FIELD_VALUE)));
+        } else if (item instanceof ContactItem) {
+            state = OpenClosedType.valueOf(String.valueOf(obj.get(FIELD_VALUE)));
+        } else if (item instanceof RollershutterItem) {
+            state = new PercentType(getNumber(obj).intValue());
+        } else if (item instanceof DateTimeItem) {
+            state = new DateTimeType(
+                    ZonedDateTime.ofInstant(obj.getDate(FIELD_VALUE).toInstant(), ZoneId.systemDefault()));
+        } else {
+            state = new StringType(String.valueOf(obj.get(FIELD_VALUE)));
         }
 
-        return items;
+        return new MongoDBItem(realItemName, state,
+                ZonedDateTime.ofInstant(obj.getDate(FIELD_TIMESTAMP).toInstant(), ZoneId.systemDefault()));
+    }
+
+    private Number getNumber(Document obj) {
+        Object value = obj.get(FIELD_VALUE);
+        if (value instanceof Number) {
+            return (Number) value;
+        }
+        return Double.valueOf(String.valueOf(value));
     }
 
     private @Nullable String convertOperator(Operator operator) {
@@ -425,7 +550,7 @@ public class MongoDBPersistenceService implements QueryablePersistenceService {
             case LTE:
                 return "$lte";
             case NEQ:
-                return "$neq";
+                return "$ne";
             default:
                 return null;
         }
@@ -0,0 +1,371 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.mongodb.internal;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+import org.bson.Document;
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.openhab.core.common.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoExecutionTimeoutException;
+import com.mongodb.MongoNodeIsRecoveringException;
+import com.mongodb.MongoNotPrimaryException;
+import com.mongodb.MongoSocketException;
+import com.mongodb.MongoTimeoutException;
+import com.mongodb.bulk.BulkWriteError;
+
+/**
+ * Bounded queue of documents waiting to be inserted. Documents are grouped by collection and inserted with unordered
+ * bulk writes of at most <code>batchSize</code> documents, either when enough documents are pending or after
+ * <code>maxLatency</code> milliseconds at the latest.
+ *
+ * If the queue is full, the storing thread writes the pending documents itself. This slows down the producer instead
+ * of dropping documents.
+ *
+ * A batch that fails because the database cannot be reached or does not answer in time is kept and retried after an
+ * exponential backoff, up to {@link #MAX_ATTEMPTS} times. The backoff only applies to the collection of the batch,
+ * the other collections are still written. While the database is unavailable, at most <code>capacity</code>
+ * documents are kept for retrying, older batches are dropped first.
+ *
+ * Documents rejected by the database, e.g. because of a duplicate key, and batches failing for other reasons would
+ * fail again on every attempt, so they are dropped right away. Dropped documents are logged and counted.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class MongoDBWriteQueue {
+    static final int MAX_ATTEMPTS = 10;
+
+    private static final long MIN_BACKOFF_MILLIS = 1000;
+    private static final long MAX_BACKOFF_MILLIS = 60000;
+
+    private final Logger logger = LoggerFactory.getLogger(MongoDBWriteQueue.class);
+
+    private static class PendingDocument {
+        private final String collectionName;
+        private final Document document;
+
+        private PendingDocument(String collectionName, Document document) {
+            this.collectionName = collectionName;
+            this.document = document;
+        }
+    }
+
+    private static class Batch {
+        private final String collectionName;
+        private final List<Document> documents;
+        private int attempts;
+
+        private Batch(String collectionName, List<Document> documents) {
+            this.collectionName = collectionName;
+            this.documents = documents;
+        }
+    }
+
+    private static class Backoff {
+        private long millis;
+        private long resumeAt;
+    }
+
+    private final BlockingQueue<PendingDocument> queue;
+    private final int capacity;
+    private final int batchSize;
+    private final BiConsumer<String, List<Document>> writer;
+    private final ScheduledExecutorService scheduler = Executors
+            .newSingleThreadScheduledExecutor(new NamedThreadFactory("mongodb-writer"));
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    // batches taken from the queue and not written yet, failed batches first. Guarded by this.
+    private final Deque<Batch> batches = new ArrayDeque<>();
+    private int retainedCount;
+    // collections whose last batch failed, by name. Guarded by this.
+    private final Map<String, Backoff> backoffs = new HashMap<>();
+
+    private final AtomicLong queuedCount = new AtomicLong();
+    private final AtomicLong writtenCount = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong backPressureCount = new AtomicLong();
+    private final AtomicLong retryCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private volatile int maxQueueDepth;
+
+    /**
+     * Creates and starts a write queue.
+     *
+     * @param capacity the maximum number of pending documents
+     * @param batchSize the maximum number of documents per bulk write
+     * @param maxLatency the maximum time in milliseconds a document stays in the queue
+     * @param writer inserts a list of documents into the named collection
+     */
+    public MongoDBWriteQueue(int capacity, int batchSize, int maxLatency, BiConsumer<String, List<Document>> writer) {
+        this.capacity = Math.max(1, capacity);
+        this.queue = new ArrayBlockingQueue<>(this.capacity);
+        this.batchSize = Math.max(1, batchSize);
+        this.writer = writer;
+        long interval = Math.max(1, maxLatency);
+        scheduler.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Adds a document to the queue.
+     *
+     * @param collectionName the collection to insert the document into
+     * @param document the document
+     */
+    public void add(String collectionName, Document document) {
+        PendingDocument pending = new PendingDocument(collectionName, document);
+        if (!queue.offer(pending)) {
+            backPressureCount.incrementAndGet();
+            logger.debug("MongoDB write queue is full, writing pending documents on the storing thread");
+            flush();
+            if (!queue.offer(pending)) {
+                // filled up again by other threads, keep the document for the next flush
+                queuedCount.incrementAndGet();
+                synchronized (this) {
+                    batches.addLast(new Batch(collectionName, new ArrayList<>(List.of(document))));
+                    retainedCount++;
+                    trimRetained();
+                }
+                return;
+            }
+        }
+        queuedCount.incrementAndGet();
+        int depth = queue.size();
+        if (depth > maxQueueDepth) {
+            maxQueueDepth = depth;
+        }
+        if (depth >= batchSize && flushScheduled.compareAndSet(false, true)) {
+            try {
+                scheduler.execute(() -> {
+                    flushScheduled.set(false);
+                    flush();
+                });
+            } catch (RejectedExecutionException e) {
+                // shutting down, pending documents are written by shutdown()
+                flushScheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * Writes all pending documents, except those of collections backing off after a failed batch.
+     */
+    public void flush() {
+        flush(false);
+    }
+
+    private synchronized void flush(boolean shutdown) {
+        List<PendingDocument> pending = new ArrayList<>();
+        queue.drainTo(pending);
+        Map<String, List<Document>> byCollection = new LinkedHashMap<>();
+        for (PendingDocument document : pending) {
+            byCollection.computeIfAbsent(document.collectionName, c -> new ArrayList<>()).add(document.document);
+        }
+        byCollection.forEach((collectionName, documents) -> {
+            for (int i = 0; i < documents.size(); i += batchSize) {
+                int end = Math.min(i + batchSize, documents.size());
+                batches.addLast(new Batch(collectionName, new ArrayList<>(documents.subList(i, end))));
+                retainedCount += end - i;
+            }
+        });
+
+        long now = System.currentTimeMillis();
+        long writtenBefore = writtenCount.get();
+        // collections with a batch failing in this flush, their later batches are not written to keep the order
+        Set<String> failed = new HashSet<>();
+        Iterator<Batch> iterator = batches.iterator();
+        while (iterator.hasNext()) {
+            Batch batch = iterator.next();
+            String collectionName = batch.collectionName;
+            boolean skip = failed.contains(collectionName) || (!shutdown && isBackingOff(collectionName, now));
+            if (!skip && write(batch)) {
+                backoffs.remove(collectionName);
+            } else if (shutdown) {
+                failed.add(collectionName);
+                drop(batch.documents.size(), "at shutdown");
+            } else {
+                if (!skip) {
+                    failed.add(collectionName);
+                    backOff(collectionName, now);
+                }
+                continue;
+            }
+            iterator.remove();
+            retainedCount -= batch.documents.size();
+        }
+        trimRetained();
+        long written = writtenCount.get() - writtenBefore;
+        if (written > 0) {
+            logger.debug("MongoDB wrote {} documents, {}", written, this);
+        }
+    }
+
+    /**
+     * Writes all pending documents and stops the background writer.
+     */
+    public void shutdown() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush(true);
+    }
+
+    /**
+     * Writes a batch.
+     *
+     * @return true if the batch is done, false if it failed and is retried
+     */
+    private boolean write(Batch batch) {
+        int size = batch.documents.size();
+        try {
+            writer.accept(batch.collectionName, batch.documents);
+            writtenCount.addAndGet(size);
+            batchCount.incrementAndGet();
+            return true;
+        } catch (MongoBulkWriteException e) {
+            // the unordered bulk write inserted all documents without a write error
+            int rejected = 0;
+            String reason = "";
+            for (BulkWriteError error : e.getWriteErrors()) {
+                if (batch.attempts > 0 && error.getCategory() == ErrorCategory.DUPLICATE_KEY) {
+                    // inserted by an earlier attempt whose response was lost
+                    continue;
+                }
+                rejected++;
+                reason = error.getMessage();
+            }
+            writtenCount.addAndGet(size - rejected);
+            batchCount.incrementAndGet();
+            drop(rejected, "rejected by collection '" + batch.collectionName + "': " + reason);
+            return true;
+        } catch (RuntimeException e) {
+            if (!isTransient(e)) {
+                drop(size, "failing with " + e.getClass().getSimpleName() + " in collection '" + batch.collectionName
+                        + "': " + e.getMessage());
+                return true;
+            }
+            batch.attempts++;
+            logger.warn("MongoDB failed to write {} documents to collection '{}' (attempt {}): {}", size,
+                    batch.collectionName, batch.attempts, e.getMessage());
+            if (batch.attempts >= MAX_ATTEMPTS) {
+                drop(size, "after " + batch.attempts + " attempts");
+                return true;
+            }
+            retryCount.incrementAndGet();
+            return false;
+        }
+    }
+
+    /**
+     * @return true if the failure is caused by the connection to the database, so that the batch can be retried
+     */
+    static boolean isTransient(RuntimeException e) {
+        // IllegalStateException is thrown if the client is not connected
+        return e instanceof MongoSocketException || e instanceof MongoTimeoutException
+                || e instanceof MongoExecutionTimeoutException || e instanceof MongoNotPrimaryException
+                || e instanceof MongoNodeIsRecoveringException || e instanceof IllegalStateException;
+    }
+
+    private boolean isBackingOff(String collectionName, long now) {
+        Backoff backoff = backoffs.get(collectionName);
+        return backoff != null && now < backoff.resumeAt;
+    }
+
+    private void backOff(String collectionName, long now) {
+        Backoff backoff = backoffs.computeIfAbsent(collectionName, c -> new Backoff());
+        backoff.millis = backoff.millis == 0 ? MIN_BACKOFF_MILLIS : Math.min(MAX_BACKOFF_MILLIS, backoff.millis * 2);
+        backoff.resumeAt = now + backoff.millis;
+    }
+
+    /**
+     * Drops the oldest batches while more than <code>capacity</code> documents are kept for retrying.
+     */
+    private void trimRetained() {
+        while (retainedCount > capacity && batches.size() > 1) {
+            Batch oldest = batches.removeFirst();
+            retainedCount -= oldest.documents.size();
+            drop(oldest.documents.size(), "as the write queue is full");
+        }
+    }
+
+    private void drop(int count, String reason) {
+        if (count > 0) {
+            droppedCount.addAndGet(count);
+            logger.warn("MongoDB dropping {} documents {}", count, reason);
+        }
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    public long getQueuedCount() {
+        return queuedCount.get();
+    }
+
+    public long getWrittenCount() {
+        return writtenCount.get();
+    }
+
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    public long getBackPressureCount() {
+        return backPressureCount.get();
+    }
+
+    public long getRetryCount() {
+        return retryCount.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "queueDepth=" + getQueueDepth() + ", maxQueueDepth=" + maxQueueDepth + ", queued=" + getQueuedCount()
+                + ", written=" + getWrittenCount() + ", batches=" + getBatchCount() + ", backPressure="
+                + getBackPressureCount() + ", retries=" + getRetryCount() + ", dropped=" + getDroppedCount();
+    }
+}
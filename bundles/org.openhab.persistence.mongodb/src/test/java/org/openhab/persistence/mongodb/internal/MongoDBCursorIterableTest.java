@@ -0,0 +1,137 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.mongodb.internal;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.junit.jupiter.api.Test;
+
+import com.mongodb.MongoSocketReadException;
+import com.mongodb.ServerAddress;
+import com.mongodb.ServerCursor;
+import com.mongodb.client.MongoCursor;
+
+/**
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class MongoDBCursorIterableTest {
+
+    private final List<TestCursor> cursors = new ArrayList<>();
+
+    private class TestCursor implements MongoCursor<Integer> {
+        private final Iterator<Integer> values;
+        private final int failAfter;
+        private int read;
+        private boolean closed;
+
+        private TestCursor(List<Integer> values, int failAfter) {
+            this.values = values.iterator();
+            this.failAfter = failAfter;
+            cursors.add(this);
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (read == failAfter) {
+                throw new MongoSocketReadException("connection lost", new ServerAddress());
+            }
+            return values.hasNext();
+        }
+
+        @Override
+        public Integer next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            read++;
+            return values.next();
+        }
+
+        @Override
+        public @Nullable Integer tryNext() {
+            return hasNext() ? next() : null;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        @Override
+        public @Nullable ServerCursor getServerCursor() {
+            return null;
+        }
+
+        @Override
+        public ServerAddress getServerAddress() {
+            return new ServerAddress();
+        }
+    }
+
+    @Test
+    public void cursorIsReadWhileIteratingAndClosedAtTheEnd() {
+        MongoDBCursorIterable<Integer> iterable = new MongoDBCursorIterable<>(
+                () -> new TestCursor(List.of(1, 2, 3), -1));
+        assertThat(cursors, is(empty()));
+
+        List<Integer> values = new ArrayList<>();
+        iterable.forEach(values::add);
+
+        assertThat(values, contains(1, 2, 3));
+        assertThat(cursors, hasSize(1));
+        assertThat(cursors.get(0).closed, is(true));
+    }
+
+    @Test
+    public void everyIterationExecutesTheQueryAgain() {
+        MongoDBCursorIterable<Integer> iterable = new MongoDBCursorIterable<>(() -> new TestCursor(List.of(1), -1));
+        iterable.forEach(value -> {
+        });
+        iterable.forEach(value -> {
+        });
+
+        assertThat(cursors, hasSize(2));
+    }
+
+    @Test
+    public void closingTheIteratorClosesTheCursor() {
+        MongoDBCursorIterable<Integer> iterable = new MongoDBCursorIterable<>(
+                () -> new TestCursor(List.of(1, 2, 3), -1));
+        MongoDBCursorIterable<Integer>.CursorIterator iterator = iterable.iterator();
+        assertThat(iterator.next(), is(1));
+        iterator.close();
+
+        assertThat(cursors.get(0).closed, is(true));
+        assertThat(iterator.hasNext(), is(false));
+    }
+
+    @Test
+    public void failedCursorEndsTheIteration() {
+        MongoDBCursorIterable<Integer> iterable = new MongoDBCursorIterable<>(
+                () -> new TestCursor(List.of(1, 2, 3), 1));
+        List<Integer> values = new ArrayList<>();
+        iterable.forEach(values::add);
+
+        assertThat(values, contains(1));
+        assertThat(cursors.get(0).closed, is(true));
+    }
+}
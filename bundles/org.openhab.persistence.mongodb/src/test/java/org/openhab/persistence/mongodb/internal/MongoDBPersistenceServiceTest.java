@@ -0,0 +1,55 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.mongodb.internal;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+
+import com.mongodb.MongoClient;
+
+/**
+ * Checks the index and the projection as they are encoded by the driver.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class MongoDBPersistenceServiceTest {
+
+    private static BsonDocument encode(Bson bson) {
+        return bson.toBsonDocument(Document.class, MongoClient.getDefaultCodecRegistry());
+    }
+
+    @Test
+    public void indexIsOnItemAndTimestamp() {
+        BsonDocument expected = new BsonDocument("item", new BsonInt32(1)).append("timestamp", new BsonInt32(1));
+
+        assertThat(encode(MongoDBPersistenceService.INDEX), is(expected));
+        // the order of the keys matters for a compound index
+        assertThat(encode(MongoDBPersistenceService.INDEX).getFirstKey(), is("item"));
+    }
+
+    @Test
+    public void queryReturnsTimestampAndValueOnly() {
+        BsonDocument expected = new BsonDocument("timestamp", new BsonInt32(1)).append("value", new BsonInt32(1))
+                .append("_id", new BsonInt32(0));
+
+        assertThat(encode(MongoDBPersistenceService.QUERY_PROJECTION), is(expected));
+    }
+}
@@ -0,0 +1,197 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.mongodb.internal;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+
+/**
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class MongoDBWriteQueueTest {
+
+    private static final int NO_LATENCY_FLUSH = 3600000;
+
+    private final List<String> writes = new ArrayList<>();
+
+    private void write(String collectionName, List<Document> documents) {
+        writes.add(collectionName + ":" + documents.size());
+    }
+
+    private static Document document(int i) {
+        return new Document("value", i);
+    }
+
+    private static MongoBulkWriteException bulkWriteException(int inserted, int code, int... failedIndexes) {
+        List<BulkWriteError> errors = new ArrayList<>();
+        for (int index : failedIndexes) {
+            errors.add(new BulkWriteError(code, "error " + code, new BsonDocument(), index));
+        }
+        return new MongoBulkWriteException(BulkWriteResult.acknowledged(inserted, 0, 0, 0, List.of()), errors, null,
+                new ServerAddress());
+    }
+
+    @Test
+    public void documentsAreWrittenInBatchesPerCollection() {
+        MongoDBWriteQueue queue = new MongoDBWriteQueue(10, 2, NO_LATENCY_FLUSH, this::write);
+        for (int i = 0; i < 3; i++) {
+            queue.add("a", document(i));
+        }
+        queue.add("b", document(3));
+        queue.flush();
+        queue.shutdown();
+
+        assertThat(writes, contains("a:2", "a:1", "b:1"));
+        assertThat(queue.getWrittenCount(), is(4L));
+        assertThat(queue.getDroppedCount(), is(0L));
+    }
+
+    @Test
+    public void failedBatchIsKeptAndWrittenAgain() {
+        AtomicInteger calls = new AtomicInteger();
+        MongoDBWriteQueue queue = new MongoDBWriteQueue(10, 10, NO_LATENCY_FLUSH, (collectionName, documents) -> {
+            if (calls.incrementAndGet() == 1) {
+                throw new IllegalStateException("not reachable");
+            }
+            write(collectionName, documents);
+        });
+        queue.add("a", document(0));
+        queue.add("a", document(1));
+        queue.flush();
+
+        assertThat(writes, is(empty()));
+        assertThat(queue.getRetryCount(), is(1L));
+
+        // backing off, the failed batch is not written again right away
+        queue.flush();
+        assertThat(calls.get(), is(1));
+
+        queue.shutdown();
+        assertThat(writes, contains("a:2"));
+        assertThat(queue.getDroppedCount(), is(0L));
+    }
+
+    @Test
+    public void oldestDocumentsAreDroppedWhenRetainingMoreThanCapacity() {
+        MongoDBWriteQueue queue = new MongoDBWriteQueue(2, 10, NO_LATENCY_FLUSH, (collectionName, documents) -> {
+            throw new IllegalStateException("not reachable");
+        });
+        queue.add("a", document(0));
+        queue.flush();
+        for (int i = 1; i < 5; i++) {
+            queue.add("a", document(i));
+        }
+
+        // two documents are queued, the failed one and the documents added to the full queue are retained
+        assertThat(queue.getQueueDepth(), is(2));
+        assertThat(queue.getDroppedCount(), is(1L));
+
+        queue.shutdown();
+        assertThat(queue.getDroppedCount(), is(5L));
+    }
+
+    @Test
+    public void rejectedDocumentsAreDroppedWithoutRetrying() {
+        AtomicInteger calls = new AtomicInteger();
+        MongoDBWriteQueue queue = new MongoDBWriteQueue(10, 10, NO_LATENCY_FLUSH, (collectionName, documents) -> {
+            calls.incrementAndGet();
+            throw bulkWriteException(2, 11000, 1);
+        });
+        for (int i = 0; i < 3; i++) {
+            queue.add("a", document(i));
+        }
+        queue.flush();
+        queue.flush();
+
+        assertThat(calls.get(), is(1));
+        assertThat(queue.getWrittenCount(), is(2L));
+        assertThat(queue.getDroppedCount(), is(1L));
+        assertThat(queue.getRetryCount(), is(0L));
+        queue.shutdown();
+    }
+
+    @Test
+    public void duplicateKeysOfRetriedBatchAreCountedAsWritten() {
+        AtomicInteger calls = new AtomicInteger();
+        MongoDBWriteQueue queue = new MongoDBWriteQueue(10, 10, NO_LATENCY_FLUSH, (collectionName, documents) -> {
+            if (calls.incrementAndGet() == 1) {
+                throw new IllegalStateException("not reachable");
+            }
+            // the first document was inserted by the first attempt
+            throw bulkWriteException(1, 11000, 0);
+        });
+        queue.add("a", document(0));
+        queue.add("a", document(1));
+        queue.flush();
+        queue.shutdown();
+
+        assertThat(calls.get(), is(2));
+        assertThat(queue.getWrittenCount(), is(2L));
+        assertThat(queue.getDroppedCount(), is(0L));
+    }
+
+    @Test
+    public void batchFailingForOtherReasonsIsDroppedWithoutRetrying() {
+        AtomicInteger calls = new AtomicInteger();
+        MongoDBWriteQueue queue = new MongoDBWriteQueue(10, 10, NO_LATENCY_FLUSH, (collectionName, documents) -> {
+            calls.incrementAndGet();
+            throw new MongoException(2, "bad value");
+        });
+        queue.add("a", document(0));
+        queue.add("a", document(1));
+        queue.flush();
+        queue.shutdown();
+
+        assertThat(calls.get(), is(1));
+        assertThat(queue.getDroppedCount(), is(2L));
+        assertThat(queue.getRetryCount(), is(0L));
+    }
+
+    @Test
+    public void failingCollectionDoesNotBlockOtherCollections() {
+        MongoDBWriteQueue queue = new MongoDBWriteQueue(10, 10, NO_LATENCY_FLUSH, (collectionName, documents) -> {
+            if ("a".equals(collectionName)) {
+                throw new IllegalStateException("not reachable");
+            }
+            write(collectionName, documents);
+        });
+        queue.add("a", document(0));
+        queue.add("b", document(1));
+        queue.flush();
+        assertThat(writes, contains("b:1"));
+
+        // "a" is backing off, "b" is still written
+        queue.add("a", document(2));
+        queue.add("b", document(3));
+        queue.flush();
+        assertThat(writes, contains("b:1", "b:1"));
+        assertThat(queue.getRetryCount(), is(1L));
+        queue.shutdown();
+    }
+}
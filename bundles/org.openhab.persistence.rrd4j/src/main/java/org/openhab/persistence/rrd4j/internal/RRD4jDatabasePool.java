@@ -0,0 +1,177 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.rrd4j.internal;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.rrd4j.core.RrdDb;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps a bounded number of {@link RrdDb} handles open so that subsequent stores and queries for the same database do
+ * not have to re-open the file. Handles are evicted in least-recently-used order once the configured maximum is
+ * exceeded, and can additionally be closed after having been idle for a while.
+ *
+ * Every database is guarded by its own lock: a handle returned by {@link #acquire(String, Function)} is exclusively
+ * owned by the calling thread until it is handed back via {@link #release(String)}. Accesses to different databases
+ * therefore proceed in parallel.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class RRD4jDatabasePool {
+
+    public static final int DEFAULT_MAX_OPEN_FILES = 200;
+    public static final int DEFAULT_IDLE_TIMEOUT = 300;
+
+    private final Logger logger = LoggerFactory.getLogger(RRD4jDatabasePool.class);
+
+    // access-ordered, so iteration starts with the least recently used entry
+    private final Map<String, PooledDatabase> databases = new LinkedHashMap<>(16, 0.75f, true);
+    private final LongSupplier clock;
+
+    private int maxOpenFiles = DEFAULT_MAX_OPEN_FILES;
+    private long idleTimeoutMillis = DEFAULT_IDLE_TIMEOUT * 1000L;
+
+    private static class PooledDatabase {
+        private final ReentrantLock lock = new ReentrantLock();
+        private @Nullable RrdDb db;
+        private int users;
+        private long lastAccess;
+    }
+
+    public RRD4jDatabasePool() {
+        this(System::currentTimeMillis);
+    }
+
+    RRD4jDatabasePool(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Sets the pool limits. A reduced maximum is applied on the next release of a handle.
+     *
+     * @param maxOpenFiles the maximum number of unused handles to keep open
+     * @param idleTimeout the time in seconds after which an unused handle is closed, 0 to keep handles open
+     */
+    public synchronized void configure(int maxOpenFiles, int idleTimeout) {
+        this.maxOpenFiles = Math.max(1, maxOpenFiles);
+        this.idleTimeoutMillis = Math.max(0, idleTimeout) * 1000L;
+    }
+
+    /**
+     * Returns the handle of the given database, opening it with the given function if it is not yet open. The caller
+     * holds the database lock until it calls {@link #release(String)}, which must happen even if the handle is
+     * <code>null</code>.
+     *
+     * @param name the name of the database
+     * @param opener the function used to open the database if no handle is available
+     * @return the database handle or <code>null</code> if the database could not be opened
+     */
+    public @Nullable RrdDb acquire(String name, Function<String, @Nullable RrdDb> opener) {
+        PooledDatabase pooled;
+        synchronized (this) {
+            pooled = databases.get(name);
+            if (pooled == null) {
+                pooled = new PooledDatabase();
+                databases.put(name, pooled);
+            }
+            pooled.users++;
+        }
+        pooled.lock.lock();
+        RrdDb db = pooled.db;
+        if (db == null || db.isClosed()) {
+            db = opener.apply(name);
+            pooled.db = db;
+        }
+        return db;
+    }
+
+    /**
+     * Hands back a handle previously obtained from {@link #acquire(String, Function)}.
+     *
+     * @param name the name of the database
+     */
+    public synchronized void release(String name) {
+        PooledDatabase pooled = databases.get(name);
+        if (pooled == null || !pooled.lock.isHeldByCurrentThread()) {
+            logger.warn("Releasing rrd4j database '{}' which is not held by the current thread", name);
+            return;
+        }
+        pooled.lastAccess = clock.getAsLong();
+        pooled.users--;
+        pooled.lock.unlock();
+        if (pooled.db == null && pooled.users == 0) {
+            databases.remove(name);
+        }
+        evict(maxOpenFiles, Long.MAX_VALUE);
+    }
+
+    /**
+     * Closes all handles that have not been used within the idle timeout.
+     */
+    public synchronized void closeIdle() {
+        if (idleTimeoutMillis > 0) {
+            evict(0, clock.getAsLong() - idleTimeoutMillis);
+        }
+    }
+
+    /**
+     * Closes all handles that are currently not in use.
+     */
+    public synchronized void closeAll() {
+        evict(0, Long.MAX_VALUE);
+        if (!databases.isEmpty()) {
+            logger.debug("{} rrd4j database(s) still in use, not closing them", databases.size());
+        }
+    }
+
+    /**
+     * @return the number of currently pooled handles
+     */
+    public synchronized int size() {
+        return databases.size();
+    }
+
+    /**
+     * Closes unused entries, least recently used first, as long as more than <code>maxRemaining</code> entries are
+     * pooled and the entry was last accessed before <code>accessedBefore</code>. Closing happens with the pool monitor
+     * held, so that a concurrent {@link #acquire(String, Function)} never opens a file that is still being closed.
+     */
+    private void evict(int maxRemaining, long accessedBefore) {
+        Iterator<PooledDatabase> iterator = databases.values().iterator();
+        while (databases.size() > maxRemaining && iterator.hasNext()) {
+            PooledDatabase pooled = iterator.next();
+            if (pooled.users == 0 && pooled.lastAccess < accessedBefore) {
+                iterator.remove();
+                RrdDb db = pooled.db;
+                if (db != null) {
+                    try {
+                        db.close();
+                    } catch (IOException e) {
+                        logger.debug("Error closing rrd4j database: {}", e.getMessage());
+                    }
+                }
+            }
+        }
+    }
+}
@@ -18,7 +18,6 @@ import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
@@ -64,17 +63,22 @@ import org.openhab.core.persistence.QueryablePersistenceService;
 import org.openhab.core.persistence.strategy.PersistenceCronStrategy;
 import org.openhab.core.persistence.strategy.PersistenceStrategy;
 import org.openhab.core.types.State;
+import org.openhab.io.metrics.AddonMeters;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.ConfigurationPolicy;
+import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Modified;
 import org.osgi.service.component.annotations.Reference;
 import org.rrd4j.ConsolFun;
 import org.rrd4j.DsType;
 import org.rrd4j.core.FetchData;
 import org.rrd4j.core.FetchRequest;
+import org.rrd4j.core.RrdBackendFactory;
 import org.rrd4j.core.RrdDb;
 import org.rrd4j.core.RrdDef;
+import org.rrd4j.core.RrdNioBackendFactory;
+import org.rrd4j.core.RrdRandomAccessFileBackendFactory;
 import org.rrd4j.core.Sample;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -89,8 +93,8 @@ import org.slf4j.LoggerFactory;
  * @author Karel Goderis - remove TimerThread dependency
  */
 @NonNullByDefault
-@Component(service = { PersistenceService.class,
-        QueryablePersistenceService.class }, configurationPid = "org.openhab.rrd4j", configurationPolicy = ConfigurationPolicy.OPTIONAL)
+@Component(service = { PersistenceService.class, QueryablePersistenceService.class,
+        RRD4jPersistenceService.class }, configurationPid = "org.openhab.rrd4j", configurationPolicy = ConfigurationPolicy.OPTIONAL)
 public class RRD4jPersistenceService implements QueryablePersistenceService {
 
     private static final String DEFAULT_OTHER = "default_other";
@@ -109,9 +113,37 @@ public class RRD4jPersistenceService implements QueryablePersistenceService {
 
     public static final String DB_FOLDER = getUserPersistenceDataFolder() + File.separator + "rrd4j";
 
+    private static final String CONFIG_MAX_OPEN_FILES = "maxOpenFiles";
+    private static final String CONFIG_IDLE_TIMEOUT = "idleTimeout";
+    private static final String CONFIG_WRITE_BEHIND = "writeBehind";
+    private static final String CONFIG_BACKEND = "backend";
+    private static final String CONFIG_SYNC_PERIOD = "syncPeriod";
+    private static final Set<String> SERVICE_CONFIG_KEYS = Set.of(CONFIG_MAX_OPEN_FILES, CONFIG_IDLE_TIMEOUT,
+            CONFIG_WRITE_BEHIND, CONFIG_BACKEND, CONFIG_SYNC_PERIOD);
+
+    private static final String BACKEND_NIO = "nio";
+    private static final String BACKEND_FILE = "file";
+    private static final int DEFAULT_SYNC_PERIOD = 300;
+    private static final int IDLE_CHECK_INTERVAL = 60;
+    private static final int FLUSH_INTERVAL = 1;
+    private static final int SAMPLE_BUFFER_CAPACITY = 64;
+
     private final Logger logger = LoggerFactory.getLogger(RRD4jPersistenceService.class);
 
-    private final Map<String, ScheduledFuture<?>> scheduledJobs = new HashMap<>();
+    private final Map<String, ScheduledFuture<?>> scheduledJobs = new ConcurrentHashMap<>();
+
+    private final RRD4jDatabasePool databasePool = new RRD4jDatabasePool();
+
+    private final Map<String, RRD4jSampleBuffer> sampleBuffers = new ConcurrentHashMap<>();
+
+    private @Nullable ScheduledFuture<?> idleCheckJob;
+    private @Nullable ScheduledFuture<?> flushJob;
+    private volatile boolean writeBehind = false;
+    private @Nullable AddonMeters meters;
+
+    private volatile RrdBackendFactory backendFactory = new RrdNioBackendFactory(DEFAULT_SYNC_PERIOD, scheduler);
+    private String backend = BACKEND_NIO;
+    private int syncPeriod = DEFAULT_SYNC_PERIOD;
 
     protected final ItemRegistry itemRegistry;
 
@@ -131,96 +163,213 @@ public class RRD4jPersistenceService implements QueryablePersistenceService {
     }
 
     @Override
-    public synchronized void store(final Item item, @Nullable final String alias) {
+    public void store(final Item item, @Nullable final String alias) {
         if (!isSupportedItemType(item)) {
             logger.trace("Ignoring item '{}' since its type {} is not supported", item.getName(), item.getType());
             return;
         }
         final String name = alias == null ? item.getName() : alias;
-        RrdDb db = getDB(name);
-        if (db != null) {
-            ConsolFun function = getConsolidationFunction(db);
-            long now = System.currentTimeMillis() / 1000;
-            if (function != ConsolFun.AVERAGE) {
-                try {
-                    // we store the last value again, so that the value change
-                    // in the database is not interpolated, but
-                    // happens right at this spot
-                    if (now - 1 > db.getLastUpdateTime()) {
-                        // only do it if there is not already a value
-                        double lastValue = db.getLastDatasourceValue(DATASOURCE_STATE);
-                        if (!Double.isNaN(lastValue)) {
-                            Sample sample = db.createSample();
-                            sample.setTime(now - 1);
-                            sample.setValue(DATASOURCE_STATE, lastValue);
-                            sample.update();
-                            logger.debug("Stored '{}' as value '{}' in rrd4j database (again)", name, lastValue);
-                        }
-                    }
-                } catch (IOException e) {
-                    logger.debug("Error storing last value (again): {}", e.getMessage());
+        long startNanos = System.nanoTime();
+        if (writeBehind) {
+            storeBuffered(item, name);
+            recordMeter("store", startNanos);
+            return;
+        }
+        try {
+            RrdDb db = databasePool.acquire(name, this::getDB);
+            if (db != null) {
+                store(db, item, name);
+            }
+        } finally {
+            databasePool.release(name);
+        }
+        recordMeter("store", startNanos);
+    }
+
+    private void store(RrdDb db, Item item, String name) {
+        long now = System.currentTimeMillis() / 1000;
+        try {
+            Double value = getValue(item);
+            if (value != null) {
+                storeSample(db, name, now, value, Double.NaN);
+            }
+        } catch (IllegalArgumentException e) {
+            String message = e.getMessage();
+            if (message != null && message.contains("at least one second step is required")) {
+                // we try to store the value one second later
+                ScheduledFuture<?> job = scheduledJobs.get(name);
+                if (job != null) {
+                    job.cancel(true);
+                    scheduledJobs.remove(name);
                 }
+                job = scheduler.schedule(() -> store(item, name), 1, TimeUnit.SECONDS);
+                scheduledJobs.put(name, job);
+            } else {
+                logger.warn("Could not persist '{}' to rrd4j database: {}", name, e.getMessage());
             }
+        } catch (Exception e) {
+            logger.warn("Could not persist '{}' to rrd4j database: {}", name, e.getMessage());
+        }
+    }
+
+    /**
+     * Writes a single sample to the database.
+     *
+     * @param db the database to write to
+     * @param name the name of the database, used for logging
+     * @param time the time of the sample in seconds since the epoch
+     * @param value the value as reported by the item, i.e. not yet adjusted for COUNTER datasources
+     * @param lastValue the previously written value or {@link Double#NaN} to read it from the database
+     * @return the value that was written to the database
+     * @throws IOException if writing to the database failed
+     */
+    private double storeSample(RrdDb db, String name, long time, double value, double lastValue) throws IOException {
+        if (getConsolidationFunction(db) != ConsolFun.AVERAGE) {
             try {
-                Sample sample = db.createSample();
-                sample.setTime(now);
-
-                Double value = null;
-
-                if (item instanceof NumberItem && item.getState() instanceof QuantityType) {
-                    NumberItem nItem = (NumberItem) item;
-                    QuantityType<?> qState = (QuantityType<?>) item.getState();
-                    Unit<? extends Quantity<?>> unit = nItem.getUnit();
-                    if (unit != null) {
-                        QuantityType<?> convertedState = qState.toUnit(unit);
-                        if (convertedState != null) {
-                            value = convertedState.doubleValue();
-                        } else {
-                            logger.warn(
-                                    "Failed to convert state '{}' to unit '{}'. Please check your item definition for correctness.",
-                                    qState, unit);
-                        }
-                    } else {
-                        value = qState.doubleValue();
+                // we store the last value again, so that the value change
+                // in the database is not interpolated, but
+                // happens right at this spot
+                if (time - 1 > db.getLastUpdateTime()) {
+                    // only do it if there is not already a value
+                    if (Double.isNaN(lastValue)) {
+                        lastValue = db.getLastDatasourceValue(DATASOURCE_STATE);
                     }
-                } else {
-                    DecimalType state = item.getStateAs(DecimalType.class);
-                    if (state != null) {
-                        value = state.toBigDecimal().doubleValue();
+                    if (!Double.isNaN(lastValue)) {
+                        Sample sample = db.createSample();
+                        sample.setTime(time - 1);
+                        sample.setValue(DATASOURCE_STATE, lastValue);
+                        sample.update();
+                        logger.debug("Stored '{}' as value '{}' in rrd4j database (again)", name, lastValue);
                     }
                 }
-                if (value != null) {
-                    if (db.getDatasource(DATASOURCE_STATE).getType() == DsType.COUNTER) { // counter values must be
-                                                                                          // adjusted by stepsize
-                        value = value * db.getRrdDef().getStep();
-                    }
-                    sample.setValue(DATASOURCE_STATE, value);
-                    sample.update();
-                    logger.debug("Stored '{}' as value '{}' in rrd4j database", name, value);
+            } catch (IOException e) {
+                logger.debug("Error storing last value (again): {}", e.getMessage());
+            }
+        }
+        if (db.getDatasource(DATASOURCE_STATE).getType() == DsType.COUNTER) { // counter values must be
+                                                                              // adjusted by stepsize
+            value = value * db.getRrdDef().getStep();
+        }
+        Sample sample = db.createSample();
+        sample.setTime(time);
+        sample.setValue(DATASOURCE_STATE, value);
+        sample.update();
+        logger.debug("Stored '{}' as value '{}' in rrd4j database", name, value);
+        return value;
+    }
+
+    /**
+     * Appends the current state of the item to the in-memory buffer of its database. The buffer is written to disk by
+     * {@link #flushSampleBuffers(boolean)} once per step of the database.
+     */
+    private void storeBuffered(Item item, String name) {
+        Double value = getValue(item);
+        if (value == null) {
+            return;
+        }
+        RRD4jSampleBuffer buffer = sampleBuffers.get(name);
+        if (buffer == null) {
+            buffer = createSampleBuffer(name);
+            if (buffer == null) {
+                return;
+            }
+            RRD4jSampleBuffer existing = sampleBuffers.putIfAbsent(name, buffer);
+            if (existing != null) {
+                buffer = existing;
+            }
+        }
+        if (!buffer.add(System.currentTimeMillis() / 1000, value)) {
+            long dropped = buffer.getDroppedCount();
+            if (dropped == 1) {
+                logger.warn("Write buffer for '{}' is full, dropping the oldest pending values", name);
+            } else {
+                logger.debug("Write buffer for '{}' is full, {} pending values dropped so far", name, dropped);
+            }
+        }
+    }
+
+    private @Nullable RRD4jSampleBuffer createSampleBuffer(String name) {
+        try {
+            RrdDb db = databasePool.acquire(name, this::getDB);
+            if (db == null) {
+                return null;
+            }
+            return new RRD4jSampleBuffer(db.getRrdDef().getStep(), getConsolidationFunction(db) == ConsolFun.AVERAGE,
+                    SAMPLE_BUFFER_CAPACITY);
+        } catch (IOException e) {
+            logger.warn("Could not read rrd4j database definition for '{}': {}", name, e.getMessage());
+            return null;
+        } finally {
+            databasePool.release(name);
+        }
+    }
+
+    /**
+     * Writes the buffered samples of all databases.
+     *
+     * @param all <code>true</code> to also write the samples of steps that are not yet completed
+     */
+    private void flushSampleBuffers(boolean all) {
+        for (String name : sampleBuffers.keySet()) {
+            flushSampleBuffer(name, all);
+        }
+    }
+
+    private void flushSampleBuffer(String name, boolean all) {
+        RRD4jSampleBuffer buffer = sampleBuffers.get(name);
+        if (buffer == null || buffer.isEmpty()) {
+            return;
+        }
+        try {
+            RrdDb db = databasePool.acquire(name, this::getDB);
+            if (db == null) {
+                return;
+            }
+            long lastUpdateTime = db.getLastUpdateTime();
+            double[] lastValue = { Double.NaN };
+            int count = buffer.drain(System.currentTimeMillis() / 1000, all, (time, value) -> {
+                if (time <= lastUpdateTime) {
+                    logger.debug("Discarding value '{}' for '{}', database has already been updated", value, name);
+                    return;
                 }
-            } catch (IllegalArgumentException e) {
-                String message = e.getMessage();
-                if (message != null && message.contains("at least one second step is required")) {
-                    // we try to store the value one second later
-                    ScheduledFuture<?> job = scheduledJobs.get(name);
-                    if (job != null) {
-                        job.cancel(true);
-                        scheduledJobs.remove(name);
-                    }
-                    job = scheduler.schedule(() -> store(item, name), 1, TimeUnit.SECONDS);
-                    scheduledJobs.put(name, job);
-                } else {
+                try {
+                    lastValue[0] = storeSample(db, name, time, value, lastValue[0]);
+                } catch (IOException | IllegalArgumentException e) {
                     logger.warn("Could not persist '{}' to rrd4j database: {}", name, e.getMessage());
                 }
-            } catch (Exception e) {
-                logger.warn("Could not persist '{}' to rrd4j database: {}", name, e.getMessage());
+            });
+            logger.trace("Flushed {} buffered value(s) for '{}'", count, name);
+        } catch (IOException e) {
+            logger.warn("Could not flush buffered values for '{}' to rrd4j database: {}", name, e.getMessage());
+        } finally {
+            databasePool.release(name);
+        }
+    }
+
+    private @Nullable Double getValue(Item item) {
+        if (item instanceof NumberItem && item.getState() instanceof QuantityType) {
+            NumberItem nItem = (NumberItem) item;
+            QuantityType<?> qState = (QuantityType<?>) item.getState();
+            Unit<? extends Quantity<?>> unit = nItem.getUnit();
+            if (unit != null) {
+                QuantityType<?> convertedState = qState.toUnit(unit);
+                if (convertedState != null) {
+                    return convertedState.doubleValue();
+                } else {
+                    logger.warn(
+                            "Failed to convert state '{}' to unit '{}'. Please check your item definition for correctness.",
+                            qState, unit);
+                }
+            } else {
+                return qState.doubleValue();
             }
-            try {
-                db.close();
-            } catch (IOException e) {
-                logger.debug("Error closing rrd4j database: {}", e.getMessage());
+        } else {
+            DecimalType state = item.getStateAs(DecimalType.class);
+            if (state != null) {
+                return state.toBigDecimal().doubleValue();
             }
         }
+        return null;
     }
 
     @Override
@@ -231,13 +380,50 @@ public class RRD4jPersistenceService implements QueryablePersistenceService {
     @Override
     public Iterable<HistoricItem> query(FilterCriteria filter) {
         String itemName = filter.getItemName();
+        long startNanos = System.nanoTime();
 
-        RrdDb db = getDB(itemName);
-        if (db == null) {
-            logger.debug("Could not find item '{}' in rrd4j database", itemName);
-            return List.of();
+        // make sure that pending values are included in the result
+        flushSampleBuffer(itemName, true);
+
+        try {
+            RrdDb db = databasePool.acquire(itemName, this::getDB);
+            if (db == null) {
+                logger.debug("Could not find item '{}' in rrd4j database", itemName);
+                return List.of();
+            }
+            return query(db, filter, itemName);
+        } finally {
+            databasePool.release(itemName);
+            recordMeter("query", startNanos);
         }
+    }
 
+    /**
+     * Reads the consolidated values of an item for a chart. Pending write-behind samples are written first, and the
+     * database is accessed through the pool of open handles.
+     *
+     * @param itemName the name of the item
+     * @param start the start of the chart in seconds since the epoch
+     * @param end the end of the chart in seconds since the epoch
+     * @param resolution the time span in seconds covered by one pixel of the chart
+     * @return the values or <code>null</code> if there is no database for the item
+     * @throws IOException if the database could not be read
+     */
+    public @Nullable FetchData fetchChartData(String itemName, long start, long end, long resolution)
+            throws IOException {
+        flushSampleBuffer(itemName, true);
+        try {
+            RrdDb db = databasePool.acquire(itemName, this::getDB);
+            if (db == null) {
+                return null;
+            }
+            return db.createFetchRequest(getConsolidationFunction(db), start, end, resolution).fetchData();
+        } finally {
+            databasePool.release(itemName);
+        }
+    }
+
+    private Iterable<HistoricItem> query(RrdDb db, FilterCriteria filter, String itemName) {
         Item item = null;
         Unit<?> unit = null;
         try {
@@ -313,13 +499,13 @@ public class RRD4jPersistenceService implements QueryablePersistenceService {
         return Set.of();
     }
 
-    protected synchronized @Nullable RrdDb getDB(String alias) {
+    protected @Nullable RrdDb getDB(String alias) {
         RrdDb db = null;
         File file = new File(DB_FOLDER + File.separator + alias + ".rrd");
         try {
             if (file.exists()) {
                 // recreate the RrdDb instance from the file
-                db = new RrdDb(file.getAbsolutePath());
+                db = new RrdDb(file.getAbsolutePath(), backendFactory);
             } else {
                 File folder = new File(DB_FOLDER);
                 if (!folder.exists()) {
@@ -328,7 +514,7 @@ public class RRD4jPersistenceService implements QueryablePersistenceService {
                 RrdDef rrdDef = getRrdDef(alias, file);
                 if (rrdDef != null) {
                     // create a new database file
-                    db = new RrdDb(rrdDef);
+                    db = new RrdDb(rrdDef, backendFactory);
                 } else {
                     logger.debug(
                             "Did not create rrd4j database for item '{}' since no rrd definition could be determined. This is likely due to an unsupported item type.",
@@ -441,6 +627,62 @@ public class RRD4jPersistenceService implements QueryablePersistenceService {
     @Activate
     protected void activate(final Map<String, Object> config) {
         modified(config);
+        idleCheckJob = scheduler.scheduleWithFixedDelay(databasePool::closeIdle, IDLE_CHECK_INTERVAL,
+                IDLE_CHECK_INTERVAL, TimeUnit.SECONDS);
+        meters = registerMeters();
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        ScheduledFuture<?> idleCheckJob = this.idleCheckJob;
+        if (idleCheckJob != null) {
+            idleCheckJob.cancel(false);
+            this.idleCheckJob = null;
+        }
+        setWriteBehind(false);
+        databasePool.closeAll();
+        AddonMeters meters = this.meters;
+        if (meters != null) {
+            this.meters = null;
+            meters.close();
+        }
+    }
+
+    /**
+     * Registers the store and query latency and the number of buffered samples with the metrics service, if it is
+     * installed.
+     */
+    private @Nullable AddonMeters registerMeters() {
+        try {
+            AddonMeters meters = AddonMeters.forPersistenceService(getId());
+            meters.gauge("queue.depth",
+                    () -> sampleBuffers.values().stream().mapToInt(RRD4jSampleBuffer::size).sum());
+            return meters;
+        } catch (NoClassDefFoundError e) {
+            logger.debug("Metrics service not installed, no meters registered");
+            return null;
+        }
+    }
+
+    private void recordMeter(String operation, long startNanos) {
+        AddonMeters meters = this.meters;
+        if (meters != null) {
+            meters.record(operation, startNanos);
+        }
+    }
+
+    private synchronized void setWriteBehind(boolean writeBehind) {
+        this.writeBehind = writeBehind;
+        ScheduledFuture<?> flushJob = this.flushJob;
+        if (writeBehind && flushJob == null) {
+            this.flushJob = scheduler.scheduleWithFixedDelay(() -> flushSampleBuffers(false), FLUSH_INTERVAL,
+                    FLUSH_INTERVAL, TimeUnit.SECONDS);
+        } else if (!writeBehind && flushJob != null) {
+            flushJob.cancel(false);
+            this.flushJob = null;
+            flushSampleBuffers(true);
+            sampleBuffers.clear();
+        }
     }
 
     @Modified
@@ -448,6 +690,13 @@ public class RRD4jPersistenceService implements QueryablePersistenceService {
         // clean existing definitions
         rrdDefs.clear();
 
+        // configure the pool of open database files
+        databasePool.configure(getIntConfig(config, CONFIG_MAX_OPEN_FILES, RRD4jDatabasePool.DEFAULT_MAX_OPEN_FILES),
+                getIntConfig(config, CONFIG_IDLE_TIMEOUT, RRD4jDatabasePool.DEFAULT_IDLE_TIMEOUT));
+        setWriteBehind(Boolean.parseBoolean(String.valueOf(config.get(CONFIG_WRITE_BEHIND))));
+        setBackend(String.valueOf(config.getOrDefault(CONFIG_BACKEND, BACKEND_NIO)),
+                getIntConfig(config, CONFIG_SYNC_PERIOD, DEFAULT_SYNC_PERIOD));
+
         // add default configurations
 
         RrdDefConfig defaultNumeric = new RrdDefConfig(DEFAULT_NUMERIC);
@@ -501,6 +750,11 @@ public class RRD4jPersistenceService implements QueryablePersistenceService {
                 continue;
             }
 
+            if (SERVICE_CONFIG_KEYS.contains(key)) {
+                // service-wide settings, already processed
+                continue;
+            }
+
             String[] subkeys = key.split("\\.");
             if (subkeys.length != 2) {
                 logger.debug("config '{}' should have the format 'name.configkey'", key);
@@ -554,6 +808,43 @@ public class RRD4jPersistenceService implements QueryablePersistenceService {
         }
     }
 
+    private synchronized void setBackend(String backend, int syncPeriod) {
+        String newBackend = backend.trim().toLowerCase();
+        if (!BACKEND_NIO.equals(newBackend) && !BACKEND_FILE.equals(newBackend)) {
+            logger.warn("Unknown backend '{}', using '{}'", backend, BACKEND_NIO);
+            newBackend = BACKEND_NIO;
+        }
+        int newSyncPeriod = Math.max(1, syncPeriod);
+        if (newBackend.equals(this.backend) && (BACKEND_FILE.equals(newBackend) || newSyncPeriod == this.syncPeriod)) {
+            return;
+        }
+        if (BACKEND_FILE.equals(newBackend)) {
+            backendFactory = new RrdRandomAccessFileBackendFactory();
+        } else {
+            // files are memory-mapped, changes are written to disk by the scheduler every syncPeriod seconds
+            backendFactory = new RrdNioBackendFactory(newSyncPeriod, scheduler);
+        }
+        this.backend = newBackend;
+        this.syncPeriod = newSyncPeriod;
+        logger.debug("Using rrd4j backend '{}' (sync period {}s)", newBackend, newSyncPeriod);
+        // handles opened with the previous backend are re-opened on next use
+        databasePool.closeAll();
+    }
+
+    private int getIntConfig(Map<String, Object> config, String key, int defaultValue) {
+        Object value = config.get(key);
+        if (value instanceof Number) {
+            return ((Number) value).intValue();
+        } else if (value instanceof String && !((String) value).isBlank()) {
+            try {
+                return Integer.parseInt(((String) value).trim());
+            } catch (NumberFormatException e) {
+                logger.warn("Ignoring illegal value '{}' for '{}', using {}", value, key, defaultValue);
+            }
+        }
+        return defaultValue;
+    }
+
     private class RrdArchiveDef {
         public @Nullable ConsolFun fcn;
         public double xff;
@@ -0,0 +1,148 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.rrd4j.internal;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+
+/**
+ * A fixed-size ring of samples that have not yet been written to a rrd4j database. Samples falling into the same
+ * step of the database are coalesced into a single entry: for databases using the AVERAGE consolidation function
+ * the values are averaged, otherwise the last value wins. The timestamp of an entry is the one of the last sample
+ * added to it, so timestamps of consecutive entries are always at least one second apart.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class RRD4jSampleBuffer {
+
+    private final long step;
+    private final boolean average;
+
+    private final long[] times;
+    private final double[] values;
+    private final int[] counts;
+    private int head;
+    private int size;
+    private long droppedCount;
+
+    /**
+     * Creates a new buffer.
+     *
+     * @param step the step of the database in seconds
+     * @param average <code>true</code> if samples within a step should be averaged instead of replaced
+     * @param capacity the maximum number of entries, the oldest entry is dropped if it is exceeded
+     */
+    public RRD4jSampleBuffer(long step, boolean average, int capacity) {
+        this.step = Math.max(1, step);
+        this.average = average;
+        this.times = new long[capacity];
+        this.values = new double[capacity];
+        this.counts = new int[capacity];
+    }
+
+    /**
+     * Adds a sample to the buffer.
+     *
+     * @param time the time of the sample in seconds since the epoch
+     * @param value the value of the sample
+     * @return <code>false</code> if the oldest entry had to be dropped to make room for the sample
+     */
+    public synchronized boolean add(long time, double value) {
+        if (size > 0) {
+            int last = index(size - 1);
+            if (time < times[last]) {
+                // never go back in time, rrd4j would reject such a sample anyway
+                time = times[last];
+            }
+            if (time / step == times[last] / step) {
+                if (average) {
+                    values[last] += (value - values[last]) / ++counts[last];
+                } else {
+                    values[last] = value;
+                }
+                times[last] = time;
+                return true;
+            }
+        }
+        boolean dropped = false;
+        if (size == times.length) {
+            head = index(1);
+            size--;
+            droppedCount++;
+            dropped = true;
+        }
+        int next = index(size);
+        times[next] = time;
+        values[next] = value;
+        counts[next] = 1;
+        size++;
+        return !dropped;
+    }
+
+    /**
+     * Removes entries from the buffer and passes them on to the given consumer, oldest first.
+     *
+     * @param now the current time in seconds since the epoch
+     * @param all <code>true</code> to remove all entries, <code>false</code> to keep the entry of a step that is not
+     *            yet completed at <code>now</code>
+     * @param consumer the consumer for the removed entries
+     * @return the number of removed entries
+     */
+    public synchronized int drain(long now, boolean all, SampleConsumer consumer) {
+        int drained = 0;
+        while (size > 0) {
+            long time = times[head];
+            if (!all && time / step == now / step) {
+                break;
+            }
+            consumer.accept(time, values[head]);
+            head = index(1);
+            size--;
+            drained++;
+        }
+        return drained;
+    }
+
+    /**
+     * @return <code>true</code> if there are no pending samples
+     */
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return the number of pending samples
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of entries dropped because the buffer was full
+     */
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    private int index(int offset) {
+        return (head + offset) % times.length;
+    }
+
+    /**
+     * Receives the samples drained from a {@link RRD4jSampleBuffer}.
+     */
+    @FunctionalInterface
+    public interface SampleConsumer {
+        void accept(long time, double value);
+    }
+}
@@ -0,0 +1,140 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.rrd4j.internal.charts;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Keeps encoded charts until the finest archive shown in them receives its next value. The cache is bounded by the
+ * total size of the charts, once it's exceeded expired charts are removed first and then the least recently used
+ * ones.
+ *
+ * Charts are kept as encoded images, so callers can't modify a cached chart and it needn't be encoded again when it's
+ * sent.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+class RRD4jChartCache {
+
+    private static class CachedChart {
+        final byte[] image;
+        final long end;
+        final long validUntil;
+
+        CachedChart(byte[] image, long end, long validUntil) {
+            this.image = image;
+            this.end = end;
+            this.validUntil = validUntil;
+        }
+
+        boolean isValidFor(long requestedEnd) {
+            return requestedEnd >= end && requestedEnd < validUntil;
+        }
+    }
+
+    private final long maxBytes;
+
+    // access-ordered, so iteration starts with the least recently used chart. Guarded by this.
+    private final Map<String, CachedChart> charts = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    /**
+     * @param maxBytes the maximum total size of the cached charts
+     */
+    RRD4jChartCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns a cached chart if it's still valid for the requested end time.
+     *
+     * @param key the parameters of the chart
+     * @param end the end of the requested chart in seconds since the epoch
+     * @return the encoded chart or <code>null</code> if it has to be rendered
+     */
+    synchronized byte @Nullable [] get(String key, long end) {
+        CachedChart chart = charts.get(key);
+        if (chart == null) {
+            return null;
+        } else if (!chart.isValidFor(end)) {
+            remove(key);
+            return null;
+        }
+        return chart.image;
+    }
+
+    /**
+     * Caches a chart, replacing an earlier one with the same key. Charts larger than the cache are not cached.
+     *
+     * @param key the parameters of the chart
+     * @param image the encoded chart
+     * @param end the end of the chart in seconds since the epoch
+     * @param validUntil the time in seconds since the epoch from which on the chart has to be rendered again
+     */
+    synchronized void put(String key, byte[] image, long end, long validUntil) {
+        remove(key);
+        if (image.length > maxBytes) {
+            return;
+        }
+        charts.put(key, new CachedChart(image, end, validUntil));
+        bytes += image.length;
+        if (bytes > maxBytes) {
+            evict(end);
+        }
+    }
+
+    synchronized void clear() {
+        charts.clear();
+        bytes = 0;
+    }
+
+    synchronized int size() {
+        return charts.size();
+    }
+
+    /**
+     * @return the total size of the cached charts in bytes
+     */
+    synchronized long getBytes() {
+        return bytes;
+    }
+
+    private void remove(String key) {
+        CachedChart removed = charts.remove(key);
+        if (removed != null) {
+            bytes -= removed.image.length;
+        }
+    }
+
+    private void evict(long now) {
+        Iterator<CachedChart> iterator = charts.values().iterator();
+        while (iterator.hasNext()) {
+            CachedChart chart = iterator.next();
+            if (chart.validUntil <= now) {
+                iterator.remove();
+                bytes -= chart.image.length;
+            }
+        }
+        iterator = charts.values().iterator();
+        while (bytes > maxBytes && iterator.hasNext()) {
+            bytes -= iterator.next().image.length;
+            iterator.remove();
+        }
+    }
+}
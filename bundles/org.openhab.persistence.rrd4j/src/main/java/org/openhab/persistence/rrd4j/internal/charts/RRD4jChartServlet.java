@@ -15,13 +15,21 @@ package org.openhab.persistence.rrd4j.internal.charts;
 import java.awt.Color;
 import java.awt.Font;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import javax.imageio.ImageIO;
 import javax.servlet.Servlet;
@@ -30,6 +38,8 @@ import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.common.ThreadPoolManager;
 import org.openhab.core.items.GroupItem;
 import org.openhab.core.items.Item;
 import org.openhab.core.items.ItemNotFoundException;
@@ -44,7 +54,7 @@ import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.http.HttpService;
 import org.osgi.service.http.NamespaceException;
 import org.rrd4j.ConsolFun;
-import org.rrd4j.core.RrdDb;
+import org.rrd4j.core.FetchData;
 import org.rrd4j.graph.RrdGraph;
 import org.rrd4j.graph.RrdGraphDef;
 import org.slf4j.Logger;
@@ -61,6 +71,9 @@ import org.slf4j.LoggerFactory;
  * <li>groups: A comma separated list of group names, whose members should be displayed
  * </ul>
  *
+ * Rendered charts are cached as PNG images until the finest archive shown in them receives its next value, so that
+ * several clients requesting the same chart within one step of the database only cause it to be rendered once.
+ *
  * @author Kai Kreuzer - Initial contribution
  * @author Chris Jackson - a few improvements
  * @author Jan N. Klug - a few improvements
@@ -83,6 +96,12 @@ public class RRD4jChartServlet implements Servlet, ChartProvider {
 
     protected static final Map<String, Long> PERIODS = new HashMap<>();
 
+    private static final long MAX_CACHED_CHART_BYTES = 8 * 1024 * 1024;
+
+    private final RRD4jChartCache chartCache = new RRD4jChartCache(MAX_CACHED_CHART_BYTES);
+
+    private final ExecutorService threadPool = ThreadPoolManager.getPool("rrd4j-charts");
+
     static {
         PERIODS.put("h", -3600000L);
         PERIODS.put("4h", -14400000L);
@@ -104,6 +123,9 @@ public class RRD4jChartServlet implements Servlet, ChartProvider {
     @Reference
     protected ItemUIRegistry itemUIRegistry;
 
+    @Reference
+    protected RRD4jPersistenceService persistenceService;
+
     @Activate
     protected void activate() {
         try {
@@ -119,6 +141,7 @@ public class RRD4jChartServlet implements Servlet, ChartProvider {
     @Deactivate
     protected void deactivate() {
         httpService.unregister(SERVLET_NAME);
+        chartCache.clear();
     }
 
     @Override
@@ -147,9 +170,12 @@ public class RRD4jChartServlet implements Servlet, ChartProvider {
         // Set the content type to that provided by the chart provider
         res.setContentType("image/" + getChartType());
         try {
-            BufferedImage chart = createChart(null, null, timeBegin, timeEnd, height, width, req.getParameter("items"),
+            RenderedChart chart = renderChart(null, timeBegin, timeEnd, height, width, req.getParameter("items"),
                     req.getParameter("groups"), null, null);
-            ImageIO.write(chart, getChartType().toString(), res.getOutputStream());
+            if (chart != null) {
+                // cached charts are sent as they are, without decoding and encoding them again
+                res.getOutputStream().write(chart.getPng());
+            }
         } catch (ItemNotFoundException e) {
             logger.debug("Item not found error while generating chart.");
         } catch (IllegalArgumentException e) {
@@ -157,37 +183,58 @@ public class RRD4jChartServlet implements Servlet, ChartProvider {
         }
     }
 
+    /**
+     * Reads the data of an item that is needed to draw its line.
+     *
+     * @param item the item to read the data for
+     * @param start the start of the chart in seconds since the epoch
+     * @param end the end of the chart in seconds since the epoch
+     * @param resolution the time span in seconds covered by one pixel of the chart
+     * @return the data of the item, with <code>fetchData</code> being <code>null</code> if reading failed
+     */
+    protected ChartSeries fetchSeries(Item item, long start, long end, long resolution) {
+        String rrdName = RRD4jPersistenceService.DB_FOLDER + File.separator + item.getName() + ".rrd";
+        ConsolFun consolFun = ConsolFun.MAX;
+        FetchData fetchData = null;
+        try {
+            // through the service, so pooled handles are reused and pending write-behind samples are included
+            fetchData = persistenceService.fetchChartData(item.getName(), start, end, resolution);
+            if (fetchData != null) {
+                consolFun = fetchData.getRequest().getConsolFun();
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            logger.debug("Could not read rrd4j database '{}': {}", rrdName, e.getMessage());
+        }
+        return new ChartSeries(item, rrdName, consolFun, fetchData);
+    }
+
     /**
      * Adds a line for the item to the graph definition.
      * The color of the line is determined by the counter, it simply picks the according index from LINECOLORS (and
      * rolls over if necessary).
      *
      * @param graphDef the graph definition to fill
-     * @param item the item to add a line for
+     * @param series the item and its data to add a line for
      * @param counter defines the number of the datasource and is used to determine the line color
      */
-    protected void addLine(RrdGraphDef graphDef, Item item, int counter) {
+    protected void addLine(RrdGraphDef graphDef, ChartSeries series, int counter) {
+        Item item = series.item;
         Color color = LINECOLORS[counter % LINECOLORS.length];
         String label = itemUIRegistry.getLabel(item.getName());
-        String rrdName = RRD4jPersistenceService.DB_FOLDER + File.separator + item.getName() + ".rrd";
-        ConsolFun consolFun;
         if (label != null && label.contains("[") && label.contains("]")) {
             label = label.substring(0, label.indexOf('['));
         }
-        try {
-            RrdDb db = new RrdDb(rrdName);
-            consolFun = db.getRrdDef().getArcDefs()[0].getConsolFun();
-            db.close();
-        } catch (IOException e) {
-            consolFun = ConsolFun.MAX;
+        FetchData fetchData = series.fetchData;
+        if (fetchData != null) {
+            graphDef.datasource(Integer.toString(counter), "state", fetchData);
+        } else {
+            graphDef.datasource(Integer.toString(counter), series.rrdName, "state", series.consolFun);
         }
         if (item instanceof NumberItem) {
             // we only draw a line
-            graphDef.datasource(Integer.toString(counter), rrdName, "state", consolFun); // RRD4jService.getConsolidationFunction(item));
             graphDef.line(Integer.toString(counter), color, label, 2);
         } else {
             // we draw a line and fill the area beneath it with a transparent color
-            graphDef.datasource(Integer.toString(counter), rrdName, "state", consolFun); // RRD4jService.getConsolidationFunction(item));
             Color areaColor = AREACOLORS[counter % LINECOLORS.length];
 
             graphDef.area(Integer.toString(counter), areaColor);
@@ -224,9 +271,40 @@ public class RRD4jChartServlet implements Servlet, ChartProvider {
     @Override
     public BufferedImage createChart(String service, String theme, Date startTime, Date endTime, int height, int width,
             String items, String groups, Integer dpi, Boolean legend) throws ItemNotFoundException {
-        RrdGraphDef graphDef = new RrdGraphDef();
+        RenderedChart chart = renderChart(theme, startTime, endTime, height, width, items, groups, dpi, legend);
+        if (chart == null) {
+            return null;
+        }
+        try {
+            return chart.getImage();
+        } catch (IOException e) {
+            logger.error("Error decoding cached graph.", e);
+            return null;
+        }
+    }
 
-        long period = (startTime.getTime() - endTime.getTime()) / 1000;
+    /**
+     * Returns a cached chart or renders it.
+     *
+     * @return the chart or <code>null</code> if rendering failed
+     */
+    private @Nullable RenderedChart renderChart(@Nullable String theme, Date startTime, Date endTime, int height,
+            int width, @Nullable String items, @Nullable String groups, @Nullable Integer dpi,
+            @Nullable Boolean legend) throws ItemNotFoundException {
+        long start = startTime.getTime() / 1000;
+        long end = endTime.getTime() / 1000;
+        long period = start - end;
+
+        String cacheKey = String.join("|", String.valueOf(theme), String.valueOf(items), String.valueOf(groups),
+                Integer.toString(width), Integer.toString(height), Long.toString(period), String.valueOf(dpi),
+                String.valueOf(legend));
+        byte[] cachedPng = chartCache.get(cacheKey, end);
+        if (cachedPng != null) {
+            logger.debug("Returning cached chart for items '{}' and groups '{}'", items, groups);
+            return new RenderedChart(null, cachedPng);
+        }
+
+        RrdGraphDef graphDef = new RrdGraphDef();
 
         graphDef.setWidth(width);
         graphDef.setHeight(height);
@@ -237,14 +315,13 @@ public class RRD4jChartServlet implements Servlet, ChartProvider {
         graphDef.setLargeFont(new Font("SansSerif", Font.PLAIN, 15));
         graphDef.setSmallFont(new Font("SansSerif", Font.PLAIN, 11));
 
-        int seriesCounter = 0;
+        List<Item> chartItems = new ArrayList<>();
 
         // Loop through all the items
         if (items != null) {
             String[] itemNames = items.split(",");
             for (String itemName : itemNames) {
-                Item item = itemUIRegistry.getItem(itemName);
-                addLine(graphDef, item, seriesCounter++);
+                chartItems.add(itemUIRegistry.getItem(itemName));
             }
         }
 
@@ -255,15 +332,24 @@ public class RRD4jChartServlet implements Servlet, ChartProvider {
                 Item item = itemUIRegistry.getItem(groupName);
                 if (item instanceof GroupItem) {
                     GroupItem groupItem = (GroupItem) item;
-                    for (Item member : groupItem.getMembers()) {
-                        addLine(graphDef, member, seriesCounter++);
-                    }
+                    chartItems.addAll(groupItem.getMembers());
                 } else {
                     throw new ItemNotFoundException("Item '" + item.getName() + "' defined in groups is not a group.");
                 }
             }
         }
 
+        List<ChartSeries> seriesList = fetchAllSeries(chartItems, start, end, Math.max(1, -period / width));
+        long step = Long.MAX_VALUE;
+        int seriesCounter = 0;
+        for (ChartSeries series : seriesList) {
+            addLine(graphDef, series, seriesCounter++);
+            FetchData fetchData = series.fetchData;
+            if (fetchData != null) {
+                step = Math.min(step, fetchData.getStep());
+            }
+        }
+
         // Write the chart as a PNG image
         RrdGraph graph;
         try {
@@ -272,7 +358,13 @@ public class RRD4jChartServlet implements Servlet, ChartProvider {
                     graph.getRrdGraphInfo().getHeight(), BufferedImage.TYPE_INT_RGB);
             graph.render(bi.getGraphics());
 
-            return bi;
+            if (step != Long.MAX_VALUE && step > 0) {
+                // the chart can only change once the next step of the finest involved archive has been written
+                byte[] png = RenderedChart.encode(bi);
+                chartCache.put(cacheKey, png, end, (end / step + 1) * step);
+                return new RenderedChart(bi, png);
+            }
+            return new RenderedChart(bi, null);
         } catch (IOException e) {
             logger.error("Error generating graph.", e);
         }
@@ -280,8 +372,100 @@ public class RRD4jChartServlet implements Servlet, ChartProvider {
         return null;
     }
 
+    /**
+     * Reads the data of all items, in parallel if there is more than one.
+     */
+    private List<ChartSeries> fetchAllSeries(List<Item> chartItems, long start, long end, long resolution) {
+        if (chartItems.size() <= 1) {
+            List<ChartSeries> seriesList = new ArrayList<>();
+            for (Item item : chartItems) {
+                seriesList.add(fetchSeries(item, start, end, resolution));
+            }
+            return seriesList;
+        }
+        List<Callable<ChartSeries>> tasks = new ArrayList<>();
+        for (Item item : chartItems) {
+            tasks.add(() -> fetchSeries(item, start, end, resolution));
+        }
+        List<ChartSeries> seriesList = new ArrayList<>();
+        try {
+            List<Future<ChartSeries>> futures = threadPool.invokeAll(tasks);
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    seriesList.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    logger.debug("Could not read data of item '{}': {}", chartItems.get(i).getName(),
+                            e.getMessage());
+                    seriesList.add(new ChartSeries(chartItems.get(i), RRD4jPersistenceService.DB_FOLDER
+                            + File.separator + chartItems.get(i).getName() + ".rrd", ConsolFun.MAX, null));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return seriesList;
+    }
+
     @Override
     public ImageType getChartType() {
         return ImageType.png;
     }
+
+    /**
+     * The data of a single item in a chart.
+     */
+    protected static class ChartSeries {
+        final Item item;
+        final String rrdName;
+        final ConsolFun consolFun;
+        final @Nullable FetchData fetchData;
+
+        ChartSeries(Item item, String rrdName, ConsolFun consolFun, @Nullable FetchData fetchData) {
+            this.item = item;
+            this.rrdName = rrdName;
+            this.consolFun = consolFun;
+            this.fetchData = fetchData;
+        }
+    }
+
+    /**
+     * A chart either rendered for the caller or taken from the cache, which is decoded or encoded when needed. A
+     * cached chart is decoded for every caller, so that callers can't modify it.
+     */
+    private static class RenderedChart {
+        private final @Nullable BufferedImage image;
+        private byte @Nullable [] png;
+
+        RenderedChart(@Nullable BufferedImage image, byte @Nullable [] png) {
+            this.image = image;
+            this.png = png;
+        }
+
+        BufferedImage getImage() throws IOException {
+            BufferedImage currentImage = image;
+            byte[] currentPng = png;
+            if (currentImage == null && currentPng != null) {
+                currentImage = ImageIO.read(new ByteArrayInputStream(currentPng));
+                if (currentImage == null) {
+                    throw new IOException("Cached chart is not a PNG image");
+                }
+            }
+            return Objects.requireNonNull(currentImage);
+        }
+
+        byte[] getPng() throws IOException {
+            byte[] currentPng = png;
+            if (currentPng == null) {
+                currentPng = encode(getImage());
+                png = currentPng;
+            }
+            return currentPng;
+        }
+
+        static byte[] encode(BufferedImage image) throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ImageIO.write(image, ImageType.png.toString(), out);
+            return out.toByteArray();
+        }
+    }
 }
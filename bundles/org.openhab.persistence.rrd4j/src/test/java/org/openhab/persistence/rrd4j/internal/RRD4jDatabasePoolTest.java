@@ -0,0 +1,185 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.rrd4j.internal;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.junit.jupiter.api.Test;
+import org.rrd4j.ConsolFun;
+import org.rrd4j.DsType;
+import org.rrd4j.core.RrdDb;
+import org.rrd4j.core.RrdDef;
+import org.rrd4j.core.RrdMemoryBackendFactory;
+
+/**
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class RRD4jDatabasePoolTest {
+
+    private final RrdMemoryBackendFactory backendFactory = new RrdMemoryBackendFactory();
+    private final List<String> opened = new ArrayList<>();
+    private final Map<String, RrdDb> databases = new HashMap<>();
+    private long now;
+
+    private final RRD4jDatabasePool pool = new RRD4jDatabasePool(() -> now);
+
+    private @Nullable RrdDb open(String name) {
+        opened.add(name);
+        RrdDef def = new RrdDef(name, 60);
+        def.addDatasource("state", DsType.GAUGE, 600, Double.NaN, Double.NaN);
+        def.addArchive(ConsolFun.AVERAGE, 0.5, 1, 10);
+        try {
+            RrdDb db = new RrdDb(def, backendFactory);
+            databases.put(name, db);
+            return db;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void use(String name) {
+        pool.acquire(name, this::open);
+        pool.release(name);
+    }
+
+    @Test
+    public void handleIsOpenedOnceAndReused() {
+        RrdDb first = pool.acquire("a", this::open);
+        pool.release("a");
+        RrdDb second = pool.acquire("a", this::open);
+        pool.release("a");
+
+        assertThat(second, is(sameInstance(first)));
+        assertThat(opened, contains("a"));
+        assertThat(pool.size(), is(1));
+    }
+
+    @Test
+    public void databaseIsLockedUntilReleased() throws Exception {
+        pool.acquire("a", this::open);
+
+        CompletableFuture<@Nullable Void> otherDatabase = CompletableFuture.runAsync(() -> use("b"));
+        otherDatabase.get(5, TimeUnit.SECONDS);
+
+        CountDownLatch started = new CountDownLatch(1);
+        CompletableFuture<@Nullable Void> sameDatabase = CompletableFuture.runAsync(() -> {
+            started.countDown();
+            use("a");
+        });
+        started.await();
+        Thread.sleep(200);
+        assertThat(sameDatabase.isDone(), is(false));
+
+        pool.release("a");
+        sameDatabase.get(5, TimeUnit.SECONDS);
+        assertThat(opened, contains("a", "b"));
+    }
+
+    @Test
+    public void releaseByAnotherThreadIsIgnored() throws Exception {
+        pool.acquire("a", this::open);
+
+        CompletableFuture.runAsync(() -> pool.release("a")).get(5, TimeUnit.SECONDS);
+        pool.closeAll();
+
+        assertThat(databases.get("a").isClosed(), is(false));
+        pool.release("a");
+    }
+
+    @Test
+    public void leastRecentlyUsedHandleIsClosedWhenFull() {
+        pool.configure(2, 0);
+        use("a");
+        use("b");
+        use("a");
+        use("c");
+
+        assertThat(pool.size(), is(2));
+        assertThat(databases.get("a").isClosed(), is(false));
+        assertThat(databases.get("b").isClosed(), is(true));
+        assertThat(databases.get("c").isClosed(), is(false));
+
+        use("b");
+        assertThat(opened, contains("a", "b", "c", "b"));
+    }
+
+    @Test
+    public void handlesInUseAreNotEvicted() {
+        pool.configure(1, 0);
+        RrdDb a = pool.acquire("a", this::open);
+        use("b");
+        use("c");
+
+        assertThat(a.isClosed(), is(false));
+        assertThat(databases.get("b").isClosed(), is(true));
+        assertThat(databases.get("c").isClosed(), is(true));
+        pool.release("a");
+
+        assertThat(pool.size(), is(1));
+        assertThat(a.isClosed(), is(false));
+    }
+
+    @Test
+    public void idleHandlesAreClosed() {
+        pool.configure(10, 300);
+        use("a");
+        now = 200_000;
+        use("b");
+
+        now = 300_000;
+        pool.closeIdle();
+        assertThat(databases.get("a").isClosed(), is(false));
+
+        now = 300_001;
+        pool.closeIdle();
+        assertThat(databases.get("a").isClosed(), is(true));
+        assertThat(databases.get("b").isClosed(), is(false));
+        assertThat(pool.size(), is(1));
+    }
+
+    @Test
+    public void handlesAreKeptWithoutIdleTimeout() {
+        pool.configure(10, 0);
+        use("a");
+
+        now = Long.MAX_VALUE / 2;
+        pool.closeIdle();
+        assertThat(databases.get("a").isClosed(), is(false));
+
+        pool.closeAll();
+        assertThat(databases.get("a").isClosed(), is(true));
+        assertThat(pool.size(), is(0));
+    }
+
+    @Test
+    public void databaseFailingToOpenIsNotPooled() {
+        assertThat(pool.acquire("a", name -> null), is(nullValue()));
+        pool.release("a");
+
+        assertThat(pool.size(), is(0));
+    }
+}
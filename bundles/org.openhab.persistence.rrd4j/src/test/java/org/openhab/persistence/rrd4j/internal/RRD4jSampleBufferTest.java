@@ -0,0 +1,104 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.rrd4j.internal;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class RRD4jSampleBufferTest {
+
+    private final List<String> written = new ArrayList<>();
+
+    private void write(long time, double value) {
+        written.add(time + "=" + value);
+    }
+
+    @Test
+    public void samplesOfAStepAreAveraged() {
+        RRD4jSampleBuffer buffer = new RRD4jSampleBuffer(60, true, 10);
+        buffer.add(600, 1);
+        buffer.add(610, 2);
+        buffer.add(620, 6);
+
+        assertThat(buffer.size(), is(1));
+        buffer.drain(700, true, this::write);
+        assertThat(written, contains("620=3.0"));
+    }
+
+    @Test
+    public void lastSampleOfAStepWinsWithoutAveraging() {
+        RRD4jSampleBuffer buffer = new RRD4jSampleBuffer(60, false, 10);
+        buffer.add(600, 1);
+        buffer.add(610, 2);
+
+        buffer.drain(700, true, this::write);
+        assertThat(written, contains("610=2.0"));
+    }
+
+    @Test
+    public void flushKeepsTheCurrentStep() {
+        RRD4jSampleBuffer buffer = new RRD4jSampleBuffer(60, false, 10);
+        buffer.add(600, 1);
+        buffer.add(660, 2);
+        buffer.add(720, 3);
+
+        assertThat(buffer.drain(730, false, this::write), is(2));
+        assertThat(written, contains("600=1.0", "660=2.0"));
+        assertThat(buffer.size(), is(1));
+    }
+
+    @Test
+    public void oldestEntryIsDroppedWhenFull() {
+        RRD4jSampleBuffer buffer = new RRD4jSampleBuffer(60, false, 2);
+        assertThat(buffer.add(600, 1), is(true));
+        assertThat(buffer.add(660, 2), is(true));
+        assertThat(buffer.add(720, 3), is(false));
+        assertThat(buffer.add(780, 4), is(false));
+
+        assertThat(buffer.getDroppedCount(), is(2L));
+        buffer.drain(900, true, this::write);
+        assertThat(written, contains("720=3.0", "780=4.0"));
+    }
+
+    @Test
+    public void shutdownDrainsAllEntries() {
+        RRD4jSampleBuffer buffer = new RRD4jSampleBuffer(60, false, 10);
+        buffer.add(600, 1);
+        buffer.add(660, 2);
+
+        // at shutdown the entry of the current step is written as well
+        assertThat(buffer.drain(670, true, this::write), is(2));
+        assertThat(written, contains("600=1.0", "660=2.0"));
+        assertThat(buffer.isEmpty(), is(true));
+    }
+
+    @Test
+    public void samplesNeverGoBackInTime() {
+        RRD4jSampleBuffer buffer = new RRD4jSampleBuffer(60, false, 10);
+        buffer.add(660, 1);
+        buffer.add(600, 2);
+
+        buffer.drain(900, true, this::write);
+        assertThat(written, contains("660=2.0"));
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.rrd4j.internal.charts;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class RRD4jChartCacheTest {
+
+    private final RRD4jChartCache cache = new RRD4jChartCache(100);
+
+    @Test
+    public void chartIsValidUntilTheNextStep() {
+        byte[] chart = new byte[10];
+        cache.put("a", chart, 1000, 1060);
+
+        assertThat(cache.get("a", 999), is(nullValue()));
+        cache.put("a", chart, 1000, 1060);
+        assertThat(cache.get("a", 1000), is(sameInstance(chart)));
+        assertThat(cache.get("a", 1059), is(sameInstance(chart)));
+        assertThat(cache.get("a", 1060), is(nullValue()));
+
+        assertThat(cache.size(), is(0));
+        assertThat(cache.getBytes(), is(0L));
+    }
+
+    @Test
+    public void replacedChartIsCountedOnce() {
+        cache.put("a", new byte[30], 1000, 1060);
+        cache.put("a", new byte[40], 1060, 1120);
+
+        assertThat(cache.size(), is(1));
+        assertThat(cache.getBytes(), is(40L));
+    }
+
+    @Test
+    public void leastRecentlyUsedChartsAreEvictedWhenFull() {
+        cache.put("a", new byte[40], 1000, 1060);
+        cache.put("b", new byte[40], 1000, 1060);
+        cache.get("a", 1010);
+        cache.put("c", new byte[40], 1010, 1060);
+
+        assertThat(cache.get("a", 1020), is(notNullValue()));
+        assertThat(cache.get("b", 1020), is(nullValue()));
+        assertThat(cache.get("c", 1020), is(notNullValue()));
+        assertThat(cache.getBytes(), is(80L));
+    }
+
+    @Test
+    public void expiredChartsAreEvictedFirst() {
+        cache.put("a", new byte[40], 1000, 1060);
+        cache.put("b", new byte[40], 1000, 1200);
+        cache.get("b", 1010);
+        cache.put("c", new byte[40], 1100, 1160);
+
+        assertThat(cache.get("b", 1100), is(notNullValue()));
+        assertThat(cache.get("c", 1100), is(notNullValue()));
+        assertThat(cache.size(), is(2));
+    }
+
+    @Test
+    public void chartLargerThanTheCacheIsNotCached() {
+        cache.put("a", new byte[40], 1000, 1060);
+        cache.put("b", new byte[101], 1000, 1060);
+
+        assertThat(cache.get("a", 1000), is(notNullValue()));
+        assertThat(cache.get("b", 1000), is(nullValue()));
+        assertThat(cache.getBytes(), is(40L));
+    }
+}
@@ -13,12 +13,18 @@
 package org.openhab.transform.jinja.internal;
 
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
@@ -32,12 +38,23 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.hubspot.jinjava.Jinjava;
 import com.hubspot.jinjava.JinjavaConfig;
+import com.hubspot.jinjava.interpret.Context;
 import com.hubspot.jinjava.interpret.FatalTemplateErrorsException;
+import com.hubspot.jinjava.interpret.InterpretException;
+import com.hubspot.jinjava.interpret.JinjavaInterpreter;
+import com.hubspot.jinjava.interpret.TemplateError;
+import com.hubspot.jinjava.interpret.TemplateError.ErrorType;
+import com.hubspot.jinjava.tree.Node;
 
 /**
  * <p>
  * The implementation of {@link TransformationService} which transforms the input by Jinja2 Expressions.
  *
+ * <p>
+ * Parsed templates are kept in a bounded cache, as the same templates are applied to every message. The value is
+ * only parsed as JSON if the template refers to <code>value_json</code>, and JSON objects and arrays are only
+ * converted as far as the template accesses them.
+ *
  * @author Jochen Klein - Initial contribution
  *
  */
@@ -45,11 +62,26 @@ import com.hubspot.jinjava.interpret.FatalTemplateErrorsException;
 @Component(property = { "openhab.transform=JINJA" })
 public class JinjaTransformationService implements TransformationService {
 
+    private static final String VALUE_JSON = "value_json";
+    private static final int TEMPLATE_CACHE_SIZE = 256;
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
     private final Logger logger = LoggerFactory.getLogger(JinjaTransformationService.class);
 
     private final JinjavaConfig config = JinjavaConfig.newBuilder().withFailOnUnknownTokens(true).build();
     private final Jinjava jinjava = new Jinjava(config);
 
+    private final Map<String, Node> templates = Collections
+            .synchronizedMap(new LinkedHashMap<String, Node>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.@Nullable Entry<String, Node> eldest) {
+                    return size() > TEMPLATE_CACHE_SIZE;
+                }
+            });
+
     /**
      * Transforms the input <code>value</code> by Jinja template.
      *
@@ -66,44 +98,64 @@ public class JinjaTransformationService implements TransformationService {
 
         bindings.put("value", value);
 
-        try {
-            JsonNode tree = new ObjectMapper().readTree(value);
-            bindings.put("value_json", toObject(tree));
-        } catch (IOException e) {
-            // ok, then value_json is null...
+        if (template.contains(VALUE_JSON)) {
+            try {
+                JsonNode tree = OBJECT_MAPPER.readTree(value);
+                bindings.put(VALUE_JSON, toObject(tree));
+            } catch (IOException e) {
+                // ok, then value_json is null...
+            }
         }
 
-        try {
-            transformationResult = jinjava.render(template, bindings);
-        } catch (FatalTemplateErrorsException e) {
-            throw new TransformationException("An error occurred while transformation. " + e.getMessage(), e);
-        }
+        transformationResult = render(template, bindings);
 
         logger.debug("transformation resulted in '{}'", transformationResult);
 
         return transformationResult;
     }
 
-    private static @Nullable Object toObject(JsonNode node) {
-        switch (node.getNodeType()) {
-            case ARRAY: {
-                List<@Nullable Object> result = new ArrayList<>();
-                for (JsonNode el : node) {
-                    result.add(toObject(el));
+    /**
+     * Renders the template like {@link Jinjava#render(String, Map)}, but parses it only if it is not cached yet.
+     */
+    private String render(String template, Map<String, @Nullable Object> bindings) throws TransformationException {
+        Context globalContext = jinjava.getGlobalContext();
+        Context context = new Context(globalContext, bindings, config.getDisabled());
+        JinjavaInterpreter interpreter = new JinjavaInterpreter(jinjava, context, config);
+        JinjavaInterpreter.pushCurrent(interpreter);
+        try {
+            Node root = templates.get(template);
+            if (root == null) {
+                root = interpreter.parse(template);
+                if (interpreter.getErrorsCopy().isEmpty()) {
+                    // only cache templates without syntax errors, so that their errors are reported every time
+                    templates.put(template, root);
                 }
-                return result;
             }
+            String output = interpreter.render(root, true);
+            List<TemplateError> fatalErrors = interpreter.getErrorsCopy().stream()
+                    .filter(error -> error.getSeverity() == ErrorType.FATAL).collect(Collectors.toList());
+            if (!fatalErrors.isEmpty()) {
+                throw new FatalTemplateErrorsException(template, fatalErrors);
+            }
+            return output;
+        } catch (FatalTemplateErrorsException e) {
+            throw new TransformationException("An error occurred while transformation. " + e.getMessage(), e);
+        } catch (InterpretException e) {
+            throw new TransformationException("An error occurred while transformation. " + e.getMessage(), e);
+        } finally {
+            globalContext.reset();
+            JinjavaInterpreter.popCurrent();
+        }
+    }
+
+    private static @Nullable Object toObject(JsonNode node) {
+        switch (node.getNodeType()) {
+            case ARRAY:
+                return new JsonList(node);
             case NUMBER:
                 return node.decimalValue();
-            case OBJECT: {
-                Map<String, @Nullable Object> result = new HashMap<>();
-                Iterator<Entry<String, JsonNode>> it = node.fields();
-                while (it.hasNext()) {
-                    Entry<String, JsonNode> field = it.next();
-                    result.put(field.getKey(), toObject(field.getValue()));
-                }
-                return result;
-            }
+            case OBJECT:
+                return new JsonMap(node);
             case STRING:
                 return node.asText();
             case BOOLEAN:
@@ -113,4 +165,85 @@ public class JinjaTransformationService implements TransformationService {
                 return null;
         }
     }
+
+    /**
+     * A JSON array, converting its elements when they are accessed
+     */
+    private static class JsonList extends AbstractList<@Nullable Object> {
+        private final JsonNode node;
+
+        private JsonList(JsonNode node) {
+            this.node = node;
+        }
+
+        @Override
+        public @Nullable Object get(int index) {
+            if (index < 0 || index >= node.size()) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + node.size());
+            }
+            return toObject(node.get(index));
+        }
+
+        @Override
+        public int size() {
+            return node.size();
+        }
+    }
+
+    /**
+     * A JSON object, converting its fields when they are accessed
+     */
+    private static class JsonMap extends AbstractMap<String, @Nullable Object> {
+        private final JsonNode node;
+
+        private JsonMap(JsonNode node) {
+            this.node = node;
+        }
+
+        @Override
+        public @Nullable Object get(@Nullable Object key) {
+            if (!(key instanceof String)) {
+                return null;
+            }
+            JsonNode field = node.get((String) key);
+            return field == null ? null : toObject(field);
+        }
+
+        @Override
+        public boolean containsKey(@Nullable Object key) {
+            return key instanceof String && node.has((String) key);
+        }
+
+        @Override
+        public int size() {
+            return node.size();
+        }
+
+        @Override
+        public Set<Entry<String, @Nullable Object>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<String, @Nullable Object>> iterator() {
+                    Iterator<Entry<String, JsonNode>> fields = node.fields();
+                    return new Iterator<>() {
+                        @Override
+                        public boolean hasNext() {
+                            return fields.hasNext();
+                        }
+
+                        @Override
+                        public Entry<String, @Nullable Object> next() {
+                            Entry<String, JsonNode> field = fields.next();
+                            return new SimpleImmutableEntry<>(field.getKey(), toObject(field.getValue()));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return node.size();
+                }
+            };
+        }
+    }
 }
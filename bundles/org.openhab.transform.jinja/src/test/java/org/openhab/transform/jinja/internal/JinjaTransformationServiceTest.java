@@ -115,4 +115,32 @@ public class JinjaTransformationServiceTest {
         // then map key is defined
         assertEquals("true", transformedResponse);
     }
+
+    @Test
+    public void testCachedTemplateWithDifferentValues() throws TransformationException {
+        String template = "{{ value_json.temperature }} {{ value_json.unit }}";
+
+        assertEquals("4.7 C", processor.transform(template, "{\"temperature\": 4.7, \"unit\": \"C\"}"));
+        assertEquals("40.5 F", processor.transform(template, "{\"temperature\": 40.5, \"unit\": \"F\"}"));
+    }
+
+    @Test
+    public void testCachedTemplateErrorIsReportedAgain() {
+        assertThrows(TransformationException.class,
+                () -> processor.transform("Hello {{{ value_json.string }}!", "{\"string\": \"world\"}"));
+        assertThrows(TransformationException.class,
+                () -> processor.transform("Hello {{{ value_json.string }}!", "{\"string\": \"world\"}"));
+    }
+
+    @Test
+    public void testNestedArraysAndObjects() throws TransformationException {
+        String json = "{\"sensors\": [{\"name\": \"a\", \"value\": 1}, {\"name\": \"b\", \"value\": 2}]}";
+
+        assertEquals("2", processor.transform("{{ value_json.sensors[1].value }}", json));
+        assertEquals("2", processor.transform("{{ value_json.sensors | length }}", json));
+        assertEquals("a=1;b=2;",
+                processor.transform("{% for s in value_json.sensors %}{{ s.name }}={{ s.value }};{% endfor %}", json));
+        String items = "{% for key, value in value_json.sensors[0].items() %}{{ key }}={{ value }},{% endfor %}";
+        assertEquals("name=a,value=1,", processor.transform(items, json));
+    }
 }
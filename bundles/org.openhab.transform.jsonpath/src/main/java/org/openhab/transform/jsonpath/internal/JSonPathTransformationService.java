@@ -12,7 +12,10 @@
  */
 package org.openhab.transform.jsonpath.internal;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 import org.eclipse.jdt.annotation.NonNullByDefault;
@@ -24,6 +27,7 @@ import org.osgi.service.component.annotations.Component;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.jayway.jsonpath.Configuration;
 import com.jayway.jsonpath.InvalidJsonException;
 import com.jayway.jsonpath.InvalidPathException;
 import com.jayway.jsonpath.JsonPath;
@@ -33,6 +37,10 @@ import com.jayway.jsonpath.PathNotFoundException;
  * <p>
  * The implementation of {@link TransformationService} which transforms the input by JSonPath Expressions.
  *
+ * <p>
+ * Compiled expressions are kept in a bounded cache. Parsed documents are kept for a short time, as things usually
+ * apply several expressions to the same payload, one per channel, so each payload is only parsed once.
+ *
  * @author Gaël L'hopital
  * @author Sebastian Janzen
  *
@@ -41,8 +49,44 @@ import com.jayway.jsonpath.PathNotFoundException;
 @Component(property = { "openhab.transform=JSONPATH" })
 public class JSonPathTransformationService implements TransformationService {
 
+    private static final int PATH_CACHE_SIZE = 256;
+    private static final int DOCUMENT_CACHE_SIZE = 8;
+    private static final long DOCUMENT_CACHE_MILLIS = 1000;
+
     private final Logger logger = LoggerFactory.getLogger(JSonPathTransformationService.class);
 
+    private final Configuration configuration = Configuration.defaultConfiguration();
+
+    private final Map<String, JsonPath> paths = Collections
+            .synchronizedMap(new LinkedHashMap<String, JsonPath>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.@Nullable Entry<String, JsonPath> eldest) {
+                    return size() > PATH_CACHE_SIZE;
+                }
+            });
+
+    private final Map<String, ParsedDocument> documents = Collections
+            .synchronizedMap(new LinkedHashMap<String, ParsedDocument>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.@Nullable Entry<String, ParsedDocument> eldest) {
+                    return size() > DOCUMENT_CACHE_SIZE;
+                }
+            });
+
+    private static class ParsedDocument {
+        private final Object document;
+        private final long parsedAt;
+
+        private ParsedDocument(Object document, long parsedAt) {
+            this.document = document;
+            this.parsedAt = parsedAt;
+        }
+    }
+
     /**
      * Transforms the input <code>source</code> by JSonPath expression.
      *
@@ -60,7 +104,7 @@ public class JSonPathTransformationService implements TransformationService {
         logger.debug("about to transform '{}' by the function '{}'", source, jsonPathExpression);
 
         try {
-            Object transformationResult = JsonPath.read(source, jsonPathExpression);
+            Object transformationResult = getPath(jsonPathExpression).read(getDocument(source), configuration);
             logger.debug("transformation resulted in '{}'", transformationResult);
             if (transformationResult == null) {
                 return null;
@@ -76,6 +120,25 @@ public class JSonPathTransformationService implements TransformationService {
         }
     }
 
+    private JsonPath getPath(String jsonPathExpression) {
+        JsonPath path = paths.get(jsonPathExpression);
+        if (path == null) {
+            path = JsonPath.compile(jsonPathExpression);
+            paths.put(jsonPathExpression, path);
+        }
+        return path;
+    }
+
+    private Object getDocument(String source) {
+        long now = System.currentTimeMillis();
+        ParsedDocument parsed = documents.get(source);
+        if (parsed == null || now - parsed.parsedAt > DOCUMENT_CACHE_MILLIS) {
+            parsed = new ParsedDocument(configuration.jsonProvider().parse(source), now);
+            documents.put(source, parsed);
+        }
+        return parsed.document;
+    }
+
     private String flattenList(List<?> list) {
         if (list.size() == 1) {
             return list.get(0).toString();
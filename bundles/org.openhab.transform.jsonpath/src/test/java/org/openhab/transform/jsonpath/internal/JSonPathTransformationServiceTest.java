@@ -57,6 +57,20 @@ public class JSonPathTransformationServiceTest {
         assertEquals("2", transformedResponse);
     }
 
+    @Test
+    public void testSamePayloadDifferentPaths() throws TransformationException {
+        assertEquals("bob", processor.transform("$[0].name", jsonArray));
+        assertEquals("alice", processor.transform("$[1].name", jsonArray));
+        assertEquals("1", processor.transform("$[0].id", new String(jsonArray)));
+    }
+
+    @Test
+    public void testSamePathDifferentPayloads() throws TransformationException {
+        assertEquals("bob", processor.transform("$[0].name", jsonArray));
+        assertEquals("carol", processor.transform("$[0].name", jsonArray.replace("bob", "carol")));
+        assertEquals("bob", processor.transform("$[0].name", jsonArray));
+    }
+
     @Test
     public void testInvalidPathThrowsException() {
         assertThrows(TransformationException.class, () -> processor.transform("$$", jsonArray));
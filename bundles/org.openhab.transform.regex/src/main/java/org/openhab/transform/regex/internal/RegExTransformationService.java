@@ -12,6 +12,10 @@
  */
 package org.openhab.transform.regex.internal;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -30,6 +34,10 @@ import org.slf4j.LoggerFactory;
  * <p>
  * <b>Note:</b> the given Regular Expression must contain exactly one group!
  *
+ * <p>
+ * Compiled expressions are kept in a bounded LRU cache, as bindings usually apply the same few expressions to every
+ * received value.
+ *
  * @author Thomas.Eichstaedt-Engelen
  */
 @NonNullByDefault
@@ -40,6 +48,35 @@ public class RegExTransformationService implements TransformationService {
 
     private static final Pattern SUBSTR_PATTERN = Pattern.compile("^s/(.*?[^\\\\])/(.*?[^\\\\])/(.*)$");
 
+    private static final int CACHE_SIZE = 256;
+
+    /**
+     * A compiled expression, either in substitution form or a pattern to match
+     */
+    private static class CompiledExpression {
+        private final Pattern pattern;
+        private final @Nullable String substitution;
+        private final boolean global;
+
+        private CompiledExpression(Pattern pattern, @Nullable String substitution, boolean global) {
+            this.pattern = pattern;
+            this.substitution = substitution;
+            this.global = global;
+        }
+    }
+
+    private final Map<String, CompiledExpression> cache = Collections
+            .synchronizedMap(new LinkedHashMap<String, CompiledExpression>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.@Nullable Entry<String, CompiledExpression> eldest) {
+                    return size() > CACHE_SIZE;
+                }
+            });
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+
     @Override
     public @Nullable String transform(String regExpression, String source) throws TransformationException {
         if (regExpression == null || source == null) {
@@ -50,23 +87,20 @@ public class RegExTransformationService implements TransformationService {
 
         String result = "";
 
-        Matcher substMatcher = SUBSTR_PATTERN.matcher(regExpression);
-        if (substMatcher.matches()) {
+        CompiledExpression expression = compile(regExpression);
+        String substitution = expression.substitution;
+        if (substitution != null) {
             logger.debug("Using substitution form of regex transformation");
-            String regex = substMatcher.group(1);
-            String substitution = substMatcher.group(2);
-            String options = substMatcher.group(3);
-            if (options.equals("g")) {
-                result = source.trim().replaceAll(regex, substitution);
+            Matcher substMatcher = expression.pattern.matcher(source.trim());
+            if (expression.global) {
+                result = substMatcher.replaceAll(substitution);
             } else {
-                result = source.trim().replaceFirst(regex, substitution);
-            }
-            if (result != null) {
-                return result;
+                result = substMatcher.replaceFirst(substitution);
             }
+            return result;
         }
 
-        Matcher matcher = Pattern.compile("^" + regExpression + "$", Pattern.DOTALL).matcher(source.trim());
+        Matcher matcher = expression.pattern.matcher(source.trim());
         if (!matcher.matches()) {
             logger.debug(
                     "the given regex '^{}$' doesn't match the given content '{}' -> couldn't compute transformation",
@@ -94,4 +128,40 @@ public class RegExTransformationService implements TransformationService {
 
         return result;
     }
+
+    private CompiledExpression compile(String regExpression) {
+        CompiledExpression expression = cache.get(regExpression);
+        if (expression != null) {
+            cacheHits.incrementAndGet();
+            return expression;
+        }
+        cacheMisses.incrementAndGet();
+        Matcher substMatcher = SUBSTR_PATTERN.matcher(regExpression);
+        if (substMatcher.matches()) {
+            expression = new CompiledExpression(Pattern.compile(substMatcher.group(1)), substMatcher.group(2),
+                    substMatcher.group(3).equals("g"));
+        } else {
+            expression = new CompiledExpression(Pattern.compile("^" + regExpression + "$", Pattern.DOTALL), null,
+                    false);
+        }
+        cache.put(regExpression, expression);
+        return expression;
+    }
+
+    public long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    public long getCacheMisses() {
+        return cacheMisses.get();
+    }
+
+    /**
+     * @return the share of transformations that found their compiled expression in the cache, between 0 and 1
+     */
+    public double getCacheHitRate() {
+        long hits = cacheHits.get();
+        long total = hits + cacheMisses.get();
+        return total == 0 ? 0 : (double) hits / total;
+    }
 }
@@ -0,0 +1,123 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.transform.regex.internal;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openhab.core.transform.TransformationException;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the cost of a transformation of a line as received by a serial binding, with the pattern compiled for
+ * every call as before and taken from the cache of the {@link RegExTransformationService}. The cache hits and misses
+ * of the cached variants are reported as secondary results.
+ *
+ * Not run by the build, run it with the test classpath of this bundle:
+ *
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt
+ * java -cp target/test-classes:target/classes:$(cat cp.txt) \
+ *     org.openhab.transform.regex.internal.RegExTransformationServiceBenchmark
+ * </pre>
+ *
+ * @author agent - Initial contribution
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RegExTransformationServiceBenchmark {
+
+    private static final String MATCH_EXPRESSION = "T1:(-?\\d+\\.\\d+);.*";
+    private static final String SUBSTITUTION_EXPRESSION = "s/^T1:(-?\\d+\\.\\d+);.*$/$1/";
+    private static final String LINE = "T1:21.47;T2:19.03;H1:45.2;H2:51.9;P:1013.25";
+
+    private RegExTransformationService service = new RegExTransformationService();
+
+    /**
+     * The cache statistics of the service during a measurement iteration.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class CacheCounters {
+        private long hitsBefore;
+        private long missesBefore;
+
+        public long cacheHits;
+        public long cacheMisses;
+
+        @Setup(Level.Iteration)
+        public void start(RegExTransformationServiceBenchmark benchmark) {
+            hitsBefore = benchmark.service.getCacheHits();
+            missesBefore = benchmark.service.getCacheMisses();
+            cacheHits = 0;
+            cacheMisses = 0;
+        }
+
+        @TearDown(Level.Iteration)
+        public void stop(RegExTransformationServiceBenchmark benchmark) {
+            cacheHits = benchmark.service.getCacheHits() - hitsBefore;
+            cacheMisses = benchmark.service.getCacheMisses() - missesBefore;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        service = new RegExTransformationService();
+    }
+
+    @Benchmark
+    public String matchCompiledPerCall() {
+        Matcher matcher = Pattern.compile("^" + MATCH_EXPRESSION + "$", Pattern.DOTALL).matcher(LINE.trim());
+        return matcher.matches() ? matcher.group(1) : "";
+    }
+
+    @Benchmark
+    public String matchCached(CacheCounters counters) throws TransformationException {
+        return service.transform(MATCH_EXPRESSION, LINE);
+    }
+
+    @Benchmark
+    public String substituteCompiledPerCall() {
+        return LINE.trim().replaceFirst("^T1:(-?\\d+\\.\\d+);.*$", "$1");
+    }
+
+    @Benchmark
+    public String substituteCached(CacheCounters counters) throws TransformationException {
+        return service.transform(SUBSTITUTION_EXPRESSION, LINE);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(RegExTransformationServiceBenchmark.class.getSimpleName()).build())
+                .run();
+    }
+}
@@ -75,4 +75,18 @@ public class RegExTransformationServiceTest extends AbstractTransformationServic
         // Asserts
         assertEquals("varX=12 varY=54 ", transformedResponse);
     }
+
+    @Test
+    public void testCacheHitRate() throws TransformationException {
+        assertEquals(0, processor.getCacheHitRate());
+
+        processor.transform("s/X(.*)/$1/", "X1");
+        processor.transform("s/X(.*)/$1/", "X2");
+        processor.transform("s/X(.*)/$1/", "X3");
+        processor.transform("Y(.*)", "Y4");
+
+        assertEquals(2, processor.getCacheHits());
+        assertEquals(2, processor.getCacheMisses());
+        assertEquals(0.5, processor.getCacheHitRate());
+    }
 }
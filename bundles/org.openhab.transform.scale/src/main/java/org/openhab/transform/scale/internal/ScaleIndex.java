@@ -0,0 +1,111 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.transform.scale.internal;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Immutable index of the ranges of a scale file.
+ *
+ * The bounds of all ranges split the number line into segments: the bounds themselves and the open intervals between
+ * them. No bound lies inside a segment, so every range either contains a whole segment or none of it. The label of the
+ * first range in file order containing a segment is resolved once when the file is loaded, a lookup then is a binary
+ * search over the bounds.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+class ScaleIndex {
+    private static final BigDecimal TWO = BigDecimal.valueOf(2);
+
+    private final BigDecimal[] bounds;
+    private final @Nullable String[] labels;
+    private final String format;
+    private final @Nullable String nonNumeric;
+
+    /**
+     * @param ranges the ranges and their labels in the order of the scale file
+     * @param format the format of the result
+     * @param nonNumeric the label for non numeric values or null if there is none
+     */
+    ScaleIndex(Map<Range, String> ranges, String format, @Nullable String nonNumeric) {
+        SortedSet<BigDecimal> sortedBounds = new TreeSet<>();
+        for (Range range : ranges.keySet()) {
+            if (range.min != null) {
+                sortedBounds.add(range.min);
+            }
+            if (range.max != null) {
+                sortedBounds.add(range.max);
+            }
+        }
+        bounds = sortedBounds.toArray(new BigDecimal[0]);
+
+        // segment 2i + 1 is bounds[i], segment 2i is the open interval below it, the last one the interval above all
+        labels = new @Nullable String[2 * bounds.length + 1];
+        for (int segment = 0; segment < labels.length; segment++) {
+            BigDecimal representative = representative(segment);
+            for (Map.Entry<Range, String> entry : ranges.entrySet()) {
+                if (entry.getKey().contains(representative)) {
+                    labels[segment] = entry.getValue();
+                    break;
+                }
+            }
+        }
+
+        this.format = format;
+        this.nonNumeric = nonNumeric;
+    }
+
+    private BigDecimal representative(int segment) {
+        if (bounds.length == 0) {
+            return BigDecimal.ZERO;
+        } else if (segment % 2 == 1) {
+            return bounds[segment / 2];
+        } else if (segment == 0) {
+            return bounds[0].subtract(BigDecimal.ONE);
+        } else if (segment == 2 * bounds.length) {
+            return bounds[bounds.length - 1].add(BigDecimal.ONE);
+        } else {
+            // dividing by two always terminates, so the middle of the interval is exact
+            return bounds[segment / 2 - 1].add(bounds[segment / 2]).divide(TWO);
+        }
+    }
+
+    /**
+     * Finds the label of the first range in file order containing the value.
+     *
+     * @param value the value to look up
+     * @return the label or null if no range contains the value
+     */
+    @Nullable
+    String lookup(BigDecimal value) {
+        int index = Arrays.binarySearch(bounds, value);
+        return labels[index >= 0 ? 2 * index + 1 : -2 * (index + 1)];
+    }
+
+    String getFormat() {
+        return format;
+    }
+
+    @Nullable
+    String getNonNumeric() {
+        return nonNumeric;
+    }
+}
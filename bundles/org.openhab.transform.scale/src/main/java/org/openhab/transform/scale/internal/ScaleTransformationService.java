@@ -51,7 +51,7 @@ import org.slf4j.LoggerFactory;
  */
 @Component(service = { TransformationService.class, ConfigOptionProvider.class }, property = {
         "openhab.transform=SCALE" })
-public class ScaleTransformationService extends AbstractFileTransformationService<Map<Range, String>>
+public class ScaleTransformationService extends AbstractFileTransformationService<ScaleIndex>
         implements ConfigOptionProvider {
 
     private final Logger logger = LoggerFactory.getLogger(ScaleTransformationService.class);
@@ -67,9 +67,8 @@ public class ScaleTransformationService extends AbstractFileTransformationServic
     private static final String FORMAT = "format";
     private static final String FORMAT_VALUE = "%value%";
     private static final String FORMAT_LABEL = "%label%";
-
-    /** Inaccessible range used to store presentation format ]0..0[ */
-    private static final Range FORMAT_RANGE = Range.range(BigDecimal.ZERO, false, BigDecimal.ZERO, false);
+    private static final Pattern FORMAT_VALUE_PATTERN = Pattern.compile(FORMAT_VALUE);
+    private static final Pattern FORMAT_LABEL_PATTERN = Pattern.compile(FORMAT_LABEL);
 
     /**
      * The implementation of {@link OrderedProperties} that let access
@@ -112,7 +111,7 @@ public class ScaleTransformationService extends AbstractFileTransformationServic
      * @return the transformed result or null if the transformation couldn't be completed for any reason.
      */
     @Override
-    protected @Nullable String internalTransform(Map<Range, String> data, String source)
+    protected @Nullable String internalTransform(ScaleIndex data, String source)
             throws TransformationException {
         try {
             final BigDecimal value = new BigDecimal(source);
@@ -123,7 +122,7 @@ public class ScaleTransformationService extends AbstractFileTransformationServic
                 final QuantityType<?> quantity = new QuantityType<>(source);
                 return formatResult(data, source, quantity.toBigDecimal());
             } catch (IllegalArgumentException e2) {
-                String nonNumeric = data.get(null);
+                String nonNumeric = data.getNonNumeric();
                 if (nonNumeric != null) {
                     return nonNumeric;
                 } else {
@@ -134,25 +133,26 @@ public class ScaleTransformationService extends AbstractFileTransformationServic
         }
     }
 
-    private String formatResult(Map<Range, String> data, String source, final BigDecimal value)
-            throws TransformationException {
-        String format = data.get(FORMAT_RANGE);
-        String result = getScaleResult(data, source, value);
-        return format.replaceAll(FORMAT_VALUE, source).replaceAll(FORMAT_LABEL, result);
-    }
-
-    private String getScaleResult(Map<Range, String> data, String source, final BigDecimal value)
+    private String formatResult(ScaleIndex data, String source, final BigDecimal value)
             throws TransformationException {
-        return data.entrySet().stream().filter(entry -> entry.getKey() != null && entry.getKey().contains(value))
-                .findFirst().map(Map.Entry::getValue)
-                .orElseThrow(() -> new TransformationException("No matching range for '" + source + "'"));
+        String result = data.lookup(value);
+        if (result == null) {
+            throw new TransformationException("No matching range for '" + source + "'");
+        }
+        String formatted = FORMAT_VALUE_PATTERN.matcher(data.getFormat()).replaceAll(source);
+        return FORMAT_LABEL_PATTERN.matcher(formatted).replaceAll(result);
     }
 
+    /**
+     * Loads the ranges of a scale file into a {@link ScaleIndex}, so that a transformation does not need to test the
+     * ranges one after the other.
+     */
     @Override
-    protected Map<Range, String> internalLoadTransform(String filename) throws TransformationException {
+    protected ScaleIndex internalLoadTransform(String filename) throws TransformationException {
         try (FileReader reader = new FileReader(filename)) {
             final Map<Range, String> data = new LinkedHashMap<>();
-            data.put(FORMAT_RANGE, FORMAT_LABEL);
+            String format = FORMAT_LABEL;
+            String nonNumeric = null;
             final OrderedProperties properties = new OrderedProperties();
             properties.load(reader);
 
@@ -178,9 +178,9 @@ public class ScaleTransformationService extends AbstractFileTransformationServic
                     }
                 } else {
                     if (NON_NUMBER.equals(entry)) {
-                        data.put(null, value);
+                        nonNumeric = value;
                     } else if (FORMAT.equals(entry)) {
-                        data.put(FORMAT_RANGE, value);
+                        format = value;
                     } else {
                         logger.warn("Scale transform file '{}' does not comply with syntax for entry : '{}', '{}'",
                                 filename, entry, value);
@@ -188,7 +188,7 @@ public class ScaleTransformationService extends AbstractFileTransformationServic
                 }
             }
 
-            return data;
+            return new ScaleIndex(data, format, nonNumeric);
         } catch (final IOException ex) {
             throw new TransformationException("An error occurred while opening file.", ex);
         }
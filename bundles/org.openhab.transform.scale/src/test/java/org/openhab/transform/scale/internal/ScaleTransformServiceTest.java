@@ -153,4 +153,20 @@ public class ScaleTransformServiceTest {
         String transformedResponse = processor.transform(existingscale, source);
         assertEquals("", transformedResponse);
     }
+
+    @Test
+    public void testEvaluationOrderOfOverlappingRanges() throws TransformationException {
+        // Ensures that the first matching range is taken at and between the bounds of overlapping ranges
+        String overlapping = "scale/overlapping.scale";
+
+        assertEquals("rest", processor.transform(overlapping, "4.99"));
+        assertEquals("outer", processor.transform(overlapping, "5"));
+        assertEquals("outer", processor.transform(overlapping, "10"));
+        assertEquals("outer", processor.transform(overlapping, "10.00"));
+        assertEquals("inner", processor.transform(overlapping, "10.001"));
+        assertEquals("inner", processor.transform(overlapping, "20"));
+        assertEquals("outer", processor.transform(overlapping, "25.5"));
+        assertEquals("rest", processor.transform(overlapping, "30"));
+        assertEquals("rest", processor.transform(overlapping, "-1E3"));
+    }
 }
@@ -0,0 +1,192 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.transform.scale.internal;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openhab.core.transform.TransformationException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the cost of a transformation by a scale file loaded by the {@link ScaleTransformationService}, compared to
+ * testing the ranges one after the other as before. The scale files are the humidex example of this bundle with 6
+ * closed ranges sharing their bounds, a UV index with 5 ranges, the Beaufort scale with 13 ranges and a temperature
+ * table with 500 ranges of 0.1 °C. The sources are spread evenly over the finite bounds of each file.
+ *
+ * Not run by the build, run it from the directory of this bundle with its test classpath:
+ *
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt
+ * java -cp target/test-classes:target/classes:$(cat cp.txt) \
+ *     org.openhab.transform.scale.internal.ScaleTransformationServiceBenchmark
+ * </pre>
+ *
+ * @author agent - Initial contribution
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScaleTransformationServiceBenchmark {
+
+    private static final int SOURCE_COUNT = 1024;
+    private static final Pattern RANGE_PATTERN = Pattern.compile("([\\[\\]])(.*?)\\.\\.(.*?)([\\[\\]])=(.*)");
+
+    @Param({ "humidex", "uvindex", "beaufort", "temperature" })
+    public String scale = "humidex";
+
+    private ScaleTransformationService service = new ScaleTransformationService();
+    private ScaleIndex index = new ScaleIndex(Map.of(), "%label%", null);
+    private Map<Range, String> ranges = new LinkedHashMap<>();
+    private String[] sources = new String[SOURCE_COUNT];
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException, TransformationException {
+        Path path = "humidex".equals(scale) ? Paths.get("conf", "transform", "scale", "humidex.scale")
+                : createScaleFile();
+        service = new ScaleTransformationService();
+        index = service.internalLoadTransform(path.toString());
+        ranges = readRanges(path);
+
+        List<BigDecimal> bounds = new ArrayList<>();
+        for (Range range : ranges.keySet()) {
+            if (range.min != null) {
+                bounds.add(range.min);
+            }
+            if (range.max != null) {
+                bounds.add(range.max);
+            }
+        }
+        bounds.sort(null);
+        Random random = new Random(42);
+        BigDecimal min = bounds.get(0);
+        BigDecimal span = bounds.get(bounds.size() - 1).subtract(min);
+        for (int i = 0; i < SOURCE_COUNT; i++) {
+            BigDecimal value = min.add(span.multiply(BigDecimal.valueOf(random.nextDouble())));
+            sources[i] = value.setScale(2, RoundingMode.HALF_UP).toPlainString();
+        }
+    }
+
+    /**
+     * Writes a scale file with ranges of the form [low..high[ as written in most scale files, followed by a catch all.
+     */
+    private Path createScaleFile() throws IOException {
+        List<BigDecimal> bounds = new ArrayList<>();
+        switch (scale) {
+            case "uvindex":
+                addBounds(bounds, "0", "3", "6", "8", "11", "20");
+                break;
+            case "beaufort":
+                addBounds(bounds, "0", "0.3", "1.6", "3.4", "5.5", "8", "10.8", "13.9", "17.2", "20.8", "24.5",
+                        "28.5", "32.7", "60");
+                break;
+            default:
+                for (int i = 0; i <= 500; i++) {
+                    bounds.add(BigDecimal.valueOf(i - 100, 1));
+                }
+        }
+
+        StringBuilder file = new StringBuilder();
+        for (int i = 1; i < bounds.size(); i++) {
+            file.append('[').append(bounds.get(i - 1)).append("..").append(bounds.get(i)).append("[=").append(i)
+                    .append('\n');
+        }
+        file.append("[..]=out of range\n");
+
+        Path path = Files.createTempFile(scale, ".scale");
+        path.toFile().deleteOnExit();
+        Files.writeString(path, file);
+        return path;
+    }
+
+    /**
+     * Reads the ranges of a scale file in file order, as they were tested before the index.
+     */
+    private static Map<Range, String> readRanges(Path path) throws IOException {
+        Map<Range, String> ranges = new LinkedHashMap<>();
+        for (String line : Files.readAllLines(path)) {
+            Matcher matcher = RANGE_PATTERN.matcher(line.trim());
+            if (matcher.matches()) {
+                BigDecimal low = matcher.group(2).isEmpty() ? null : new BigDecimal(matcher.group(2));
+                BigDecimal high = matcher.group(3).isEmpty() ? null : new BigDecimal(matcher.group(3));
+                ranges.put(Range.range(low, "[".equals(matcher.group(1)), high, "]".equals(matcher.group(4))),
+                        matcher.group(5));
+            }
+        }
+        return ranges;
+    }
+
+    private static void addBounds(List<BigDecimal> bounds, String... values) {
+        for (String value : values) {
+            bounds.add(new BigDecimal(value));
+        }
+    }
+
+    private String nextSource() {
+        next = (next + 1) % SOURCE_COUNT;
+        return sources[next];
+    }
+
+    @Benchmark
+    public String linearScan() {
+        BigDecimal value = new BigDecimal(nextSource());
+        return ranges.entrySet().stream().filter(entry -> entry.getKey().contains(value)).findFirst()
+                .map(Map.Entry::getValue).orElse("");
+    }
+
+    @Benchmark
+    public String indexLookup() {
+        String result = index.lookup(new BigDecimal(nextSource()));
+        return result == null ? "" : result;
+    }
+
+    @Benchmark
+    public String transform() throws TransformationException {
+        String result = service.internalTransform(index, nextSource());
+        return result == null ? "" : result;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ScaleTransformationServiceBenchmark.class.getSimpleName()).build())
+                .run();
+    }
+}
@@ -13,12 +13,18 @@
 package org.openhab.transform.xpath.internal;
 
 import java.io.StringReader;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
 import javax.xml.xpath.XPathFactory;
 
 import org.eclipse.jdt.annotation.NonNullByDefault;
@@ -26,6 +32,7 @@ import org.eclipse.jdt.annotation.Nullable;
 import org.openhab.core.transform.TransformationException;
 import org.openhab.core.transform.TransformationService;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
@@ -35,25 +42,39 @@ import org.xml.sax.InputSource;
  * <p>
  * The implementation of {@link TransformationService} which transforms the input by XPath Expressions.
  *
+ * <p>
+ * Document builders and compiled expressions are not thread-safe, so each transformation borrows an evaluator with its
+ * own builder and a bounded cache of compiled expressions from a small pool, which is emptied on deactivation.
+ *
  * @author Thomas.Eichstaedt-Engelen
  */
 @NonNullByDefault
 @Component(property = { "openhab.transform=XPATH" })
 public class XPathTransformationService implements TransformationService {
 
+    private static final int EXPRESSION_CACHE_SIZE = 64;
+    private static final int MAX_IDLE_EVALUATORS = 8;
+
     private final Logger logger = LoggerFactory.getLogger(XPathTransformationService.class);
 
-    @Override
-    public @Nullable String transform(String xpathExpression, String source) throws TransformationException {
-        if (xpathExpression == null || source == null) {
-            throw new TransformationException("the given parameters 'xpath' and 'source' must not be null");
-        }
+    private final BlockingQueue<Evaluator> idleEvaluators = new ArrayBlockingQueue<>(MAX_IDLE_EVALUATORS);
 
-        logger.debug("about to transform '{}' by the function '{}'", source, xpathExpression);
+    /**
+     * Parses documents and evaluates expressions, used by one thread at a time
+     */
+    private static class Evaluator {
+        private final DocumentBuilder builder;
+        private final XPath xpath = XPathFactory.newInstance().newXPath();
+        private final Map<String, XPathExpression> expressions = new LinkedHashMap<>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
 
-        StringReader stringReader = null;
+            @Override
+            protected boolean removeEldestEntry(Map.@Nullable Entry<String, XPathExpression> eldest) {
+                return size() > EXPRESSION_CACHE_SIZE;
+            }
+        };
 
-        try {
+        private Evaluator() throws ParserConfigurationException {
             DocumentBuilderFactory domFactory = DocumentBuilderFactory.newInstance();
             // see https://cheatsheetseries.owasp.org/cheatsheets/XML_External_Entity_Prevention_Cheat_Sheet.html
             domFactory.setFeature("http://xml.org/sax/features/external-general-entities", false);
@@ -63,16 +84,44 @@ public class XPathTransformationService implements TransformationService {
             domFactory.setExpandEntityReferences(false);
             domFactory.setNamespaceAware(true);
             domFactory.setValidating(false);
-            DocumentBuilder builder = domFactory.newDocumentBuilder();
+            builder = domFactory.newDocumentBuilder();
+        }
+
+        private XPathExpression compile(String xpathExpression) throws XPathExpressionException {
+            XPathExpression expr = expressions.get(xpathExpression);
+            if (expr == null) {
+                expr = xpath.compile(xpathExpression);
+                expressions.put(xpathExpression, expr);
+            }
+            return expr;
+        }
+    }
+
+    @Override
+    public @Nullable String transform(String xpathExpression, String source) throws TransformationException {
+        if (xpathExpression == null || source == null) {
+            throw new TransformationException("the given parameters 'xpath' and 'source' must not be null");
+        }
+
+        logger.debug("about to transform '{}' by the function '{}'", source, xpathExpression);
+
+        StringReader stringReader = null;
+
+        Evaluator evaluator = null;
+        try {
+            evaluator = acquireEvaluator();
+            XPathExpression expr = evaluator.compile(xpathExpression);
 
             stringReader = new StringReader(source);
             InputSource inputSource = new InputSource(stringReader);
             inputSource.setEncoding("UTF-8");
 
-            Document doc = builder.parse(inputSource);
-
-            XPath xpath = XPathFactory.newInstance().newXPath();
-            XPathExpression expr = xpath.compile(xpathExpression);
+            Document doc;
+            try {
+                doc = evaluator.builder.parse(inputSource);
+            } finally {
+                evaluator.builder.reset();
+            }
 
             String transformationResult = (String) expr.evaluate(doc, XPathConstants.STRING);
 
@@ -85,6 +134,20 @@ public class XPathTransformationService implements TransformationService {
             if (stringReader != null) {
                 stringReader.close();
             }
+            if (evaluator != null) {
+                // dropped if enough evaluators are idle already
+                idleEvaluators.offer(evaluator);
+            }
         }
     }
+
+    @Deactivate
+    protected void deactivate() {
+        idleEvaluators.clear();
+    }
+
+    private Evaluator acquireEvaluator() throws ParserConfigurationException {
+        Evaluator evaluator = idleEvaluators.poll();
+        return evaluator != null ? evaluator : new Evaluator();
+    }
 }
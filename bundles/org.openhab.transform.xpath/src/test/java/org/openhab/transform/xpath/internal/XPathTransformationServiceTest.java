@@ -38,4 +38,33 @@ public class XPathTransformationServiceTest extends AbstractTransformationServic
         // Asserts
         assertEquals("8", transformedResponse);
     }
+
+    @Test
+    public void testTransformByCachedXPath() throws TransformationException {
+        processor.transform("//current_conditions/temp_c/@data", source);
+
+        // the compiled expression and the parser are reused for other input
+        String transformedResponse = processor.transform("//current_conditions/temp_c/@data",
+                source.replace("<temp_c data=\"8\"/>", "<temp_c data=\"12\"/>"));
+
+        assertEquals("12", transformedResponse);
+    }
+
+    @Test
+    public void testInvalidXmlThrowsException() throws TransformationException {
+        assertThrows(TransformationException.class,
+                () -> processor.transform("//current_conditions/temp_c/@data", "<current_conditions>"));
+
+        // the parser is still usable after a failure
+        assertEquals("8", processor.transform("//current_conditions/temp_c/@data", source));
+    }
+
+    @Test
+    public void testTransformAfterDeactivate() throws TransformationException {
+        processor.transform("//current_conditions/temp_c/@data", source);
+        processor.deactivate();
+
+        // pooled evaluators are discarded, a new one is created on demand
+        assertEquals("8", processor.transform("//current_conditions/temp_c/@data", source));
+    }
 }
@@ -16,15 +16,15 @@ import java.io.File;
 import java.io.StringReader;
 import java.io.StringWriter;
 
-import javax.xml.transform.Source;
-import javax.xml.transform.Transformer;
+import javax.xml.transform.Templates;
+import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
-import org.openhab.core.OpenHAB;
+import org.openhab.core.transform.AbstractFileTransformationService;
 import org.openhab.core.transform.TransformationException;
 import org.openhab.core.transform.TransformationService;
 import org.osgi.service.component.annotations.Component;
@@ -35,11 +35,14 @@ import org.slf4j.LoggerFactory;
  * <p>
  * The implementation of {@link TransformationService} which transforms the input by XSLT.
  *
+ * <p>
+ * Stylesheets are compiled once into {@link Templates} and cached until their file changes.
+ *
  * @author Thomas.Eichstaedt-Engelen
  */
 @NonNullByDefault
-@Component(property = { "openhab.transform=XSLT" })
-public class XsltTransformationService implements TransformationService {
+@Component(service = TransformationService.class, property = { "openhab.transform=XSLT" })
+public class XsltTransformationService extends AbstractFileTransformationService<Templates> {
 
     private final Logger logger = LoggerFactory.getLogger(XsltTransformationService.class);
 
@@ -50,40 +53,20 @@ public class XsltTransformationService implements TransformationService {
      * is stored under the 'configurations/transform' folder. To organize the
      * various transformations one should use subfolders.
      *
-     * @param filename the name of the file which contains the XSLT transformation rule.
-     *            The name may contain subfoldernames as well
+     * @param templates the compiled XSLT transformation rule
      * @param source the input to transform
      */
     @Override
-    public @Nullable String transform(String filename, String source) throws TransformationException {
-        if (filename == null || source == null) {
-            throw new TransformationException("the given parameters 'filename' and 'source' must not be null");
-        }
-
-        Source xsl = null;
-
-        try {
-            String path = OpenHAB.getConfigFolder() + File.separator + TransformationService.TRANSFORM_FOLDER_NAME
-                    + File.separator + filename;
-            xsl = new StreamSource(new File(path));
-        } catch (Exception e) {
-            String message = "opening file '" + filename + "' throws exception";
-
-            logger.error("{}", message, e);
-            throw new TransformationException(message, e);
-        }
-
-        logger.debug("about to transform '{}' by the function '{}'", source, xsl);
+    protected @Nullable String internalTransform(Templates templates, String source) throws TransformationException {
+        logger.debug("about to transform '{}'", source);
 
         StringReader xml = new StringReader(source);
         StringWriter out = new StringWriter();
 
-        Transformer transformer;
-
         try {
-            transformer = TransformerFactory.newInstance().newTransformer(xsl);
-            transformer.transform(new StreamSource(xml), new StreamResult(out));
-        } catch (Exception e) {
+            // Templates are thread-safe, the transformers created from them are not
+            templates.newTransformer().transform(new StreamSource(xml), new StreamResult(out));
+        } catch (TransformerException e) {
             logger.error("transformation throws exception", e);
             throw new TransformationException("transformation throws exception", e);
         }
@@ -92,4 +75,16 @@ public class XsltTransformationService implements TransformationService {
 
         return out.toString();
     }
+
+    @Override
+    protected Templates internalLoadTransform(String filename) throws TransformationException {
+        try {
+            return TransformerFactory.newInstance().newTemplates(new StreamSource(new File(filename)));
+        } catch (TransformerException e) {
+            String message = "compiling file '" + filename + "' throws exception";
+
+            logger.error("{}", message, e);
+            throw new TransformationException(message, e);
+        }
+    }
 }